@@ -0,0 +1,54 @@
+package eu.dirk.haase.io.storage.benchmark;
+
+import eu.dirk.haase.io.storage.record.Crc32c;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the {@link Crc32c} checksums of RecordHeaders and payloads; the cost of the
+ * verification within the storage is measured by the {@link RecordStorageBenchmark}
+ * with {@code -p checksumVerification=OFF,HEADERS,FULL}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class Crc32cBenchmark {
+
+    @Param({"88", "4096", "65536"})
+    public int length;
+
+    @Param({"false", "true"})
+    public boolean isDirect;
+
+    private ByteBuffer buffer;
+
+    @Setup
+    public void setUp() {
+        byte[] bytes = new byte[this.length];
+        ThreadLocalRandom.current().nextBytes(bytes);
+        this.buffer = (this.isDirect ? ByteBuffer.allocateDirect(this.length) : ByteBuffer.allocate(this.length));
+        this.buffer.put(bytes);
+    }
+
+    @Benchmark
+    public int checksum() {
+        return Crc32c.checksum(this.buffer, 0, this.length);
+    }
+
+}
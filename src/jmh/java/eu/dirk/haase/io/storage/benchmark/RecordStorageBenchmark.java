@@ -0,0 +1,264 @@
+package eu.dirk.haase.io.storage.benchmark;
+
+import eu.dirk.haase.io.storage.record.ChecksumVerification;
+import eu.dirk.haase.io.storage.record.RecordChannelStorage;
+import eu.dirk.haase.io.storage.record.RecordInsertPipeline;
+import eu.dirk.haase.io.storage.record.RecordStorage;
+import eu.dirk.haase.io.storage.record.index.RecordKeyIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Throughput of insert, select, update and delete on the {@link StorageBackend}s.
+ * <p>
+ * Each iteration starts with a new storage which holds {@link #recordCount} records of
+ * {@link #payloadSize} bytes. The count of threads is chosen with {@code -t}, the
+ * {@link ThreadSweep} runs the benchmarks for several counts of threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RecordStorageBenchmark {
+
+    /**
+     * Count of the records which are inserted with one call of {@link RecordStorage#insertRecords(byte[][], ByteBuffer[])}
+     * while the storage is filled.
+     */
+    private static final int FILL_BATCH_SIZE = 100;
+
+    @Param({"FILE", "IN_MEMORY", "CHUNKED", "OFF_HEAP", "MAPPED", "STRIBED"})
+    public StorageBackend backend;
+
+    @Param({"128", "4096"})
+    public int payloadSize;
+
+    /**
+     * Count of the records the storage is filled with before every iteration; the large
+     * counts need a heap or a disk of several GB with the large payloads.
+     */
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int recordCount;
+
+    /**
+     * Whether or not a {@link RecordChannelStorage} has a {@link RecordKeyIndex}; without it
+     * every lookup by key walks the RecordHeaders.
+     */
+    @Param({"true"})
+    public boolean isIndexed;
+
+    /**
+     * The checksums which are verified; any other value than OFF writes the records with checksums.
+     */
+    @Param({"OFF"})
+    public ChecksumVerification checksumVerification;
+
+    RecordStorage recordStorage;
+
+    /**
+     * Pipeline of the storage, used by {@link #pipelinedInsert(ThreadState)}.
+     */
+    RecordInsertPipeline insertPipeline;
+
+    /**
+     * Keys of the records the storage is filled with.
+     */
+    byte[][] keys;
+
+    private Path directory;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException, InterruptedException {
+        this.directory = Files.createTempDirectory("record-storage-benchmark");
+        this.recordStorage = this.backend.open(this.directory.resolve("records.bin"));
+        if (this.recordStorage instanceof RecordChannelStorage) {
+            RecordChannelStorage recordChannelStorage = (RecordChannelStorage) this.recordStorage;
+            if (this.isIndexed) {
+                recordChannelStorage.setRecordKeyIndex(new RecordKeyIndex(this.recordCount));
+            }
+            recordChannelStorage.setChecksums(this.checksumVerification != ChecksumVerification.OFF);
+            recordChannelStorage.setChecksumVerification(this.checksumVerification);
+        }
+        this.recordStorage.create();
+        this.keys = newKeys(this.recordCount);
+        byte[][] batchKeys = new byte[FILL_BATCH_SIZE][];
+        ByteBuffer[] batchBuffers = new ByteBuffer[FILL_BATCH_SIZE];
+        for (int i = 0; FILL_BATCH_SIZE > i; ++i) {
+            batchBuffers[i] = newPayload(this.payloadSize);
+        }
+        for (int i = 0; this.recordCount > i; i += FILL_BATCH_SIZE) {
+            int batchSize = Math.min(FILL_BATCH_SIZE, this.recordCount - i);
+            if (batchSize < FILL_BATCH_SIZE) {
+                batchKeys = new byte[batchSize][];
+            }
+            for (int j = 0; batchSize > j; ++j) {
+                batchKeys[j] = this.keys[i + j];
+                batchBuffers[j].clear();
+                batchBuffers[j].position(this.payloadSize);
+            }
+            this.recordStorage.insertRecords(batchKeys, batchBuffers);
+        }
+        this.insertPipeline = new RecordInsertPipeline(this.recordStorage);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException, InterruptedException {
+        this.insertPipeline.close();
+        this.recordStorage.close();
+        Path[] files;
+        try (Stream<Path> stream = Files.list(this.directory)) {
+            files = stream.toArray(Path[]::new);
+        }
+        for (Path file : files) {
+            Files.delete(file);
+        }
+        Files.delete(this.directory);
+    }
+
+    static byte[][] newKeys(int count) {
+        byte[][] keys = new byte[count][];
+        for (int i = 0; count > i; ++i) {
+            keys[i] = UUID.randomUUID().toString().getBytes();
+        }
+        return keys;
+    }
+
+    static ByteBuffer newPayload(int payloadSize) {
+        byte[] payload = new byte[payloadSize];
+        ThreadLocalRandom.current().nextBytes(payload);
+        ByteBuffer payloadBuffer = ByteBuffer.wrap(payload);
+        payloadBuffer.position(payloadSize);
+        return payloadBuffer;
+    }
+
+    /**
+     * The buffers and keys of one thread.
+     */
+    @State(Scope.Thread)
+    public static class ThreadState {
+
+        /**
+         * Count of the keys which a thread inserts over and over again.
+         */
+        private static final int NEW_KEY_COUNT = 1024;
+
+        ByteBuffer payloadBuffer;
+        ByteBuffer readBuffer;
+        byte[][] newKeys;
+        int newKeyCursor;
+
+        /**
+         * Range of the keys of the storage which only this thread deletes and inserts again.
+         */
+        int ownKeyStart;
+        int ownKeyCount;
+
+        @Setup(Level.Trial)
+        public void setUp(RecordStorageBenchmark benchmark, ThreadParams threadParams) {
+            this.payloadBuffer = newPayload(benchmark.payloadSize);
+            this.readBuffer = ByteBuffer.allocate(benchmark.payloadSize);
+            this.newKeys = newKeys(NEW_KEY_COUNT);
+            this.ownKeyCount = Math.max(benchmark.recordCount / threadParams.getThreadCount(), 1);
+            this.ownKeyStart = (threadParams.getThreadIndex() * this.ownKeyCount) % benchmark.recordCount;
+        }
+
+        /**
+         * Returns the payload, ready to be written.
+         */
+        ByteBuffer payload() {
+            this.payloadBuffer.clear();
+            this.payloadBuffer.position(this.payloadBuffer.capacity());
+            return this.payloadBuffer;
+        }
+
+        ByteBuffer readBuffer() {
+            this.readBuffer.clear();
+            return this.readBuffer;
+        }
+
+        byte[] newKey() {
+            this.newKeyCursor = (this.newKeyCursor + 1) & (NEW_KEY_COUNT - 1);
+            return this.newKeys[this.newKeyCursor];
+        }
+
+        static byte[] existingKey(RecordStorageBenchmark benchmark) {
+            return benchmark.keys[ThreadLocalRandom.current().nextInt(benchmark.keys.length)];
+        }
+
+        /**
+         * Returns a random key of the range of this thread, so no other thread deletes it concurrently.
+         */
+        byte[] ownKey(RecordStorageBenchmark benchmark) {
+            return benchmark.keys[this.ownKeyStart + ThreadLocalRandom.current().nextInt(this.ownKeyCount)];
+        }
+    }
+
+    /**
+     * Appends a record.
+     */
+    @Benchmark
+    public int insert(ThreadState threadState) throws IOException, InterruptedException {
+        return this.recordStorage.insertRecord(threadState.newKey(), threadState.payload());
+    }
+
+    /**
+     * Appends a record by the single writer of the {@link RecordInsertPipeline}, which batches
+     * the inserts of the concurrent threads.
+     */
+    @Benchmark
+    public int pipelinedInsert(ThreadState threadState) {
+        return this.insertPipeline.insertRecord(threadState.newKey(), threadState.payload()).join();
+    }
+
+    /**
+     * Reads a random record.
+     */
+    @Benchmark
+    public int select(ThreadState threadState) throws IOException, InterruptedException {
+        return this.recordStorage.selectRecord(ThreadState.existingKey(this), threadState.readBuffer());
+    }
+
+    /**
+     * Overwrites a random record with a payload of the same length, so the record is updated in place.
+     */
+    @Benchmark
+    public int update(ThreadState threadState) throws IOException, InterruptedException {
+        return this.recordStorage.updateRecord(ThreadState.existingKey(this), threadState.payload());
+    }
+
+    /**
+     * Deletes a random record and inserts it again, so that the count of records stays the same
+     * during an iteration. Every thread takes the keys of a range of its own, otherwise two
+     * threads could delete and insert the same key at once.
+     */
+    @Benchmark
+    public int deleteAndInsert(ThreadState threadState) throws IOException, InterruptedException {
+        byte[] key = threadState.ownKey(this);
+        this.recordStorage.deleteRecord(key);
+        return this.recordStorage.insertRecord(key, threadState.payload());
+    }
+
+}
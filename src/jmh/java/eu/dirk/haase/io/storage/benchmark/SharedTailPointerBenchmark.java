@@ -0,0 +1,54 @@
+package eu.dirk.haase.io.storage.benchmark;
+
+import eu.dirk.haase.io.storage.record.SharedTailPointer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the reservations of the tail by {@link SharedTailPointer#nextLock(long)},
+ * {@link SharedTailPointer#nextSync(long)} and {@link SharedTailPointer#nextAtomic(long)};
+ * run with several threads ({@code -t}) to see their behaviour under contention.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SharedTailPointerBenchmark {
+
+    private static final long RECORD_LENGTH = 256;
+
+    private SharedTailPointer sharedTailPointer;
+
+    @Setup
+    public void setUp() {
+        this.sharedTailPointer = new SharedTailPointer();
+    }
+
+    @Benchmark
+    public long nextLock() throws InterruptedException {
+        return this.sharedTailPointer.nextLock(RECORD_LENGTH);
+    }
+
+    @Benchmark
+    public long nextSync() {
+        return this.sharedTailPointer.nextSync(RECORD_LENGTH);
+    }
+
+    @Benchmark
+    public long nextAtomic() {
+        return this.sharedTailPointer.nextAtomic(RECORD_LENGTH);
+    }
+
+}
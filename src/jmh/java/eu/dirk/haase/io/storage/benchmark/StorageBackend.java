@@ -0,0 +1,87 @@
+package eu.dirk.haase.io.storage.benchmark;
+
+import eu.dirk.haase.io.storage.channel.SeekableChunkedByteChannel;
+import eu.dirk.haase.io.storage.channel.SeekableInMemoryByteChannel;
+import eu.dirk.haase.io.storage.record.RecordChannelStorage;
+import eu.dirk.haase.io.storage.record.RecordMappedStorage;
+import eu.dirk.haase.io.storage.record.RecordOffHeapStorage;
+import eu.dirk.haase.io.storage.record.RecordStorage;
+import eu.dirk.haase.io.storage.record.StribedRecordStorage;
+
+import java.io.IOException;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The {@link RecordStorage} implementations and channels which are measured by the benchmarks.
+ */
+public enum StorageBackend {
+
+    /**
+     * {@link RecordChannelStorage} on a file.
+     */
+    FILE {
+        @Override
+        RecordStorage open(Path path) throws IOException {
+            return new RecordChannelStorage(path, OPEN_OPTIONS);
+        }
+    },
+    /**
+     * {@link RecordChannelStorage} on a {@link SeekableInMemoryByteChannel}.
+     */
+    IN_MEMORY {
+        @Override
+        RecordStorage open(Path path) throws IOException {
+            return new RecordChannelStorage(null, new SeekableInMemoryByteChannel());
+        }
+    },
+    /**
+     * {@link RecordChannelStorage} on a {@link SeekableChunkedByteChannel} on the heap.
+     */
+    CHUNKED {
+        @Override
+        RecordStorage open(Path path) throws IOException {
+            return new RecordChannelStorage(null, new SeekableChunkedByteChannel());
+        }
+    },
+    /**
+     * {@link RecordOffHeapStorage} in direct memory.
+     */
+    OFF_HEAP {
+        @Override
+        RecordStorage open(Path path) throws IOException {
+            return new RecordOffHeapStorage();
+        }
+    },
+    /**
+     * {@link RecordMappedStorage} on a memory-mapped file.
+     */
+    MAPPED {
+        @Override
+        RecordStorage open(Path path) throws IOException {
+            return new RecordMappedStorage(path, OPEN_OPTIONS);
+        }
+    },
+    /**
+     * {@link StribedRecordStorage} with {@link #STRIPE_COUNT} stripes on a file; has no key index.
+     */
+    STRIBED {
+        @Override
+        RecordStorage open(Path path) throws IOException {
+            return new StribedRecordStorage(STRIPE_COUNT, path, OPEN_OPTIONS);
+        }
+    };
+
+    static final int STRIPE_COUNT = 4;
+
+    private static final OpenOption[] OPEN_OPTIONS = {
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.READ, StandardOpenOption.WRITE};
+
+    /**
+     * Opens the storage; the file based backends store it at the given path.
+     */
+    abstract RecordStorage open(Path path) throws IOException;
+
+}
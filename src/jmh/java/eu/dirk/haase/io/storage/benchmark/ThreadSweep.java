@@ -0,0 +1,36 @@
+package eu.dirk.haase.io.storage.benchmark;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the selected benchmarks once for each count of threads.
+ * <pre>
+ *   java -Dthreads=1,2,4,8 -cp target/benchmarks.jar eu.dirk.haase.io.storage.benchmark.ThreadSweep SharedTailPointerBenchmark
+ * </pre>
+ * All arguments are passed to JMH, as for {@code java -jar target/benchmarks.jar}; an
+ * argument {@code -t} is overridden by the sweep.
+ */
+public final class ThreadSweep {
+
+    private static final String DEFAULT_THREADS = "1,2,4,8";
+
+    private ThreadSweep() {
+    }
+
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        for (String threads : System.getProperty("threads", DEFAULT_THREADS).split(",")) {
+            Options options = new OptionsBuilder()
+                    .parent(commandLineOptions)
+                    .threads(Integer.parseInt(threads.trim()))
+                    .build();
+            new Runner(options).run();
+        }
+    }
+
+}
@@ -0,0 +1,29 @@
+package eu.dirk.haase.io.storage.channel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A channel which can read and write at an absolute position without
+ * changing the current position of the channel (like {@link java.nio.channels.FileChannel}).
+ * <p>
+ * Positional reads and writes of different threads do not interfere with each other.
+ */
+public interface PositionalByteChannel {
+
+    /**
+     * Reads a sequence of bytes from this channel into the buffer, starting at the given position.
+     *
+     * @return the number of bytes read, possibly zero, or -1 if the given position
+     * is greater than or equal to the size of the channel
+     */
+    int read(ByteBuffer destination, long position) throws IOException;
+
+    /**
+     * Writes a sequence of bytes to this channel from the buffer, starting at the given position.
+     *
+     * @return the number of bytes written, possibly zero
+     */
+    int write(ByteBuffer source, long position) throws IOException;
+
+}
@@ -0,0 +1,192 @@
+package eu.dirk.haase.io.storage.channel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Reads and writes at an absolute position of a {@link SeekableByteChannel}.
+ * <p>
+ * A {@link FileChannel} or a {@link PositionalByteChannel} is accessed without changing its
+ * position, so concurrent readers need no common lock. Any other channel is positioned
+ * and accessed while holding the monitor of the channel.
+ */
+public final class PositionalIO {
+
+    /**
+     * Size of the buffer through which {@link #transferTo(SeekableByteChannel, long, long, WritableByteChannel)}
+     * copies from channels which cannot transfer directly.
+     */
+    private final static int TRANSFER_BUFFER_SIZE = 64 * 1024;
+
+    private PositionalIO() {
+    }
+
+    /**
+     * Returns true if the channel supports reads and writes which do not change its position.
+     */
+    public static boolean isPositional(SeekableByteChannel channel) {
+        return (channel instanceof FileChannel) || (channel instanceof PositionalByteChannel);
+    }
+
+    /**
+     * Reads bytes from the channel at the given position until the buffer is full
+     * or the end of the channel is reached.
+     *
+     * @return the number of bytes read or -1 if the position is at the end of the channel
+     */
+    public static int read(SeekableByteChannel channel, ByteBuffer destination, long position) throws IOException {
+        if (channel instanceof FileChannel) {
+            return readFully((FileChannel) channel, destination, position);
+        } else if (channel instanceof PositionalByteChannel) {
+            return readFully((PositionalByteChannel) channel, destination, position);
+        }
+        synchronized (channel) {
+            channel.position(position);
+            int bytesRead = 0;
+            while (destination.hasRemaining()) {
+                int count = channel.read(destination);
+                if (count < 0) {
+                    return (bytesRead > 0 ? bytesRead : -1);
+                }
+                bytesRead += count;
+            }
+            return bytesRead;
+        }
+    }
+
+    /**
+     * Writes all remaining bytes of the buffer to the channel at the given position.
+     *
+     * @return the number of bytes written
+     */
+    public static int write(SeekableByteChannel channel, ByteBuffer source, long position) throws IOException {
+        int bytesWritten = 0;
+        if (channel instanceof FileChannel) {
+            FileChannel fileChannel = (FileChannel) channel;
+            while (source.hasRemaining()) {
+                bytesWritten += fileChannel.write(source, position + bytesWritten);
+            }
+            return bytesWritten;
+        } else if (channel instanceof PositionalByteChannel) {
+            PositionalByteChannel positionalChannel = (PositionalByteChannel) channel;
+            while (source.hasRemaining()) {
+                bytesWritten += positionalChannel.write(source, position + bytesWritten);
+            }
+            return bytesWritten;
+        }
+        synchronized (channel) {
+            channel.position(position);
+            while (source.hasRemaining()) {
+                bytesWritten += channel.write(source);
+            }
+            return bytesWritten;
+        }
+    }
+
+    /**
+     * Writes all remaining bytes of the buffers, one after the other, to the channel
+     * starting at the given position.
+     * <p>
+     * A {@link FileChannel} writes the buffers with a single gathering write, which is why it is
+     * positioned and written while holding the monitor of the channel. Its positional reads
+     * are not affected by this.
+     *
+     * @return the number of bytes written
+     */
+    public static long write(SeekableByteChannel channel, ByteBuffer[] sources, long position) throws IOException {
+        long bytesWritten = 0;
+        if (channel instanceof FileChannel) {
+            FileChannel fileChannel = (FileChannel) channel;
+            long bytesToWrite = remaining(sources);
+            synchronized (channel) {
+                fileChannel.position(position);
+                while (bytesToWrite > bytesWritten) {
+                    bytesWritten += fileChannel.write(sources);
+                }
+            }
+            return bytesWritten;
+        }
+        for (ByteBuffer source : sources) {
+            bytesWritten += write(channel, source, position + bytesWritten);
+        }
+        return bytesWritten;
+    }
+
+    /**
+     * Transfers the given count of bytes from the channel, starting at the given position, to the target.
+     * <p>
+     * A {@link FileChannel} uses {@link FileChannel#transferTo(long, long, WritableByteChannel)}, so the
+     * bytes need not be copied through the JVM heap. A {@link SeekableMappedByteChannel} writes its mapped
+     * memory directly to the target. Any other channel is copied through a temporary buffer.
+     *
+     * @return the number of bytes transferred, less than count if the end of the channel is reached
+     */
+    public static long transferTo(SeekableByteChannel channel, long position, long count, WritableByteChannel target) throws IOException {
+        if (channel instanceof FileChannel) {
+            FileChannel fileChannel = (FileChannel) channel;
+            long bytesTransferred = 0;
+            while (count > bytesTransferred) {
+                long transferred = fileChannel.transferTo(position + bytesTransferred, count - bytesTransferred, target);
+                if (transferred <= 0) {
+                    break;
+                }
+                bytesTransferred += transferred;
+            }
+            return bytesTransferred;
+        } else if (channel instanceof SeekableMappedByteChannel) {
+            return ((SeekableMappedByteChannel) channel).transferTo(position, count, target);
+        }
+        ByteBuffer transferBuffer = ByteBuffer.allocate((int) Math.min(count, TRANSFER_BUFFER_SIZE));
+        long bytesTransferred = 0;
+        while (count > bytesTransferred) {
+            transferBuffer.clear();
+            transferBuffer.limit((int) Math.min(transferBuffer.capacity(), count - bytesTransferred));
+            int bytesRead = read(channel, transferBuffer, position + bytesTransferred);
+            if (bytesRead <= 0) {
+                break;
+            }
+            transferBuffer.flip();
+            while (transferBuffer.hasRemaining()) {
+                target.write(transferBuffer);
+            }
+            bytesTransferred += bytesRead;
+        }
+        return bytesTransferred;
+    }
+
+    private static long remaining(ByteBuffer[] buffers) {
+        long remaining = 0;
+        for (ByteBuffer buffer : buffers) {
+            remaining += buffer.remaining();
+        }
+        return remaining;
+    }
+
+    private static int readFully(FileChannel channel, ByteBuffer destination, long position) throws IOException {
+        int bytesRead = 0;
+        while (destination.hasRemaining()) {
+            int count = channel.read(destination, position + bytesRead);
+            if (count < 0) {
+                return (bytesRead > 0 ? bytesRead : -1);
+            }
+            bytesRead += count;
+        }
+        return bytesRead;
+    }
+
+    private static int readFully(PositionalByteChannel channel, ByteBuffer destination, long position) throws IOException {
+        int bytesRead = 0;
+        while (destination.hasRemaining()) {
+            int count = channel.read(destination, position + bytesRead);
+            if (count < 0) {
+                return (bytesRead > 0 ? bytesRead : -1);
+            }
+            bytesRead += count;
+        }
+        return bytesRead;
+    }
+
+}
@@ -0,0 +1,223 @@
+package eu.dirk.haase.io.storage.channel;
+
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * {@link SeekableByteChannel} over an {@link AsynchronousFileChannel}; thread-safe.
+ * <p>
+ * The reads and writes of this channel wait for the asynchronous operations to complete,
+ * so that a storage can use the same file both blocking and, by
+ * {@link #getAsynchronousChannel()}, asynchronously.
+ */
+public class SeekableAsynchronousFileByteChannel implements SeekableByteChannel, PositionalByteChannel {
+
+    private final AsynchronousFileChannel asynchronousChannel;
+
+    /**
+     * Current position; guarded by "this"
+     */
+    private long position;
+
+    public SeekableAsynchronousFileByteChannel(AsynchronousFileChannel asynchronousChannel) {
+        this.asynchronousChannel = asynchronousChannel;
+        this.position = 0;
+    }
+
+    /**
+     * Opens the file.
+     *
+     * @param executorService executor of the I/O operations and their completion handlers or
+     *                        null for the default executor of the {@link AsynchronousFileChannel}
+     */
+    public static SeekableAsynchronousFileByteChannel open(Path path, ExecutorService executorService,
+                                                           OpenOption... options) throws IOException {
+        return new SeekableAsynchronousFileByteChannel(AsynchronousFileChannel.open(path,
+                new HashSet<OpenOption>(Arrays.asList(options)), executorService));
+    }
+
+    public AsynchronousFileChannel getAsynchronousChannel() {
+        return asynchronousChannel;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.nio.channels.Channel#isOpen()
+     */
+    @Override
+    public boolean isOpen() {
+        return this.asynchronousChannel.isOpen();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.nio.channels.Channel#close()
+     */
+    @Override
+    public void close() throws IOException {
+        this.asynchronousChannel.close();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.nio.channels.SeekableByteChannel#read(java.nio.ByteBuffer)
+     */
+    @Override
+    public int read(final ByteBuffer destination) throws IOException {
+        synchronized (this) {
+            int bytesRead = read(destination, this.position);
+            if (bytesRead > 0) {
+                this.position += bytesRead;
+            }
+            return bytesRead;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see PositionalByteChannel#read(java.nio.ByteBuffer, long)
+     */
+    @Override
+    public int read(final ByteBuffer destination, final long position) throws IOException {
+        return await(this.asynchronousChannel.read(destination, position));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.nio.channels.SeekableByteChannel#write(java.nio.ByteBuffer)
+     */
+    @Override
+    public int write(final ByteBuffer source) throws IOException {
+        synchronized (this) {
+            int bytesWritten = write(source, this.position);
+            this.position += bytesWritten;
+            return bytesWritten;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Writes all remaining bytes of the source.
+     *
+     * @see PositionalByteChannel#write(java.nio.ByteBuffer, long)
+     */
+    @Override
+    public int write(final ByteBuffer source, final long position) throws IOException {
+        int bytesWritten = 0;
+        while (source.hasRemaining()) {
+            bytesWritten += await(this.asynchronousChannel.write(source, position + bytesWritten));
+        }
+        return bytesWritten;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.nio.channels.SeekableByteChannel#position()
+     */
+    @Override
+    public long position() throws IOException {
+        checkClosed();
+        synchronized (this) {
+            return this.position;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.nio.channels.SeekableByteChannel#position(long)
+     */
+    @Override
+    public SeekableByteChannel position(final long newPosition) throws IOException {
+        // Precondition checks
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Valid position for this channel is 0 or higher: Current value was " + newPosition);
+        }
+        checkClosed();
+        synchronized (this) {
+            this.position = newPosition;
+        }
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.nio.channels.SeekableByteChannel#size()
+     */
+    @Override
+    public long size() throws IOException {
+        return this.asynchronousChannel.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.nio.channels.SeekableByteChannel#truncate(long)
+     */
+    @Override
+    public SeekableByteChannel truncate(final long size) throws IOException {
+        this.asynchronousChannel.truncate(size);
+        synchronized (this) {
+            if (this.position > size) {
+                this.position = size;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Forces the writes to the storage device.
+     *
+     * @see AsynchronousFileChannel#force(boolean)
+     */
+    public void force() throws IOException {
+        this.asynchronousChannel.force(false);
+    }
+
+    private static int await(Future<Integer> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException ioException = new InterruptedIOException("Interrupted while waiting for the I/O operation");
+            ioException.initCause(ex);
+            throw ioException;
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new IOException(ex.getCause());
+        }
+    }
+
+    /**
+     * Throws a {@link ClosedChannelException} if this {@link SeekableByteChannel} is closed.
+     *
+     * @throws ClosedChannelException
+     */
+    private void checkClosed() throws ClosedChannelException {
+        if (!this.isOpen()) {
+            throw new ClosedChannelException();
+        }
+    }
+}
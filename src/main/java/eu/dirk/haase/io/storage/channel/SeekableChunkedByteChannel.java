@@ -0,0 +1,371 @@
+package eu.dirk.haase.io.storage.channel;
+
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * In-memory {@link SeekableByteChannel} implementation made of chunks of a fixed size; thread-safe.
+ * <p>
+ * Unlike the {@link SeekableInMemoryByteChannel} the channel grows by adding chunks, the bytes
+ * already written are never copied, and its size is not limited to {@link Integer#MAX_VALUE}.
+ * The chunks are allocated on the heap or, optionally, as direct buffers outside of the heap.
+ * A chunk is allocated when it is first written, so a gap within the channel occupies no memory
+ * and reads as zeros.
+ * <p>
+ * Writes hold the monitor of the channel. Positional reads do not need it: they see every
+ * byte which was written before the size of the channel was extended behind it.
+ */
+public class SeekableChunkedByteChannel implements SeekableByteChannel, PositionalByteChannel {
+
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    private static final ByteBuffer[] NO_CHUNKS = new ByteBuffer[0];
+
+    private final int chunkSize;
+
+    /**
+     * log2 of the chunk size.
+     */
+    private final int chunkShift;
+
+    private final boolean isDirect;
+
+    /**
+     * Whether or not this {@link SeekableByteChannel} is open; volatile instead of sync is acceptable because this
+     * field participates in no compound computations or invariants with other instance members.
+     */
+    private volatile boolean open;
+
+    /**
+     * Current position; guarded by "this"
+     */
+    private long position;
+
+    /**
+     * Count of bytes in this channel; modified while holding "this"
+     */
+    private volatile long size;
+
+    /**
+     * Directory of the chunks, null for a chunk which was not yet written; modified while holding "this"
+     */
+    private volatile ByteBuffer[] chunks;
+
+    /**
+     * Creates a new instance with chunks of {@link #DEFAULT_CHUNK_SIZE} on the heap, 0 size and 0 position, and open.
+     */
+    public SeekableChunkedByteChannel() {
+        this(DEFAULT_CHUNK_SIZE, false);
+    }
+
+    /**
+     * Creates a new instance with 0 size and 0 position, and open.
+     *
+     * @param chunkSize the size of the chunks, a power of two
+     * @param isDirect  true to allocate the chunks as direct buffers outside of the heap
+     */
+    public SeekableChunkedByteChannel(int chunkSize, boolean isDirect) {
+        if ((chunkSize <= 0) || (Integer.bitCount(chunkSize) != 1)) {
+            throw new IllegalArgumentException("Chunk size must be a power of two: Current value was " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+        this.chunkShift = Integer.numberOfTrailingZeros(chunkSize);
+        this.isDirect = isDirect;
+        this.position = 0;
+        this.size = 0;
+        this.chunks = NO_CHUNKS;
+        this.open = true;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public boolean isDirect() {
+        return isDirect;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.nio.channels.Channel#isOpen()
+     */
+    @Override
+    public boolean isOpen() {
+        return this.open;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Releases the chunks.
+     *
+     * @see java.nio.channels.Channel#close()
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            this.open = false;
+            this.chunks = NO_CHUNKS;
+            this.size = 0;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.nio.channels.SeekableByteChannel#read(java.nio.ByteBuffer)
+     */
+    @Override
+    public int read(final ByteBuffer destination) throws IOException {
+
+        // Precondition checks
+        this.checkClosed();
+        if (destination == null) {
+            throw new IllegalArgumentException("Destination buffer must be supplied");
+        }
+
+        synchronized (this) {
+            int bytesRead = readAt(destination, this.position);
+            if (bytesRead > 0) {
+                this.position += bytesRead;
+            }
+            return bytesRead;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see PositionalByteChannel#read(java.nio.ByteBuffer, long)
+     */
+    @Override
+    public int read(final ByteBuffer destination, final long position) throws IOException {
+
+        // Precondition checks
+        this.checkClosed();
+        if (destination == null) {
+            throw new IllegalArgumentException("Destination buffer must be supplied");
+        }
+        if (position < 0) {
+            throw new IllegalArgumentException("Valid position for this channel is 0 or higher: Current value was " + position);
+        }
+
+        return readAt(destination, position);
+    }
+
+    private int readAt(final ByteBuffer destination, final long readPosition) {
+        // The size is read before the chunks: every chunk below the size is visible
+        final long currentSize = this.size;
+        if (readPosition >= currentSize) {
+            return -1;
+        }
+        final ByteBuffer[] currentChunks = this.chunks;
+        final int numBytesToRead = (int) Math.min(destination.remaining(), currentSize - readPosition);
+        int bytesRead = 0;
+        while (numBytesToRead > bytesRead) {
+            long chunkPosition = readPosition + bytesRead;
+            int chunkIndex = (int) (chunkPosition >>> this.chunkShift);
+            int chunkOffset = (int) (chunkPosition & (this.chunkSize - 1));
+            int chunkLength = Math.min(this.chunkSize - chunkOffset, numBytesToRead - bytesRead);
+            ByteBuffer chunk = (chunkIndex < currentChunks.length ? currentChunks[chunkIndex] : null);
+            if (chunk == null) {
+                // Not yet written: reads as zeros
+                for (int i = 0; chunkLength > i; ++i) {
+                    destination.put((byte) 0);
+                }
+            } else if (chunk.hasArray()) {
+                destination.put(chunk.array(), chunk.arrayOffset() + chunkOffset, chunkLength);
+            } else {
+                ByteBuffer chunkView = chunk.duplicate();
+                chunkView.limit(chunkOffset + chunkLength);
+                chunkView.position(chunkOffset);
+                destination.put(chunkView);
+            }
+            bytesRead += chunkLength;
+        }
+        return bytesRead;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.nio.channels.SeekableByteChannel#write(java.nio.ByteBuffer)
+     */
+    @Override
+    public int write(final ByteBuffer source) throws IOException {
+
+        // Precondition checks
+        this.checkClosed();
+        if (source == null) {
+            throw new IllegalArgumentException("Source buffer must be supplied");
+        }
+
+        synchronized (this) {
+            int bytesWritten = writeAt(source, this.position);
+            this.position += bytesWritten;
+            return bytesWritten;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see PositionalByteChannel#write(java.nio.ByteBuffer, long)
+     */
+    @Override
+    public int write(final ByteBuffer source, final long position) throws IOException {
+
+        // Precondition checks
+        this.checkClosed();
+        if (source == null) {
+            throw new IllegalArgumentException("Source buffer must be supplied");
+        }
+        if (position < 0) {
+            throw new IllegalArgumentException("Valid position for this channel is 0 or higher: Current value was " + position);
+        }
+
+        synchronized (this) {
+            return writeAt(source, position);
+        }
+    }
+
+    private int writeAt(final ByteBuffer source, final long writePosition) {
+        final int totalBytes = source.remaining();
+        int bytesWritten = 0;
+        while (totalBytes > bytesWritten) {
+            long chunkPosition = writePosition + bytesWritten;
+            int chunkIndex = (int) (chunkPosition >>> this.chunkShift);
+            int chunkOffset = (int) (chunkPosition & (this.chunkSize - 1));
+            int chunkLength = Math.min(this.chunkSize - chunkOffset, totalBytes - bytesWritten);
+            ByteBuffer chunk = ensureChunk(chunkIndex);
+            if (chunk.hasArray()) {
+                source.get(chunk.array(), chunk.arrayOffset() + chunkOffset, chunkLength);
+            } else {
+                ByteBuffer chunkView = chunk.duplicate();
+                chunkView.position(chunkOffset);
+                ByteBuffer sourceChunk = source.duplicate();
+                sourceChunk.limit(sourceChunk.position() + chunkLength);
+                chunkView.put(sourceChunk);
+                source.position(source.position() + chunkLength);
+            }
+            bytesWritten += chunkLength;
+        }
+        // Publishes the written bytes to the positional reads
+        this.size = Math.max(this.size, writePosition + bytesWritten);
+        return bytesWritten;
+    }
+
+    /**
+     * Returns the chunk with the given index; allocates it and grows the directory if necessary.
+     */
+    private ByteBuffer ensureChunk(final int chunkIndex) {
+        ByteBuffer[] currentChunks = this.chunks;
+        if (chunkIndex >= currentChunks.length) {
+            // The directory grows by doubling, the chunks themselves are not copied
+            int newLength = Math.max(chunkIndex + 1, Math.max(2 * currentChunks.length, 8));
+            ByteBuffer[] newChunks = new ByteBuffer[newLength];
+            System.arraycopy(currentChunks, 0, newChunks, 0, currentChunks.length);
+            this.chunks = currentChunks = newChunks;
+        }
+        ByteBuffer chunk = currentChunks[chunkIndex];
+        if (chunk == null) {
+            chunk = (this.isDirect ? ByteBuffer.allocateDirect(this.chunkSize) : ByteBuffer.allocate(this.chunkSize));
+            currentChunks[chunkIndex] = chunk;
+        }
+        return chunk;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.nio.channels.SeekableByteChannel#position()
+     */
+    @Override
+    public long position() throws IOException {
+        synchronized (this) {
+            return this.position;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.nio.channels.SeekableByteChannel#position(long)
+     */
+    @Override
+    public SeekableByteChannel position(final long newPosition) throws IOException {
+        // Precondition checks
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Valid position for this channel is 0 or higher: Current value was " + newPosition);
+        }
+        synchronized (this) {
+            this.position = newPosition;
+        }
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.nio.channels.SeekableByteChannel#size()
+     */
+    @Override
+    public long size() throws IOException {
+        return this.size;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The chunks behind the new size are released, the rest of the last chunk is cleared.
+     *
+     * @see java.nio.channels.SeekableByteChannel#truncate(long)
+     */
+    @Override
+    public SeekableByteChannel truncate(final long size) throws IOException {
+
+        // Precondition checks
+        if (size < 0) {
+            throw new IllegalArgumentException("This implementation permits a size of 0 or higher");
+        }
+        this.checkClosed();
+
+        synchronized (this) {
+            if (size < this.size) {
+                this.size = size;
+                ByteBuffer[] currentChunks = this.chunks;
+                int chunkCount = (int) ((size + this.chunkSize - 1) >>> this.chunkShift);
+                for (int i = chunkCount; currentChunks.length > i; ++i) {
+                    currentChunks[i] = null;
+                }
+                int chunkOffset = (int) (size & (this.chunkSize - 1));
+                if ((chunkOffset > 0) && (currentChunks[chunkCount - 1] != null)) {
+                    // Cleared, so a following write behind the new size leaves zeros in between
+                    ByteBuffer chunk = currentChunks[chunkCount - 1];
+                    for (int i = chunkOffset; this.chunkSize > i; ++i) {
+                        chunk.put(i, (byte) 0);
+                    }
+                }
+            }
+            if (this.position > size) {
+                this.position = size;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Throws a {@link ClosedChannelException} if this {@link SeekableByteChannel} is closed.
+     *
+     * @throws ClosedChannelException
+     */
+    private void checkClosed() throws ClosedChannelException {
+        if (!this.isOpen()) {
+            throw new ClosedChannelException();
+        }
+    }
+}
@@ -9,7 +9,9 @@ import java.nio.channels.SeekableByteChannel;
 /**
  * {@link SeekableByteChannel} implementation backed by an auto-resizing byte array; thread-safe. Can hold a maxiumum of
  * {@link Integer#MAX_VALUE} bytes.
- *
+ * <p>
+ * Each growth copies the whole contents; an append-heavy workload is better served by the
+ * {@link SeekableChunkedByteChannel}.
  */
 public class SeekableInMemoryByteChannel implements SeekableByteChannel {
 
@@ -131,16 +133,22 @@ public class SeekableInMemoryByteChannel implements SeekableByteChannel {
             throw new IllegalArgumentException("Source buffer must be supplied");
         }
 
-        // Put the bytes to be written into a byte[]
         final int totalBytes = source.remaining();
-        final byte[] readContents = new byte[totalBytes];
-        source.get(readContents);
 
         // Sync up, we're gonna access shared mutable state
         synchronized (this) {
 
-            // Append the read contents to our internal contents
-            this.contents = ensureCapacity(readContents, this.position);
+            if ((this.position + totalBytes) <= this.contents.length) {
+                // Fits into our internal contents: no intermediate copy
+                source.get(this.contents, this.position, totalBytes);
+            } else {
+                // Put the bytes to be written into a byte[]
+                final byte[] readContents = new byte[totalBytes];
+                source.get(readContents);
+
+                // Append the read contents to our internal contents
+                this.contents = ensureCapacity(readContents, this.position);
+            }
 
             // Increment the position of this channel
             this.position += totalBytes;
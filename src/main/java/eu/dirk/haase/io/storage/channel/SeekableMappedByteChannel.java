@@ -0,0 +1,446 @@
+package eu.dirk.haase.io.storage.channel;
+
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * {@link SeekableByteChannel} implementation backed by memory-mapped segments of a file; thread-safe.
+ * <p>
+ * The file is mapped in segments of a fixed size, further segments are mapped as the channel grows.
+ * Reads and writes are copies from and to the mapped memory, they do not need a system call.
+ * A read or write may span several segments. Positional reads do not need the monitor of the
+ * channel unless a further segment has to be mapped.
+ * <p>
+ * In {@link FileChannel.MapMode#READ_WRITE} mode a new segment is always mapped in its full size,
+ * which extends the file beyond the bytes written. On {@link #close()} the file is truncated to
+ * the size of this channel.
+ */
+public class SeekableMappedByteChannel implements SeekableByteChannel, PositionalByteChannel {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final MappedByteBuffer[] NO_SEGMENTS = new MappedByteBuffer[0];
+
+    private final FileChannel fileChannel;
+
+    private final FileChannel.MapMode mapMode;
+
+    private final int segmentSize;
+
+    /**
+     * Whether or not this {@link SeekableByteChannel} is open; volatile instead of sync is acceptable because this
+     * field participates in no compound computations or invariants with other instance members.
+     */
+    private volatile boolean open;
+
+    /**
+     * Current position; guarded by "this"
+     */
+    private long position;
+
+    /**
+     * Count of bytes in this channel; modified while holding "this"
+     */
+    private volatile long size;
+
+    /**
+     * Mapped segments of the file; modified while holding "this"
+     */
+    private volatile MappedByteBuffer[] segments;
+
+    /**
+     * Creates a new instance with the size of the file and 0 position, and open.
+     */
+    public SeekableMappedByteChannel(FileChannel fileChannel, FileChannel.MapMode mapMode) throws IOException {
+        this(fileChannel, mapMode, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Creates a new instance with the size of the file and 0 position, and open.
+     */
+    public SeekableMappedByteChannel(FileChannel fileChannel, FileChannel.MapMode mapMode, int segmentSize) throws IOException {
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("Segment size must be greater than 0: Current value was " + segmentSize);
+        }
+        this.fileChannel = fileChannel;
+        this.mapMode = mapMode;
+        this.segmentSize = segmentSize;
+        this.position = 0;
+        this.size = fileChannel.size();
+        this.segments = NO_SEGMENTS;
+        this.open = true;
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.nio.channels.Channel#isOpen()
+     */
+    @Override
+    public boolean isOpen() {
+        return this.open;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Truncates the file to the size of this channel.
+     *
+     * @see java.nio.channels.Channel#close()
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (!this.open) {
+                return;
+            }
+            this.open = false;
+            this.segments = NO_SEGMENTS;
+            try {
+                if ((this.mapMode == FileChannel.MapMode.READ_WRITE) && (this.fileChannel.size() > this.size)) {
+                    this.fileChannel.truncate(this.size);
+                }
+            } finally {
+                this.fileChannel.close();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.nio.channels.SeekableByteChannel#read(java.nio.ByteBuffer)
+     */
+    @Override
+    public int read(final ByteBuffer destination) throws IOException {
+
+        // Precondition checks
+        this.checkClosed();
+        if (destination == null) {
+            throw new IllegalArgumentException("Destination buffer must be supplied");
+        }
+
+        synchronized (this) {
+            int bytesRead = readAt(destination, this.position);
+            if (bytesRead > 0) {
+                this.position += bytesRead;
+            }
+            return bytesRead;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see PositionalByteChannel#read(java.nio.ByteBuffer, long)
+     */
+    @Override
+    public int read(final ByteBuffer destination, final long position) throws IOException {
+
+        // Precondition checks
+        this.checkClosed();
+        if (destination == null) {
+            throw new IllegalArgumentException("Destination buffer must be supplied");
+        }
+        if (position < 0) {
+            throw new IllegalArgumentException("Valid position for this channel is 0 or higher: Current value was " + position);
+        }
+
+        return readAt(destination, position);
+    }
+
+    private int readAt(final ByteBuffer destination, final long readPosition) throws IOException {
+        final long currentSize = this.size;
+        if (readPosition >= currentSize) {
+            return -1;
+        }
+        final int numBytesToRead = (int) Math.min(destination.remaining(), currentSize - readPosition);
+        MappedByteBuffer[] currentSegments = this.segments;
+        if ((readPosition + numBytesToRead) > mappedSize(currentSegments)) {
+            synchronized (this) {
+                ensureMapped(readPosition + numBytesToRead);
+                currentSegments = this.segments;
+            }
+        }
+        int bytesRead = 0;
+        while (numBytesToRead > bytesRead) {
+            ByteBuffer segmentView = segmentView(currentSegments, readPosition + bytesRead, numBytesToRead - bytesRead);
+            bytesRead += segmentView.remaining();
+            destination.put(segmentView);
+        }
+        return bytesRead;
+    }
+
+    /**
+     * Writes the given count of bytes, starting at the given position, from the mapped
+     * memory directly to the target.
+     *
+     * @return the number of bytes transferred, less than count if the end of the channel is reached
+     * @see FileChannel#transferTo(long, long, WritableByteChannel)
+     */
+    public long transferTo(final long position, final long count, final WritableByteChannel target) throws IOException {
+
+        // Precondition checks
+        this.checkClosed();
+        if (position < 0) {
+            throw new IllegalArgumentException("Valid position for this channel is 0 or higher: Current value was " + position);
+        }
+
+        final long currentSize = this.size;
+        if (position >= currentSize) {
+            return 0;
+        }
+        final long numBytesToTransfer = Math.min(count, currentSize - position);
+        MappedByteBuffer[] currentSegments = this.segments;
+        if ((position + numBytesToTransfer) > mappedSize(currentSegments)) {
+            synchronized (this) {
+                ensureMapped(position + numBytesToTransfer);
+                currentSegments = this.segments;
+            }
+        }
+        long bytesTransferred = 0;
+        while (numBytesToTransfer > bytesTransferred) {
+            int chunkLength = (int) Math.min(numBytesToTransfer - bytesTransferred, this.segmentSize);
+            ByteBuffer segmentView = segmentView(currentSegments, position + bytesTransferred, chunkLength);
+            while (segmentView.hasRemaining()) {
+                bytesTransferred += target.write(segmentView);
+            }
+        }
+        return bytesTransferred;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.nio.channels.SeekableByteChannel#write(java.nio.ByteBuffer)
+     */
+    @Override
+    public int write(final ByteBuffer source) throws IOException {
+
+        // Precondition checks
+        this.checkClosed();
+        if (source == null) {
+            throw new IllegalArgumentException("Source buffer must be supplied");
+        }
+        if (this.mapMode != FileChannel.MapMode.READ_WRITE) {
+            throw new NonWritableChannelException();
+        }
+
+        synchronized (this) {
+            int bytesWritten = writeAt(source, this.position);
+            this.position += bytesWritten;
+            return bytesWritten;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see PositionalByteChannel#write(java.nio.ByteBuffer, long)
+     */
+    @Override
+    public int write(final ByteBuffer source, final long position) throws IOException {
+
+        // Precondition checks
+        this.checkClosed();
+        if (source == null) {
+            throw new IllegalArgumentException("Source buffer must be supplied");
+        }
+        if (position < 0) {
+            throw new IllegalArgumentException("Valid position for this channel is 0 or higher: Current value was " + position);
+        }
+        if (this.mapMode != FileChannel.MapMode.READ_WRITE) {
+            throw new NonWritableChannelException();
+        }
+
+        synchronized (this) {
+            return writeAt(source, position);
+        }
+    }
+
+    private int writeAt(final ByteBuffer source, final long writePosition) throws IOException {
+        final int totalBytes = source.remaining();
+        ensureMapped(writePosition + totalBytes);
+        MappedByteBuffer[] currentSegments = this.segments;
+        int bytesWritten = 0;
+        while (totalBytes > bytesWritten) {
+            ByteBuffer segmentView = segmentView(currentSegments, writePosition + bytesWritten, totalBytes - bytesWritten);
+            int chunkLength = segmentView.remaining();
+            ByteBuffer sourceChunk = source.duplicate();
+            sourceChunk.limit(sourceChunk.position() + chunkLength);
+            segmentView.put(sourceChunk);
+            source.position(source.position() + chunkLength);
+            bytesWritten += chunkLength;
+        }
+        this.size = Math.max(this.size, writePosition + bytesWritten);
+        return bytesWritten;
+    }
+
+    /**
+     * Forces the content of the mapped segments to the storage device.
+     */
+    public void force() throws IOException {
+        this.checkClosed();
+        synchronized (this) {
+            for (MappedByteBuffer segment : this.segments) {
+                segment.force();
+            }
+        }
+    }
+
+    /**
+     * Returns a view of the segment which contains the position, limited to the given length
+     * or to the end of the segment.
+     */
+    private ByteBuffer segmentView(final MappedByteBuffer[] currentSegments, final long viewPosition, final int length) {
+        int segmentIndex = (int) (viewPosition / this.segmentSize);
+        int segmentOffset = (int) (viewPosition % this.segmentSize);
+        ByteBuffer segmentView = currentSegments[segmentIndex].duplicate();
+        segmentView.position(segmentOffset);
+        segmentView.limit(Math.min(segmentView.capacity(), segmentOffset + length));
+        return segmentView;
+    }
+
+    /**
+     * Zeroes the mapped bytes between the given positions.
+     */
+    private void clearRange(final long startPosition, final long endPosition) {
+        MappedByteBuffer[] currentSegments = this.segments;
+        long clearPosition = startPosition;
+        long clearEnd = Math.min(endPosition, mappedSize(currentSegments));
+        while (clearPosition < clearEnd) {
+            ByteBuffer segmentView = segmentView(currentSegments, clearPosition, (int) Math.min(clearEnd - clearPosition, Integer.MAX_VALUE));
+            int length = segmentView.remaining();
+            while (segmentView.hasRemaining()) {
+                segmentView.put((byte) 0);
+            }
+            clearPosition += length;
+        }
+    }
+
+    /**
+     * Maps the segments which are needed to access all bytes below the given end position.
+     */
+    private void ensureMapped(final long endPosition) throws IOException {
+        long mappedSize = mappedSize(this.segments);
+        if (endPosition <= mappedSize) {
+            return;
+        }
+        int segmentCount = (int) ((endPosition + this.segmentSize - 1) / this.segmentSize);
+        MappedByteBuffer[] newSegments = new MappedByteBuffer[segmentCount];
+        System.arraycopy(this.segments, 0, newSegments, 0, this.segments.length);
+        // A partially mapped last segment (read-only mode) is mapped again.
+        int firstSegment = (mappedSize % this.segmentSize == 0 ? this.segments.length : this.segments.length - 1);
+        for (int i = firstSegment; segmentCount > i; ++i) {
+            long segmentStart = (long) i * this.segmentSize;
+            long segmentLength = this.segmentSize;
+            if (this.mapMode != FileChannel.MapMode.READ_WRITE) {
+                segmentLength = Math.min(segmentLength, this.fileChannel.size() - segmentStart);
+            }
+            newSegments[i] = this.fileChannel.map(this.mapMode, segmentStart, segmentLength);
+        }
+        this.segments = newSegments;
+    }
+
+    private long mappedSize(final MappedByteBuffer[] currentSegments) {
+        int segmentCount = currentSegments.length;
+        if (segmentCount == 0) {
+            return 0;
+        }
+        return ((long) (segmentCount - 1) * this.segmentSize) + currentSegments[segmentCount - 1].capacity();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.nio.channels.SeekableByteChannel#position()
+     */
+    @Override
+    public long position() throws IOException {
+        synchronized (this) {
+            return this.position;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.nio.channels.SeekableByteChannel#position(long)
+     */
+    @Override
+    public SeekableByteChannel position(final long newPosition) throws IOException {
+        // Precondition checks
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Valid position for this channel is 0 or higher: Current value was " + newPosition);
+        }
+        synchronized (this) {
+            this.position = newPosition;
+        }
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.nio.channels.SeekableByteChannel#size()
+     */
+    @Override
+    public long size() throws IOException {
+        synchronized (this) {
+            return this.size;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The file itself is truncated on {@link #close()}.
+     *
+     * @see java.nio.channels.SeekableByteChannel#truncate(long)
+     */
+    @Override
+    public SeekableByteChannel truncate(final long size) throws IOException {
+
+        // Precondition checks
+        if (size < 0) {
+            throw new IllegalArgumentException("This implementation permits a size of 0 or higher");
+        }
+        if (this.mapMode != FileChannel.MapMode.READ_WRITE) {
+            throw new NonWritableChannelException();
+        }
+
+        synchronized (this) {
+            if (size < this.size) {
+                // Cleared, so a following write behind the new size leaves zeros in between
+                clearRange(size, this.size);
+                this.size = size;
+            }
+            if (this.position > size) {
+                this.position = size;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Throws a {@link ClosedChannelException} if this {@link SeekableByteChannel} is closed.
+     *
+     * @throws ClosedChannelException
+     */
+    private void checkClosed() throws ClosedChannelException {
+        if (!this.isOpen()) {
+            throw new ClosedChannelException();
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package eu.dirk.haase.io.storage.record;
+
+import eu.dirk.haase.io.storage.channel.SeekableAsynchronousFileByteChannel;
+import eu.dirk.haase.io.storage.record.data.RecordData;
+import eu.dirk.haase.io.storage.record.header.RecordHeader;
+import eu.dirk.haase.io.storage.record.index.KeyIndex;
+import eu.dirk.haase.io.storage.record.metrics.StorageMetrics;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Storage unit in the format of the {@link RecordChannelStorage} on an
+ * {@link AsynchronousFileChannel}, whose operations return {@link CompletableFuture}s.
+ * <p>
+ * A select of a key which is in an in-memory key index (see {@link KeyIndex#isLookupBlocking()})
+ * does not wait for the I/O: the RecordHeader and the payload are read by two asynchronous
+ * reads, so a single thread can have many selects in flight. Such a select takes no lock, it is validated afterwards: if the storage
+ * was write locked or a record was changed in place or the storage unit was compacted in
+ * the meantime, the select is repeated as a blocking select on the executor.
+ * <p>
+ * The writing operations write the RecordHeader, the payload and the MainHeader in order
+ * while they hold the write lock of the storage, because the RecordHeaders are walked from
+ * record to record; they run as blocking operations on the executor. The same applies to a
+ * select without a key index or with an index which is looked up by I/O, and to the
+ * operations of the queue.
+ * <p>
+ * The buffers passed to an operation must not be used until its future is completed.
+ * The storage is configured by {@link #getRecordStorage()}, for example its key index
+ * or its {@link Durability}.
+ */
+public class AsyncRecordStorage {
+
+    private final static int RECORD_HEADER_LENGTH = new RecordHeader().getLength();
+
+    private final static int RECORD_DATA_LENGTH = new RecordData().getLength();
+
+    private final RecordChannelStorage recordStorage;
+
+    private final ExecutorService executorService;
+
+    /**
+     * Whether or not the executor was created by this storage and is shut down by {@link #close()}.
+     */
+    private final boolean isOwnExecutor;
+
+    /**
+     * Opens the storage unit with an executor of daemon threads, which is shut down by {@link #close()}.
+     */
+    public AsyncRecordStorage(Path path, OpenOption... options) throws IOException {
+        this(path, newExecutorService(), true, options);
+    }
+
+    /**
+     * Opens the storage unit; the executor runs the blocking operations. The asynchronous
+     * reads and their completion handlers run on the default thread pool of the
+     * {@link AsynchronousFileChannel}, so a blocking operation never waits for a read which
+     * is queued behind it on the executor.
+     */
+    public AsyncRecordStorage(Path path, ExecutorService executorService, OpenOption... options) throws IOException {
+        this(path, executorService, false, options);
+    }
+
+    private AsyncRecordStorage(Path path, ExecutorService executorService, boolean isOwnExecutor,
+                               OpenOption... options) throws IOException {
+        this.recordStorage = new AsynchronousChannelStorage(path, options);
+        this.executorService = executorService;
+        this.isOwnExecutor = isOwnExecutor;
+    }
+
+    private static ExecutorService newExecutorService() {
+        return Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger threadCount = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "AsyncRecordStorage-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Returns the underlying storage, used for its configuration.
+     */
+    public RecordChannelStorage getRecordStorage() {
+        return recordStorage;
+    }
+
+    public CompletableFuture<Void> create() {
+        return submit(() -> {
+            recordStorage.create();
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> initialize() {
+        return submit(() -> {
+            recordStorage.initialize();
+            return null;
+        });
+    }
+
+    /**
+     * Closes the storage unit and afterwards shuts down the executor, if it was created by this storage.
+     */
+    public CompletableFuture<Void> close() {
+        CompletableFuture<Void> closed = submit(() -> {
+            recordStorage.close();
+            return null;
+        });
+        if (this.isOwnExecutor) {
+            closed.whenComplete((nothing, ex) -> executorService.shutdown());
+        }
+        return closed;
+    }
+
+    /**
+     * Reads the payload of the record with the given key into the buffer, see
+     * {@link RecordChannelStorage#selectRecord(byte[], ByteBuffer)}.
+     *
+     * @return future of the index of the record or -1 if there is no such record
+     */
+    public CompletableFuture<Integer> selectRecord(byte[] key, ByteBuffer dataBuffer) {
+        StorageMetrics metrics = this.recordStorage.getMetrics();
+        long startNanos = (metrics != null ? System.nanoTime() : 0);
+        // The change count is taken first, so every change from now on is detected
+        long changeCount = this.recordStorage.getChangeCount();
+        KeyIndex keyIndex = this.recordStorage.getRecordKeyIndex();
+        SeekableByteChannel channel = this.recordStorage.getChannel();
+        if ((keyIndex == null) || keyIndex.isLookupBlocking()
+                || !(channel instanceof SeekableAsynchronousFileByteChannel)
+                || this.recordStorage.isWriteLocked()) {
+            return submit(() -> recordStorage.selectRecord(key, dataBuffer));
+        }
+        long startPointer;
+        try {
+            startPointer = keyIndex.get(key);
+        } catch (IOException ex) {
+            return submit(() -> recordStorage.selectRecord(key, dataBuffer));
+        }
+        if (startPointer < 0) {
+            // The index is rebuilt by a compaction while holding the write lock
+            return (isUnchanged(changeCount)
+                    ? CompletableFuture.completedFuture(-1)
+                    : submit(() -> recordStorage.selectRecord(key, dataBuffer)));
+        }
+        AsynchronousFileChannel asynchronousChannel = ((SeekableAsynchronousFileByteChannel) channel).getAsynchronousChannel();
+        ByteBuffer headerBuffer = ByteBuffer.allocate(RECORD_HEADER_LENGTH);
+        return readFully(asynchronousChannel, headerBuffer, startPointer)
+                .thenCompose(headerRead -> {
+                    RecordHeader recordHeader = selectableRecordHeader(key, startPointer, headerBuffer);
+                    if ((recordHeader == null) || (recordHeader.getRecordDataLength() > dataBuffer.capacity())) {
+                        return CompletableFuture.completedFuture((RecordHeader) null);
+                    }
+                    dataBuffer.clear();
+                    dataBuffer.limit(recordHeader.getRecordDataLength());
+                    return readFully(asynchronousChannel, dataBuffer,
+                            recordHeader.getRecordDataStartPointer() + RECORD_DATA_LENGTH)
+                            .thenApply(dataRead -> recordHeader);
+                })
+                .handle((recordHeader, ex) -> ((ex == null) && (recordHeader != null)
+                        && isDataValid(recordHeader, dataBuffer) && isUnchanged(changeCount)
+                        ? recordHeader
+                        : null))
+                .thenCompose(recordHeader -> {
+                    if (recordHeader == null) {
+                        // Read concurrently to a change or damaged: the blocking select decides
+                        return submit(() -> recordStorage.selectRecord(key, dataBuffer));
+                    }
+                    if (metrics != null) {
+                        metrics.recordScannedHeaders(1);
+                        metrics.recordBytesRead(recordHeader.getRecordDataLength());
+                        metrics.recordLatency(StorageMetrics.Operation.SELECT, startNanos);
+                    }
+                    return CompletableFuture.completedFuture(recordHeader.getRecordIndex());
+                });
+    }
+
+    public CompletableFuture<Integer> insertRecord(byte[] key, ByteBuffer dataBuffer) {
+        return submit(() -> recordStorage.insertRecord(key, dataBuffer));
+    }
+
+    /**
+     * Inserts several records at once, see {@link RecordStorage#insertRecords(byte[][], ByteBuffer[])}.
+     */
+    public CompletableFuture<Integer> insertRecords(byte[][] keys, ByteBuffer[] dataBuffers) {
+        return submit(() -> recordStorage.insertRecords(keys, dataBuffers));
+    }
+
+    public CompletableFuture<Integer> updateRecord(byte[] key, ByteBuffer dataBuffer) {
+        return submit(() -> recordStorage.updateRecord(key, dataBuffer));
+    }
+
+    public CompletableFuture<Integer> deleteRecord(byte[] key) {
+        return submit(() -> recordStorage.deleteRecord(key));
+    }
+
+    public CompletableFuture<Integer> poll(ByteBuffer dataBuffer) {
+        return submit(() -> recordStorage.poll(dataBuffer));
+    }
+
+    public CompletableFuture<Integer> peek(ByteBuffer dataBuffer) {
+        return submit(() -> recordStorage.peek(dataBuffer));
+    }
+
+    /**
+     * Decodes the RecordHeader read from the start pointer.
+     *
+     * @return the RecordHeader or null if it is not the valid RecordHeader of the key
+     */
+    private RecordHeader selectableRecordHeader(byte[] key, long startPointer, ByteBuffer headerBuffer) {
+        RecordHeader recordHeader = new RecordHeader();
+        recordHeader.setStartPointer(startPointer);
+        headerBuffer.flip();
+        try {
+            recordHeader.readFrom(headerBuffer);
+        } catch (IOException ex) {
+            return null;
+        }
+        if (!recordHeader.isValid() || recordHeader.isDeleted() || !Arrays.equals(key, recordHeader.getKey())) {
+            return null;
+        }
+        if ((this.recordStorage.getChecksumVerification() != ChecksumVerification.OFF)
+                && !recordHeader.isHeaderChecksumValid(headerBuffer, 0)) {
+            return null;
+        }
+        return recordHeader;
+    }
+
+    private boolean isDataValid(RecordHeader recordHeader, ByteBuffer dataBuffer) {
+        return (this.recordStorage.getChecksumVerification() != ChecksumVerification.FULL)
+                || recordHeader.isDataChecksumValid(dataBuffer, 0);
+    }
+
+    /**
+     * Whether or not a read which started at the given change count was not concurrent to a change.
+     */
+    private boolean isUnchanged(long changeCount) {
+        return !this.recordStorage.isWriteLocked() && (this.recordStorage.getChangeCount() == changeCount);
+    }
+
+    /**
+     * Reads from the position until the buffer is full.
+     *
+     * @return future of the buffer, completed exceptionally if the end of the storage unit is reached
+     */
+    private static CompletableFuture<ByteBuffer> readFully(AsynchronousFileChannel channel, ByteBuffer target, long position) {
+        CompletableFuture<ByteBuffer> future = new CompletableFuture<>();
+        try {
+            channel.read(target, position, position, new CompletionHandler<Integer, Long>() {
+                @Override
+                public void completed(Integer bytesRead, Long readPosition) {
+                    if (bytesRead < 0) {
+                        future.completeExceptionally(new EOFException("End of the storage unit reached at " + readPosition));
+                    } else if (target.hasRemaining()) {
+                        long nextPosition = readPosition + bytesRead;
+                        try {
+                            channel.read(target, nextPosition, nextPosition, this);
+                        } catch (RuntimeException ex) {
+                            future.completeExceptionally(ex);
+                        }
+                    } else {
+                        future.complete(target);
+                    }
+                }
+
+                @Override
+                public void failed(Throwable ex, Long readPosition) {
+                    future.completeExceptionally(ex);
+                }
+            });
+        } catch (RuntimeException ex) {
+            future.completeExceptionally(ex);
+        }
+        return future;
+    }
+
+    /**
+     * Runs a blocking operation of the storage on the executor.
+     */
+    private <T> CompletableFuture<T> submit(Callable<T> operation) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            this.executorService.execute(() -> {
+                try {
+                    future.complete(operation.call());
+                } catch (Throwable ex) {
+                    future.completeExceptionally(ex);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            future.completeExceptionally(ex);
+        }
+        return future;
+    }
+
+    /**
+     * Storage whose channels, also the channel of a compaction, are asynchronous file channels.
+     */
+    private static final class AsynchronousChannelStorage extends RecordChannelStorage {
+
+        AsynchronousChannelStorage(Path path, OpenOption... options) throws IOException {
+            super(path, SeekableAsynchronousFileByteChannel.open(path, null, options));
+            fillOpenOptionSet(options);
+        }
+
+        @Override
+        protected SeekableByteChannel openChannel(Path path, OpenOption... options) throws IOException {
+            return SeekableAsynchronousFileByteChannel.open(path, null, options);
+        }
+    }
+
+}
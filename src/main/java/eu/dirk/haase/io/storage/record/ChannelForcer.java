@@ -0,0 +1,211 @@
+package eu.dirk.haase.io.storage.record;
+
+import eu.dirk.haase.io.storage.channel.SeekableAsynchronousFileByteChannel;
+import eu.dirk.haase.io.storage.channel.SeekableMappedByteChannel;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Forces the writes to a channel according to a {@link Durability}.
+ * <p>
+ * Every write operation is numbered by {@link #written()} while the writer still holds
+ * the write lock of the storage. After the lock is released the writer calls
+ * {@link #awaitDurable(long)} with this number. A force covers all writes which were
+ * numbered before it started.
+ * <p>
+ * Channels other than {@link FileChannel}, {@link SeekableMappedByteChannel} and
+ * {@link SeekableAsynchronousFileByteChannel} have nothing to force.
+ */
+final class ChannelForcer {
+
+    private final SeekableByteChannel channel;
+
+    private final Durability durability;
+
+    private final long forceIntervalMillis;
+
+    /**
+     * Number of the last write operation.
+     */
+    private final AtomicLong writtenSeq;
+
+    private final Object forceMonitor;
+
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Number of the last write operation which was forced; guarded by "forceMonitor"
+     */
+    private long forcedSeq;
+
+    /**
+     * Whether or not a thread currently forces the channel; guarded by "forceMonitor"
+     */
+    private boolean forcing;
+
+    ChannelForcer(SeekableByteChannel channel, Durability durability, long forceIntervalMillis) {
+        if ((durability == Durability.FORCE_INTERVAL) && (forceIntervalMillis <= 0)) {
+            throw new IllegalArgumentException("Force interval must be greater than 0: Current value was " + forceIntervalMillis);
+        }
+        this.channel = channel;
+        this.durability = durability;
+        this.forceIntervalMillis = forceIntervalMillis;
+        this.writtenSeq = new AtomicLong(0);
+        this.forceMonitor = new Object();
+        this.forcedSeq = 0;
+        this.forcing = false;
+        if (durability == Durability.FORCE_INTERVAL) {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "ChannelForcer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            this.scheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    forceQuietly();
+                }
+            }, forceIntervalMillis, forceIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.scheduler = null;
+        }
+    }
+
+    Durability getDurability() {
+        return durability;
+    }
+
+    long getForceIntervalMillis() {
+        return forceIntervalMillis;
+    }
+
+    /**
+     * Numbers a write operation; called while the writer holds the write lock.
+     *
+     * @return the number of the write operation
+     */
+    long written() {
+        return this.writtenSeq.incrementAndGet();
+    }
+
+    /**
+     * Returns as soon as the write operation with the given number is durable
+     * as required by the {@link Durability}.
+     *
+     * @param writeSeq the number of the write operation or 0 if nothing was written
+     */
+    void awaitDurable(long writeSeq) throws IOException, InterruptedException {
+        if (writeSeq <= 0) {
+            return;
+        }
+        switch (this.durability) {
+            case FORCE_EACH:
+                force();
+                break;
+            case GROUP_COMMIT:
+                groupCommit(writeSeq);
+                break;
+            default:
+                // NONE and FORCE_INTERVAL do not wait
+                break;
+        }
+    }
+
+    /**
+     * Forces the remaining writes and stops the background thread.
+     */
+    void close() throws IOException {
+        if (this.scheduler != null) {
+            this.scheduler.shutdownNow();
+        }
+        if ((this.durability != Durability.NONE) && this.channel.isOpen() && isDirty()) {
+            force();
+        }
+    }
+
+    /**
+     * The first waiting writer forces the channel on behalf of all writers which were
+     * numbered up to then. The force runs outside of the monitor, so further writers
+     * can queue up for the next force in the meantime.
+     */
+    private void groupCommit(long writeSeq) throws IOException, InterruptedException {
+        long targetSeq;
+        synchronized (this.forceMonitor) {
+            while (this.forcing && (writeSeq > this.forcedSeq)) {
+                this.forceMonitor.wait();
+            }
+            if (writeSeq <= this.forcedSeq) {
+                return;
+            }
+            this.forcing = true;
+            targetSeq = this.writtenSeq.get();
+        }
+        boolean forced = false;
+        try {
+            forceChannel();
+            forced = true;
+        } finally {
+            synchronized (this.forceMonitor) {
+                this.forcing = false;
+                if (forced && (targetSeq > this.forcedSeq)) {
+                    this.forcedSeq = targetSeq;
+                }
+                this.forceMonitor.notifyAll();
+            }
+        }
+    }
+
+    private void force() throws IOException {
+        long targetSeq = this.writtenSeq.get();
+        forceChannel();
+        synchronized (this.forceMonitor) {
+            if (targetSeq > this.forcedSeq) {
+                this.forcedSeq = targetSeq;
+            }
+        }
+    }
+
+    private void forceQuietly() {
+        try {
+            if (isDirty() && this.channel.isOpen()) {
+                force();
+            }
+        } catch (IOException e) {
+            // Try again at the next interval
+        }
+    }
+
+    private boolean isDirty() {
+        synchronized (this.forceMonitor) {
+            return (this.writtenSeq.get() > this.forcedSeq);
+        }
+    }
+
+    private void forceChannel() throws IOException {
+        force(this.channel);
+    }
+
+    /**
+     * Forces the writes to the channel to the storage device.
+     */
+    static void force(SeekableByteChannel channel) throws IOException {
+        if (channel instanceof FileChannel) {
+            ((FileChannel) channel).force(false);
+        } else if (channel instanceof SeekableMappedByteChannel) {
+            ((SeekableMappedByteChannel) channel).force();
+        } else if (channel instanceof SeekableAsynchronousFileByteChannel) {
+            ((SeekableAsynchronousFileByteChannel) channel).force();
+        }
+    }
+
+}
@@ -0,0 +1,24 @@
+package eu.dirk.haase.io.storage.record;
+
+/**
+ * Which CRC32C checksums of a record are verified when it is read, see {@link Crc32c}.
+ * <p>
+ * Only records which were written with checksums are verified.
+ */
+public enum ChecksumVerification {
+
+    /**
+     * No checksum is verified; the RecordHeaders are only checked by their magic data and their consistency.
+     */
+    OFF,
+
+    /**
+     * The checksum of every RecordHeader which is read is verified, the payloads are not.
+     */
+    HEADERS,
+
+    /**
+     * The checksums of the RecordHeaders and of the payloads are verified.
+     */
+    FULL
+}
@@ -0,0 +1,168 @@
+package eu.dirk.haase.io.storage.record;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+
+/**
+ * CRC32C (Castagnoli) checksums of the records of a storage unit.
+ * <p>
+ * Uses the intrinsic {@code java.util.zip.CRC32C} of the JDK if the runtime provides it
+ * (Java 9 and later), otherwise an equivalent table driven implementation, so storage
+ * units are exchangeable between both. The intrinsic also reads direct buffers in place.
+ * <p>
+ * Every thread uses a {@link Checksum} of its own, so calculating a checksum does not allocate.
+ */
+public final class Crc32c {
+
+    private final static int CHUNK_SIZE = 4096;
+
+    private final static MethodHandle JDK_CRC32C_CONSTRUCTOR = findJdkCrc32c();
+
+    /**
+     * {@code CRC32C.update(ByteBuffer)} of type {@code (Checksum, ByteBuffer)void} or null.
+     */
+    private final static MethodHandle JDK_CRC32C_UPDATE_BUFFER = findJdkCrc32cUpdateBuffer();
+
+    private final static ThreadLocal<Checksum> CHECKSUM = new ThreadLocal<Checksum>() {
+        @Override
+        protected Checksum initialValue() {
+            return newChecksum();
+        }
+    };
+
+    private final static ThreadLocal<byte[]> CHUNK = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[CHUNK_SIZE];
+        }
+    };
+
+    private Crc32c() {
+    }
+
+    /**
+     * Whether or not the intrinsic {@code java.util.zip.CRC32C} of the JDK is used.
+     */
+    public static boolean isIntrinsic() {
+        return (JDK_CRC32C_CONSTRUCTOR != null);
+    }
+
+    /**
+     * Creates a fresh CRC32C {@link Checksum}.
+     */
+    public static Checksum newChecksum() {
+        if (JDK_CRC32C_CONSTRUCTOR != null) {
+            try {
+                return (Checksum) JDK_CRC32C_CONSTRUCTOR.invoke();
+            } catch (Throwable ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+        return new TableCrc32c();
+    }
+
+    /**
+     * Calculates the checksum of the bytes of the buffer between the given offset and
+     * offset + length. The position and the limit of the buffer are not changed.
+     */
+    public static int checksum(ByteBuffer buffer, int offset, int length) {
+        Checksum checksum = CHECKSUM.get();
+        checksum.reset();
+        if (buffer.hasArray()) {
+            checksum.update(buffer.array(), buffer.arrayOffset() + offset, length);
+        } else if (JDK_CRC32C_UPDATE_BUFFER != null) {
+            ByteBuffer source = buffer.duplicate();
+            source.limit(offset + length);
+            source.position(offset);
+            try {
+                JDK_CRC32C_UPDATE_BUFFER.invokeExact(checksum, source);
+            } catch (Throwable ex) {
+                throw new IllegalStateException(ex);
+            }
+        } else {
+            byte[] chunk = CHUNK.get();
+            ByteBuffer source = buffer.duplicate();
+            source.limit(offset + length);
+            source.position(offset);
+            while (source.hasRemaining()) {
+                int chunkLength = Math.min(chunk.length, source.remaining());
+                source.get(chunk, 0, chunkLength);
+                checksum.update(chunk, 0, chunkLength);
+            }
+        }
+        return (int) checksum.getValue();
+    }
+
+    private static MethodHandle findJdkCrc32c() {
+        try {
+            Class<?> crc32cClass = Class.forName("java.util.zip.CRC32C");
+            return MethodHandles.publicLookup().findConstructor(crc32cClass, MethodType.methodType(void.class));
+        } catch (ReflectiveOperationException ex) {
+            // Java 8: the table driven implementation is used
+            return null;
+        }
+    }
+
+    private static MethodHandle findJdkCrc32cUpdateBuffer() {
+        if (JDK_CRC32C_CONSTRUCTOR == null) {
+            return null;
+        }
+        try {
+            Class<?> crc32cClass = Class.forName("java.util.zip.CRC32C");
+            return MethodHandles.publicLookup().findVirtual(crc32cClass, "update",
+                    MethodType.methodType(void.class, ByteBuffer.class))
+                    .asType(MethodType.methodType(void.class, Checksum.class, ByteBuffer.class));
+        } catch (ReflectiveOperationException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * CRC32C with the reflected polynomial 0x82F63B78, one table lookup per byte.
+     */
+    static final class TableCrc32c implements Checksum {
+
+        private final static int[] TABLE = new int[256];
+
+        static {
+            for (int n = 0; TABLE.length > n; ++n) {
+                int crc = n;
+                for (int k = 0; 8 > k; ++k) {
+                    crc = ((crc & 1) != 0 ? (crc >>> 1) ^ 0x82F63B78 : crc >>> 1);
+                }
+                TABLE[n] = crc;
+            }
+        }
+
+        private int crc = 0xFFFFFFFF;
+
+        @Override
+        public void update(int b) {
+            crc = (crc >>> 8) ^ TABLE[(crc ^ b) & 0xFF];
+        }
+
+        @Override
+        public void update(byte[] b, int off, int len) {
+            int currCrc = crc;
+            for (int i = off, end = off + len; end > i; ++i) {
+                currCrc = (currCrc >>> 8) ^ TABLE[(currCrc ^ b[i]) & 0xFF];
+            }
+            crc = currCrc;
+        }
+
+        @Override
+        public long getValue() {
+            return (~crc) & 0xFFFFFFFFL;
+        }
+
+        @Override
+        public void reset() {
+            crc = 0xFFFFFFFF;
+        }
+
+    }
+
+}
@@ -0,0 +1,30 @@
+package eu.dirk.haase.io.storage.record;
+
+/**
+ * When the writes to a storage unit are forced to the storage device.
+ */
+public enum Durability {
+
+    /**
+     * The writes are never forced, the operating system decides when they reach the storage device.
+     */
+    NONE,
+
+    /**
+     * Every write operation forces the channel before it returns.
+     */
+    FORCE_EACH,
+
+    /**
+     * A background thread forces the channel periodically if it was written since the last force.
+     * A write operation does not wait for the force.
+     */
+    FORCE_INTERVAL,
+
+    /**
+     * Every write operation waits until its writes were forced. Concurrent write operations
+     * share one force: while one thread forces the channel, the others wait for it and are
+     * served together by the next force.
+     */
+    GROUP_COMMIT
+}
@@ -0,0 +1,106 @@
+package eu.dirk.haase.io.storage.record;
+
+import java.util.Arrays;
+
+/**
+ * Size-classed list of the slots of deleted records which can be reused by new records.
+ * <p>
+ * A slot is described by the start pointer of its RecordHeader and its data capacity.
+ * Size class {@code n} holds the slots with a capacity between {@code 2^n} and
+ * {@code 2^(n+1) - 1}. Slots are never split, so a slot is only handed out for a length
+ * of at least half its capacity; otherwise a small record would permanently occupy a
+ * large slot. Within a class the slots are kept as a stack.
+ * <p>
+ * Not thread-safe; guarded by the write lock of the storage.
+ */
+final class FreeSpaceList {
+
+    private final static int SIZE_CLASS_COUNT = 32;
+
+    private final static int MAX_WASTE_FACTOR = 2;
+
+    private final long[][] startPointers;
+
+    private final int[][] capacities;
+
+    private final int[] sizes;
+
+    private long count;
+
+    FreeSpaceList() {
+        this.startPointers = new long[SIZE_CLASS_COUNT][];
+        this.capacities = new int[SIZE_CLASS_COUNT][];
+        this.sizes = new int[SIZE_CLASS_COUNT];
+        clear();
+    }
+
+    private static int sizeClassOf(int capacity) {
+        return (capacity > 0 ? 31 - Integer.numberOfLeadingZeros(capacity) : 0);
+    }
+
+    void add(long startPointer, int capacity) {
+        int sizeClass = sizeClassOf(capacity);
+        int size = this.sizes[sizeClass];
+        if (size == this.startPointers[sizeClass].length) {
+            this.startPointers[sizeClass] = Arrays.copyOf(this.startPointers[sizeClass], Math.max(size << 1, 16));
+            this.capacities[sizeClass] = Arrays.copyOf(this.capacities[sizeClass], Math.max(size << 1, 16));
+        }
+        this.startPointers[sizeClass][size] = startPointer;
+        this.capacities[sizeClass][size] = capacity;
+        this.sizes[sizeClass] = size + 1;
+        ++this.count;
+    }
+
+    /**
+     * Removes a slot which can take the given length from the list.
+     * <p>
+     * The slots of the size class of the length are searched first (best fit is not
+     * guaranteed), then the next higher size class. Slots with a capacity of more than
+     * twice the length are not used; every slot of a size class above the next higher
+     * one is such a slot.
+     *
+     * @return the start pointer of the RecordHeader of the slot or -1 if there is no such slot
+     */
+    long allocate(int length) {
+        int sizeClass = sizeClassOf(length);
+        int size = this.sizes[sizeClass];
+        for (int i = size - 1; i >= 0; --i) {
+            if (this.capacities[sizeClass][i] >= length) {
+                return remove(sizeClass, i);
+            }
+        }
+        int higherClass = sizeClass + 1;
+        if (SIZE_CLASS_COUNT > higherClass) {
+            long maxCapacity = (long) length * MAX_WASTE_FACTOR;
+            for (int i = this.sizes[higherClass] - 1; i >= 0; --i) {
+                if (this.capacities[higherClass][i] <= maxCapacity) {
+                    return remove(higherClass, i);
+                }
+            }
+        }
+        return -1;
+    }
+
+    private long remove(int sizeClass, int i) {
+        int last = --this.sizes[sizeClass];
+        long startPointer = this.startPointers[sizeClass][i];
+        this.startPointers[sizeClass][i] = this.startPointers[sizeClass][last];
+        this.capacities[sizeClass][i] = this.capacities[sizeClass][last];
+        --this.count;
+        return startPointer;
+    }
+
+    long size() {
+        return this.count;
+    }
+
+    void clear() {
+        for (int sizeClass = 0; SIZE_CLASS_COUNT > sizeClass; ++sizeClass) {
+            this.startPointers[sizeClass] = new long[0];
+            this.capacities[sizeClass] = new int[0];
+            this.sizes[sizeClass] = 0;
+        }
+        this.count = 0;
+    }
+
+}
@@ -0,0 +1,136 @@
+package eu.dirk.haase.io.storage.record;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded ring buffer of insert requests for many producers and a single consumer; lock-free.
+ * <p>
+ * Every slot carries a sequence number: a producer claims the next sequence by a CAS on the
+ * tail and may fill the slot once its sequence equals the claimed one; it publishes the
+ * request by setting the sequence to the claimed one plus 1. The consumer takes the published
+ * requests in order and frees the slots for the next round by setting their sequence to the
+ * consumed one plus the capacity. The slots are allocated once, so a request allocates nothing
+ * within the ring buffer.
+ */
+final class InsertRingBuffer {
+
+    private final int mask;
+
+    private final AtomicLongArray sequences;
+
+    private final byte[][] keys;
+
+    private final ByteBuffer[] dataBuffers;
+
+    private final CompletableFuture<Integer>[] futures;
+
+    /**
+     * Next sequence to be claimed by a producer.
+     */
+    private final AtomicLong tail;
+
+    /**
+     * Next sequence to be consumed; read and written only by the consumer
+     */
+    private long head;
+
+    InsertRingBuffer(int capacity) {
+        if ((capacity <= 0) || (Integer.bitCount(capacity) != 1)) {
+            throw new IllegalArgumentException("Capacity must be a power of two: Current value was " + capacity);
+        }
+        this.mask = capacity - 1;
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; capacity > i; ++i) {
+            this.sequences.set(i, i);
+        }
+        this.keys = new byte[capacity][];
+        this.dataBuffers = new ByteBuffer[capacity];
+        this.futures = newFutures(capacity);
+        this.tail = new AtomicLong(0);
+        this.head = 0;
+    }
+
+    /**
+     * Creates an array for the futures of the requests.
+     */
+    @SuppressWarnings("unchecked")
+    static CompletableFuture<Integer>[] newFutures(int length) {
+        return (CompletableFuture<Integer>[]) new CompletableFuture<?>[length];
+    }
+
+    int capacity() {
+        return this.mask + 1;
+    }
+
+    /**
+     * Claims a slot for a producer.
+     *
+     * @return the sequence of the claimed slot or -1 if the ring buffer is full
+     */
+    long tryClaim() {
+        while (true) {
+            long sequence = this.tail.get();
+            long slotSequence = this.sequences.get((int) sequence & this.mask);
+            if (slotSequence == sequence) {
+                if (this.tail.compareAndSet(sequence, sequence + 1)) {
+                    return sequence;
+                }
+            } else if (slotSequence < sequence) {
+                // The slot of the previous round is not yet consumed
+                return -1;
+            }
+            // Otherwise another producer claimed the sequence meanwhile
+        }
+    }
+
+    /**
+     * Fills the claimed slot and hands it over to the consumer.
+     */
+    void publish(long sequence, byte[] key, ByteBuffer dataBuffer, CompletableFuture<Integer> future) {
+        int slot = (int) sequence & this.mask;
+        this.keys[slot] = key;
+        this.dataBuffers[slot] = dataBuffer;
+        this.futures[slot] = future;
+        this.sequences.set(slot, sequence + 1);
+    }
+
+    /**
+     * Whether or not the next slot of the consumer is published; called by the consumer.
+     */
+    boolean hasPublished() {
+        return (this.sequences.get((int) this.head & this.mask) == (this.head + 1));
+    }
+
+    /**
+     * Whether or not every claimed slot was consumed; called by the consumer.
+     */
+    boolean isDrained() {
+        return (this.head == this.tail.get());
+    }
+
+    /**
+     * Takes the published requests in order and frees their slots; called by the consumer.
+     *
+     * @return the count of requests copied into the arrays, at most their length
+     */
+    int drainTo(byte[][] targetKeys, ByteBuffer[] targetDataBuffers, CompletableFuture<Integer>[] targetFutures) {
+        int count = 0;
+        while ((targetKeys.length > count) && hasPublished()) {
+            int slot = (int) this.head & this.mask;
+            targetKeys[count] = this.keys[slot];
+            targetDataBuffers[count] = this.dataBuffers[slot];
+            targetFutures[count] = this.futures[slot];
+            this.keys[slot] = null;
+            this.dataBuffers[slot] = null;
+            this.futures[slot] = null;
+            this.sequences.set(slot, this.head + capacity());
+            ++this.head;
+            ++count;
+        }
+        return count;
+    }
+
+}
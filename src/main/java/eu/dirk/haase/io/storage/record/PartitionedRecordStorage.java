@@ -0,0 +1,258 @@
+package eu.dirk.haase.io.storage.record;
+
+import eu.dirk.haase.io.storage.record.index.KeyHash;
+import eu.dirk.haase.io.storage.record.index.RecordKeyIndex;
+import eu.dirk.haase.io.storage.record.metrics.StorageMetrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * {@link RecordStorage} which distributes the records by the hash of their key over
+ * several independent partitions.
+ * <p>
+ * Every partition is a {@link RecordChannelStorage} with a file of its own (the path of
+ * the storage with the number of the partition as suffix), its own lock, its own tail and
+ * its own index of the keys. An operation on a key only touches the partition of the key.
+ * <p>
+ * The count of the partitions is stored in a descriptor file next to the partitions,
+ * because a storage opened with another count would route the keys to wrong partitions.
+ * <p>
+ * The record indices are assigned per partition, so the records of a batch do not have
+ * consecutive indices and a batch is only atomic within a partition.
+ */
+public class PartitionedRecordStorage implements RecordStorage {
+
+    private final static int DESCRIPTOR_SIZE = 4;
+
+    private final RecordChannelStorage[] partitions;
+
+    private final Path descriptorPath;
+
+    public PartitionedRecordStorage(int partitionCount, File file, OpenOption... options) throws IOException {
+        this(partitionCount, file.toPath(), options);
+    }
+
+    public PartitionedRecordStorage(int partitionCount, Path path, OpenOption... options) throws IOException {
+        if (partitionCount <= 0) {
+            throw new IllegalArgumentException("Count of partitions must be greater than 0: Current value was " + partitionCount);
+        }
+        this.partitions = new RecordChannelStorage[partitionCount];
+        this.descriptorPath = descriptorPathOf(path);
+        try {
+            for (int i = 0; partitionCount > i; ++i) {
+                this.partitions[i] = new RecordChannelStorage(partitionPathOf(path, i), options);
+                this.partitions[i].setRecordKeyIndex(new RecordKeyIndex());
+            }
+        } catch (IOException ex) {
+            closePartitions();
+            throw ex;
+        }
+    }
+
+    /**
+     * Returns the path of the file of a partition.
+     */
+    public static Path partitionPathOf(Path path, int partition) {
+        return path.resolveSibling(path.getFileName() + "." + partition);
+    }
+
+    /**
+     * Returns the path of the descriptor file which holds the count of the partitions.
+     */
+    public static Path descriptorPathOf(Path path) {
+        return path.resolveSibling(path.getFileName() + ".partitions");
+    }
+
+    public int getPartitionCount() {
+        return this.partitions.length;
+    }
+
+    /**
+     * Returns a partition, for example to configure its index or its durability
+     * before {@link #create()} or {@link #initialize()}.
+     */
+    public RecordChannelStorage getPartition(int partition) {
+        return this.partitions[partition];
+    }
+
+    /**
+     * Sets the metrics of all partitions, which record into the same metrics.
+     *
+     * @see RecordChannelStorage#setMetrics(StorageMetrics)
+     */
+    public void setMetrics(StorageMetrics metrics) {
+        for (RecordChannelStorage partition : this.partitions) {
+            partition.setMetrics(metrics);
+        }
+    }
+
+    /**
+     * Returns the number of the partition of the key.
+     * <p>
+     * The partition is taken from the upper bits of the hash, because the index
+     * of a partition uses the lower bits for its slots.
+     */
+    public int partitionOf(byte[] key) {
+        return (int) ((KeyHash.hash(key) >>> 32) % this.partitions.length);
+    }
+
+    private RecordChannelStorage getRecordStorage(byte[] key) {
+        return this.partitions[partitionOf(key)];
+    }
+
+    @Override
+    public void create() throws IOException, InterruptedException {
+        for (RecordChannelStorage partition : this.partitions) {
+            partition.create();
+        }
+        ByteBuffer descriptorBuffer = ByteBuffer.allocate(DESCRIPTOR_SIZE);
+        descriptorBuffer.putInt(this.partitions.length);
+        Files.write(this.descriptorPath, descriptorBuffer.array());
+    }
+
+    @Override
+    public void initialize() throws IOException, InterruptedException {
+        checkPartitionCount();
+        for (RecordChannelStorage partition : this.partitions) {
+            partition.initialize();
+        }
+    }
+
+    private void checkPartitionCount() throws IOException {
+        if (!Files.exists(this.descriptorPath)) {
+            throw new IOException("Count of partitions can not be checked:"
+                    + " there is no descriptor file "
+                    + this.descriptorPath);
+        }
+        byte[] descriptor = Files.readAllBytes(this.descriptorPath);
+        if (descriptor.length != DESCRIPTOR_SIZE) {
+            throw new IOException("Insufficient number of bytes read:"
+                    + " expected "
+                    + DESCRIPTOR_SIZE
+                    + " bytes of the descriptor file "
+                    + this.descriptorPath
+                    + " but was "
+                    + descriptor.length);
+        }
+        int storedPartitionCount = ByteBuffer.wrap(descriptor).getInt();
+        if (storedPartitionCount != this.partitions.length) {
+            throw new IOException("Count of partitions does not match:"
+                    + " the storage was created with "
+                    + storedPartitionCount
+                    + " partitions but is opened with "
+                    + this.partitions.length);
+        }
+    }
+
+    @Override
+    public int selectRecord(byte[] key, ByteBuffer dataBuffer) throws IOException, InterruptedException {
+        return getRecordStorage(key).selectRecord(key, dataBuffer);
+    }
+
+    @Override
+    public int updateRecord(byte[] key, ByteBuffer dataBuffer) throws IOException, InterruptedException {
+        return getRecordStorage(key).updateRecord(key, dataBuffer);
+    }
+
+    @Override
+    public int deleteRecord(byte[] key) throws IOException, InterruptedException {
+        return getRecordStorage(key).deleteRecord(key);
+    }
+
+    @Override
+    public int insertRecord(byte[] key, ByteBuffer dataBuffer) throws IOException, InterruptedException {
+        return getRecordStorage(key).insertRecord(key, dataBuffer);
+    }
+
+    /**
+     * Inserts the records as one batch per partition, see
+     * {@link #insertRecords(byte[][], ByteBuffer[], int[])}.
+     *
+     * @return the index of the first record within its partition or -1 if there are no records to insert
+     */
+    @Override
+    public int insertRecords(byte[][] keys, ByteBuffer[] dataBuffers) throws IOException, InterruptedException {
+        int[] recordIndices = new int[keys.length];
+        insertRecords(keys, dataBuffers, recordIndices);
+        return (keys.length == 0 ? -1 : recordIndices[0]);
+    }
+
+    /**
+     * Inserts the records as one batch per partition.
+     * <p>
+     * The indices are assigned per partition. The batches of the partitions are not atomic
+     * together: if the batch of a partition fails, the batches of the partitions written
+     * before stay committed and only their records have an index which is not -1.
+     */
+    @Override
+    public void insertRecords(byte[][] keys, ByteBuffer[] dataBuffers, int[] recordIndices) throws IOException, InterruptedException {
+        if (keys.length != dataBuffers.length) {
+            throw new IllegalArgumentException("Count of keys and count of data buffers must be equal:"
+                    + " count of keys is "
+                    + keys.length
+                    + ", but count of data buffers is "
+                    + dataBuffers.length);
+        }
+        RecordChannelStorage.checkRecordIndices(keys, recordIndices);
+        Arrays.fill(recordIndices, 0, keys.length, -1);
+        if (keys.length == 0) {
+            return;
+        }
+        List<List<Integer>> recordsByPartition = new ArrayList<List<Integer>>(this.partitions.length);
+        for (int i = 0; this.partitions.length > i; ++i) {
+            recordsByPartition.add(new ArrayList<Integer>());
+        }
+        for (int i = 0; keys.length > i; ++i) {
+            recordsByPartition.get(partitionOf(keys[i])).add(i);
+        }
+        for (int partition = 0; this.partitions.length > partition; ++partition) {
+            List<Integer> records = recordsByPartition.get(partition);
+            if (records.isEmpty()) {
+                continue;
+            }
+            byte[][] partitionKeys = new byte[records.size()][];
+            ByteBuffer[] partitionDataBuffers = new ByteBuffer[records.size()];
+            for (int i = 0; records.size() > i; ++i) {
+                partitionKeys[i] = keys[records.get(i)];
+                partitionDataBuffers[i] = dataBuffers[records.get(i)];
+            }
+            int partitionFirstIndex = this.partitions[partition].insertRecords(partitionKeys, partitionDataBuffers);
+            for (int i = 0; records.size() > i; ++i) {
+                recordIndices[records.get(i)] = partitionFirstIndex + i;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException, InterruptedException {
+        closePartitions();
+    }
+
+    private void closePartitions() throws IOException {
+        IOException firstException = null;
+        for (RecordChannelStorage partition : this.partitions) {
+            if (partition == null) {
+                continue;
+            }
+            try {
+                partition.close();
+            } catch (IOException ex) {
+                firstException = (firstException != null ? firstException : ex);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (firstException != null) {
+            throw firstException;
+        }
+    }
+
+}
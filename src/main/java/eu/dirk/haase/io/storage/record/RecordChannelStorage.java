@@ -1,51 +1,112 @@
 package eu.dirk.haase.io.storage.record;
 
+import eu.dirk.haase.io.storage.channel.PositionalIO;
 import eu.dirk.haase.io.storage.record.data.RecordData;
 import eu.dirk.haase.io.storage.record.header.MainHeader;
 import eu.dirk.haase.io.storage.record.header.RecordHeader;
+import eu.dirk.haase.io.storage.record.header.RecordHeaderView;
+import eu.dirk.haase.io.storage.record.index.KeyIndex;
+import eu.dirk.haase.io.storage.record.metrics.StorageMetrics;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.NonWritableChannelException;
 import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.OpenOption;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.ConcurrentModificationException;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Created by dhaa on 15.07.17.
+ * <p>
+ * All reads and writes are positional (see {@link PositionalIO}) and use buffers
+ * of the current thread, so selects run concurrently under the read lock.
  */
-public class RecordChannelStorage implements RecordStorage {
+public class RecordChannelStorage implements RecordStorage, RecordQueue {
 
-    private final SeekableByteChannel channel;
+    /**
+     * Size of the chunks of {@link #transferRecordTo(byte[], WritableByteChannel)} and
+     * {@link #transferRangeTo(long, long, WritableByteChannel)}.
+     */
+    final static int TRANSFER_CHUNK_SIZE = 64 * 1024;
 
-    private final MainHeader mainHeader;
+    /**
+     * Channel of the storage unit; replaced by a compaction while holding the write lock.
+     */
+    private volatile SeekableByteChannel channel;
 
-    private final ByteBuffer headerBuffer;
+    private final MainHeader mainHeader;
 
     private final Path path;
 
-    private final RecordData currRecordData;
-
-    private final RecordHeader currRecordHeader;
+    private final ThreadLocal<IOScratch> ioScratch;
 
     private final Set<OpenOption> mutableOpenOptionSet = new HashSet<OpenOption>();
     private final Set<OpenOption> openOptionSet = Collections.unmodifiableSet(mutableOpenOptionSet);
-    private final AtomicInteger nextRecordIndex;
-    private final ReadWriteLock readWriteLock;
+    private final ReentrantReadWriteLock readWriteLock;
     private final Lock readLock;
     private final Lock writeLock;
     private SharedTailPointer sharedTailPointer;
-    private RecordHeader lastRecordHeader;
+    private KeyIndex recordKeyIndex;
+    private ChannelForcer channelForcer;
+    /**
+     * Start pointers of the records which were deleted while a compaction copies
+     * the storage unit or null if no compaction is running; guarded by "writeLock"
+     */
+    private List<Long> compactionLog;
+    /**
+     * Slots of deleted records for reuse or null if the slots are not reused; guarded by "writeLock"
+     */
+    private FreeSpaceList freeSpaceList;
+    /**
+     * Serializes the compactions.
+     */
+    private final Object compactionMonitor = new Object();
+    /**
+     * Count of bytes occupied by deleted records since this storage was opened or compacted.
+     */
+    private final AtomicLong deletedBytes = new AtomicLong(0);
+    /**
+     * Count of the records which are neither deleted nor polled.
+     */
+    private final AtomicInteger aliveRecordCount = new AtomicInteger(0);
+    /**
+     * Count of the records changed in place and of the compactions, for readers which
+     * read without a lock and validate afterwards; incremented while holding the write lock.
+     */
+    private final AtomicLong changeCount = new AtomicLong(0);
+    /**
+     * Whether or not the records are written with CRC32C checksums.
+     */
+    private volatile boolean isChecksums;
+    /**
+     * Which checksums are verified when a record is read.
+     */
+    private volatile ChecksumVerification checksumVerification = ChecksumVerification.OFF;
+    /**
+     * Metrics into which the operations are recorded or null.
+     */
+    private volatile StorageMetrics metrics;
 
     public RecordChannelStorage(File file, OpenOption... options) throws IOException {
         this(file.toPath(), options);
@@ -60,11 +121,14 @@ public class RecordChannelStorage implements RecordStorage {
         this.path = path;
         this.channel = channel;
         this.mainHeader = new MainHeader();
-        this.currRecordData = new RecordData();
-        this.currRecordHeader = new RecordHeader();
-        this.headerBuffer = ByteBuffer.allocate(calcBufferCapacity());
-        this.nextRecordIndex = new AtomicInteger(0);
+        this.ioScratch = new ThreadLocal<IOScratch>() {
+            @Override
+            protected IOScratch initialValue() {
+                return new IOScratch();
+            }
+        };
         this.sharedTailPointer = new SharedTailPointer();
+        this.channelForcer = new ChannelForcer(channel, Durability.NONE, 0);
 
         this.readWriteLock = new ReentrantReadWriteLock();
         this.readLock = this.readWriteLock.readLock();
@@ -79,16 +143,121 @@ public class RecordChannelStorage implements RecordStorage {
         this.sharedTailPointer = sharedTailPointer;
     }
 
-    private int calcBufferCapacity() {
-        int overallRecordHeaderLength = this.currRecordData.getLength() + this.currRecordHeader.getLength();
-        int bufferCapacity = overallRecordHeaderLength + this.mainHeader.getLength();
-        // round n up to nearest multiple of m
-        int n = bufferCapacity;
-        int m = 1024;
-        return (n >= 0 ? ((n + m - 1) / m) * m : (n / m) * m);
+    public KeyIndex getRecordKeyIndex() {
+        return recordKeyIndex;
+    }
+
+    /**
+     * Sets an optional index of the keys. Without an index every lookup by key
+     * scans the RecordHeaders from the start of the storage unit.
+     * <p>
+     * The index has to be set before {@link #create()} or {@link #initialize()}
+     * and is closed together with this storage.
+     *
+     * @param recordKeyIndex the index of the keys or null to disable the index
+     */
+    public void setRecordKeyIndex(KeyIndex recordKeyIndex) {
+        this.recordKeyIndex = recordKeyIndex;
+    }
+
+    public Durability getDurability() {
+        return this.channelForcer.getDurability();
+    }
+
+    /**
+     * Sets when the writes are forced to the storage device, the default is {@link Durability#NONE}.
+     * <p>
+     * The durability has to be set before {@link #create()} or {@link #initialize()}.
+     *
+     * @param durability the durability of the write operations
+     * @see #setDurability(Durability, long)
+     */
+    public void setDurability(Durability durability) throws IOException {
+        setDurability(durability, 0);
+    }
+
+    /**
+     * Sets when the writes are forced to the storage device.
+     *
+     * @param durability          the durability of the write operations
+     * @param forceIntervalMillis the interval of the forces for {@link Durability#FORCE_INTERVAL}
+     */
+    public void setDurability(Durability durability, long forceIntervalMillis) throws IOException {
+        ChannelForcer prevChannelForcer = this.channelForcer;
+        this.channelForcer = new ChannelForcer(this.channel, durability, forceIntervalMillis);
+        prevChannelForcer.close();
+    }
+
+    public boolean isFreeSpaceReuse() {
+        return (this.freeSpaceList != null);
+    }
+
+    /**
+     * Enables or disables the reuse of the slots of deleted records by {@link #insertRecord(byte[], ByteBuffer)}.
+     * The slots are reused before the tail is extended. The default is disabled.
+     * <p>
+     * A reused slot can be in front of younger records, so the records are no longer
+     * stored in insertion order and {@link #poll(ByteBuffer)} does not return them in
+     * insertion order anymore. Only the slots of records which are deleted while the
+     * reuse is enabled, or which are found deleted by {@link #initialize()}, are reused.
+     *
+     * @param isFreeSpaceReuse true to reuse the slots of deleted records
+     */
+    public void setFreeSpaceReuse(boolean isFreeSpaceReuse) {
+        this.freeSpaceList = (isFreeSpaceReuse ? new FreeSpaceList() : null);
+    }
+
+    public boolean isChecksums() {
+        return this.isChecksums;
+    }
+
+    /**
+     * Enables or disables the CRC32C checksums (see {@link Crc32c}) over the RecordHeader and
+     * the payload of the records which are written from now on. The default is disabled.
+     * <p>
+     * A record keeps the checksums of the write which stored it; records with and without
+     * checksums can be mixed within one storage unit.
+     *
+     * @param isChecksums true to write the records with checksums
+     */
+    public void setChecksums(boolean isChecksums) {
+        this.isChecksums = isChecksums;
+    }
+
+    public ChecksumVerification getChecksumVerification() {
+        return this.checksumVerification;
     }
 
-    private void fillOpenOptionSet(OpenOption[] options) {
+    /**
+     * Sets which checksums are verified when records are read, the default is
+     * {@link ChecksumVerification#OFF}. A checksum which does not match causes an IOException.
+     * <p>
+     * {@link #initialize()} verifies the checksums as well: a record whose checksum does not
+     * match ends the chain of the RecordHeaders, so a torn write at the end of the storage
+     * unit is truncated and a damaged record within it reports the storage unit as corrupt.
+     * {@link #transferRecordTo(byte[], WritableByteChannel)} does not verify the payload.
+     *
+     * @param checksumVerification the checksums to verify
+     */
+    public void setChecksumVerification(ChecksumVerification checksumVerification) {
+        this.checksumVerification = checksumVerification;
+    }
+
+    public StorageMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics into which the latencies, lock waits and counters of the operations
+     * are recorded; null, the default, records nothing.
+     *
+     * @param metrics the metrics, possibly shared with other storages
+     */
+    public void setMetrics(StorageMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    void fillOpenOptionSet(OpenOption[] options) {
         for (OpenOption oo : options) {
             this.mutableOpenOptionSet.add(oo);
         }
@@ -106,217 +275,1466 @@ public class RecordChannelStorage implements RecordStorage {
     public void create() throws IOException, InterruptedException {
         writeLock.lockInterruptibly();
         try {
-            this.mainHeader.write(this.channel, this.headerBuffer);
+            this.mainHeader.setCreatedTimeMillis(System.currentTimeMillis());
+            this.mainHeader.write(this.channel, headerBuffer());
+            if (this.recordKeyIndex != null) {
+                this.recordKeyIndex.clear();
+            }
+            this.aliveRecordCount.set(0);
+            markWritten();
         } finally {
             writeLock.unlock();
         }
+        awaitDurable();
     }
 
+    /**
+     * Reads the MainHeader and recovers the state which is not persisted in the MainHeader
+     * with one pass over the storage unit (see {@link RecordRecovery}): the tail, the index of
+     * the next record, the count of the records, the deleted bytes, the slots of the deleted
+     * records (if they are reused) and the index of the keys (if it is not up to date).
+     * <p>
+     * A torn record at the end of the storage unit, which was left by a crash while it was
+     * written, is truncated. If valid records follow the point where the chain of the
+     * RecordHeaders breaks, the region up to them was reserved, but not written: it is marked
+     * as a deleted record and the recovery goes on behind it. A storage unit opened read-only
+     * is corrupt in this case.
+     * <p>
+     * The storage unit must not be accessed by other threads until this method has returned.
+     */
     @Override
     public void initialize() throws IOException, InterruptedException {
+        SeekableByteChannel recoveredChannel;
+        long endPointer;
+        writeLock.lockInterruptibly();
+        try {
+            this.mainHeader.read(this.channel, headerBuffer());
+            recoveredChannel = this.channel;
+            endPointer = recoveredChannel.size();
+        } finally {
+            writeLock.unlock();
+        }
+        // The recovery reads under the read lock, possibly from several threads
+        boolean isFillingIndex = (this.recordKeyIndex != null) && !this.recordKeyIndex.isUpToDate(endPointer);
+        RecordRecovery recordRecovery = new RecordRecovery(this, recoveredChannel, this.mainHeader.getEndPointer(),
+                endPointer, RecordScanner.DEFAULT_READ_AHEAD_SIZE, isFillingIndex, isFreeSpaceReuse());
+        RecordRecovery.Region recovered = recordRecovery.recover();
+        while (recovered.tailPointer < endPointer) {
+            long followingStartPointer = recordRecovery.findRecordHeader(recovered.tailPointer + 1);
+            if (followingStartPointer < 0) {
+                break;
+            }
+            skipAbandonedRegion(recordRecovery, recovered, followingStartPointer);
+            recovered.join(recordRecovery.recover(followingStartPointer));
+        }
         writeLock.lockInterruptibly();
         try {
-            this.mainHeader.read(this.channel, this.headerBuffer);
+            if (recovered.tailPointer < endPointer) {
+                truncateTornRecord(recovered.tailPointer);
+            }
+            this.sharedTailPointer.reset(recovered.tailPointer);
+            this.sharedTailPointer.resetRecordIndex(recovered.maxRecordIndex + 1);
+            this.aliveRecordCount.set(recovered.aliveRecordCount);
+            this.deletedBytes.set(recovered.deletedBytes);
+            if (this.mainHeader.getHeadPointer() > recovered.tailPointer) {
+                this.mainHeader.setHeadPointer(recovered.tailPointer);
+            }
+            if (isFillingIndex) {
+                this.recordKeyIndex.clear();
+                byte[] key = new byte[RecordHeader.KEY_LENGTH];
+                for (int i = 0; recovered.keyCount > i; ++i) {
+                    recovered.copyKey(i, key);
+                    this.recordKeyIndex.put(key, recovered.keyStartPointers[i]);
+                }
+            }
+            if (this.freeSpaceList != null) {
+                this.freeSpaceList.clear();
+                for (int i = 0; recovered.freeSlotCount > i; ++i) {
+                    this.freeSpaceList.add(recovered.freeStartPointers[i], recovered.freeCapacities[i]);
+                }
+            }
         } finally {
             writeLock.unlock();
         }
     }
 
+    /**
+     * Marks the region between the end of the chain of the RecordHeaders and the RecordHeader
+     * which follows it as a deleted record. Such a region is a reservation which was abandoned
+     * by a crash: the stripes of a {@link StribedRecordStorage} reserve their regions from the
+     * same tail, but write them under locks of their own, so a later region may be complete
+     * while an earlier one is not.
+     *
+     * A record which was written, but was damaged afterwards, is not skipped.
+     *
+     * @throws IOException if the region starts with a damaged record, cannot hold a RecordHeader
+     *                     or the storage unit is read-only
+     */
+    private void skipAbandonedRegion(RecordRecovery recordRecovery, RecordRecovery.Region recovered,
+                                     long followingStartPointer) throws IOException, InterruptedException {
+        long regionLength = followingStartPointer - recovered.tailPointer;
+        IOScratch scratch = this.ioScratch.get();
+        if ((regionLength < (scratch.recordHeader.getLength() + scratch.recordData.getLength()))
+                || (regionLength > Integer.MAX_VALUE)
+                || (recordRecovery.findRecordHeader(recovered.tailPointer) == recovered.tailPointer)) {
+            throw newCorruptException(recovered.tailPointer, followingStartPointer);
+        }
+        RecordHeader skipRecordHeader;
+        writeLock.lockInterruptibly();
+        try {
+            skipRecordHeader = writeDeletedRegion(recovered.tailPointer, Math.max(recovered.maxRecordIndex, 0), (int) regionLength);
+        } catch (NonWritableChannelException ex) {
+            // Opened read-only: the region cannot be skipped
+            throw newCorruptException(recovered.tailPointer, followingStartPointer);
+        } finally {
+            writeLock.unlock();
+        }
+        recovered.add(skipRecordHeader, followingStartPointer);
+        recovered.tailPointer = followingStartPointer;
+    }
+
+    private static IOException newCorruptException(long tailPointer, long followingStartPointer) {
+        return new IOException("Storage unit is corrupt:"
+                + " the chain of the RecordHeaders ends at "
+                + tailPointer
+                + ", but a RecordHeader follows at "
+                + followingStartPointer);
+    }
+
+    /**
+     * Cuts off a torn record at the end of the storage unit; a read-only storage unit is left as it is.
+     */
+    private void truncateTornRecord(long tailPointer) throws IOException {
+        try {
+            this.channel.truncate(tailPointer);
+        } catch (NonWritableChannelException ex) {
+            // Opened read-only: the torn record is overwritten by the next storage which writes
+        }
+    }
+
+    /**
+     * Count of the records which are neither deleted nor polled.
+     */
+    public int getAliveRecordCount() {
+        return this.aliveRecordCount.get();
+    }
+
     @Override
     public int selectRecord(byte[] key, ByteBuffer dataBuffer) throws IOException, InterruptedException {
-        writeLock.lockInterruptibly();
+        int recordIndex = -1;
+        StorageMetrics currMetrics = this.metrics;
+        long startNanos = startNanos(currMetrics);
+        lockRead(currMetrics, startNanos);
         try {
             RecordHeader recordHeader = selectRecordHeader(key);
             if ((recordHeader != null) && !recordHeader.isDeleted()) {
-                currRecordData.initFromRecordHeader(recordHeader);
-                currRecordData.read(this.channel, dataBuffer);
-                currRecordData.readData(this.channel, dataBuffer);
-                return recordHeader.getRecordIndex();
+                readRecordData(recordHeader, dataBuffer);
+                recordIndex = recordHeader.getRecordIndex();
             }
-            return -1;
         } finally {
-            writeLock.unlock();
+            readLock.unlock();
         }
+        recordLatency(currMetrics, StorageMetrics.Operation.SELECT, startNanos);
+        return recordIndex;
+    }
+
+    /**
+     * Writes the payload of the record with the given key to the target channel. The payload
+     * is transferred from the storage unit to the target without being copied through a
+     * buffer of the caller, see {@link PositionalIO#transferTo(SeekableByteChannel, long, long, WritableByteChannel)}.
+     * <p>
+     * The read lock is only held per chunk of {@value #TRANSFER_CHUNK_SIZE} bytes, so a slow
+     * target does not block the writers of the storage.
+     *
+     * @return the count of bytes transferred or -1 if there is no record with the given key
+     * @throws ConcurrentModificationException if a record was changed in place or the storage
+     *                                         unit was compacted while the payload was transferred
+     */
+    public long transferRecordTo(byte[] key, WritableByteChannel target) throws IOException, InterruptedException {
+        SeekableByteChannel transferredChannel;
+        long expectedChangeCount;
+        long dataStartPointer;
+        int dataLength;
+        readLock.lockInterruptibly();
+        try {
+            RecordHeader recordHeader = selectRecordHeader(key);
+            if ((recordHeader == null) || recordHeader.isDeleted()) {
+                return -1;
+            }
+            RecordData currRecordData = this.ioScratch.get().recordData;
+            currRecordData.initFromRecordHeader(recordHeader);
+            transferredChannel = this.channel;
+            expectedChangeCount = this.changeCount.get();
+            dataStartPointer = currRecordData.getDataStartPointer();
+            dataLength = currRecordData.getRecordDataLength();
+        } finally {
+            readLock.unlock();
+        }
+        long bytesTransferred = transferChunks(transferredChannel, expectedChangeCount, dataStartPointer, dataLength, target);
+        if (bytesTransferred != dataLength) {
+            throw new IOException("Insufficient number of bytes transferred:" +
+                    " Count of bytes currently transferred "
+                    + bytesTransferred
+                    + ", but expected amount is "
+                    + dataLength);
+        }
+        return bytesTransferred;
+    }
+
+    /**
+     * Starts a scan over the records which are not deleted, see {@link RecordScanner}.
+     */
+    public RecordScanner scanRecords() throws IOException, InterruptedException {
+        return scanRecords(RecordScanner.DEFAULT_READ_AHEAD_SIZE);
+    }
+
+    /**
+     * Starts a scan over the records which are not deleted, see {@link RecordScanner}.
+     *
+     * @param readAheadSize size of the chunks in which the storage unit is read
+     */
+    public RecordScanner scanRecords(int readAheadSize) throws IOException, InterruptedException {
+        readLock.lockInterruptibly();
+        try {
+            return new RecordScanner(this, this.channel, this.mainHeader.getEndPointer(), this.channel.size(), readAheadSize);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Returns a {@link Spliterator} over the records which are not deleted, which splits the
+     * storage unit by byte range, see {@link RecordSpliterator}.
+     *
+     * @param readAheadSize size of the chunks in which the storage unit is read; ranges are not split below this size
+     */
+    public RecordSpliterator spliterateRecords(int readAheadSize) throws IOException, InterruptedException {
+        readLock.lockInterruptibly();
+        try {
+            return new RecordSpliterator(this, this.channel, this.mainHeader.getEndPointer(), this.channel.size(), readAheadSize);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Returns a parallel {@link Stream} over the records which are not deleted.
+     * <p>
+     * Every element carries copies of the key and the payload, so the elements may be
+     * collected; a scan which must not allocate per record uses {@link RecordScanner#advance()}.
+     *
+     * @see #spliterateRecords(int)
+     */
+    public Stream<RecordScanner.ScannedRecord> parallelScanRecords() throws IOException, InterruptedException {
+        return StreamSupport.stream(spliterateRecords(RecordScanner.DEFAULT_READ_AHEAD_SIZE), true);
+    }
+
+    /**
+     * Reads a chunk of the storage unit for a {@link RecordScanner}.
+     *
+     * @throws ConcurrentModificationException if the storage unit was compacted since the scan was started
+     */
+    int readAhead(SeekableByteChannel scannedChannel, ByteBuffer target, long position) throws IOException, InterruptedException {
+        readLock.lockInterruptibly();
+        try {
+            if (scannedChannel != this.channel) {
+                throw new ConcurrentModificationException("Storage unit was compacted while it was scanned: " + this.path);
+            }
+            return PositionalIO.read(scannedChannel, target, position);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Writes a range of the storage unit as it is, headers included, to the target channel; for
+     * example to export the records sequentially. The range is transferred like the payload of
+     * {@link #transferRecordTo(byte[], WritableByteChannel)} and ends at the end of the storage unit.
+     *
+     * @param position start of the range within the storage unit
+     * @param count    length of the range
+     * @return the count of bytes transferred
+     */
+    public long transferRangeTo(long position, long count, WritableByteChannel target) throws IOException, InterruptedException {
+        if ((position < 0) || (count < 0)) {
+            throw new IllegalArgumentException("Position and count must be 0 or greater:"
+                    + " position is "
+                    + position
+                    + ", count is "
+                    + count);
+        }
+        SeekableByteChannel transferredChannel;
+        long expectedChangeCount;
+        long rangeLength;
+        readLock.lockInterruptibly();
+        try {
+            transferredChannel = this.channel;
+            expectedChangeCount = this.changeCount.get();
+            rangeLength = Math.min(count, Math.max(0, this.channel.size() - position));
+        } finally {
+            readLock.unlock();
+        }
+        return transferChunks(transferredChannel, expectedChangeCount, position, rangeLength, target);
+    }
+
+    /**
+     * Transfers a range of the storage unit to the target in chunks and takes the read lock
+     * per chunk, like {@link #readAhead(SeekableByteChannel, ByteBuffer, long)}.
+     *
+     * @throws ConcurrentModificationException if a record was changed in place or the storage
+     *                                         unit was compacted since the given change count was taken
+     */
+    private long transferChunks(SeekableByteChannel transferredChannel, long expectedChangeCount,
+                                long position, long count, WritableByteChannel target) throws IOException, InterruptedException {
+        long bytesTransferred = 0;
+        while (count > bytesTransferred) {
+            long chunkLength = Math.min(TRANSFER_CHUNK_SIZE, count - bytesTransferred);
+            long chunkTransferred;
+            readLock.lockInterruptibly();
+            try {
+                if ((transferredChannel != this.channel) || (expectedChangeCount != this.changeCount.get())) {
+                    throw new ConcurrentModificationException("Storage unit was changed while it was transferred: " + this.path);
+                }
+                chunkTransferred = PositionalIO.transferTo(transferredChannel, position + bytesTransferred, chunkLength, target);
+            } finally {
+                readLock.unlock();
+            }
+            bytesTransferred += chunkTransferred;
+            if (chunkTransferred < chunkLength) {
+                break;
+            }
+        }
+        return bytesTransferred;
     }
 
     @Override
     public int updateRecord(byte[] key, ByteBuffer dataBuffer) throws IOException, InterruptedException {
-        writeLock.lockInterruptibly();
+        int recordIndex = -1;
+        StorageMetrics currMetrics = this.metrics;
+        long startNanos = startNanos(currMetrics);
+        lockWrite(currMetrics, startNanos);
         try {
-            RecordHeader recordHeader = deleteRecordHeader(key);
+            RecordHeader recordHeader = selectRecordHeader(key);
             if (recordHeader != null) {
-                return insertRecord(key, dataBuffer);
+                if (dataLengthOf(dataBuffer) <= recordHeader.getRecordDataCapacity()) {
+                    recordIndex = rewriteRecord(recordHeader, dataBuffer);
+                } else {
+                    deleteRecordHeader(recordHeader);
+                    recordIndex = appendRecord(key, dataBuffer);
+                }
             }
-            return -1;
         } finally {
             writeLock.unlock();
         }
+        awaitDurable();
+        recordLatency(currMetrics, StorageMetrics.Operation.UPDATE, startNanos);
+        return recordIndex;
     }
 
     @Override
     public int deleteRecord(byte[] key) throws IOException, InterruptedException {
-        writeLock.lockInterruptibly();
+        int recordIndex = -1;
+        StorageMetrics currMetrics = this.metrics;
+        long startNanos = startNanos(currMetrics);
+        lockWrite(currMetrics, startNanos);
         try {
             RecordHeader recordHeader = deleteRecordHeader(key);
             if (recordHeader != null) {
-                return recordHeader.getRecordIndex();
+                recordIndex = recordHeader.getRecordIndex();
             }
-            return -1;
         } finally {
             writeLock.unlock();
         }
+        awaitDurable();
+        recordLatency(currMetrics, StorageMetrics.Operation.DELETE, startNanos);
+        return recordIndex;
     }
 
     @Override
     public int insertRecord(byte[] key, ByteBuffer dataBuffer) throws IOException, InterruptedException {
-        writeLock.lockInterruptibly();
+        int recordIndex;
+        StorageMetrics currMetrics = this.metrics;
+        long startNanos = startNanos(currMetrics);
+        lockWrite(currMetrics, startNanos);
+        try {
+            recordIndex = appendRecord(key, dataBuffer);
+        } finally {
+            writeLock.unlock();
+        }
+        awaitDurable();
+        recordLatency(currMetrics, StorageMetrics.Operation.INSERT, startNanos);
+        return recordIndex;
+    }
+
+    /**
+     * Like {@link #insertRecord(byte[], ByteBuffer)}, but returns the start pointer of the record.
+     *
+     * @return the start pointer of the RecordHeader
+     */
+    long insertRecordPosition(byte[] key, ByteBuffer dataBuffer) throws IOException, InterruptedException {
+        insertRecord(key, dataBuffer);
+        // appendRecord has left the RecordHeader in the buffers of the current thread
+        return this.ioScratch.get().recordHeader.getStartPointer();
+    }
+
+    /**
+     * Reads the record whose RecordHeader starts at the given position.
+     *
+     * @return the index of the record or -1 if there is no record at the position or the record is deleted
+     */
+    int selectRecordAt(long startPointer, ByteBuffer dataBuffer) throws IOException, InterruptedException {
+        int recordIndex = -1;
+        StorageMetrics currMetrics = this.metrics;
+        long startNanos = startNanos(currMetrics);
+        lockRead(currMetrics, startNanos);
+        try {
+            RecordHeader recordHeader = readRecordHeaderAt(startPointer);
+            if ((recordHeader != null) && !recordHeader.isDeleted()) {
+                readRecordData(recordHeader, dataBuffer);
+                recordIndex = recordHeader.getRecordIndex();
+            }
+        } finally {
+            readLock.unlock();
+        }
+        recordLatency(currMetrics, StorageMetrics.Operation.SELECT, startNanos);
+        return recordIndex;
+    }
+
+    /**
+     * Deletes the record whose RecordHeader starts at the given position.
+     *
+     * @return the index of the record or -1 if there is no record at the position or the record was already deleted
+     */
+    int deleteRecordAt(long startPointer) throws IOException, InterruptedException {
+        int recordIndex = -1;
+        StorageMetrics currMetrics = this.metrics;
+        long startNanos = startNanos(currMetrics);
+        lockWrite(currMetrics, startNanos);
+        try {
+            RecordHeader recordHeader = readRecordHeaderAt(startPointer);
+            if ((recordHeader != null) && !recordHeader.isDeleted()) {
+                deleteRecordHeader(recordHeader);
+                recordIndex = recordHeader.getRecordIndex();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        awaitDurable();
+        recordLatency(currMetrics, StorageMetrics.Operation.DELETE, startNanos);
+        return recordIndex;
+    }
+
+    private RecordHeader readRecordHeaderAt(long startPointer) throws IOException {
+        RecordHeader recordHeader = this.ioScratch.get().selectedRecordHeader;
+        recordHeader.setStartPointer(startPointer);
+        if ((startPointer < this.mainHeader.getEndPointer()) || (recordHeader.getEndPointer() > this.channel.size())) {
+            return null;
+        }
+        readRecordHeader(this.channel, recordHeader, headerBuffer());
+        recordScannedHeaders(1);
+        return (recordHeader.isValid() ? recordHeader : null);
+    }
+
+    /**
+     * Appends a record at the tail or writes it into the slot of a deleted record;
+     * called while holding the write lock.
+     */
+    private int appendRecord(byte[] key, ByteBuffer dataBuffer) throws IOException, InterruptedException {
+        IOScratch scratch = this.ioScratch.get();
+        RecordHeader currRecordHeader = scratch.recordHeader;
+        RecordData currRecordData = scratch.recordData;
+
+        int nextIndex = sharedTailPointer.nextRecordIndex(1);
+
+        int dataLength = sharedTailPointer.calcRecordLength(dataBuffer);
+        long prevHeadPointer = this.mainHeader.getHeadPointer();
+        RecordHeader freeRecordHeader = allocateFreeSlot(dataLengthOf(dataBuffer));
+        if (freeRecordHeader != null) {
+            currRecordHeader.init(freeRecordHeader.getStartPointer(), nextIndex, dataLength);
+            currRecordHeader.copyKey(key);
+            currRecordHeader.initRecordDataLength(dataBuffer);
+            currRecordHeader.setRecordDataCapacity(freeRecordHeader.getRecordDataCapacity());
+        } else {
+            long nextRecordStartPointer = sharedTailPointer.nextAtomic(dataLength);
+            currRecordHeader.init(nextRecordStartPointer, nextIndex, dataLength);
+            currRecordHeader.copyKey(key);
+            currRecordHeader.initRecordDataLength(dataBuffer);
+        }
+        currRecordData.initFromRecordHeader(currRecordHeader);
+        this.mainHeader.initFromRecordHeader(currRecordHeader);
+
+        try {
+            writeRecord(this.channel, scratch, currRecordHeader, currRecordData, dataBuffer);
+        } catch (IOException | RuntimeException ex) {
+            if (freeRecordHeader == null) {
+                writeSkipRecord(currRecordHeader.getStartPointer(), nextIndex, dataLength);
+            } else {
+                releaseFreeSlot(freeRecordHeader, prevHeadPointer);
+            }
+            throw ex;
+        }
+        this.mainHeader.write(this.channel, scratch.headerBuffer);
+
+        if (this.recordKeyIndex != null) {
+            this.recordKeyIndex.put(key, currRecordHeader.getStartPointer());
+        }
+        this.aliveRecordCount.incrementAndGet();
+        markWritten();
+
+        return currRecordHeader.getRecordIndex();
+    }
+
+    @Override
+    public int insertRecords(byte[][] keys, ByteBuffer[] dataBuffers) throws IOException, InterruptedException {
+        if (keys.length != dataBuffers.length) {
+            throw new IllegalArgumentException("Count of keys and count of data buffers must be equal:"
+                    + " count of keys is "
+                    + keys.length
+                    + ", but count of data buffers is "
+                    + dataBuffers.length);
+        }
+        if (keys.length == 0) {
+            return -1;
+        }
+        int firstIndex;
+        StorageMetrics currMetrics = this.metrics;
+        long startNanos = startNanos(currMetrics);
+        lockWrite(currMetrics, startNanos);
+        try {
+            firstIndex = appendRecords(keys, dataBuffers);
+        } finally {
+            writeLock.unlock();
+        }
+        awaitDurable();
+        recordLatency(currMetrics, StorageMetrics.Operation.INSERT_BATCH, startNanos);
+        return firstIndex;
+    }
+
+    @Override
+    public void insertRecords(byte[][] keys, ByteBuffer[] dataBuffers, int[] recordIndices) throws IOException, InterruptedException {
+        checkRecordIndices(keys, recordIndices);
+        Arrays.fill(recordIndices, 0, keys.length, -1);
+        int firstIndex = insertRecords(keys, dataBuffers);
+        for (int i = 0; keys.length > i; ++i) {
+            recordIndices[i] = firstIndex + i;
+        }
+    }
+
+    static void checkRecordIndices(byte[][] keys, int[] recordIndices) {
+        if (keys.length > recordIndices.length) {
+            throw new IllegalArgumentException("Count of record indices must not be less than count of keys:"
+                    + " count of keys is "
+                    + keys.length
+                    + ", but count of record indices is "
+                    + recordIndices.length);
+        }
+    }
+
+    /**
+     * Appends the records of a batch at the tail; called while holding the write lock.
+     */
+    private int appendRecords(byte[][] keys, ByteBuffer[] dataBuffers) throws IOException, InterruptedException {
+        int recordCount = keys.length;
+
+        int firstIndex = sharedTailPointer.nextRecordIndex(recordCount);
+
+        int[] dataLengths = new int[recordCount];
+        long batchLength = 0;
+        for (int i = 0; recordCount > i; ++i) {
+            dataLengths[i] = sharedTailPointer.calcRecordLength(dataBuffers[i]);
+            batchLength += dataLengths[i];
+        }
+        long batchStartPointer = sharedTailPointer.nextAtomic(batchLength);
+        try {
+            writeRecords(keys, dataBuffers, dataLengths, firstIndex, batchStartPointer, batchLength);
+        } catch (IOException | RuntimeException ex) {
+            long skipStartPointer = batchStartPointer;
+            for (int i = 0; recordCount > i; ++i) {
+                writeSkipRecord(skipStartPointer, firstIndex + i, dataLengths[i]);
+                skipStartPointer += dataLengths[i];
+            }
+            throw ex;
+        }
+        this.aliveRecordCount.addAndGet(recordCount);
+        markWritten();
+
+        return firstIndex;
+    }
+
+    /**
+     * Writes the records of a batch into the region reserved for them.
+     */
+    private void writeRecords(byte[][] keys, ByteBuffer[] dataBuffers, int[] dataLengths, int firstIndex,
+                              long batchStartPointer, long batchLength) throws IOException {
+        IOScratch scratch = this.ioScratch.get();
+        int recordCount = keys.length;
+        int headersLength = scratch.recordHeader.getLength() + scratch.recordData.getLength();
+
+        // The records are laid out one after the other: the headers of all records
+        // share one buffer, each record contributes its headers and its payload.
+        ByteBuffer batchHeaderBuffer = ByteBuffer.allocate(recordCount * headersLength);
+        ByteBuffer[] gatherBuffers = new ByteBuffer[recordCount * 2];
+        RecordHeader[] recordHeaders = new RecordHeader[recordCount];
+        RecordData currRecordData = scratch.recordData;
+        long nextRecordStartPointer = batchStartPointer;
+        for (int i = 0; recordCount > i; ++i) {
+            ByteBuffer dataBuffer = dataBuffers[i];
+            int dataLength = dataLengths[i];
+
+            RecordHeader currRecordHeader = new RecordHeader();
+            currRecordHeader.init(nextRecordStartPointer, firstIndex + i, dataLength);
+            currRecordHeader.copyKey(keys[i]);
+            currRecordHeader.initRecordDataLength(dataBuffer);
+            initChecksum(currRecordHeader, dataBuffer);
+            currRecordData.initFromRecordHeader(currRecordHeader);
+            this.mainHeader.initFromRecordHeader(currRecordHeader);
+
+            ByteBuffer headerSlice = batchHeaderBuffer.duplicate();
+            headerSlice.position(i * headersLength);
+            headerSlice.limit(headerSlice.position() + headersLength);
+            currRecordHeader.writeTo(headerSlice);
+            currRecordData.writeTo(headerSlice);
+            headerSlice.position(i * headersLength);
+            dataBuffer.flip();
+
+            gatherBuffers[i * 2] = headerSlice;
+            gatherBuffers[(i * 2) + 1] = dataBuffer;
+            recordHeaders[i] = currRecordHeader;
+            nextRecordStartPointer += dataLength;
+        }
+
+        long bytesWritten = PositionalIO.write(this.channel, gatherBuffers, batchStartPointer);
+        if (bytesWritten != batchLength) {
+            throw new IOException("Insufficient number of bytes written:"
+                    + " Count of bytes currently written "
+                    + bytesWritten
+                    + ", but expected amount is "
+                    + batchLength);
+        }
+        recordBytesWritten(bytesWritten);
+        this.mainHeader.write(this.channel, scratch.headerBuffer);
+
+        if (this.recordKeyIndex != null) {
+            for (int i = 0; recordCount > i; ++i) {
+                this.recordKeyIndex.put(keys[i], recordHeaders[i].getStartPointer());
+            }
+        }
+    }
+
+    /**
+     * Marks a reserved region which could not be written as a deleted record, so readers
+     * step over it to the records behind it. A failure is ignored, the caller reports the
+     * original one.
+     *
+     * @param dataLength the overall length of the region including the headers
+     */
+    void writeSkipRecord(long startPointer, int recordIndex, int dataLength) {
         try {
-            int nextIndex = nextRecordIndex.getAndIncrement();
+            recordDeleted(writeDeletedRegion(startPointer, recordIndex, dataLength));
+        } catch (IOException | RuntimeException ex) {
+            // The region stays unreadable until the storage unit is recovered
+        }
+    }
 
-            int dataLength = sharedTailPointer.calcRecordLength(dataBuffer);
-            long nextRecordStartPointer = sharedTailPointer.nextLock(dataLength);
+    /**
+     * Writes a deleted RecordHeader which covers the given region.
+     *
+     * @param dataLength the overall length of the region including the headers
+     */
+    private RecordHeader writeDeletedRegion(long startPointer, int recordIndex, int dataLength) throws IOException {
+        IOScratch scratch = this.ioScratch.get();
+        RecordHeader skipRecordHeader = new RecordHeader();
+        skipRecordHeader.init(startPointer, recordIndex, dataLength);
+        skipRecordHeader.setRecordDataCapacity(dataLength - skipRecordHeader.getLength() - scratch.recordData.getLength());
+        skipRecordHeader.setRecordDataLength(0);
+        skipRecordHeader.setDeleted(true);
+        skipRecordHeader.write(this.channel, scratch.headerBuffer);
+        return skipRecordHeader;
+    }
 
-            this.currRecordHeader.init(nextRecordStartPointer, nextIndex, dataLength);
-            this.currRecordHeader.copyKey(key);
 
-            this.currRecordHeader.initRecordDataLength(dataBuffer);
-            this.currRecordData.initFromRecordHeader(this.currRecordHeader);
-            this.mainHeader.initFromRecordHeader(this.currRecordHeader);
+    @Override
+    public int offer(byte[] key, ByteBuffer dataBuffer) throws IOException, InterruptedException {
+        return insertRecord(key, dataBuffer);
+    }
+
+    @Override
+    public int poll(ByteBuffer dataBuffer) throws IOException, InterruptedException {
+        RecordHeader recordHeader = pollRecordHeader(dataBuffer);
+        return (recordHeader != null ? recordHeader.getRecordIndex() : -1);
+    }
 
-            this.currRecordData.writeData(this.channel, dataBuffer);
-            this.currRecordData.write(this.channel, this.headerBuffer);
-            this.currRecordHeader.write(this.channel, this.headerBuffer);
-            this.mainHeader.write(this.channel, this.headerBuffer);
+    /**
+     * Like {@link #poll(ByteBuffer)}, but returns the start pointer of the record.
+     *
+     * @return the start pointer of the RecordHeader or -1 if the queue is empty
+     */
+    long pollRecordPosition(ByteBuffer dataBuffer) throws IOException, InterruptedException {
+        RecordHeader recordHeader = pollRecordHeader(dataBuffer);
+        return (recordHeader != null ? recordHeader.getStartPointer() : -1);
+    }
 
-            return currRecordHeader.getRecordIndex();
+    private RecordHeader pollRecordHeader(ByteBuffer dataBuffer) throws IOException, InterruptedException {
+        RecordHeader recordHeader;
+        StorageMetrics currMetrics = this.metrics;
+        long startNanos = startNanos(currMetrics);
+        lockWrite(currMetrics, startNanos);
+        try {
+            recordHeader = selectHeadRecordHeader();
+            if (recordHeader != null) {
+                readRecordData(recordHeader, dataBuffer);
+                recordHeader.setDeleted(true);
+                recordHeader.write(this.channel, headerBuffer());
+                if (this.recordKeyIndex != null) {
+                    this.recordKeyIndex.remove(recordHeader.getKey(), recordHeader.getStartPointer());
+                }
+                recordDeleted(recordHeader);
+                this.aliveRecordCount.decrementAndGet();
+                this.mainHeader.setHeadPointer(recordHeader.getNextStartPointer());
+                this.mainHeader.write(this.channel, headerBuffer());
+                markWritten();
+            }
         } finally {
             writeLock.unlock();
         }
+        awaitDurable();
+        recordLatency(currMetrics, StorageMetrics.Operation.POLL, startNanos);
+        return recordHeader;
     }
 
+    @Override
+    public int peek(ByteBuffer dataBuffer) throws IOException, InterruptedException {
+        int recordIndex = -1;
+        StorageMetrics currMetrics = this.metrics;
+        long startNanos = startNanos(currMetrics);
+        lockWrite(currMetrics, startNanos);
+        try {
+            RecordHeader recordHeader = selectHeadRecordHeader();
+            if (recordHeader != null) {
+                readRecordData(recordHeader, dataBuffer);
+                recordIndex = recordHeader.getRecordIndex();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        recordLatency(currMetrics, StorageMetrics.Operation.PEEK, startNanos);
+        return recordIndex;
+    }
 
     @Override
     public void close() throws IOException, InterruptedException {
         writeLock.lockInterruptibly();
         try {
-            this.channel.close();
+            try {
+                this.channelForcer.close();
+                if (this.recordKeyIndex != null) {
+                    this.recordKeyIndex.setStorageSize(this.channel.size());
+                    this.recordKeyIndex.close();
+                }
+            } finally {
+                this.channel.close();
+            }
         } finally {
             writeLock.unlock();
         }
     }
 
+    /**
+     * Count of bytes occupied by records which were deleted since this storage
+     * was opened or compacted; a compaction would reclaim them.
+     */
+    public long getDeletedBytes() {
+        return this.deletedBytes.get();
+    }
+
+    /**
+     * Copies the live records into a new file and replaces the storage unit with it.
+     * <p>
+     * The records are copied while readers and writers keep running: the copy only
+     * holds the read lock while it copies a single record. Records which are appended
+     * or deleted meanwhile are transferred afterwards while holding the write lock,
+     * then the new file atomically replaces the old one. The records keep their indices,
+     * their order and their capacity, so a record which is updated in place meanwhile is
+     * updated in place in the new file as well. Only a record which was written into the
+     * slot of a deleted record meanwhile is appended at the end of the new file.
+     * <p>
+     * A storage unit which is shared by several {@link RecordChannelStorage}s (see
+     * {@link StribedRecordStorage}) can not be compacted.
+     *
+     * @param maxBytesPerSecond maximum rate at which the records are copied or 0 for no limit
+     * @return the count of bytes reclaimed
+     */
+    public long compact(long maxBytesPerSecond) throws IOException, InterruptedException {
+        synchronized (this.compactionMonitor) {
+            long snapshotEnd;
+            List<Long> changedDuringCopy = new ArrayList<Long>();
+            writeLock.lockInterruptibly();
+            try {
+                snapshotEnd = this.channel.size();
+                this.compactionLog = changedDuringCopy;
+            } finally {
+                writeLock.unlock();
+            }
+            SeekableByteChannel compactionChannel = openCompactionChannel();
+            boolean isSwapped = false;
+            try {
+                RelocationTable relocationTable = new RelocationTable();
+                // Copy the records which existed when the compaction started.
+                RecordHeader lastRecordHeader = copyRecords(compactionChannel, relocationTable,
+                        null, this.mainHeader.getEndPointer(), snapshotEnd, maxBytesPerSecond);
+                writeLock.lockInterruptibly();
+                try {
+                    // Copy the records which were appended in the meantime.
+                    lastRecordHeader = copyRecords(compactionChannel, relocationTable,
+                            lastRecordHeader, snapshotEnd, this.channel.size(), 0);
+                    // Transfer the records which were deleted, updated in place or written
+                    // into a reused slot in the meantime.
+                    RelocationTable movedTable = new RelocationTable();
+                    ByteBuffer dataBuffer = ByteBuffer.allocate(1024);
+                    long deletedCopyBytes = 0;
+                    for (Long startPointer : new TreeSet<Long>(changedDuringCopy)) {
+                        RecordHeader recordHeader = new RecordHeader();
+                        recordHeader.setStartPointer(startPointer);
+                        readRecordHeader(this.channel, recordHeader, headerBuffer());
+                        boolean isLive = !recordHeader.isDeleted();
+                        int entry = relocationTable.indexOf(startPointer);
+                        if ((entry >= 0) && (relocationTable.getNewStartPointer(entry) >= 0)) {
+                            RecordHeader copyHeader = new RecordHeader();
+                            copyHeader.setStartPointer(relocationTable.getNewStartPointer(entry));
+                            readRecordHeader(compactionChannel, copyHeader, headerBuffer());
+                            if (isLive && Arrays.equals(copyHeader.getKey(), recordHeader.getKey())
+                                    && (recordHeader.getRecordDataLength() <= copyHeader.getRecordDataCapacity())) {
+                                // Updated in place: the copy is updated in place as well.
+                                dataBuffer = copyRecord(compactionChannel, recordHeader, copyHeader.getStartPointer(),
+                                        copyHeader.getRecordDataCapacity(), dataBuffer);
+                                continue;
+                            }
+                            copyHeader.setDeleted(true);
+                            copyHeader.write(compactionChannel, headerBuffer());
+                            relocationTable.relocate(entry, -1);
+                            deletedCopyBytes += copyHeader.getNextStartPointer() - copyHeader.getStartPointer();
+                        }
+                        if (isLive) {
+                            // The record does not fit into its copy or is new: append it.
+                            long targetPointer = (lastRecordHeader != null
+                                    ? lastRecordHeader.getNextStartPointer()
+                                    : this.mainHeader.getEndPointer());
+                            dataBuffer = copyRecord(compactionChannel, recordHeader, targetPointer,
+                                    recordHeader.getRecordDataLength(), dataBuffer);
+                            movedTable.add(startPointer, targetPointer);
+                            lastRecordHeader = recordHeader;
+                        }
+                    }
+                    long reclaimedBytes = swapChannel(compactionChannel,
+                            lastRecordHeader, relocationTable, movedTable);
+                    isSwapped = true;
+                    this.deletedBytes.set(deletedCopyBytes);
+                    return reclaimedBytes;
+                } finally {
+                    this.compactionLog = null;
+                    writeLock.unlock();
+                }
+            } finally {
+                if (!isSwapped) {
+                    writeLock.lock();
+                    try {
+                        this.compactionLog = null;
+                    } finally {
+                        writeLock.unlock();
+                    }
+                    discardCompactionChannel(compactionChannel);
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens a further channel, used for the new storage unit of a compaction.
+     */
+    protected SeekableByteChannel openChannel(Path path, OpenOption... options) throws IOException {
+        return Files.newByteChannel(path, options);
+    }
+
+    /**
+     * Opens the empty channel into which a compaction copies the live records;
+     * by default a sibling file of the storage unit.
+     */
+    protected SeekableByteChannel openCompactionChannel() throws IOException {
+        if (this.path == null) {
+            throw new IOException("Storage unit can not be compacted:"
+                    + " there is no file path for the new storage unit");
+        }
+        return openChannel(compactionPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Makes the channel of a finished compaction the storage unit; called while
+     * holding the write lock, before the channel replaces the previous one.
+     */
+    protected void replaceStorageUnit(SeekableByteChannel compactionChannel) throws IOException {
+        Files.move(compactionPath(), this.path, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Closes and removes the channel of a failed compaction.
+     */
+    protected void discardCompactionChannel(SeekableByteChannel compactionChannel) throws IOException {
+        compactionChannel.close();
+        Files.deleteIfExists(compactionPath());
+    }
+
+    private Path compactionPath() {
+        return this.path.resolveSibling(this.path.getFileName() + ".compact");
+    }
+
+    /**
+     * Copies the live records which start between the two pointers to the target channel,
+     * each one while holding the read lock. The copies keep the capacity of the records,
+     * the space of the deleted records is reclaimed.
+     *
+     * @return the last copied RecordHeader or the given one if there was no live record
+     */
+    private RecordHeader copyRecords(SeekableByteChannel targetChannel, RelocationTable relocationTable,
+                                     RecordHeader lastCopiedHeader, long fromPointer, long toPointer,
+                                     long maxBytesPerSecond) throws IOException, InterruptedException {
+        IOScratch scratch = this.ioScratch.get();
+        long targetPointer = (lastCopiedHeader != null
+                ? lastCopiedHeader.getNextStartPointer()
+                : this.mainHeader.getEndPointer());
+        ByteBuffer dataBuffer = ByteBuffer.allocate(1024);
+        long copiedBytes = 0;
+        long startNanos = System.nanoTime();
+        RecordHeader recordHeader = new RecordHeader();
+        recordHeader.setStartPointer(fromPointer);
+        while (recordHeader.hasRoomForNext(toPointer)) {
+            long nextPointer;
+            readLock.lockInterruptibly();
+            try {
+                readRecordHeader(this.channel, recordHeader, scratch.headerBuffer);
+                if (!recordHeader.isValid()) {
+                    break;
+                }
+                nextPointer = recordHeader.getNextStartPointer();
+                if (!recordHeader.isDeleted()) {
+                    long oldStartPointer = recordHeader.getStartPointer();
+                    dataBuffer = copyRecord(targetChannel, recordHeader, targetPointer,
+                            recordHeader.getRecordDataCapacity(), dataBuffer);
+                    relocationTable.add(oldStartPointer, targetPointer);
+                    targetPointer = recordHeader.getNextStartPointer();
+                    copiedBytes += recordHeader.getRecordDataLength();
+                    lastCopiedHeader = recordHeader;
+                }
+            } finally {
+                readLock.unlock();
+            }
+            throttle(copiedBytes, startNanos, maxBytesPerSecond);
+            recordHeader = new RecordHeader();
+            recordHeader.setStartPointer(nextPointer);
+        }
+        return lastCopiedHeader;
+    }
+
+    /**
+     * Copies a live record to the given position of the target channel. The RecordHeader is
+     * moved to the new position and gets the given capacity.
+     *
+     * @return the buffer which holds the payload, a larger one if the given one was too small
+     */
+    private ByteBuffer copyRecord(SeekableByteChannel targetChannel, RecordHeader recordHeader,
+                                  long targetPointer, int targetCapacity, ByteBuffer dataBuffer) throws IOException {
+        IOScratch scratch = this.ioScratch.get();
+        int minCapacity = Math.max(recordHeader.getRecordDataLength(), scratch.recordData.getLength());
+        if (dataBuffer.capacity() < minCapacity) {
+            dataBuffer = ByteBuffer.allocate(minCapacity);
+        }
+        readRecordData(recordHeader, dataBuffer);
+        recordHeader.setStartPointer(targetPointer);
+        recordHeader.setRecordDataStartPointer(recordHeader.getEndPointer());
+        recordHeader.setRecordDataCapacity(targetCapacity);
+        scratch.recordData.initFromRecordHeader(recordHeader);
+        writeRecord(targetChannel, scratch, recordHeader, scratch.recordData, dataBuffer);
+        return dataBuffer;
+    }
+
+    private static void throttle(long copiedBytes, long startNanos, long maxBytesPerSecond) throws InterruptedException {
+        if (maxBytesPerSecond > 0) {
+            long targetNanos = (long) ((copiedBytes / (double) maxBytesPerSecond) * TimeUnit.SECONDS.toNanos(1));
+            long sleepNanos = targetNanos - (System.nanoTime() - startNanos);
+            if (sleepNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(sleepNanos);
+            }
+        }
+    }
+
+    /**
+     * Replaces the storage unit by the compacted one; called while holding the write lock.
+     *
+     * @return the count of bytes reclaimed
+     */
+    private long swapChannel(SeekableByteChannel compactionChannel,
+                             RecordHeader lastRecordHeader, RelocationTable... relocationTables) throws IOException {
+        long tailPointer = (lastRecordHeader != null
+                ? lastRecordHeader.getNextStartPointer()
+                : this.mainHeader.getEndPointer());
+        this.mainHeader.setHeadPointer(this.mainHeader.getEndPointer());
+        this.mainHeader.write(compactionChannel, headerBuffer());
+        ChannelForcer.force(compactionChannel);
+        long reclaimedBytes = this.channel.size() - compactionChannel.size();
+
+        replaceStorageUnit(compactionChannel);
+
+        ChannelForcer prevChannelForcer = this.channelForcer;
+        SeekableByteChannel prevChannel = this.channel;
+        this.channelForcer = new ChannelForcer(compactionChannel,
+                prevChannelForcer.getDurability(), prevChannelForcer.getForceIntervalMillis());
+        this.channel = compactionChannel;
+        this.changeCount.incrementAndGet();
+        this.sharedTailPointer.reset(tailPointer);
+        if (this.freeSpaceList != null) {
+            this.freeSpaceList.clear();
+        }
+        if (this.recordKeyIndex != null) {
+            // The keys are taken from the copied RecordHeaders
+            this.recordKeyIndex.clear();
+            RecordHeader copyHeader = new RecordHeader();
+            for (RelocationTable relocationTable : relocationTables) {
+                for (int entry = 0; relocationTable.size() > entry; ++entry) {
+                    long startPointer = relocationTable.getNewStartPointer(entry);
+                    if (startPointer >= 0) {
+                        copyHeader.setStartPointer(startPointer);
+                        readRecordHeader(compactionChannel, copyHeader, headerBuffer());
+                        this.recordKeyIndex.put(copyHeader.getKey(), startPointer);
+                    }
+                }
+            }
+        }
+        try {
+            prevChannelForcer.close();
+        } finally {
+            prevChannel.close();
+        }
+        return reclaimedBytes;
+    }
+
+    private void recordDeleted(RecordHeader recordHeader) {
+        this.deletedBytes.addAndGet(recordHeader.getNextStartPointer() - recordHeader.getStartPointer());
+        StorageMetrics currMetrics = this.metrics;
+        if (currMetrics != null) {
+            currMetrics.recordTombstone();
+        }
+        if (this.freeSpaceList != null) {
+            this.freeSpaceList.add(recordHeader.getStartPointer(), recordHeader.getRecordDataCapacity());
+        }
+        recordChanged(recordHeader.getStartPointer());
+    }
+
+    /**
+     * Notes a record which was changed in place, so a running compaction transfers the change.
+     */
+    private void recordChanged(long startPointer) {
+        this.changeCount.incrementAndGet();
+        if (this.compactionLog != null) {
+            this.compactionLog.add(startPointer);
+        }
+    }
+
+    /**
+     * Numbers the write operation of the current thread; called while holding the write lock.
+     */
+    private void markWritten() {
+        this.ioScratch.get().writeSeq = this.channelForcer.written();
+    }
+
+    /**
+     * Waits until the last write operation of the current thread is durable;
+     * called after the write lock was released.
+     */
+    private void awaitDurable() throws IOException, InterruptedException {
+        IOScratch scratch = this.ioScratch.get();
+        long writeSeq = scratch.writeSeq;
+        scratch.writeSeq = 0;
+        this.channelForcer.awaitDurable(writeSeq);
+    }
+
+    private ByteBuffer headerBuffer() {
+        return this.ioScratch.get().headerBuffer;
+    }
+
     MainHeader getMainHeader() {
         return this.mainHeader;
     }
 
+    SeekableByteChannel getChannel() {
+        return this.channel;
+    }
+
+    /**
+     * Returns the count of the records changed in place and of the compactions; a read
+     * without a lock is valid if the count is unchanged and the storage is not
+     * {@link #isWriteLocked() write locked} after the read.
+     */
+    long getChangeCount() {
+        return this.changeCount.get();
+    }
+
+    boolean isWriteLocked() {
+        return this.readWriteLock.isWriteLocked();
+    }
+
+    /**
+     * Searches the RecordHeader with the given key which is not deleted.
+     *
+     * @return the RecordHeader of the current thread, which is overwritten by its next lookup,
+     * or null if there is no such record
+     */
     RecordHeader selectRecordHeader(byte[] key) throws IOException {
-        RecordHeaderIteratorByKey iteratorByKey = new RecordHeaderIteratorByKey(null, key);
-        if (iteratorByKey.hasNext()) {
-            return iteratorByKey.next();
+        if (this.recordKeyIndex != null) {
+            return selectIndexedRecordHeader(key);
         }
-        return null;
+        return walkRecordHeaders(this.mainHeader.getEndPointer(), key);
     }
 
-    RecordHeader deleteRecordHeader(byte[] key) throws IOException {
-        RecordHeader recordHeader = selectRecordHeader(key);
-        if (recordHeader != null) {
-            if (!recordHeader.isDeleted()) {
-                recordHeader.setDeleted(true);
-                recordHeader.write(this.channel, this.headerBuffer);
+    /**
+     * Writes the RecordHeader, the header of the RecordData and the payload, which are
+     * adjacent in the storage unit, with one gathering write.
+     */
+    private void writeRecord(SeekableByteChannel targetChannel, IOScratch scratch, RecordHeader recordHeader,
+                             RecordData recordData, ByteBuffer dataBuffer) throws IOException {
+        initChecksum(recordHeader, dataBuffer);
+        ByteBuffer headerBuffer = scratch.headerBuffer;
+        headerBuffer.clear();
+        recordHeader.writeTo(headerBuffer);
+        recordData.writeTo(headerBuffer);
+        headerBuffer.flip();
+        dataBuffer.flip();
+        ByteBuffer[] gatherBuffers = scratch.gatherBuffers;
+        gatherBuffers[0] = headerBuffer;
+        gatherBuffers[1] = dataBuffer;
+        try {
+            long expectedLength = (long) headerBuffer.remaining() + dataBuffer.remaining();
+            long bytesWritten = PositionalIO.write(targetChannel, gatherBuffers, recordHeader.getStartPointer());
+            if (bytesWritten != expectedLength) {
+                throw new IOException("Insufficient number of bytes written:" +
+                        " Count of bytes currently written "
+                        + bytesWritten
+                        + ", but expected amount is "
+                        + expectedLength);
             }
-            return recordHeader;
+            recordBytesWritten(bytesWritten);
+        } finally {
+            gatherBuffers[1] = null;
         }
-        return null;
     }
 
-    RecordHeader findLastRecordHeader() throws IOException {
-        RecordHeaderIterator iterator = new RecordHeaderIterator(lastRecordHeader);
-        RecordHeader nextRecordHeader = null;
-        while (iterator.hasNext()) {
-            nextRecordHeader = iterator.next();
+    /**
+     * Sets the checksum of the payload, which is held by the buffer in front of its position,
+     * or removes the checksums if the records are written without.
+     */
+    private void initChecksum(RecordHeader recordHeader, ByteBuffer dataBuffer) {
+        if (this.isChecksums) {
+            recordHeader.setDataChecksum(Crc32c.checksum(dataBuffer, 0, dataLengthOf(dataBuffer)));
+        } else {
+            recordHeader.clearChecksum();
         }
-        return lastRecordHeader = nextRecordHeader;
     }
 
-    class RecordHeaderIterator implements Iterator<RecordHeader> {
+    /**
+     * Reads the RecordHeader from its start pointer and verifies its checksum, if the
+     * checksums of the RecordHeaders are verified.
+     */
+    private void readRecordHeader(SeekableByteChannel sourceChannel, RecordHeader recordHeader,
+                                  ByteBuffer headerBuffer) throws IOException {
+        recordHeader.read(sourceChannel, headerBuffer);
+        if ((this.checksumVerification != ChecksumVerification.OFF) && recordHeader.isValid()
+                && !recordHeader.isHeaderChecksumValid(headerBuffer, 0)) {
+            throw new IOException("Checksum mismatch:"
+                    + " the RecordHeader at "
+                    + recordHeader.getStartPointer()
+                    + " is damaged");
+        }
+    }
 
-        final long overallSize;
+    private static long startNanos(StorageMetrics metrics) {
+        return (metrics != null ? System.nanoTime() : 0);
+    }
 
-        RecordHeader nextRecordHeader = null;
+    private static void recordLatency(StorageMetrics metrics, StorageMetrics.Operation operation, long startNanos) {
+        if (metrics != null) {
+            metrics.recordLatency(operation, startNanos);
+        }
+    }
 
-        RecordHeaderIterator(RecordHeader startRecordHeader) throws IOException {
-            overallSize = RecordChannelStorage.this.channel.size();
-            nextRecordHeader = (startRecordHeader != null ? startRecordHeader : new RecordHeader());
+    /**
+     * Acquires the read lock and records how long it was waited for.
+     */
+    private void lockRead(StorageMetrics metrics, long startNanos) throws InterruptedException {
+        this.readLock.lockInterruptibly();
+        if (metrics != null) {
+            metrics.recordReadLockWait(System.nanoTime() - startNanos);
         }
+    }
 
-        @Override
-        public boolean hasNext() {
-            try {
-                if (nextRecordHeader.hasRoomForNext(overallSize)) {
-                    nextRecordHeader.read(RecordChannelStorage.this.channel, RecordChannelStorage.this.headerBuffer);
-                    return nextRecordHeader.isValid();
+    /**
+     * Acquires the write lock and records how long it was waited for.
+     */
+    private void lockWrite(StorageMetrics metrics, long startNanos) throws InterruptedException {
+        this.writeLock.lockInterruptibly();
+        if (metrics != null) {
+            metrics.recordWriteLockWait(System.nanoTime() - startNanos);
+        }
+    }
+
+    private void recordScannedHeaders(int headerCount) {
+        StorageMetrics currMetrics = this.metrics;
+        if (currMetrics != null) {
+            currMetrics.recordScannedHeaders(headerCount);
+        }
+    }
+
+    private void recordBytesWritten(long byteCount) {
+        StorageMetrics currMetrics = this.metrics;
+        if (currMetrics != null) {
+            currMetrics.recordBytesWritten(byteCount);
+        }
+    }
+
+    private void recordBytesRead(long byteCount) {
+        StorageMetrics currMetrics = this.metrics;
+        if (currMetrics != null) {
+            currMetrics.recordBytesRead(byteCount);
+        }
+    }
+
+    private void readRecordData(RecordHeader recordHeader, ByteBuffer dataBuffer) throws IOException {
+        RecordData currRecordData = this.ioScratch.get().recordData;
+        currRecordData.initFromRecordHeader(recordHeader);
+        currRecordData.read(this.channel, dataBuffer);
+        currRecordData.readData(this.channel, dataBuffer);
+        recordBytesRead(recordHeader.getRecordDataLength());
+        if ((this.checksumVerification == ChecksumVerification.FULL)
+                && !recordHeader.isDataChecksumValid(dataBuffer, 0)) {
+            throw new IOException("Checksum mismatch:"
+                    + " the payload of the RecordHeader at "
+                    + recordHeader.getStartPointer()
+                    + " is damaged");
+        }
+    }
+
+    /**
+     * Searches the first RecordHeader at or behind the head pointer which is not deleted.
+     * The head pointer is moved behind the deleted RecordHeaders on the way, so they
+     * are not read again.
+     */
+    private RecordHeader selectHeadRecordHeader() throws IOException {
+        RecordHeader headRecordHeader = walkRecordHeaders(this.mainHeader.getHeadPointer(), null);
+        this.mainHeader.setHeadPointer(this.ioScratch.get().selectedRecordHeader.getStartPointer());
+        return headRecordHeader;
+    }
+
+    /**
+     * Walks the chain of the RecordHeaders from the given start pointer to the first one which
+     * is not deleted and has the given key. Every RecordHeader is read into the buffer of the
+     * current thread and decoded in place by a {@link RecordHeaderView}; only the one found is
+     * decoded into the selected RecordHeader of the current thread, so the walk allocates nothing.
+     *
+     * @param key the key or null for any record which is not deleted
+     * @return the selected RecordHeader of the current thread or null if there is no such record;
+     * in both cases its start pointer is where the walk stopped
+     */
+    private RecordHeader walkRecordHeaders(long startPointer, byte[] key) throws IOException {
+        IOScratch scratch = this.ioScratch.get();
+        RecordHeader recordHeader = scratch.selectedRecordHeader;
+        RecordHeaderView recordHeaderView = scratch.recordHeaderView;
+        ByteBuffer headerBuffer = scratch.headerBuffer;
+        int recordHeaderLength = recordHeaderView.getLength();
+        long overallSize = this.channel.size();
+        long nextStartPointer = startPointer;
+        int headerCount = 0;
+        while ((nextStartPointer + recordHeaderLength) <= overallSize) {
+            ++headerCount;
+            headerBuffer.clear();
+            headerBuffer.limit(recordHeaderLength);
+            if (PositionalIO.read(this.channel, headerBuffer, nextStartPointer) != recordHeaderLength) {
+                break;
+            }
+            recordHeaderView.wrap(headerBuffer, 0);
+            if (!recordHeaderView.isValidAt(nextStartPointer)) {
+                break;
+            }
+            if ((this.checksumVerification != ChecksumVerification.OFF) && !recordHeaderView.isHeaderChecksumValid()) {
+                throw new IOException("Checksum mismatch:"
+                        + " the RecordHeader at "
+                        + nextStartPointer
+                        + " is damaged");
+            }
+            boolean isFound = !recordHeaderView.isDeleted() && ((key == null) || recordHeaderView.keyEquals(key));
+            if (isFound || !recordHeaderView.isConsistent()) {
+                // Decoding reports an inconsistent RecordHeader
+                headerBuffer.position(0);
+                recordHeader.setStartPointer(nextStartPointer);
+                recordHeader.readFrom(headerBuffer);
+                if (isFound) {
+                    recordScannedHeaders(headerCount);
+                    return recordHeader;
                 }
-            } catch (Exception ex) {
-                throw new RuntimeException(ex);
             }
-            return false;
+            nextStartPointer = recordHeaderView.getNextStartPointer();
         }
+        recordScannedHeaders(headerCount);
+        recordHeader.setStartPointer(nextStartPointer);
+        return null;
+    }
 
-        @Override
-        public RecordHeader next() {
-            RecordHeader currRecHeader = nextRecordHeader;
-            nextRecordHeader = nextRecordHeader.nextHeader();
-            return currRecHeader;
+    private RecordHeader selectIndexedRecordHeader(byte[] key) throws IOException {
+        long startPointer = this.recordKeyIndex.get(key);
+        if (startPointer < 0) {
+            return null;
+        }
+        RecordHeader recordHeader = this.ioScratch.get().selectedRecordHeader;
+        recordHeader.setStartPointer(startPointer);
+        readRecordHeader(this.channel, recordHeader, headerBuffer());
+        recordScannedHeaders(1);
+        if (recordHeader.isValid() && !recordHeader.isDeleted() && Arrays.equals(key, recordHeader.getKey())) {
+            return recordHeader;
         }
+        // The index is out of date
+        this.recordKeyIndex.remove(key, startPointer);
+        return null;
+    }
 
-        @Override
-        public void remove() {
+    RecordHeader deleteRecordHeader(byte[] key) throws IOException {
+        RecordHeader recordHeader = selectRecordHeader(key);
+        if (recordHeader != null) {
+            deleteRecordHeader(recordHeader);
+            return recordHeader;
         }
+        return null;
     }
 
-    class RecordHeaderIteratorByKey extends RecordHeaderIterator {
+    private void deleteRecordHeader(RecordHeader recordHeader) throws IOException {
+        if (!recordHeader.isDeleted()) {
+            recordHeader.setDeleted(true);
+            recordHeader.write(this.channel, headerBuffer());
+            if (this.recordKeyIndex != null) {
+                this.recordKeyIndex.remove(recordHeader.getKey(), recordHeader.getStartPointer());
+            }
+            recordDeleted(recordHeader);
+            this.aliveRecordCount.decrementAndGet();
+            markWritten();
+        }
+    }
 
-        final byte[] key;
+    /**
+     * Overwrites the payload of a record whose capacity is large enough for the new payload;
+     * called while holding the write lock.
+     */
+    private int rewriteRecord(RecordHeader recordHeader, ByteBuffer dataBuffer) throws IOException {
+        IOScratch scratch = this.ioScratch.get();
+        recordHeader.setRecordDataLength(dataLengthOf(dataBuffer));
+        scratch.recordData.initFromRecordHeader(recordHeader);
+        writeRecord(this.channel, scratch, recordHeader, scratch.recordData, dataBuffer);
+        if ((recordHeader.getRecordDataLength() > this.mainHeader.getMaxRecordDataLength())
+                || (recordHeader.getRecordDataLength() < this.mainHeader.getMinRecordDataLength())) {
+            this.mainHeader.setMaxRecordDataLength(Math.max(recordHeader.getRecordDataLength(), this.mainHeader.getMaxRecordDataLength()));
+            this.mainHeader.setMinRecordDataLength(Math.min(recordHeader.getRecordDataLength(), this.mainHeader.getMinRecordDataLength()));
+            this.mainHeader.write(this.channel, scratch.headerBuffer);
+        }
+        recordChanged(recordHeader.getStartPointer());
+        markWritten();
+        return recordHeader.getRecordIndex();
+    }
 
-        RecordHeaderIteratorByKey(RecordHeader startRecordHeader, byte[] key) throws IOException {
-            super(startRecordHeader);
-            this.key = key;
+    /**
+     * Gives a slot back which was taken by {@link #allocateFreeSlot(int)}, but could not be
+     * written: the deleted RecordHeader is written again and the slot is returned to the
+     * free list. The free list rereads the RecordHeader before the slot is reused, so a slot
+     * whose RecordHeader could not be restored is skipped.
+     */
+    private void releaseFreeSlot(RecordHeader freeRecordHeader, long prevHeadPointer) {
+        try {
+            freeRecordHeader.write(this.channel, headerBuffer());
+        } catch (IOException | RuntimeException ex) {
+            // The slot stays unreadable until the storage unit is recovered
         }
+        this.deletedBytes.addAndGet(freeRecordHeader.getNextStartPointer() - freeRecordHeader.getStartPointer());
+        this.mainHeader.setHeadPointer(prevHeadPointer);
+        this.freeSpaceList.add(freeRecordHeader.getStartPointer(), freeRecordHeader.getRecordDataCapacity());
+    }
 
-        @Override
-        public boolean hasNext() {
-            boolean hasNext = super.hasNext();
-            while (hasNext) {
-                if (Arrays.equals(key, this.nextRecordHeader.getKey())) {
-                    return true;
-                } else {
-                    next();
-                    hasNext = super.hasNext();
+    /**
+     * Takes the slot of a deleted record from the free list which can take the given length.
+     *
+     * @return the RecordHeader of the deleted record or null if no slot is reused
+     */
+    private RecordHeader allocateFreeSlot(int dataLength) throws IOException {
+        if (this.freeSpaceList == null) {
+            return null;
+        }
+        long startPointer;
+        while ((startPointer = this.freeSpaceList.allocate(dataLength)) >= 0) {
+            RecordHeader freeRecordHeader = new RecordHeader();
+            freeRecordHeader.setStartPointer(startPointer);
+            readRecordHeader(this.channel, freeRecordHeader, headerBuffer());
+            if (freeRecordHeader.isValid() && freeRecordHeader.isDeleted()
+                    && (freeRecordHeader.getRecordDataCapacity() >= dataLength)) {
+                this.deletedBytes.addAndGet(freeRecordHeader.getStartPointer() - freeRecordHeader.getNextStartPointer());
+                // The queue has to see the record, even if it is in front of the head
+                if (this.mainHeader.getHeadPointer() > startPointer) {
+                    this.mainHeader.setHeadPointer(startPointer);
                 }
+                recordChanged(startPointer);
+                return freeRecordHeader;
             }
-            return false;
         }
+        return null;
+    }
 
+    private static int dataLengthOf(ByteBuffer dataBuffer) {
+        return (dataBuffer != null ? dataBuffer.position() : 0);
     }
 
-    class RecordHeaderIteratorAlive extends RecordHeaderIterator {
+    /**
+     * Buffer and StorageUnits which are used by one thread for a single operation.
+     */
+    static final class IOScratch {
 
-        RecordHeaderIteratorAlive(RecordHeader startRecordHeader) throws IOException {
-            super(startRecordHeader);
+        final RecordData recordData;
+
+        final RecordHeader recordHeader;
+
+        /**
+         * RecordHeader found by a lookup, see {@link RecordChannelStorage#selectRecordHeader(byte[])}.
+         */
+        final RecordHeader selectedRecordHeader;
+
+        final RecordHeaderView recordHeaderView;
+
+        final ByteBuffer headerBuffer;
+
+        final ByteBuffer[] gatherBuffers;
+
+        /**
+         * Number of the last write operation, see {@link ChannelForcer#written()}
+         */
+        long writeSeq;
+
+        IOScratch() {
+            this.recordData = new RecordData();
+            this.recordHeader = new RecordHeader();
+            this.selectedRecordHeader = new RecordHeader();
+            this.recordHeaderView = new RecordHeaderView();
+            this.headerBuffer = ByteBuffer.allocate(calcBufferCapacity());
+            this.gatherBuffers = new ByteBuffer[2];
         }
 
-        @Override
-        public boolean hasNext() {
-            boolean hasNext = super.hasNext();
-            while (hasNext) {
-                if (!this.nextRecordHeader.isDeleted()) {
-                    return true;
-                } else {
-                    next();
-                    hasNext = super.hasNext();
-                }
-            }
-            return false;
+        private int calcBufferCapacity() {
+            int overallRecordHeaderLength = this.recordData.getLength() + this.recordHeader.getLength();
+            int bufferCapacity = overallRecordHeaderLength + new MainHeader().getLength();
+            // round n up to nearest multiple of m
+            int n = bufferCapacity;
+            int m = 1024;
+            return (n >= 0 ? ((n + m - 1) / m) * m : (n / m) * m);
         }
 
     }
@@ -0,0 +1,71 @@
+package eu.dirk.haase.io.storage.record;
+
+import java.io.IOException;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Background task which compacts a {@link RecordChannelStorage} as soon as enough
+ * bytes are occupied by deleted records.
+ * <p>
+ * The task is meant to be scheduled periodically, for example with
+ * {@link ScheduledExecutorService#scheduleWithFixedDelay(Runnable, long, long, java.util.concurrent.TimeUnit)}.
+ * Readers and writers of the storage keep running during a compaction, see
+ * {@link RecordChannelStorage#compact(long)}.
+ */
+public class RecordCompactor implements Runnable {
+
+    private final RecordChannelStorage recordChannelStorage;
+
+    private final long minDeletedBytes;
+
+    private final long maxBytesPerSecond;
+
+    private volatile long reclaimedBytes;
+
+    private volatile IOException lastException;
+
+    /**
+     * @param recordChannelStorage the storage to compact
+     * @param minDeletedBytes      count of bytes occupied by deleted records which triggers a compaction
+     * @param maxBytesPerSecond    maximum rate at which the records are copied or 0 for no limit
+     */
+    public RecordCompactor(RecordChannelStorage recordChannelStorage, long minDeletedBytes, long maxBytesPerSecond) {
+        if (minDeletedBytes <= 0) {
+            throw new IllegalArgumentException("Count of deleted bytes must be greater than 0: Current value was " + minDeletedBytes);
+        }
+        this.recordChannelStorage = recordChannelStorage;
+        this.minDeletedBytes = minDeletedBytes;
+        this.maxBytesPerSecond = maxBytesPerSecond;
+    }
+
+    @Override
+    public void run() {
+        if (this.recordChannelStorage.getDeletedBytes() < this.minDeletedBytes) {
+            return;
+        }
+        try {
+            this.reclaimedBytes += this.recordChannelStorage.compact(this.maxBytesPerSecond);
+            this.lastException = null;
+        } catch (IOException ex) {
+            // Keep the storage running, the compaction is tried again at the next run.
+            this.lastException = ex;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Count of bytes which were reclaimed by all compactions of this task.
+     */
+    public long getReclaimedBytes() {
+        return reclaimedBytes;
+    }
+
+    /**
+     * The exception of the last compaction or null if it succeeded.
+     */
+    public IOException getLastException() {
+        return lastException;
+    }
+
+}
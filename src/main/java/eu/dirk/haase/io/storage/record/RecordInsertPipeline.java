@@ -0,0 +1,212 @@
+package eu.dirk.haase.io.storage.record;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Inserts the records of many producers by a single writer thread.
+ * <p>
+ * The producers do not contend for the write lock of the storage: they publish their
+ * inserts into a lock-free {@link InsertRingBuffer}. The writer thread takes all published
+ * inserts, at most the max batch size, and writes them by one
+ * {@link RecordStorage#insertRecords(byte[][], ByteBuffer[], int[])}, so the records of a batch are
+ * laid out one after the other and the write lock, the MainHeader and the
+ * {@link Durability} are paid once per batch. Then the writer completes the futures of the
+ * producers. The more producers insert at the same time, the larger the batches get.
+ * <p>
+ * The inserts of a batch succeed or fail together as far as the storage writes the batch
+ * atomically; a storage with several storage units may commit only a part of the batch,
+ * see {@link RecordStorage#insertRecords(byte[][], ByteBuffer[], int[])}, and only the
+ * futures of the inserts which were not committed fail. The futures are completed by the writer
+ * thread, so dependent actions which take long should be run by the async methods of
+ * {@link CompletableFuture}. A full ring buffer makes the producers wait for the writer.
+ * The storage is not closed by the pipeline.
+ */
+public class RecordInsertPipeline {
+
+    public final static int DEFAULT_CAPACITY = 1024;
+
+    public final static int DEFAULT_MAX_BATCH_SIZE = 256;
+
+    /**
+     * Longest sleep of the writer thread, a bound for a missed wake-up.
+     */
+    private final static long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * Count of the times the writer thread yields for the next insert before it sleeps,
+     * so a steady flow of inserts does not pay for waking up the writer.
+     */
+    private final static int YIELD_COUNT = 100;
+
+    private final RecordStorage recordStorage;
+
+    private final InsertRingBuffer ringBuffer;
+
+    private final int maxBatchSize;
+
+    private final Thread writerThread;
+
+    private volatile boolean isClosed;
+
+    /**
+     * Whether or not the writer thread is about to sleep, so the producers have to wake it up.
+     */
+    private volatile boolean isWriterParked;
+
+    public RecordInsertPipeline(RecordStorage recordStorage) {
+        this(recordStorage, DEFAULT_CAPACITY, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    /**
+     * Starts the writer thread.
+     *
+     * @param capacity     count of the inserts the ring buffer holds, a power of two
+     * @param maxBatchSize count of the inserts written at most by one batch
+     */
+    public RecordInsertPipeline(RecordStorage recordStorage, int capacity, int maxBatchSize) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Max batch size must be greater than 0: Current value was " + maxBatchSize);
+        }
+        this.recordStorage = recordStorage;
+        this.ringBuffer = new InsertRingBuffer(capacity);
+        this.maxBatchSize = Math.min(maxBatchSize, capacity);
+        this.isClosed = false;
+        this.isWriterParked = false;
+        this.writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runWriter();
+            }
+        }, "RecordInsertPipeline");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Hands the record over to the writer thread. The data buffer must not be used until
+     * the future is completed, see {@link RecordStorage#insertRecord(byte[], ByteBuffer)}.
+     *
+     * @return future of the index of the record, completed exceptionally with an
+     * {@link IllegalStateException} if the pipeline is closed
+     */
+    public CompletableFuture<Integer> insertRecord(byte[] key, ByteBuffer dataBuffer) {
+        if ((key == null) || (dataBuffer == null)) {
+            throw new IllegalArgumentException("Key and data buffer must not be null");
+        }
+        CompletableFuture<Integer> future = new CompletableFuture<Integer>();
+        if (this.isClosed) {
+            future.completeExceptionally(newClosedException());
+            return future;
+        }
+        long sequence = this.ringBuffer.tryClaim();
+        while (sequence < 0) {
+            if (this.isClosed) {
+                future.completeExceptionally(newClosedException());
+                return future;
+            }
+            // Wait for the writer to free slots
+            LockSupport.parkNanos(1);
+            sequence = this.ringBuffer.tryClaim();
+        }
+        this.ringBuffer.publish(sequence, key, dataBuffer, future);
+        if (this.isWriterParked) {
+            LockSupport.unpark(this.writerThread);
+        }
+        if (this.isClosed && !this.writerThread.isAlive()) {
+            // The writer may have finished before the insert was published
+            failPending();
+        }
+        return future;
+    }
+
+    /**
+     * Writes the inserts which are already published and stops the writer thread.
+     * Later inserts are completed exceptionally.
+     */
+    public void close() throws InterruptedException {
+        this.isClosed = true;
+        LockSupport.unpark(this.writerThread);
+        this.writerThread.join();
+        failPending();
+    }
+
+    public boolean isClosed() {
+        return isClosed;
+    }
+
+    private void runWriter() {
+        byte[][] keys = new byte[this.maxBatchSize][];
+        ByteBuffer[] dataBuffers = new ByteBuffer[this.maxBatchSize];
+        CompletableFuture<Integer>[] futures = InsertRingBuffer.newFutures(this.maxBatchSize);
+        int[] recordIndices = new int[this.maxBatchSize];
+        int idleCount = 0;
+        while (true) {
+            int count = this.ringBuffer.drainTo(keys, dataBuffers, futures);
+            if (count > 0) {
+                writeBatch(keys, dataBuffers, futures, recordIndices, count);
+                idleCount = 0;
+            } else if (this.isClosed && this.ringBuffer.isDrained()) {
+                return;
+            } else if (YIELD_COUNT > idleCount) {
+                ++idleCount;
+                Thread.yield();
+            } else {
+                this.isWriterParked = true;
+                // Checked again, since an insert published meanwhile may have missed the flag
+                if (!this.ringBuffer.hasPublished() && !this.isClosed) {
+                    LockSupport.parkNanos(this, PARK_NANOS);
+                }
+                this.isWriterParked = false;
+            }
+        }
+    }
+
+    private void writeBatch(byte[][] keys, ByteBuffer[] dataBuffers, CompletableFuture<Integer>[] futures,
+                            int[] recordIndices, int count) {
+        byte[][] batchKeys = (count == keys.length ? keys : Arrays.copyOf(keys, count));
+        ByteBuffer[] batchDataBuffers = (count == dataBuffers.length ? dataBuffers : Arrays.copyOf(dataBuffers, count));
+        Arrays.fill(recordIndices, 0, count, -1);
+        try {
+            this.recordStorage.insertRecords(batchKeys, batchDataBuffers, recordIndices);
+            for (int i = 0; count > i; ++i) {
+                futures[i].complete(recordIndices[i]);
+            }
+        } catch (Exception ex) {
+            // Inserts into other storage units of the batch may have been committed
+            for (int i = 0; count > i; ++i) {
+                if (recordIndices[i] >= 0) {
+                    futures[i].complete(recordIndices[i]);
+                } else {
+                    futures[i].completeExceptionally(ex);
+                }
+            }
+        } finally {
+            Arrays.fill(keys, 0, count, null);
+            Arrays.fill(dataBuffers, 0, count, null);
+            Arrays.fill(futures, 0, count, null);
+        }
+    }
+
+    /**
+     * Completes the inserts exceptionally which were published after the writer thread
+     * finished; the caller takes the part of the consumer.
+     */
+    private synchronized void failPending() {
+        byte[][] keys = new byte[this.ringBuffer.capacity()][];
+        ByteBuffer[] dataBuffers = new ByteBuffer[this.ringBuffer.capacity()];
+        CompletableFuture<Integer>[] futures = InsertRingBuffer.newFutures(this.ringBuffer.capacity());
+        int count = this.ringBuffer.drainTo(keys, dataBuffers, futures);
+        for (int i = 0; count > i; ++i) {
+            futures[i].completeExceptionally(newClosedException());
+        }
+    }
+
+    private static IllegalStateException newClosedException() {
+        return new IllegalStateException("Insert pipeline is closed");
+    }
+
+}
@@ -0,0 +1,66 @@
+package eu.dirk.haase.io.storage.record;
+
+import eu.dirk.haase.io.storage.channel.SeekableMappedByteChannel;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * {@link RecordStorage} over a memory-mapped file.
+ * <p>
+ * Uses the same layout of MainHeader, RecordHeader and RecordData as the
+ * {@link RecordChannelStorage}, but all reads and writes are copies from and to
+ * the mapped segments of the file instead of system calls.
+ */
+public class RecordMappedStorage extends RecordChannelStorage {
+
+    private final int segmentSize;
+
+    public RecordMappedStorage(File file, OpenOption... options) throws IOException {
+        this(file.toPath(), options);
+    }
+
+    public RecordMappedStorage(Path path, OpenOption... options) throws IOException {
+        this(path, SeekableMappedByteChannel.DEFAULT_SEGMENT_SIZE, options);
+    }
+
+    public RecordMappedStorage(Path path, int segmentSize, OpenOption... options) throws IOException {
+        super(path, openMappedChannel(path, segmentSize, options));
+        this.segmentSize = segmentSize;
+        fillOpenOptionSet(options);
+    }
+
+    @Override
+    protected SeekableByteChannel openChannel(Path path, OpenOption... options) throws IOException {
+        return openMappedChannel(path, this.segmentSize, options);
+    }
+
+    /**
+     * Opens the mapped channel; a writable file is also opened for reading, since a
+     * mapping in {@link FileChannel.MapMode#READ_WRITE} needs a readable channel.
+     */
+    private static SeekableMappedByteChannel openMappedChannel(Path path, int segmentSize, OpenOption... options) throws IOException {
+        Set<OpenOption> optionSet = new HashSet<OpenOption>(Arrays.asList(options));
+        boolean isWritable = optionSet.contains(StandardOpenOption.WRITE);
+        FileChannel.MapMode mapMode = (isWritable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY);
+        if (isWritable) {
+            optionSet.add(StandardOpenOption.READ);
+        }
+        FileChannel fileChannel = FileChannel.open(path, optionSet);
+        try {
+            return new SeekableMappedByteChannel(fileChannel, mapMode, segmentSize);
+        } catch (IOException ex) {
+            fileChannel.close();
+            throw ex;
+        }
+    }
+
+}
@@ -0,0 +1,57 @@
+package eu.dirk.haase.io.storage.record;
+
+import eu.dirk.haase.io.storage.channel.SeekableChunkedByteChannel;
+
+import java.io.IOException;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * Transient {@link RecordStorage} in direct memory outside of the heap.
+ * <p>
+ * Uses the same layout of MainHeader, RecordHeader and RecordData as the
+ * {@link RecordChannelStorage}, stored in the direct chunks of a {@link SeekableChunkedByteChannel}.
+ * The heap holds only the directory of the chunks, so a storage of several GB neither grows
+ * the heap nor is copied by the garbage collector. The maximum is bounded by
+ * {@code -XX:MaxDirectMemorySize}.
+ * <p>
+ * The records do not survive a {@link #close()}: {@link #create()} starts an empty storage
+ * and there is nothing to {@link #initialize()} from. Polled and deleted records are reclaimed
+ * by {@link #compact(long)}, which copies the live records into new chunks and releases
+ * the previous ones.
+ */
+public class RecordOffHeapStorage extends RecordChannelStorage {
+
+    private final int chunkSize;
+
+    public RecordOffHeapStorage() throws IOException {
+        this(SeekableChunkedByteChannel.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param chunkSize size of the direct chunks, a power of two
+     */
+    public RecordOffHeapStorage(int chunkSize) throws IOException {
+        super(null, new SeekableChunkedByteChannel(chunkSize, true));
+        this.chunkSize = chunkSize;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    @Override
+    protected SeekableByteChannel openCompactionChannel() throws IOException {
+        return new SeekableChunkedByteChannel(this.chunkSize, true);
+    }
+
+    @Override
+    protected void replaceStorageUnit(SeekableByteChannel compactionChannel) throws IOException {
+        // Nothing to replace: the previous channel is closed and releases its chunks
+    }
+
+    @Override
+    protected void discardCompactionChannel(SeekableByteChannel compactionChannel) throws IOException {
+        compactionChannel.close();
+    }
+
+}
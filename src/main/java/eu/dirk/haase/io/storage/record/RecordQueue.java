@@ -0,0 +1,35 @@
+package eu.dirk.haase.io.storage.record;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * FIFO access to the records of a storage unit.
+ * <p>
+ * The position of the first record which was not yet polled is persisted,
+ * so polling does not scan the records which were already consumed.
+ */
+public interface RecordQueue {
+
+    /**
+     * Appends a record at the tail of the queue.
+     *
+     * @return the index of the record
+     */
+    int offer(byte[] key, ByteBuffer dataBuffer) throws IOException, InterruptedException;
+
+    /**
+     * Reads the record at the head of the queue into the buffer and removes the record.
+     *
+     * @return the index of the record or -1 if the queue is empty
+     */
+    int poll(ByteBuffer dataBuffer) throws IOException, InterruptedException;
+
+    /**
+     * Reads the record at the head of the queue into the buffer without removing the record.
+     *
+     * @return the index of the record or -1 if the queue is empty
+     */
+    int peek(ByteBuffer dataBuffer) throws IOException, InterruptedException;
+
+}
@@ -0,0 +1,374 @@
+package eu.dirk.haase.io.storage.record;
+
+import eu.dirk.haase.io.storage.record.data.RecordData;
+import eu.dirk.haase.io.storage.record.header.RecordHeader;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Recovery pass which is run when an existing storage unit is opened.
+ * <p>
+ * Walks the chain of RecordHeaders from the MainHeader to the last complete record and
+ * collects the state which is not persisted in the MainHeader: the tail, the index of
+ * the next record, the count of the records which are not deleted, the count of the
+ * bytes of the deleted records, the slots of the deleted records and the start pointers
+ * of the keys for the index.
+ * <p>
+ * The storage unit is read in large chunks. A storage unit of at least
+ * {@link #PARALLEL_THRESHOLD} bytes is split into one region per processor (at least two); the regions are
+ * walked in parallel, every region resynchronizes on its first RecordHeader (see
+ * {@link RecordSpliterator}), and the chains of the regions are joined afterwards.
+ * <p>
+ * The checksums of the records are verified as configured by
+ * {@link RecordChannelStorage#setChecksumVerification(ChecksumVerification)}: a record whose
+ * checksum does not match ends the chain like a torn record.
+ */
+final class RecordRecovery {
+
+    final static long PARALLEL_THRESHOLD = 64L * 1024 * 1024;
+
+    private final RecordChannelStorage recordStorage;
+
+    private final SeekableByteChannel channel;
+
+    private final long startPointer;
+
+    private final long endPointer;
+
+    private final int readAheadSize;
+
+    private final boolean isCollectingKeys;
+
+    private final boolean isCollectingFreeSlots;
+
+    private final long parallelThreshold;
+
+    private final ChecksumVerification checksumVerification;
+
+    /**
+     * @param isCollectingKeys      whether or not the start pointers of the keys are collected for the index
+     * @param isCollectingFreeSlots whether or not the slots of the deleted records are collected
+     */
+    RecordRecovery(RecordChannelStorage recordStorage, SeekableByteChannel channel, long startPointer,
+                   long endPointer, int readAheadSize, boolean isCollectingKeys, boolean isCollectingFreeSlots) {
+        this(recordStorage, channel, startPointer, endPointer, readAheadSize, isCollectingKeys, isCollectingFreeSlots, PARALLEL_THRESHOLD);
+    }
+
+    RecordRecovery(RecordChannelStorage recordStorage, SeekableByteChannel channel, long startPointer,
+                   long endPointer, int readAheadSize, boolean isCollectingKeys, boolean isCollectingFreeSlots,
+                   long parallelThreshold) {
+        this.recordStorage = recordStorage;
+        this.channel = channel;
+        this.startPointer = startPointer;
+        this.endPointer = endPointer;
+        this.readAheadSize = readAheadSize;
+        this.isCollectingKeys = isCollectingKeys;
+        this.isCollectingFreeSlots = isCollectingFreeSlots;
+        this.parallelThreshold = parallelThreshold;
+        this.checksumVerification = recordStorage.getChecksumVerification();
+    }
+
+    /**
+     * Walks the storage unit, in parallel if it is large enough.
+     *
+     * @return the state of the storage unit; its tail is the end of the last complete record
+     */
+    Region recover() throws IOException, InterruptedException {
+        return recover(this.startPointer);
+    }
+
+    /**
+     * Walks the storage unit from the given RecordHeader on, in parallel if the rest is large enough.
+     */
+    Region recover(long fromPointer) throws IOException, InterruptedException {
+        long length = this.endPointer - fromPointer;
+        if (length < this.parallelThreshold) {
+            return walk(fromPointer, this.endPointer, true);
+        }
+        int regionCount = (int) Math.min(Math.max(Runtime.getRuntime().availableProcessors(), 2),
+                Math.max(length / Math.max(this.parallelThreshold / 4, 1), 1));
+        final long regionLength = length / regionCount;
+        List<Region> regions;
+        try {
+            regions = IntStream.range(0, regionCount).parallel().mapToObj(i -> {
+                long regionStart = fromPointer + (i * regionLength);
+                long regionFence = ((i + 1) == regionCount ? this.endPointer : regionStart + regionLength);
+                try {
+                    return walk(regionStart, regionFence, (i == 0));
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                } catch (InterruptedException ex) {
+                    throw new RuntimeException(ex);
+                }
+            }).collect(Collectors.toList());
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        } catch (RuntimeException ex) {
+            // The parallel stream may wrap the exception of a worker thread once more
+            for (Throwable cause = ex.getCause(); cause != null; cause = cause.getCause()) {
+                if (cause instanceof InterruptedException) {
+                    throw (InterruptedException) cause;
+                }
+            }
+            throw ex;
+        }
+        Region recovered = regions.get(0);
+        for (int i = 1; regionCount > i; ++i) {
+            if (recovered.isBroken) {
+                break;
+            }
+            Region region = regions.get(i);
+            if ((region.maxRecordIndex < 0) && !region.isBroken && (recovered.tailPointer >= region.tailPointer)) {
+                // No RecordHeader starts within the region: it is covered by the last record
+                continue;
+            }
+            if (region.firstStartPointer != recovered.tailPointer) {
+                // The chain does not continue at the RecordHeader which was found by the resynchronization
+                recovered.join(walk(recovered.tailPointer, this.endPointer, true));
+                break;
+            }
+            recovered.join(region);
+        }
+        return recovered;
+    }
+
+    /**
+     * Searches the first RecordHeader behind the given position; used to tell a torn trailing
+     * record from a corrupt storage unit.
+     *
+     * @return the start pointer of the RecordHeader or -1 if there is none
+     */
+    long findRecordHeader(long fromPointer) throws IOException, InterruptedException {
+        if (fromPointer >= this.endPointer) {
+            return -1;
+        }
+        RecordSpliterator recordSpliterator = new RecordSpliterator(this.recordStorage, this.channel, fromPointer,
+                this.endPointer, this.endPointer, this.readAheadSize, false);
+        long startPointer = recordSpliterator.findRecordHeader();
+        return (startPointer < this.endPointer ? startPointer : -1);
+    }
+
+    /**
+     * Walks the chain of the RecordHeaders which start within the given range.
+     */
+    private Region walk(long originPointer, long fencePointer, boolean isSynchronized) throws IOException, InterruptedException {
+        long firstStartPointer = originPointer;
+        if (!isSynchronized) {
+            firstStartPointer = new RecordSpliterator(this.recordStorage, this.channel, originPointer,
+                    fencePointer, this.endPointer, this.readAheadSize, false).findRecordHeader();
+        }
+        Region region = new Region(firstStartPointer, this.isCollectingKeys, this.isCollectingFreeSlots);
+        RecordHeader recordHeader = new RecordHeader();
+        int recordHeaderLength = recordHeader.getLength();
+        int recordDataLength = new RecordData().getLength();
+        ByteBuffer readAheadBuffer = ByteBuffer.allocate((int) Math.max(Math.min(this.readAheadSize,
+                this.endPointer - firstStartPointer), recordHeaderLength));
+        readAheadBuffer.limit(0);
+        long bufferStartPointer = firstStartPointer;
+        long nextStartPointer = firstStartPointer;
+        while (nextStartPointer < fencePointer) {
+            if ((nextStartPointer + recordHeaderLength) > this.endPointer) {
+                region.isBroken = true;
+                break;
+            }
+            if ((nextStartPointer + recordHeaderLength) > (bufferStartPointer + readAheadBuffer.limit())) {
+                readAheadBuffer.clear();
+                readAheadBuffer.limit((int) Math.min(readAheadBuffer.capacity(), this.endPointer - nextStartPointer));
+                this.recordStorage.readAhead(this.channel, readAheadBuffer, nextStartPointer);
+                readAheadBuffer.flip();
+                bufferStartPointer = nextStartPointer;
+                if (recordHeaderLength > readAheadBuffer.limit()) {
+                    region.isBroken = true;
+                    break;
+                }
+            }
+            readAheadBuffer.position((int) (nextStartPointer - bufferStartPointer));
+            recordHeader.setStartPointer(nextStartPointer);
+            try {
+                recordHeader.readFrom(readAheadBuffer);
+            } catch (IOException ex) {
+                // Inconsistent RecordHeader
+                region.isBroken = true;
+                break;
+            }
+            long followingStartPointer = recordHeader.getEndPointer() + recordDataLength + recordHeader.getRecordDataCapacity();
+            if (!recordHeader.isValid() || (followingStartPointer > this.endPointer)) {
+                // Invalid or torn record
+                region.isBroken = true;
+                break;
+            }
+            if ((this.checksumVerification != ChecksumVerification.OFF)
+                    && !recordHeader.isHeaderChecksumValid(readAheadBuffer, (int) (nextStartPointer - bufferStartPointer))) {
+                // Damaged RecordHeader
+                region.isBroken = true;
+                break;
+            }
+            if ((this.checksumVerification == ChecksumVerification.FULL) && recordHeader.hasChecksum()) {
+                long payloadStartPointer = recordHeader.getRecordDataStartPointer() + recordDataLength;
+                if ((payloadStartPointer + recordHeader.getRecordDataLength()) > (bufferStartPointer + readAheadBuffer.limit())) {
+                    if ((followingStartPointer - nextStartPointer) <= readAheadBuffer.capacity()) {
+                        readAheadBuffer.clear();
+                        readAheadBuffer.limit((int) Math.min(readAheadBuffer.capacity(), this.endPointer - nextStartPointer));
+                        this.recordStorage.readAhead(this.channel, readAheadBuffer, nextStartPointer);
+                        readAheadBuffer.flip();
+                        bufferStartPointer = nextStartPointer;
+                    }
+                }
+                if (!isPayloadIntact(recordHeader, readAheadBuffer, bufferStartPointer, payloadStartPointer)) {
+                    // Torn or damaged payload
+                    region.isBroken = true;
+                    break;
+                }
+            }
+            region.add(recordHeader, followingStartPointer);
+            nextStartPointer = followingStartPointer;
+        }
+        region.tailPointer = nextStartPointer;
+        return region;
+    }
+
+    /**
+     * Verifies the checksum of the payload, which is taken from the read-ahead buffer if it
+     * holds the payload, otherwise it is read on its own.
+     */
+    private boolean isPayloadIntact(RecordHeader recordHeader, ByteBuffer readAheadBuffer, long bufferStartPointer,
+                                    long payloadStartPointer) throws IOException, InterruptedException {
+        int payloadLength = recordHeader.getRecordDataLength();
+        if ((payloadStartPointer >= bufferStartPointer)
+                && ((payloadStartPointer + payloadLength) <= (bufferStartPointer + readAheadBuffer.limit()))) {
+            return recordHeader.isDataChecksumValid(readAheadBuffer, (int) (payloadStartPointer - bufferStartPointer));
+        }
+        ByteBuffer payloadBuffer = ByteBuffer.allocate(payloadLength);
+        if (this.recordStorage.readAhead(this.channel, payloadBuffer, payloadStartPointer) != payloadLength) {
+            return false;
+        }
+        return recordHeader.isDataChecksumValid(payloadBuffer, 0);
+    }
+
+    /**
+     * State of a walked range of the storage unit.
+     */
+    static final class Region {
+
+        /**
+         * Start pointer of the first RecordHeader of the range.
+         */
+        final long firstStartPointer;
+
+        /**
+         * End of the last complete record of the range.
+         */
+        long tailPointer;
+
+        /**
+         * Whether or not the walk stopped at an invalid or torn record.
+         */
+        boolean isBroken;
+
+        int maxRecordIndex = -1;
+
+        int aliveRecordCount;
+
+        long deletedBytes;
+
+        /**
+         * Keys of the records which are not deleted, one behind the other.
+         */
+        byte[] keys;
+
+        long[] keyStartPointers;
+
+        int keyCount;
+
+        long[] freeStartPointers;
+
+        int[] freeCapacities;
+
+        int freeSlotCount;
+
+        Region(long firstStartPointer, boolean isCollectingKeys, boolean isCollectingFreeSlots) {
+            this.firstStartPointer = firstStartPointer;
+            this.tailPointer = firstStartPointer;
+            this.keys = (isCollectingKeys ? new byte[0] : null);
+            this.keyStartPointers = (isCollectingKeys ? new long[0] : null);
+            this.freeStartPointers = (isCollectingFreeSlots ? new long[0] : null);
+            this.freeCapacities = (isCollectingFreeSlots ? new int[0] : null);
+        }
+
+        void add(RecordHeader recordHeader, long followingStartPointer) {
+            this.maxRecordIndex = Math.max(this.maxRecordIndex, recordHeader.getRecordIndex());
+            if (recordHeader.isDeleted()) {
+                this.deletedBytes += followingStartPointer - recordHeader.getStartPointer();
+                if (this.freeStartPointers != null) {
+                    ensureFreeSlotCapacity(this.freeSlotCount + 1);
+                    this.freeStartPointers[this.freeSlotCount] = recordHeader.getStartPointer();
+                    this.freeCapacities[this.freeSlotCount] = recordHeader.getRecordDataCapacity();
+                    ++this.freeSlotCount;
+                }
+            } else {
+                ++this.aliveRecordCount;
+                if (this.keys != null) {
+                    ensureKeyCapacity(this.keyCount + 1);
+                    System.arraycopy(recordHeader.getKey(), 0, this.keys, this.keyCount * RecordHeader.KEY_LENGTH, RecordHeader.KEY_LENGTH);
+                    this.keyStartPointers[this.keyCount] = recordHeader.getStartPointer();
+                    ++this.keyCount;
+                }
+            }
+        }
+
+        /**
+         * Copies the key with the given number into the given array of {@link RecordHeader#KEY_LENGTH} bytes.
+         */
+        void copyKey(int i, byte[] key) {
+            System.arraycopy(this.keys, i * RecordHeader.KEY_LENGTH, key, 0, RecordHeader.KEY_LENGTH);
+        }
+
+        private void ensureKeyCapacity(int count) {
+            if (count > this.keyStartPointers.length) {
+                int capacity = Math.max(Math.max(this.keyStartPointers.length << 1, count), 16);
+                this.keys = Arrays.copyOf(this.keys, capacity * RecordHeader.KEY_LENGTH);
+                this.keyStartPointers = Arrays.copyOf(this.keyStartPointers, capacity);
+            }
+        }
+
+        private void ensureFreeSlotCapacity(int count) {
+            if (count > this.freeStartPointers.length) {
+                int capacity = Math.max(Math.max(this.freeStartPointers.length << 1, count), 16);
+                this.freeStartPointers = Arrays.copyOf(this.freeStartPointers, capacity);
+                this.freeCapacities = Arrays.copyOf(this.freeCapacities, capacity);
+            }
+        }
+
+        /**
+         * Appends the state of the following range.
+         */
+        void join(Region region) {
+            this.tailPointer = region.tailPointer;
+            this.isBroken = region.isBroken;
+            this.maxRecordIndex = Math.max(this.maxRecordIndex, region.maxRecordIndex);
+            this.aliveRecordCount += region.aliveRecordCount;
+            this.deletedBytes += region.deletedBytes;
+            if (this.keys != null) {
+                ensureKeyCapacity(this.keyCount + region.keyCount);
+                System.arraycopy(region.keys, 0, this.keys, this.keyCount * RecordHeader.KEY_LENGTH, region.keyCount * RecordHeader.KEY_LENGTH);
+                System.arraycopy(region.keyStartPointers, 0, this.keyStartPointers, this.keyCount, region.keyCount);
+                this.keyCount += region.keyCount;
+            }
+            if (this.freeStartPointers != null) {
+                ensureFreeSlotCapacity(this.freeSlotCount + region.freeSlotCount);
+                System.arraycopy(region.freeStartPointers, 0, this.freeStartPointers, this.freeSlotCount, region.freeSlotCount);
+                System.arraycopy(region.freeCapacities, 0, this.freeCapacities, this.freeSlotCount, region.freeSlotCount);
+                this.freeSlotCount += region.freeSlotCount;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,362 @@
+package eu.dirk.haase.io.storage.record;
+
+import eu.dirk.haase.io.storage.record.data.RecordData;
+import eu.dirk.haase.io.storage.record.header.RecordHeader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Sequential scan over the records of a {@link RecordChannelStorage} which are not deleted.
+ * <p>
+ * The storage unit is read in large chunks into a read-ahead buffer (some MB by default),
+ * and the RecordHeaders and the payloads are decoded from this buffer. A full scan therefore
+ * needs one read per chunk instead of one read per RecordHeader and one per payload.
+ * A record which is larger than the read-ahead buffer is read on its own.
+ * <p>
+ * The checksums of the records are verified as configured by
+ * {@link RecordChannelStorage#setChecksumVerification(ChecksumVerification)}.
+ * <p>
+ * The scan covers the records which were stored when the scan was started. The storage
+ * unit must not be compacted while it is scanned. A record whose RecordHeader and payload
+ * were read separately is read again if a record was changed in place in between.
+ * <p>
+ * {@link #next()} returns a ScannedRecord of its own for every record, with copies of the
+ * key and the payload, so it can be kept. {@link #advance()} returns the same ScannedRecord
+ * for every record instead, whose payload is a read-only view of the read-ahead buffer which
+ * is valid until {@link #hasNext()} is called again; a scan by {@link #advance()} allocates
+ * nothing once the read-ahead buffer is filled.
+ * <p>
+ * A scanner is used by one thread.
+ */
+public class RecordScanner implements Iterator<RecordScanner.ScannedRecord> {
+
+    public final static int DEFAULT_READ_AHEAD_SIZE = 4 * 1024 * 1024;
+
+    private final RecordChannelStorage recordStorage;
+
+    private final SeekableByteChannel channel;
+
+    /**
+     * RecordHeaders which start at or behind this position are not scanned.
+     */
+    private final long limitPointer;
+
+    private final long endPointer;
+
+    private final ByteBuffer readAheadBuffer;
+
+    /**
+     * Read-only view of the read-ahead buffer which holds the payload of the current record.
+     */
+    private final ByteBuffer readAheadView;
+
+    private final RecordHeader recordHeader;
+
+    private final RecordData recordData;
+
+    private final ChecksumVerification checksumVerification;
+
+    /**
+     * Position of the first byte of the read-ahead buffer within the storage unit.
+     */
+    private long bufferStartPointer;
+
+    /**
+     * Count of the bytes of the read-ahead buffer which were read from the storage unit.
+     */
+    private int bufferLength;
+
+    /**
+     * Count of the reads of the storage unit.
+     */
+    private long readCount;
+
+    /**
+     * Change count of the storage, see {@link RecordChannelStorage#getChangeCount()}, taken
+     * before the last read of the read-ahead buffer.
+     */
+    private long bufferChangeCount;
+
+    private long nextStartPointer;
+
+    /**
+     * Flyweight which holds the current record.
+     */
+    private final ScannedRecord currRecord;
+
+    /**
+     * Whether or not the current record was found by {@link #hasNext()} but not yet returned.
+     */
+    private boolean isPending;
+
+    RecordScanner(RecordChannelStorage recordStorage, SeekableByteChannel channel, long startPointer,
+                  long endPointer, int readAheadSize) {
+        this(recordStorage, channel, startPointer, endPointer, endPointer, readAheadSize);
+    }
+
+    /**
+     * @param startPointer start pointer of the first RecordHeader
+     * @param limitPointer RecordHeaders which start at or behind this position are not scanned
+     * @param endPointer   end of the storage unit when the scan was started
+     */
+    RecordScanner(RecordChannelStorage recordStorage, SeekableByteChannel channel, long startPointer,
+                  long limitPointer, long endPointer, int readAheadSize) {
+        if (readAheadSize <= 0) {
+            throw new IllegalArgumentException("Read-ahead size must be greater than 0: Current value was " + readAheadSize);
+        }
+        this.recordStorage = recordStorage;
+        this.channel = channel;
+        this.limitPointer = limitPointer;
+        this.endPointer = endPointer;
+        this.readAheadBuffer = ByteBuffer.allocate((int) Math.max(Math.min(readAheadSize, endPointer - startPointer), 0));
+        this.readAheadView = this.readAheadBuffer.asReadOnlyBuffer();
+        this.recordHeader = new RecordHeader();
+        this.recordData = new RecordData();
+        this.checksumVerification = recordStorage.getChecksumVerification();
+        this.bufferStartPointer = startPointer;
+        this.nextStartPointer = startPointer;
+        this.currRecord = new ScannedRecord(-1, -1, this.recordHeader.getKey(), null);
+    }
+
+    /**
+     * Returns the records as a sequential {@link Stream}.
+     */
+    public Stream<ScannedRecord> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!this.isPending) {
+            try {
+                this.isPending = scanNextRecord();
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(ex);
+            }
+        }
+        return this.isPending;
+    }
+
+    @Override
+    public ScannedRecord next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        this.isPending = false;
+        return this.currRecord.copy();
+    }
+
+    /**
+     * Moves to the next record without allocating: the returned ScannedRecord, its key and
+     * its payload are overwritten by the next call.
+     *
+     * @return the flyweight which holds the record or null if there are no further records
+     */
+    public ScannedRecord advance() {
+        if (!hasNext()) {
+            return null;
+        }
+        this.isPending = false;
+        return this.currRecord;
+    }
+
+    /**
+     * Decodes the RecordHeaders behind the last record until a RecordHeader is found which is
+     * not deleted, and sets the current record.
+     *
+     * @return false if there are no further records
+     */
+    private boolean scanNextRecord() throws IOException, InterruptedException {
+        int recordHeaderLength = this.recordHeader.getLength();
+        int recordDataLength = this.recordData.getLength();
+        while ((this.nextStartPointer < this.limitPointer) && ((this.nextStartPointer + recordHeaderLength) <= this.endPointer)) {
+            long startPointer = this.nextStartPointer;
+            ByteBuffer headerBuffer = buffered(startPointer, recordHeaderLength);
+            long headerReadCount = this.readCount;
+            long headerChangeCount = this.bufferChangeCount;
+            this.recordHeader.setStartPointer(startPointer);
+            this.recordHeader.readFrom(headerBuffer);
+            if (!this.recordHeader.isValid()) {
+                break;
+            }
+            if ((this.checksumVerification != ChecksumVerification.OFF)
+                    && !this.recordHeader.isHeaderChecksumValid(headerBuffer, headerBuffer.position() - recordHeaderLength)) {
+                throw new IOException("Checksum mismatch:"
+                        + " the RecordHeader at "
+                        + startPointer
+                        + " is damaged");
+            }
+            this.nextStartPointer = this.recordHeader.getEndPointer() + recordDataLength + this.recordHeader.getRecordDataCapacity();
+            if (this.recordHeader.isDeleted()) {
+                continue;
+            }
+            long recordDataStartPointer = this.recordHeader.getRecordDataStartPointer();
+            long dataEndPointer = recordDataStartPointer + recordDataLength + this.recordHeader.getRecordDataLength();
+            if (dataEndPointer > this.endPointer) {
+                break;
+            }
+            ByteBuffer dataBuffer;
+            int overallLength = (int) (dataEndPointer - recordDataStartPointer);
+            if (overallLength <= this.readAheadBuffer.capacity()) {
+                dataBuffer = buffered(recordDataStartPointer, overallLength);
+            } else {
+                dataBuffer = readRecord(recordDataStartPointer, overallLength);
+            }
+            if ((this.readCount != headerReadCount) && (this.recordStorage.getChangeCount() != headerChangeCount)) {
+                // The header and the payload were read separately and the storage was changed
+                // in place in between, so the record is read again
+                this.bufferLength = 0;
+                this.nextStartPointer = startPointer;
+                continue;
+            }
+            this.recordData.setStartPointer(recordDataStartPointer);
+            this.recordData.readFrom(dataBuffer);
+            if (!this.recordData.isValid()) {
+                throw new IOException("RecordData of the RecordHeader at "
+                        + startPointer
+                        + " is not valid: Expected RecordData at "
+                        + recordDataStartPointer);
+            }
+            if ((this.checksumVerification == ChecksumVerification.FULL)
+                    && !this.recordHeader.isDataChecksumValid(dataBuffer, dataBuffer.position())) {
+                throw new IOException("Checksum mismatch:"
+                        + " the payload of the RecordHeader at "
+                        + startPointer
+                        + " is damaged");
+            }
+            ByteBuffer payload;
+            if (dataBuffer == this.readAheadBuffer) {
+                payload = this.readAheadView;
+                payload.clear();
+            } else {
+                payload = dataBuffer.asReadOnlyBuffer();
+            }
+            payload.position(dataBuffer.position());
+            payload.limit(dataBuffer.position() + this.recordHeader.getRecordDataLength());
+            this.currRecord.set(startPointer, this.recordHeader.getRecordIndex(), payload);
+            return true;
+        }
+        this.nextStartPointer = this.endPointer;
+        return false;
+    }
+
+    /**
+     * Positions the read-ahead buffer at the given position of the storage unit, its limit
+     * behind the given length; reads ahead if necessary.
+     */
+    private ByteBuffer buffered(long position, int length) throws IOException, InterruptedException {
+        long bufferEndPointer = this.bufferStartPointer + this.bufferLength;
+        if ((position < this.bufferStartPointer) || ((position + length) > bufferEndPointer)) {
+            this.readAheadBuffer.clear();
+            this.readAheadBuffer.limit((int) Math.min(this.readAheadBuffer.capacity(), this.endPointer - position));
+            ++this.readCount;
+            this.bufferChangeCount = this.recordStorage.getChangeCount();
+            int bytesRead = this.recordStorage.readAhead(this.channel, this.readAheadBuffer, position);
+            this.bufferStartPointer = position;
+            this.bufferLength = Math.max(bytesRead, 0);
+            if (length > bytesRead) {
+                throw new IOException("Insufficient number of bytes read:" +
+                        " Count of bytes currently read "
+                        + bytesRead
+                        + ", but expected amount is "
+                        + length);
+            }
+        }
+        int offset = (int) (position - this.bufferStartPointer);
+        this.readAheadBuffer.clear();
+        this.readAheadBuffer.position(offset);
+        this.readAheadBuffer.limit(offset + length);
+        return this.readAheadBuffer;
+    }
+
+    /**
+     * Reads a record which does not fit into the read-ahead buffer.
+     */
+    private ByteBuffer readRecord(long position, int length) throws IOException, InterruptedException {
+        ByteBuffer recordBuffer = ByteBuffer.allocate(length);
+        ++this.readCount;
+        int bytesRead = this.recordStorage.readAhead(this.channel, recordBuffer, position);
+        if (bytesRead != length) {
+            throw new IOException("Insufficient number of bytes read:" +
+                    " Count of bytes currently read "
+                    + bytesRead
+                    + ", but expected amount is "
+                    + length);
+        }
+        recordBuffer.flip();
+        return recordBuffer;
+    }
+
+    /**
+     * A record found by the {@link RecordScanner}.
+     */
+    public static final class ScannedRecord {
+
+        private long startPointer;
+
+        private int recordIndex;
+
+        private final byte[] key;
+
+        private ByteBuffer data;
+
+        ScannedRecord(long startPointer, int recordIndex, byte[] key, ByteBuffer data) {
+            this.startPointer = startPointer;
+            this.recordIndex = recordIndex;
+            this.key = key;
+            this.data = data;
+        }
+
+        void set(long startPointer, int recordIndex, ByteBuffer data) {
+            this.startPointer = startPointer;
+            this.recordIndex = recordIndex;
+            this.data = data;
+        }
+
+        /**
+         * A ScannedRecord of its own with copies of the key and the payload.
+         */
+        ScannedRecord copy() {
+            ByteBuffer dataCopy = ByteBuffer.allocate(this.data.remaining());
+            dataCopy.put(this.data.duplicate());
+            dataCopy.flip();
+            return new ScannedRecord(this.startPointer, this.recordIndex, this.key.clone(), dataCopy.asReadOnlyBuffer());
+        }
+
+        /**
+         * Start pointer of the RecordHeader within the storage unit.
+         */
+        public long getStartPointer() {
+            return startPointer;
+        }
+
+        public int getRecordIndex() {
+            return recordIndex;
+        }
+
+        public byte[] getKey() {
+            return key;
+        }
+
+        /**
+         * Read-only payload between its position and its limit; the payload of the flyweight
+         * returned by {@link RecordScanner#advance()} is valid until the scanner is advanced.
+         */
+        public ByteBuffer getData() {
+            return data;
+        }
+
+    }
+
+}
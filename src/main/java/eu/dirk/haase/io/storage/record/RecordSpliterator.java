@@ -0,0 +1,214 @@
+package eu.dirk.haase.io.storage.record;
+
+import eu.dirk.haase.io.storage.record.data.RecordData;
+import eu.dirk.haase.io.storage.record.header.RecordHeader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * {@link Spliterator} over the records of a {@link RecordChannelStorage} which are not deleted;
+ * splits the storage unit by byte range, so that the records can be scanned in parallel.
+ * <p>
+ * A Spliterator covers the records whose RecordHeader starts within its range. The range of
+ * a split does not start at a RecordHeader in general: before the first record is scanned the
+ * Spliterator resynchronizes on the first RecordHeader of its range. A RecordHeader is recognized
+ * by its magic data and its start pointer, which is stored within the RecordHeader, by its
+ * checksum, if it has one, and by the RecordData it points to. Every range is scanned by a {@link RecordScanner} with a read-ahead
+ * buffer of its own.
+ * <p>
+ * Every {@link RecordScanner.ScannedRecord} is a record of its own with copies of the key and
+ * the payload, see {@link RecordScanner#next()}, so it may be kept or handed over to another thread.
+ */
+public class RecordSpliterator implements Spliterator<RecordScanner.ScannedRecord> {
+
+    private final static int MAGIC_DATA_LENGTH = 8;
+
+    private final RecordChannelStorage recordStorage;
+
+    private final SeekableByteChannel channel;
+
+    private final long endPointer;
+
+    private final int readAheadSize;
+
+    private final RecordHeader recordHeader;
+
+    private final RecordData recordData;
+
+    /**
+     * Start of the range; not necessarily the start pointer of a RecordHeader.
+     */
+    private long originPointer;
+
+    /**
+     * End of the range (exclusive).
+     */
+    private final long fencePointer;
+
+    /**
+     * Whether or not a RecordHeader starts at the origin of the range.
+     */
+    private boolean isSynchronized;
+
+    /**
+     * Scanner of the range; null until the traversal has started.
+     */
+    private RecordScanner recordScanner;
+
+    RecordSpliterator(RecordChannelStorage recordStorage, SeekableByteChannel channel, long startPointer,
+                      long endPointer, int readAheadSize) {
+        this(recordStorage, channel, startPointer, endPointer, endPointer, readAheadSize, true);
+    }
+
+    RecordSpliterator(RecordChannelStorage recordStorage, SeekableByteChannel channel, long originPointer,
+                      long fencePointer, long endPointer, int readAheadSize, boolean isSynchronized) {
+        if (readAheadSize <= 0) {
+            throw new IllegalArgumentException("Read-ahead size must be greater than 0: Current value was " + readAheadSize);
+        }
+        this.recordStorage = recordStorage;
+        this.channel = channel;
+        this.originPointer = originPointer;
+        this.fencePointer = fencePointer;
+        this.endPointer = endPointer;
+        this.readAheadSize = readAheadSize;
+        this.isSynchronized = isSynchronized;
+        this.recordHeader = new RecordHeader();
+        this.recordData = new RecordData();
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super RecordScanner.ScannedRecord> action) {
+        RecordScanner currRecordScanner = recordScanner();
+        if (currRecordScanner.hasNext()) {
+            action.accept(currRecordScanner.next());
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super RecordScanner.ScannedRecord> action) {
+        RecordScanner currRecordScanner = recordScanner();
+        while (currRecordScanner.hasNext()) {
+            action.accept(currRecordScanner.next());
+        }
+    }
+
+    /**
+     * Splits off the first half of the range. A range is not split below the read-ahead
+     * size or once its traversal has started.
+     */
+    @Override
+    public Spliterator<RecordScanner.ScannedRecord> trySplit() {
+        long rangeLength = this.fencePointer - this.originPointer;
+        if ((this.recordScanner != null) || (rangeLength < (2L * this.readAheadSize))) {
+            return null;
+        }
+        long midPointer = this.originPointer + (rangeLength / 2);
+        RecordSpliterator prefix = new RecordSpliterator(this.recordStorage, this.channel, this.originPointer,
+                midPointer, this.endPointer, this.readAheadSize, this.isSynchronized);
+        this.originPointer = midPointer;
+        this.isSynchronized = false;
+        return prefix;
+    }
+
+    /**
+     * Estimates the count of records by the length of the range and the smallest possible record.
+     */
+    @Override
+    public long estimateSize() {
+        long minRecordLength = this.recordHeader.getLength() + this.recordData.getLength();
+        return Math.max(this.fencePointer - this.originPointer, 0) / minRecordLength;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL;
+    }
+
+    private RecordScanner recordScanner() {
+        if (this.recordScanner == null) {
+            long startPointer;
+            try {
+                startPointer = (this.isSynchronized ? this.originPointer : findRecordHeader());
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(ex);
+            }
+            this.recordScanner = new RecordScanner(this.recordStorage, this.channel, startPointer,
+                    this.fencePointer, this.endPointer, this.readAheadSize);
+        }
+        return this.recordScanner;
+    }
+
+    /**
+     * Searches the first RecordHeader which starts within the range.
+     *
+     * @return the start pointer of the RecordHeader or the end of the range if there is none
+     */
+    long findRecordHeader() throws IOException, InterruptedException {
+        int overlap = 2 * MAGIC_DATA_LENGTH - 1;
+        ByteBuffer searchBuffer = ByteBuffer.allocate((int) Math.max(Math.min(this.readAheadSize,
+                this.endPointer - this.originPointer), 2 * MAGIC_DATA_LENGTH));
+        long recordHeaderMagicData = this.recordHeader.getMagicData();
+        long bufferStartPointer = this.originPointer;
+        while (bufferStartPointer < this.fencePointer) {
+            searchBuffer.clear();
+            searchBuffer.limit((int) Math.min(searchBuffer.capacity(), this.endPointer - bufferStartPointer));
+            int bytesRead = this.recordStorage.readAhead(this.channel, searchBuffer, bufferStartPointer);
+            if (bytesRead < (2 * MAGIC_DATA_LENGTH)) {
+                break;
+            }
+            for (int offset = 0; (offset + 2 * MAGIC_DATA_LENGTH) <= bytesRead; ++offset) {
+                long candidatePointer = bufferStartPointer + offset;
+                if (candidatePointer >= this.fencePointer) {
+                    return this.fencePointer;
+                }
+                if ((searchBuffer.getLong(offset) == recordHeaderMagicData)
+                        && (searchBuffer.getLong(offset + MAGIC_DATA_LENGTH) == candidatePointer)
+                        && isRecordHeader(candidatePointer)) {
+                    return candidatePointer;
+                }
+            }
+            bufferStartPointer += (bytesRead - overlap);
+        }
+        return this.fencePointer;
+    }
+
+    /**
+     * Checks a candidate: the RecordHeader has to be consistent and has to point to a RecordData
+     * which is stored at its start pointer.
+     */
+    private boolean isRecordHeader(long candidatePointer) throws IOException, InterruptedException {
+        ByteBuffer headerBuffer = ByteBuffer.allocate(this.recordHeader.getLength());
+        if (this.recordStorage.readAhead(this.channel, headerBuffer, candidatePointer) != headerBuffer.capacity()) {
+            return false;
+        }
+        headerBuffer.flip();
+        this.recordHeader.setStartPointer(candidatePointer);
+        try {
+            this.recordHeader.readFrom(headerBuffer);
+        } catch (IOException ex) {
+            // Inconsistent: the magic data was part of a payload
+            return false;
+        }
+        if (!this.recordHeader.isValid() || (this.recordHeader.getRecordDataStartPointer() != this.recordHeader.getEndPointer())
+                || !this.recordHeader.isHeaderChecksumValid(headerBuffer, 0)) {
+            return false;
+        }
+        ByteBuffer dataHeaderBuffer = ByteBuffer.allocate(this.recordData.getLength());
+        long recordDataStartPointer = this.recordHeader.getRecordDataStartPointer();
+        if (this.recordStorage.readAhead(this.channel, dataHeaderBuffer, recordDataStartPointer) != dataHeaderBuffer.capacity()) {
+            return false;
+        }
+        return (dataHeaderBuffer.getLong(0) == this.recordData.getMagicData())
+                && (dataHeaderBuffer.getLong(MAGIC_DATA_LENGTH) == recordDataStartPointer);
+    }
+
+}
@@ -2,6 +2,7 @@ package eu.dirk.haase.io.storage.record;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 /**
  * Created by dhaa on 18.07.17.
@@ -19,5 +20,59 @@ public interface RecordStorage {
 
     int insertRecord(byte[] key, ByteBuffer dataBuffer) throws IOException, InterruptedException;
 
+    /**
+     * Inserts several records at once: the records are stored one after the other
+     * and the MainHeader is written only once for the whole batch.
+     * <p>
+     * The following records have consecutive indices only if the storage keeps all records
+     * of the batch in one storage unit; a storage which distributes the records over several
+     * storage units assigns the indices per storage unit. Use
+     * {@link #insertRecords(byte[][], ByteBuffer[], int[])} to learn the index of every record.
+     * <p>
+     * The default implementation inserts the records one by one by
+     * {@link #insertRecord(byte[], ByteBuffer)}, so the batch is neither atomic nor written at once.
+     *
+     * @return the index of the first record or -1 if there are no records to insert
+     */
+    default int insertRecords(byte[][] keys, ByteBuffer[] dataBuffers) throws IOException, InterruptedException {
+        int[] recordIndices = new int[keys.length];
+        insertRecords(keys, dataBuffers, recordIndices);
+        return (keys.length == 0 ? -1 : recordIndices[0]);
+    }
+
+    /**
+     * Inserts several records at once like {@link #insertRecords(byte[][], ByteBuffer[])} and
+     * returns the index of every record.
+     * <p>
+     * A storage which distributes the records over several storage units writes one batch
+     * per storage unit, so the batch is not atomic: if the batch of one storage unit fails,
+     * the batches already written stay committed. Their records are told by the indices
+     * which are not -1. The default implementation inserts the records one by one by
+     * {@link #insertRecord(byte[], ByteBuffer)} and stops at the first failure.
+     *
+     * @param recordIndices receives the index of the record with the same position or -1
+     *                      if the record was not inserted; at least as long as the keys
+     */
+    default void insertRecords(byte[][] keys, ByteBuffer[] dataBuffers, int[] recordIndices) throws IOException, InterruptedException {
+        if (keys.length != dataBuffers.length) {
+            throw new IllegalArgumentException("Count of keys and count of data buffers must be equal:"
+                    + " count of keys is "
+                    + keys.length
+                    + ", but count of data buffers is "
+                    + dataBuffers.length);
+        }
+        if (keys.length > recordIndices.length) {
+            throw new IllegalArgumentException("Count of record indices must not be less than count of keys:"
+                    + " count of keys is "
+                    + keys.length
+                    + ", but count of record indices is "
+                    + recordIndices.length);
+        }
+        Arrays.fill(recordIndices, 0, keys.length, -1);
+        for (int i = 0; keys.length > i; ++i) {
+            recordIndices[i] = insertRecord(keys[i], dataBuffers[i]);
+        }
+    }
+
     void close() throws IOException, InterruptedException;
 }
@@ -0,0 +1,64 @@
+package eu.dirk.haase.io.storage.record;
+
+import java.util.Arrays;
+
+/**
+ * Maps the start pointers of the RecordHeaders which were copied by a compaction
+ * to their start pointers in the compacted storage unit.
+ * <p>
+ * The records are copied in the order of the storage unit, so the old start pointers
+ * are ascending and can be searched binary. The keys are not kept: they are read from
+ * the copied RecordHeaders when the index is filled.
+ */
+final class RelocationTable {
+
+    private long[] oldStartPointers;
+
+    private long[] newStartPointers;
+
+    private int size;
+
+    RelocationTable() {
+        this.oldStartPointers = new long[256];
+        this.newStartPointers = new long[256];
+        this.size = 0;
+    }
+
+    void add(long oldStartPointer, long newStartPointer) {
+        if (this.size == this.oldStartPointers.length) {
+            int newCapacity = this.size << 1;
+            this.oldStartPointers = Arrays.copyOf(this.oldStartPointers, newCapacity);
+            this.newStartPointers = Arrays.copyOf(this.newStartPointers, newCapacity);
+        }
+        this.oldStartPointers[this.size] = oldStartPointer;
+        this.newStartPointers[this.size] = newStartPointer;
+        ++this.size;
+    }
+
+    /**
+     * Replaces the new start pointer of an entry, for example after the record
+     * had to be copied once again.
+     */
+    void relocate(int entry, long newStartPointer) {
+        this.newStartPointers[entry] = newStartPointer;
+    }
+
+    /**
+     * Searches the entry of the old start pointer.
+     *
+     * @return the entry or -1 if the record was not copied
+     */
+    int indexOf(long oldStartPointer) {
+        int entry = Arrays.binarySearch(this.oldStartPointers, 0, this.size, oldStartPointer);
+        return (entry >= 0 ? entry : -1);
+    }
+
+    long getNewStartPointer(int entry) {
+        return this.newStartPointers[entry];
+    }
+
+    int size() {
+        return this.size;
+    }
+
+}
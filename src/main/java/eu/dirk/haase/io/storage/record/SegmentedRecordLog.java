@@ -0,0 +1,456 @@
+package eu.dirk.haase.io.storage.record;
+
+import eu.dirk.haase.io.storage.record.metrics.StorageMetrics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Log of records which is stored in a sequence of segment files instead of one
+ * ever-growing file.
+ * <p>
+ * Records are appended to the active segment. The log rolls to a new segment when
+ * the active segment reaches the maximum size or the maximum age. Every segment is a
+ * {@link RecordChannelStorage} of its own; its file is the path of the log with the
+ * number of the segment as suffix.
+ * <p>
+ * A record is addressed by the number of its segment and the start pointer of its
+ * RecordHeader within the segment, both encoded in one long (see {@link #addressOf(int, long)}).
+ * A sealed segment whose records are all deleted or polled is dropped by closing and
+ * deleting its file, so no record has to be rewritten or scanned to reclaim the space.
+ * <p>
+ * The log is thread-safe.
+ */
+public class SegmentedRecordLog {
+
+    /**
+     * Count of bits of an address which hold the position within the segment.
+     */
+    public final static int POSITION_BITS = 40;
+
+    public final static long MAX_SEGMENT_SIZE = (1L << POSITION_BITS) - 1;
+
+    private final static long POSITION_MASK = MAX_SEGMENT_SIZE;
+
+    private final static String SEGMENT_NUMBER_FORMAT = "%010d";
+
+    private final Path path;
+
+    private final long maxSegmentSize;
+
+    private final long maxSegmentAgeMillis;
+
+    private final ReadWriteLock readWriteLock;
+    /**
+     * Held to append to, read from or delete in a segment.
+     */
+    private final Lock readLock;
+    /**
+     * Held to roll to a new segment or to drop a segment.
+     */
+    private final Lock writeLock;
+
+    /**
+     * Open segments by their number.
+     */
+    private final ConcurrentSkipListMap<Integer, Segment> segments;
+
+    private volatile Segment activeSegment;
+
+    private Durability durability = Durability.NONE;
+
+    private long forceIntervalMillis;
+
+    private StorageMetrics metrics;
+
+    /**
+     * @param path                the path of the log, the segment files are stored beside
+     * @param maxSegmentSize      the size at which the log rolls to a new segment
+     * @param maxSegmentAgeMillis the age at which the log rolls to a new segment or 0 for no limit
+     */
+    public SegmentedRecordLog(Path path, long maxSegmentSize, long maxSegmentAgeMillis) {
+        if ((maxSegmentSize <= 0) || (maxSegmentSize > MAX_SEGMENT_SIZE)) {
+            throw new IllegalArgumentException("Maximum segment size must be greater than 0 and not greater than "
+                    + MAX_SEGMENT_SIZE
+                    + ": Current value was "
+                    + maxSegmentSize);
+        }
+        if (maxSegmentAgeMillis < 0) {
+            throw new IllegalArgumentException("Maximum segment age must be 0 or greater: Current value was " + maxSegmentAgeMillis);
+        }
+        this.path = path;
+        this.maxSegmentSize = maxSegmentSize;
+        this.maxSegmentAgeMillis = maxSegmentAgeMillis;
+        this.segments = new ConcurrentSkipListMap<Integer, Segment>();
+        this.readWriteLock = new ReentrantReadWriteLock();
+        this.readLock = this.readWriteLock.readLock();
+        this.writeLock = this.readWriteLock.writeLock();
+    }
+
+    /**
+     * Encodes the number of a segment and a position within the segment into an address.
+     */
+    public static long addressOf(int segment, long position) {
+        return ((long) segment << POSITION_BITS) | (position & POSITION_MASK);
+    }
+
+    public static int segmentOf(long address) {
+        return (int) (address >>> POSITION_BITS);
+    }
+
+    public static long positionOf(long address) {
+        return address & POSITION_MASK;
+    }
+
+    /**
+     * Returns the path of the file of a segment.
+     */
+    public static Path segmentPathOf(Path path, int segment) {
+        return path.resolveSibling(path.getFileName() + "." + String.format(SEGMENT_NUMBER_FORMAT, segment));
+    }
+
+    /**
+     * Sets when the writes are forced to the storage device, the default is {@link Durability#NONE};
+     * applies to the segments which are opened afterwards.
+     *
+     * @see RecordChannelStorage#setDurability(Durability, long)
+     */
+    public void setDurability(Durability durability, long forceIntervalMillis) {
+        this.durability = durability;
+        this.forceIntervalMillis = forceIntervalMillis;
+    }
+
+    /**
+     * Sets the metrics which all segments record into; applies to the segments which are opened afterwards.
+     *
+     * @see RecordChannelStorage#setMetrics(StorageMetrics)
+     */
+    public void setMetrics(StorageMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Opens the existing segments of the log or creates the first segment.
+     */
+    public void open() throws IOException, InterruptedException {
+        writeLock.lockInterruptibly();
+        try {
+            for (int segmentNumber : findSegmentNumbers()) {
+                Segment segment = openSegment(segmentNumber, false);
+                this.segments.put(segmentNumber, segment);
+                this.activeSegment = segment;
+            }
+            if (this.activeSegment == null) {
+                this.activeSegment = openSegment(0, true);
+                this.segments.put(0, this.activeSegment);
+            }
+            for (Segment segment : this.segments.values()) {
+                if (segment != this.activeSegment) {
+                    segment.sealed = true;
+                }
+            }
+            dropConsumedSegments();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Appends a record to the active segment; rolls to a new segment first if the active
+     * segment has reached its maximum size or age.
+     *
+     * @return the address of the record
+     */
+    public long append(byte[] key, ByteBuffer dataBuffer) throws IOException, InterruptedException {
+        while (true) {
+            readLock.lockInterruptibly();
+            try {
+                Segment segment = this.activeSegment;
+                if (!isRollover(segment, dataBuffer)) {
+                    segment.aliveRecordCount.incrementAndGet();
+                    try {
+                        long position = segment.storage.insertRecordPosition(key, dataBuffer);
+                        return addressOf(segment.number, position);
+                    } catch (IOException | InterruptedException | RuntimeException ex) {
+                        segment.aliveRecordCount.decrementAndGet();
+                        throw ex;
+                    }
+                }
+            } finally {
+                readLock.unlock();
+            }
+            rollover(dataBuffer);
+        }
+    }
+
+    /**
+     * Reads the record at the given address into the buffer.
+     *
+     * @return the index of the record within its segment or -1 if the record does not exist or is deleted
+     */
+    public int read(long address, ByteBuffer dataBuffer) throws IOException, InterruptedException {
+        readLock.lockInterruptibly();
+        try {
+            Segment segment = this.segments.get(segmentOf(address));
+            return (segment != null ? segment.storage.selectRecordAt(positionOf(address), dataBuffer) : -1);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Deletes the record at the given address. The segment of the record is dropped if it
+     * is sealed and this was its last record.
+     *
+     * @return the index of the record within its segment or -1 if the record does not exist or was already deleted
+     */
+    public int delete(long address) throws IOException, InterruptedException {
+        Segment segment;
+        int recordIndex = -1;
+        readLock.lockInterruptibly();
+        try {
+            segment = this.segments.get(segmentOf(address));
+            if (segment != null) {
+                recordIndex = segment.storage.deleteRecordAt(positionOf(address));
+            }
+        } finally {
+            readLock.unlock();
+        }
+        if ((recordIndex >= 0) && (segment.aliveRecordCount.decrementAndGet() == 0) && segment.sealed) {
+            dropConsumedSegment(segment);
+        }
+        return recordIndex;
+    }
+
+    /**
+     * Reads the oldest record of the log into the buffer and removes the record.
+     * A sealed segment is dropped as soon as its last record is polled.
+     *
+     * @return the address of the record or -1 if the log is empty
+     */
+    public long poll(ByteBuffer dataBuffer) throws IOException, InterruptedException {
+        for (Segment segment : this.segments.values()) {
+            long position;
+            readLock.lockInterruptibly();
+            try {
+                if (this.segments.get(segment.number) != segment) {
+                    // Dropped meanwhile
+                    continue;
+                }
+                position = segment.storage.pollRecordPosition(dataBuffer);
+            } finally {
+                readLock.unlock();
+            }
+            if (position >= 0) {
+                if ((segment.aliveRecordCount.decrementAndGet() == 0) && segment.sealed) {
+                    dropConsumedSegment(segment);
+                }
+                return addressOf(segment.number, position);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Drops all sealed segments in front of the given segment, whether or not they
+     * still contain records.
+     *
+     * @return the count of dropped segments
+     */
+    public int dropSegmentsBefore(int segmentNumber) throws IOException, InterruptedException {
+        int droppedSegmentCount = 0;
+        writeLock.lockInterruptibly();
+        try {
+            for (Segment segment : new ArrayList<Segment>(this.segments.headMap(segmentNumber).values())) {
+                if (segment.sealed) {
+                    dropSegment(segment);
+                    ++droppedSegmentCount;
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        return droppedSegmentCount;
+    }
+
+    /**
+     * Returns the numbers of the open segments in ascending order.
+     */
+    public List<Integer> getSegmentNumbers() {
+        return new ArrayList<Integer>(this.segments.keySet());
+    }
+
+    public int getActiveSegmentNumber() {
+        return this.activeSegment.number;
+    }
+
+    public void close() throws IOException, InterruptedException {
+        writeLock.lockInterruptibly();
+        try {
+            IOException firstException = null;
+            for (Segment segment : this.segments.values()) {
+                try {
+                    segment.storage.close();
+                } catch (IOException ex) {
+                    firstException = (firstException != null ? firstException : ex);
+                }
+            }
+            this.segments.clear();
+            this.activeSegment = null;
+            if (firstException != null) {
+                throw firstException;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private boolean isRollover(Segment segment, ByteBuffer dataBuffer) {
+        if (segment.isEmpty()) {
+            // A record which is larger than a segment still gets a segment of its own
+            return false;
+        }
+        long tailPointer = segment.storage.getSharedTailPointer().getTailPointer();
+        if ((tailPointer + segment.storage.getSharedTailPointer().calcRecordLength(dataBuffer)) > this.maxSegmentSize) {
+            return true;
+        }
+        return (this.maxSegmentAgeMillis > 0)
+                && ((System.currentTimeMillis() - segment.createdTimeMillis) >= this.maxSegmentAgeMillis);
+    }
+
+    private void rollover(ByteBuffer dataBuffer) throws IOException, InterruptedException {
+        writeLock.lockInterruptibly();
+        try {
+            Segment prevSegment = this.activeSegment;
+            if (!isRollover(prevSegment, dataBuffer)) {
+                // Another thread has already rolled
+                return;
+            }
+            Segment nextSegment = openSegment(prevSegment.number + 1, true);
+            this.segments.put(nextSegment.number, nextSegment);
+            this.activeSegment = nextSegment;
+            prevSegment.sealed = true;
+            if (prevSegment.aliveRecordCount.get() == 0) {
+                dropSegment(prevSegment);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void dropConsumedSegment(Segment segment) throws IOException, InterruptedException {
+        writeLock.lockInterruptibly();
+        try {
+            if ((this.segments.get(segment.number) == segment) && segment.sealed
+                    && (segment.aliveRecordCount.get() == 0)) {
+                dropSegment(segment);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void dropConsumedSegments() throws IOException, InterruptedException {
+        for (Segment segment : new ArrayList<Segment>(this.segments.values())) {
+            if (segment.sealed && (segment.aliveRecordCount.get() == 0)) {
+                dropSegment(segment);
+            }
+        }
+    }
+
+    /**
+     * Closes the segment and deletes its file; called while holding the write lock.
+     */
+    private void dropSegment(Segment segment) throws IOException, InterruptedException {
+        this.segments.remove(segment.number);
+        try {
+            segment.storage.close();
+        } finally {
+            Files.deleteIfExists(segment.storage.getPath());
+        }
+    }
+
+    private Segment openSegment(int segmentNumber, boolean isNew) throws IOException, InterruptedException {
+        Path segmentPath = segmentPathOf(this.path, segmentNumber);
+        RecordChannelStorage storage = new RecordChannelStorage(segmentPath,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            storage.setDurability(this.durability, this.forceIntervalMillis);
+            storage.setMetrics(this.metrics);
+            if (isNew) {
+                storage.create();
+            } else {
+                storage.initialize();
+            }
+            // Taken from the MainHeader, since the file systems do not keep the creation time reliably
+            long createdTimeMillis = storage.getMainHeader().getCreatedTimeMillis();
+            return new Segment(segmentNumber, storage, createdTimeMillis, storage.getAliveRecordCount());
+        } catch (IOException | InterruptedException | RuntimeException ex) {
+            storage.close();
+            throw ex;
+        }
+    }
+
+    private List<Integer> findSegmentNumbers() throws IOException {
+        List<Integer> segmentNumbers = new ArrayList<Integer>();
+        Path directory = this.path.toAbsolutePath().getParent();
+        String prefix = this.path.getFileName() + ".";
+        try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(directory, prefix + "*")) {
+            for (Path segmentPath : directoryStream) {
+                String suffix = segmentPath.getFileName().toString().substring(prefix.length());
+                if ((suffix.length() == String.format(SEGMENT_NUMBER_FORMAT, 0).length()) && suffix.matches("[0-9]+")) {
+                    segmentNumbers.add(Integer.parseInt(suffix));
+                }
+            }
+        }
+        Collections.sort(segmentNumbers);
+        return segmentNumbers;
+    }
+
+    /**
+     * One segment file of the log.
+     */
+    static final class Segment {
+
+        final int number;
+
+        final RecordChannelStorage storage;
+
+        final long createdTimeMillis;
+
+        /**
+         * Count of records which are neither deleted nor polled.
+         */
+        final AtomicInteger aliveRecordCount;
+
+        /**
+         * Whether or not the log has rolled to a later segment, so no record is appended anymore.
+         */
+        volatile boolean sealed;
+
+        Segment(int number, RecordChannelStorage storage, long createdTimeMillis, int aliveRecordCount) {
+            this.number = number;
+            this.storage = storage;
+            this.createdTimeMillis = createdTimeMillis;
+            this.aliveRecordCount = new AtomicInteger(aliveRecordCount);
+        }
+
+        boolean isEmpty() {
+            return this.storage.getSharedTailPointer().getTailPointer() == this.storage.getMainHeader().getEndPointer();
+        }
+
+    }
+
+}
@@ -5,6 +5,7 @@ import eu.dirk.haase.io.storage.record.header.MainHeader;
 import eu.dirk.haase.io.storage.record.header.RecordHeader;
 
 import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -14,6 +15,7 @@ import java.util.concurrent.locks.ReentrantLock;
 public class SharedTailPointer {
 
     private final AtomicLong tailPointerAtomic;
+    private final AtomicInteger recordIndexAtomic;
     private final int sumRecordHeaderLength;
     private final ReentrantLock lock;
     private long tailPointerPrimitiv;
@@ -26,6 +28,7 @@ public class SharedTailPointer {
         this.lock = new ReentrantLock(true);
         this.tailPointerPrimitiv = mainHeader.getLength();
         this.tailPointerAtomic = new AtomicLong(mainHeader.getLength());
+        this.recordIndexAtomic = new AtomicInteger(0);
         this.sumRecordHeaderLength = recordData.getLength() + recordHeader.getLength();
     }
 
@@ -48,16 +51,57 @@ public class SharedTailPointer {
         }
     }
 
+    /**
+     * Reserves the given length at the tail without a lock: the reservation is a single atomic add,
+     * so concurrent writers never wait for each other.
+     *
+     * @return the start pointer of the reserved region
+     */
     public long nextAtomic(long dataLength) {
         return this.tailPointerAtomic.getAndAdd(dataLength);
     }
 
+    /**
+     * Hands out consecutive record indices with a single atomic add. All storages which
+     * share this tail pointer share the indices, so an index is unique within the storage unit.
+     *
+     * @param count count of indices
+     * @return the first of the indices
+     */
+    public int nextRecordIndex(int count) {
+        return this.recordIndexAtomic.getAndAdd(count);
+    }
+
+    /**
+     * Returns the current tail as reserved by {@link #nextAtomic(long)}.
+     */
+    public long getTailPointer() {
+        return this.tailPointerAtomic.get();
+    }
+
+    /**
+     * Sets the index of the next record, for example after an existing storage unit was opened.
+     */
+    public void resetRecordIndex(int nextRecordIndex) {
+        this.recordIndexAtomic.set(nextRecordIndex);
+    }
+
 
     public int calcRecordLength(ByteBuffer dataBuffer) {
         return (dataBuffer != null ? dataBuffer.position() : 0) + this.sumRecordHeaderLength;
     }
 
 
+    /**
+     * Moves the tail to the given position, for example after the storage unit was compacted.
+     */
+    public void reset(long tailPointer) {
+        synchronized (this) {
+            this.tailPointerPrimitiv = tailPointer;
+            this.tailPointerAtomic.set(tailPointer);
+        }
+    }
+
     public void clear() {
         synchronized (this) {
             this.tailPointerPrimitiv = 0;
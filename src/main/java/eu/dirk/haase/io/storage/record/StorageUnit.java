@@ -1,5 +1,7 @@
 package eu.dirk.haase.io.storage.record;
 
+import eu.dirk.haase.io.storage.channel.PositionalIO;
+
 import java.io.IOException;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
@@ -28,6 +30,8 @@ public abstract class StorageUnit {
 
     /**
      * Writes the Header as a sequence of bytes to this channel using the given buffer.
+     * <p>
+     * The Header is written at its start pointer, see {@link PositionalIO}.
      *
      * @param channel
      * @param source
@@ -35,15 +39,13 @@ public abstract class StorageUnit {
      */
     public int write(SeekableByteChannel channel, ByteBuffer source) throws IOException {
         checkConsistency();
-        // Sets the channel's position to the Header's first byte.
-        channel.position(getStartPointer());
         // Prepare ByteBuffer
         source.clear();
         // Initialize the given buffer.
         write(source);
-        // Write the content of the buffer to the channel.
+        // Write the content of the buffer to the channel at the Header's first byte.
         source.flip();
-        int bytesWritten = channel.write(source);
+        int bytesWritten = PositionalIO.write(channel, source, getStartPointer());
         isValid = (bytesWritten == getLength());
         if (!isValid) {
             throw new IOException("Insufficient number of bytes written:" +
@@ -55,9 +57,51 @@ public abstract class StorageUnit {
         return bytesWritten;
     }
 
+    /**
+     * Writes the Header as a sequence of bytes into the given buffer, starting at the
+     * current position of the buffer.
+     * <p>
+     * Used to write several adjacent StorageUnits with one write, see
+     * {@link PositionalIO#write(SeekableByteChannel, ByteBuffer[], long)}.
+     *
+     * @param target
+     * @return the number of bytes put into the buffer
+     * @throws IOException
+     */
+    public int writeTo(ByteBuffer target) throws IOException {
+        checkConsistency();
+        write(target);
+        return getLength();
+    }
+
+    /**
+     * Initialize this Header from a sequence of bytes of the given buffer, starting at the
+     * current position of the buffer; the counterpart of {@link #writeTo(ByteBuffer)}.
+     * <p>
+     * Used to decode StorageUnits from a buffer which holds a larger part of the storage unit.
+     * The Header is valid if it was stored at its current start pointer.
+     *
+     * @param source
+     * @return the number of bytes taken from the buffer
+     * @throws IOException
+     */
+    public int readFrom(ByteBuffer source) throws IOException {
+        long prevStartPointer = getStartPointer();
+        read(source);
+        isValid = (prevStartPointer == getStartPointer());
+        if (isValid()) {
+            checkConsistency();
+        } else {
+            // Not a valid StorageUnit: stay at the position it was read from.
+            setStartPointer(prevStartPointer);
+        }
+        return getLength();
+    }
 
     /**
      * Initialize this Header from a sequence of bytes from this channel using the given buffer.
+     * <p>
+     * The Header is read from its start pointer, see {@link PositionalIO}.
      *
      * @param channel
      * @param target
@@ -65,13 +109,12 @@ public abstract class StorageUnit {
      */
     public int read(SeekableByteChannel channel, ByteBuffer target) throws IOException {
         long prevStartPointer = getStartPointer();
-        // Sets the channel's position to the Header's first byte.
-        channel.position(getStartPointer());
         // Prepare ByteBuffer
         target.clear();
         target.limit(getLength());
-        // Read the content of the entity, to which this channel is connected, into the buffer.
-        int bytesRead = channel.read(target);
+        // Read the content of the entity, to which this channel is connected, into the buffer,
+        // starting at the Header's first byte.
+        int bytesRead = PositionalIO.read(channel, target, getStartPointer());
         isValid = (bytesRead == getLength());
         if (!isValid) {
             throw new IOException("Insufficient number of bytes read:" +
@@ -86,6 +129,9 @@ public abstract class StorageUnit {
             isValid = (prevStartPointer == getStartPointer());
             if (isValid()) {
                 checkConsistency();
+            } else {
+                // Not a valid StorageUnit: stay at the position it was read from.
+                setStartPointer(prevStartPointer);
             }
         }
         return bytesRead;
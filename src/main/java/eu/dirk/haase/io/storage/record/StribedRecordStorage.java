@@ -1,5 +1,7 @@
 package eu.dirk.haase.io.storage.record;
 
+import eu.dirk.haase.io.storage.record.metrics.StorageMetrics;
+
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -36,6 +38,28 @@ public class StribedRecordStorage implements RecordStorage {
         this.recordStorageArray = new AtomicReferenceArray<RecordStorage>(recordStorages);
     }
 
+    /**
+     * Sets the durability of all stripes.
+     *
+     * @see RecordChannelStorage#setDurability(Durability, long)
+     */
+    public void setDurability(Durability durability, long forceIntervalMillis) throws IOException {
+        for (RecordStorage recordStorage : recordStorages) {
+            ((RecordChannelStorage) recordStorage).setDurability(durability, forceIntervalMillis);
+        }
+    }
+
+    /**
+     * Sets the metrics of all stripes, which record into the same metrics.
+     *
+     * @see RecordChannelStorage#setMetrics(StorageMetrics)
+     */
+    public void setMetrics(StorageMetrics metrics) {
+        for (RecordStorage recordStorage : recordStorages) {
+            ((RecordChannelStorage) recordStorage).setMetrics(metrics);
+        }
+    }
+
     private RecordStorage getRecordStorage() {
         long id = Thread.currentThread().getId();
         long index = (id % this.stribeCount);
@@ -81,6 +105,16 @@ public class StribedRecordStorage implements RecordStorage {
         return getRecordStorage().insertRecord(key, dataBuffer);
     }
 
+    @Override
+    public int insertRecords(byte[][] keys, ByteBuffer[] dataBuffers) throws IOException, InterruptedException {
+        return getRecordStorage().insertRecords(keys, dataBuffers);
+    }
+
+    @Override
+    public void insertRecords(byte[][] keys, ByteBuffer[] dataBuffers, int[] recordIndices) throws IOException, InterruptedException {
+        getRecordStorage().insertRecords(keys, dataBuffers, recordIndices);
+    }
+
     @Override
     public void close() throws IOException, InterruptedException {
         synchronized (recordStorageArray) {
@@ -1,5 +1,6 @@
 package eu.dirk.haase.io.storage.record.data;
 
+import eu.dirk.haase.io.storage.channel.PositionalIO;
 import eu.dirk.haase.io.storage.record.StorageUnit;
 import eu.dirk.haase.io.storage.record.header.RecordHeader;
 
@@ -90,12 +91,10 @@ public class RecordData extends StorageUnit {
     }
 
     public int writeData(SeekableByteChannel channel, ByteBuffer source) throws IOException {
-        // Sets the channel's position to the Data's first byte.
-        channel.position(getDataStartPointer());
         // Prepare ByteBuffer
         source.flip();
-        // Write the content of the buffer to the channel.
-        int bytesWritten = channel.write(source);
+        // Write the content of the buffer to the channel at the Data's first byte.
+        int bytesWritten = PositionalIO.write(channel, source, getDataStartPointer());
         if (bytesWritten != getRecordDataLength()) {
             throw new IOException("Insufficient number of bytes written:" +
                     " Count of bytes currently written "
@@ -107,13 +106,12 @@ public class RecordData extends StorageUnit {
     }
 
     public int readData(SeekableByteChannel channel, ByteBuffer target) throws IOException {
-        // Sets the channel's position to the Data's first byte.
-        channel.position(getDataStartPointer());
         // Prepare ByteBuffer
         target.clear();
         target.limit(getRecordDataLength());
-        // Read the content of the entity, to which this channel is connected, into the buffer.
-        int bytesRead = channel.read(target);
+        // Read the content of the entity, to which this channel is connected, into the buffer,
+        // starting at the Data's first byte.
+        int bytesRead = PositionalIO.read(channel, target, getDataStartPointer());
         if (bytesRead != getRecordDataLength()) {
             throw new IOException("Insufficient number of bytes read:" +
                     " Count of bytes currently read "
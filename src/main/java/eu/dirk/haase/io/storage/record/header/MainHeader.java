@@ -17,7 +17,7 @@ final public class MainHeader extends AbstractHeader {
      */
     public final static byte[] PROLOG = MainHeader.class.getCanonicalName().getBytes();
 
-    private final static int VERSION = 1;
+    private final static int VERSION = 4;
 
     private final static int SUB_HEADER_LENGTH;
 
@@ -33,6 +33,8 @@ final public class MainHeader extends AbstractHeader {
         headerLength += 4; // size of int for recordCount
         headerLength += 4; // size of int for maxRecordDataLength
         headerLength += 4; // size of int for minRecordDataLength
+        headerLength += 8; // size of long for headPointer
+        headerLength += 8; // size of long for createdTimeMillis
 
         SUB_HEADER_LENGTH = headerLength;
     }
@@ -57,12 +59,23 @@ final public class MainHeader extends AbstractHeader {
      * Minimum length of the blocks in the storage unit.
      */
     private int minRecordDataLength = Integer.MAX_VALUE;
+    /**
+     * Start pointer of the first RecordHeader which was not yet polled from the queue.
+     * All RecordHeaders before the head pointer are deleted.
+     */
+    private long headPointer;
+    /**
+     * Time when the storage unit was created; the file systems do not keep it reliably.
+     */
+    private long createdTimeMillis;
 
 
     public MainHeader() {
         super(SUB_HEADER_LENGTH);
         this.prolog = new byte[PROLOG.length];
         setStartPointer(0);
+        this.headPointer = getEndPointer();
+        this.createdTimeMillis = System.currentTimeMillis();
     }
 
     @Override
@@ -95,6 +108,15 @@ final public class MainHeader extends AbstractHeader {
                     " recordCount is currently "
                     + recordCount);
 
+        }
+        if (headPointer < getEndPointer()) {
+            errorReasonList = (errorReasonList != null ? errorReasonList : new ArrayList<String>());
+            errorReasonList.add("headPointer can not be within the MainHeader:" +
+                    " headPointer is currently "
+                    + headPointer
+                    + " and MainHeader ends at "
+                    + getEndPointer());
+
         }
         if (!isCompabible()) {
             errorReasonList = (errorReasonList != null ? errorReasonList : new ArrayList<String>());
@@ -116,6 +138,8 @@ final public class MainHeader extends AbstractHeader {
         buffer.putInt(recordCount);
         buffer.putInt(maxRecordDataLength);
         buffer.putInt(minRecordDataLength);
+        buffer.putLong(headPointer);
+        buffer.putLong(createdTimeMillis);
     }
 
     @Override
@@ -126,6 +150,8 @@ final public class MainHeader extends AbstractHeader {
         recordCount = buffer.getInt();
         maxRecordDataLength = buffer.getInt();
         minRecordDataLength = buffer.getInt();
+        headPointer = buffer.getLong();
+        createdTimeMillis = buffer.getLong();
     }
 
     public void initFromRecordHeader(RecordHeader recordHeader) {
@@ -158,4 +184,20 @@ final public class MainHeader extends AbstractHeader {
         this.minRecordDataLength = minRecordDataLength;
     }
 
+    public long getHeadPointer() {
+        return headPointer;
+    }
+
+    public void setHeadPointer(long headPointer) {
+        this.headPointer = headPointer;
+    }
+
+    public long getCreatedTimeMillis() {
+        return createdTimeMillis;
+    }
+
+    public void setCreatedTimeMillis(long createdTimeMillis) {
+        this.createdTimeMillis = createdTimeMillis;
+    }
+
 }
@@ -1,5 +1,6 @@
 package eu.dirk.haase.io.storage.record.header;
 
+import eu.dirk.haase.io.storage.record.Crc32c;
 import eu.dirk.haase.io.storage.record.StorageUnit;
 import eu.dirk.haase.io.storage.record.data.RecordData;
 
@@ -21,7 +22,10 @@ final public class RecordHeader extends AbstractHeader {
 
     private final static long MIN_TIMESTAMP = Timestamp.valueOf(TIMESTAMP_STR).getTime();
 
-    private final static int KEY_LENGTH = UUID.randomUUID().toString().getBytes().length;
+    /**
+     * Length of the key of a Record (the length of a UUID in its string representation).
+     */
+    public final static int KEY_LENGTH = UUID.randomUUID().toString().getBytes().length;
 
     private final static int SUB_HEADER_LENGTH;
 
@@ -43,6 +47,8 @@ final public class RecordHeader extends AbstractHeader {
         headerLength += 4; // size of int for bitfield
         headerLength += 8; // size of long for lastModifiedTimeMillis
         headerLength += KEY_LENGTH; // size of the key
+        headerLength += 4; // size of int for dataChecksum
+        headerLength += 4; // size of int for headerChecksum
 
         SUB_HEADER_LENGTH = headerLength;
     }
@@ -78,6 +84,14 @@ final public class RecordHeader extends AbstractHeader {
      * bitfield of the Record.
      */
     private int bitfield;
+    /**
+     * CRC32C of the payload; only set if the bit CHECKSUM is set.
+     */
+    private int dataChecksum;
+    /**
+     * CRC32C of all preceding bytes of the RecordHeader; only set if the bit CHECKSUM is set.
+     */
+    private int headerChecksum;
 
     /**
      * Creates a fresh RecordHeader.
@@ -125,7 +139,7 @@ final public class RecordHeader extends AbstractHeader {
         nextRecordHeader.lastModifiedTimeMillis = System.currentTimeMillis();
         nextRecordHeader.bitfield = 0;
 
-        long nextStartPointer = getEndPointer() + recordData.getLength() + getRecordDataCapacity();
+        long nextStartPointer = getNextStartPointer();
 
         nextRecordHeader.setStartPointer(nextStartPointer);
         nextRecordHeader.setRecordDataStartPointer(nextStartPointer + getLength());
@@ -136,6 +150,14 @@ final public class RecordHeader extends AbstractHeader {
         return nextRecordHeader;
     }
 
+    /**
+     * Start pointer of the following RecordHeader; like {@link #nextHeader()}, but without
+     * creating it.
+     */
+    public long getNextStartPointer() {
+        return getEndPointer() + recordData.getLength() + getRecordDataCapacity();
+    }
+
     public boolean isLastRecord(SeekableByteChannel channel) throws IOException {
         currRecordData.initFromRecordHeader(this);
         long lastPosition = currRecordData.getDataStartPointer() + currRecordData.getRecordDataLength();
@@ -147,6 +169,7 @@ final public class RecordHeader extends AbstractHeader {
 
         this.lastModifiedTimeMillis = System.currentTimeMillis();
         this.bitfield = 0;
+        this.dataChecksum = 0;
 
         this.recordIndex = nextIndex;
 
@@ -213,6 +236,7 @@ final public class RecordHeader extends AbstractHeader {
 
     @Override
     public void write(ByteBuffer buffer) {
+        int startPosition = buffer.position();
         super.write(buffer);
         buffer.putLong(recordDataStartPointer);
         buffer.putInt(recordDataCapacity);
@@ -221,6 +245,8 @@ final public class RecordHeader extends AbstractHeader {
         buffer.putInt(bitfield);
         buffer.putLong(System.currentTimeMillis());
         buffer.put(key);
+        buffer.putInt(dataChecksum);
+        buffer.putInt(hasChecksum() ? Crc32c.checksum(buffer, startPosition, getLength() - 4) : 0);
     }
 
     @Override
@@ -233,6 +259,8 @@ final public class RecordHeader extends AbstractHeader {
         bitfield = buffer.getInt();
         lastModifiedTimeMillis = buffer.getLong();
         buffer.get(key);
+        dataChecksum = buffer.getInt();
+        headerChecksum = buffer.getInt();
     }
 
     public long getRecordDataStartPointer() {
@@ -281,8 +309,59 @@ final public class RecordHeader extends AbstractHeader {
         }
     }
 
+    /**
+     * Whether or not the RecordHeader and the payload carry a CRC32C checksum, see {@link Crc32c}.
+     */
+    public boolean hasChecksum() {
+        return Bitfield.testBit(Bit.CHECKSUM, bitfield);
+    }
+
+    public int getDataChecksum() {
+        return dataChecksum;
+    }
+
+    /**
+     * Sets the checksum of the payload; the checksum of the RecordHeader is calculated when
+     * it is written.
+     */
+    public void setDataChecksum(int dataChecksum) {
+        this.dataChecksum = dataChecksum;
+        bitfield = Bitfield.setBit(Bit.CHECKSUM, bitfield);
+    }
+
+    /**
+     * The RecordHeader and the payload are written without checksum.
+     */
+    public void clearChecksum() {
+        this.dataChecksum = 0;
+        bitfield = Bitfield.clearBit(Bit.CHECKSUM, bitfield);
+    }
+
+    /**
+     * Verifies the checksum of the RecordHeader against the bytes it was read from.
+     *
+     * @param source the buffer the RecordHeader was read from
+     * @param offset the absolute position within the buffer where the RecordHeader starts
+     * @return true if the bytes match the checksum or if the RecordHeader has no checksum
+     */
+    public boolean isHeaderChecksumValid(ByteBuffer source, int offset) {
+        return !hasChecksum() || (Crc32c.checksum(source, offset, getLength() - 4) == headerChecksum);
+    }
+
+    /**
+     * Verifies the checksum of the payload.
+     *
+     * @param source the buffer which holds the payload
+     * @param offset the absolute position within the buffer where the payload starts
+     * @return true if the payload matches the checksum or if the RecordHeader has no checksum
+     */
+    public boolean isDataChecksumValid(ByteBuffer source, int offset) {
+        return !hasChecksum() || (Crc32c.checksum(source, offset, recordDataLength) == dataChecksum);
+    }
+
     enum Bit {
-        DELETE
+        DELETE,
+        CHECKSUM
     }
 
     static class Bitfield {
@@ -296,7 +375,7 @@ final public class RecordHeader extends AbstractHeader {
         }
 
         static int clearBit(Bit bit, int bitfield) {
-            return (bitfield ^ (1 << bit.ordinal()));
+            return (bitfield & ~(1 << bit.ordinal()));
         }
 
     }
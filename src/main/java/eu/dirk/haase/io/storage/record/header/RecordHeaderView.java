@@ -0,0 +1,136 @@
+package eu.dirk.haase.io.storage.record.header;
+
+import eu.dirk.haase.io.storage.record.Crc32c;
+import eu.dirk.haase.io.storage.record.data.RecordData;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Flyweight view of a RecordHeader which is stored in a buffer.
+ * <p>
+ * The fields are decoded on access straight from the buffer at the offset the view is
+ * wrapped around, and a key is compared in place. A view is wrapped around one RecordHeader
+ * after the other, so walking the chain of the RecordHeaders allocates nothing. The layout
+ * is the one of {@link RecordHeader}.
+ * <p>
+ * A view is used by one thread.
+ */
+public final class RecordHeaderView {
+
+    private final static int MAGIC_DATA_OFFSET = 0;
+    private final static int START_POINTER_OFFSET = 8;
+    private final static int RECORD_DATA_START_POINTER_OFFSET = 16;
+    private final static int RECORD_DATA_CAPACITY_OFFSET = 24;
+    private final static int RECORD_DATA_LENGTH_OFFSET = 28;
+    private final static int RECORD_INDEX_OFFSET = 32;
+    private final static int BITFIELD_OFFSET = 36;
+    private final static int KEY_OFFSET = 48;
+    private final static int DATA_CHECKSUM_OFFSET = KEY_OFFSET + RecordHeader.KEY_LENGTH;
+    private final static int HEADER_CHECKSUM_OFFSET = DATA_CHECKSUM_OFFSET + 4;
+
+    private final static long MAGIC_DATA = new RecordHeader().getMagicData();
+
+    private final static int LENGTH = new RecordHeader().getLength();
+
+    private final static int RECORD_DATA_LENGTH = new RecordData().getLength();
+
+    private ByteBuffer buffer;
+
+    private int offset;
+
+    /**
+     * Wraps the view around the RecordHeader which starts at the given absolute position
+     * of the buffer. The position and the limit of the buffer are not used.
+     *
+     * @return this view
+     */
+    public RecordHeaderView wrap(ByteBuffer buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+        return this;
+    }
+
+    public int getLength() {
+        return LENGTH;
+    }
+
+    /**
+     * Whether or not the bytes are a RecordHeader which was stored at the given start pointer.
+     */
+    public boolean isValidAt(long startPointer) {
+        return (buffer.getLong(offset + MAGIC_DATA_OFFSET) == MAGIC_DATA) && (getStartPointer() == startPointer);
+    }
+
+    /**
+     * Whether or not the fields pass the cheap checks of {@link RecordHeader#enlistConsistencyErrors()}
+     * which keep a walk of the chain of the RecordHeaders within the storage unit.
+     */
+    public boolean isConsistent() {
+        return (getStartPointer() >= 0) && (getRecordDataCapacity() >= 0) && (getRecordDataLength() >= 0)
+                && (getRecordDataStartPointer() == (getStartPointer() + LENGTH));
+    }
+
+    public long getStartPointer() {
+        return buffer.getLong(offset + START_POINTER_OFFSET);
+    }
+
+    public long getRecordDataStartPointer() {
+        return buffer.getLong(offset + RECORD_DATA_START_POINTER_OFFSET);
+    }
+
+    public int getRecordDataCapacity() {
+        return buffer.getInt(offset + RECORD_DATA_CAPACITY_OFFSET);
+    }
+
+    public int getRecordDataLength() {
+        return buffer.getInt(offset + RECORD_DATA_LENGTH_OFFSET);
+    }
+
+    public int getRecordIndex() {
+        return buffer.getInt(offset + RECORD_INDEX_OFFSET);
+    }
+
+    public boolean isDeleted() {
+        return RecordHeader.Bitfield.testBit(RecordHeader.Bit.DELETE, buffer.getInt(offset + BITFIELD_OFFSET));
+    }
+
+    public boolean hasChecksum() {
+        return RecordHeader.Bitfield.testBit(RecordHeader.Bit.CHECKSUM, buffer.getInt(offset + BITFIELD_OFFSET));
+    }
+
+    public int getDataChecksum() {
+        return buffer.getInt(offset + DATA_CHECKSUM_OFFSET);
+    }
+
+    /**
+     * Start pointer of the following RecordHeader.
+     */
+    public long getNextStartPointer() {
+        return getStartPointer() + LENGTH + RECORD_DATA_LENGTH + getRecordDataCapacity();
+    }
+
+    /**
+     * Compares the given key with the key of the RecordHeader without copying it.
+     */
+    public boolean keyEquals(byte[] key) {
+        if ((key == null) || (key.length != RecordHeader.KEY_LENGTH)) {
+            return false;
+        }
+        int keyOffset = offset + KEY_OFFSET;
+        for (int i = 0; key.length > i; ++i) {
+            if (buffer.get(keyOffset + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the bytes match the checksum of the RecordHeader or if it has no checksum
+     */
+    public boolean isHeaderChecksumValid() {
+        return !hasChecksum()
+                || (Crc32c.checksum(buffer, offset, HEADER_CHECKSUM_OFFSET) == buffer.getInt(offset + HEADER_CHECKSUM_OFFSET));
+    }
+
+}
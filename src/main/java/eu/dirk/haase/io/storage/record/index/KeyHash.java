@@ -0,0 +1,38 @@
+package eu.dirk.haase.io.storage.record.index;
+
+/**
+ * Stable hash function for the keys of the records.
+ * <p>
+ * The hash value depends only on the bytes of the key, so it can be used
+ * for structures which are persisted or shared between processes.
+ */
+public final class KeyHash {
+
+    private final static long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private final static long FNV_PRIME = 0x100000001b3L;
+
+    private KeyHash() {
+    }
+
+    /**
+     * Calculates the 64 bit FNV-1a hash of the key, followed by a final
+     * mixing step to spread the entropy into the lower bits.
+     *
+     * @param key the key of a record
+     * @return the hash value of the key
+     */
+    public static long hash(byte[] key) {
+        long hash = FNV_OFFSET_BASIS;
+        for (byte b : key) {
+            hash ^= (b & 0xff);
+            hash *= FNV_PRIME;
+        }
+        // Final mixing step (see MurmurHash3 fmix64)
+        hash ^= (hash >>> 33);
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= (hash >>> 33);
+        return hash;
+    }
+
+}
@@ -0,0 +1,80 @@
+package eu.dirk.haase.io.storage.record.index;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Index which maps the key of a RecordHeader to the start pointer of this
+ * header within the storage unit.
+ */
+public interface KeyIndex extends Closeable {
+
+    /**
+     * Returns the start pointer of the RecordHeader with the given key.
+     *
+     * @param key the key of the record
+     * @return the start pointer of the RecordHeader or -1 if the key is unknown
+     * @throws IOException
+     */
+    long get(byte[] key) throws IOException;
+
+    /**
+     * Returns true if {@link #get(byte[])} may wait for I/O, for example because the index
+     * reads its entries from a file; such an index is not looked up by a thread which must
+     * not block.
+     */
+    boolean isLookupBlocking();
+
+    /**
+     * Associates the key with the start pointer of a RecordHeader.
+     * A previous association of the key is replaced.
+     *
+     * @param key          the key of the record
+     * @param startPointer the start pointer of the RecordHeader
+     * @throws IOException
+     */
+    void put(byte[] key, long startPointer) throws IOException;
+
+    /**
+     * Removes the association of the key, but only if the key is still associated
+     * with the given start pointer.
+     *
+     * @param key          the key of the record
+     * @param startPointer the start pointer of the RecordHeader
+     * @return true if the association was removed
+     * @throws IOException
+     */
+    boolean remove(byte[] key, long startPointer) throws IOException;
+
+    /**
+     * Count of keys in the index.
+     */
+    long size() throws IOException;
+
+    /**
+     * Removes all keys from the index.
+     *
+     * @throws IOException
+     */
+    void clear() throws IOException;
+
+    /**
+     * Returns true if the index already reflects the storage unit and
+     * does not have to be rebuilt by scanning the RecordHeaders.
+     *
+     * @param storageSize the current size of the storage unit, which has to be the size
+     *                    noted by {@link #setStorageSize(long)} before the index was closed
+     */
+    boolean isUpToDate(long storageSize);
+
+    /**
+     * Notes the size of the storage unit which the index reflects; called before the index
+     * is closed together with the storage unit. A persistent index stores the size, so a
+     * storage unit which was changed without the index is detected.
+     *
+     * @param storageSize the size of the storage unit
+     * @throws IOException
+     */
+    void setStorageSize(long storageSize) throws IOException;
+
+}
@@ -0,0 +1,567 @@
+package eu.dirk.haase.io.storage.record.index;
+
+import eu.dirk.haase.io.storage.record.StorageUnit;
+import eu.dirk.haase.io.storage.record.header.RecordHeader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Persistent index which maps the key of a {@link RecordHeader} to the start pointer
+ * of this header within the storage unit. The index is stored in a sidecar file
+ * next to the storage unit and survives restarts without a rebuild.
+ * <p>
+ * The index uses linear hashing on fixed-size pages, so a lookup needs one page read
+ * (plus one for each overflow page of the bucket). Layout of the file:
+ * <pre>
+ *     page 0           index header
+ *     page 1 + b       primary page of bucket b
+ *     other pages      overflow pages
+ * </pre>
+ * Layout of a page:
+ * <pre>
+ *     4 bytes          count of entries
+ *     8 bytes          page number of the next overflow page (0 = none)
+ *     8 bytes          page number of the previous page (0 = primary page)
+ *     n * 44 bytes     entries: key (KEY_LENGTH bytes) and start pointer (8 bytes)
+ * </pre>
+ * Splitting a bucket may need the page of an overflow page as the new primary
+ * page, in this case the overflow page is moved to the end of the file.
+ * <p>
+ * The index is marked as up to date only if it was filled and closed properly; the index
+ * header stores the size of the storage unit at this time. After a crash, for a new index
+ * or if the storage unit was changed without the index, the index has to be rebuilt from
+ * the storage unit.
+ * <p>
+ * Lookups run concurrently: they read the pages by positional reads into a page buffer of
+ * their own thread. Modifications of the index are exclusive.
+ */
+public class PagedRecordKeyIndex implements KeyIndex {
+
+    public final static String FILE_SUFFIX = ".idx";
+
+    private final static long MAGIC_DATA = StorageUnit.buildMagicData("KeyIdx");
+
+    private final static int VERSION = 2;
+
+    private final static int PAGE_SIZE = 4096;
+
+    private final static int PAGE_HEADER_LENGTH;
+
+    private final static int ENTRY_LENGTH = RecordHeader.KEY_LENGTH + 8;
+
+    private final static int ENTRIES_PER_PAGE;
+
+    private final static float LOAD_FACTOR = 0.75f;
+
+    static {
+        int headerLength = 0;
+
+        // Layout of the page header
+        headerLength += 4; // size of int for entryCount
+        headerLength += 8; // size of long for nextPage
+        headerLength += 8; // size of long for prevPage
+
+        PAGE_HEADER_LENGTH = headerLength;
+        ENTRIES_PER_PAGE = (PAGE_SIZE - PAGE_HEADER_LENGTH) / ENTRY_LENGTH;
+    }
+
+    private final Path path;
+    private final FileChannel channel;
+    /**
+     * Page buffer of the modifications, used under the write lock.
+     */
+    private final ByteBuffer pageBuffer;
+    /**
+     * Page buffers of the lookups.
+     */
+    private final ThreadLocal<ByteBuffer> readPageBuffer;
+    private final byte[] entryKey;
+    private final ReentrantReadWriteLock readWriteLock;
+    private final Lock readLock;
+    private final Lock writeLock;
+    /**
+     * Level of the linear hashing: the buckets 0 .. 2^level are addressed by the lower bits of the hash.
+     */
+    private int level;
+    /**
+     * The next bucket to split.
+     */
+    private long splitPointer;
+    /**
+     * Count of pages in the file including the index header.
+     */
+    private long pageCount;
+    /**
+     * Count of entries in the index.
+     */
+    private long entryCount;
+    /**
+     * Size of the storage unit which the index reflects or -1 if unknown.
+     */
+    private long storageSize;
+    private boolean isUpToDate;
+    private boolean isDirty;
+
+    public PagedRecordKeyIndex(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.pageBuffer = ByteBuffer.allocate(PAGE_SIZE);
+        this.readPageBuffer = new ThreadLocal<ByteBuffer>() {
+            @Override
+            protected ByteBuffer initialValue() {
+                return ByteBuffer.allocate(PAGE_SIZE);
+            }
+        };
+        this.readWriteLock = new ReentrantReadWriteLock();
+        this.readLock = this.readWriteLock.readLock();
+        this.writeLock = this.readWriteLock.writeLock();
+        this.entryKey = new byte[RecordHeader.KEY_LENGTH];
+        if (!readIndexHeader()) {
+            initEmpty();
+        }
+    }
+
+    /**
+     * Returns the path of the index file which belongs to the given storage unit.
+     */
+    public static Path indexPathOf(Path storagePath) {
+        return storagePath.resolveSibling(storagePath.getFileName() + FILE_SUFFIX);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public long get(byte[] key) throws IOException {
+        if (!RecordKeyIndex.isIndexable(key)) {
+            return -1;
+        }
+        ByteBuffer readBuffer = this.readPageBuffer.get();
+        readLock.lock();
+        try {
+            long page = primaryPageOf(key);
+            while (page != 0) {
+                readPage(readBuffer, page);
+                int entry = findEntry(readBuffer, key);
+                if (entry >= 0) {
+                    return readBuffer.getLong(entryOffset(entry) + RecordHeader.KEY_LENGTH);
+                }
+                page = readBuffer.getLong(4);
+            }
+            return -1;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public void put(byte[] key, long startPointer) throws IOException {
+        if (!RecordKeyIndex.isIndexable(key)) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            putEntry(key, startPointer);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void putEntry(byte[] key, long startPointer) throws IOException {
+        markDirty();
+        long page = primaryPageOf(key);
+        long pageWithRoom = 0;
+        long lastPage = 0;
+        while (page != 0) {
+            readPage(page);
+            int entry = findEntry(key);
+            if (entry >= 0) {
+                pageBuffer.putLong(entryOffset(entry) + RecordHeader.KEY_LENGTH, startPointer);
+                writePage(page);
+                return;
+            }
+            if ((pageWithRoom == 0) && (pageBuffer.getInt(0) < ENTRIES_PER_PAGE)) {
+                pageWithRoom = page;
+            }
+            lastPage = page;
+            page = pageBuffer.getLong(4);
+        }
+        if (pageWithRoom != 0) {
+            readPage(pageWithRoom);
+            appendEntry(key, startPointer);
+            writePage(pageWithRoom);
+        } else {
+            long overflowPage = this.pageCount++;
+            initPage(lastPage);
+            appendEntry(key, startPointer);
+            writePage(overflowPage);
+            readPage(lastPage);
+            pageBuffer.putLong(4, overflowPage);
+            writePage(lastPage);
+        }
+        ++this.entryCount;
+        if (this.entryCount > (bucketCount() * ENTRIES_PER_PAGE * LOAD_FACTOR)) {
+            split();
+        }
+    }
+
+    @Override
+    public boolean remove(byte[] key, long startPointer) throws IOException {
+        if (!RecordKeyIndex.isIndexable(key)) {
+            return false;
+        }
+        writeLock.lock();
+        try {
+            return removeEntry(key, startPointer);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private boolean removeEntry(byte[] key, long startPointer) throws IOException {
+        long page = primaryPageOf(key);
+        while (page != 0) {
+            readPage(page);
+            int entry = findEntry(key);
+            if (entry >= 0) {
+                if (pageBuffer.getLong(entryOffset(entry) + RecordHeader.KEY_LENGTH) != startPointer) {
+                    return false;
+                }
+                markDirty();
+                // Move the last entry of the page into the gap
+                int lastEntry = pageBuffer.getInt(0) - 1;
+                if (entry != lastEntry) {
+                    System.arraycopy(pageBuffer.array(), entryOffset(lastEntry), pageBuffer.array(), entryOffset(entry), ENTRY_LENGTH);
+                }
+                pageBuffer.putInt(0, lastEntry);
+                writePage(page);
+                --this.entryCount;
+                return true;
+            }
+            page = pageBuffer.getLong(4);
+        }
+        return false;
+    }
+
+    @Override
+    public long size() {
+        readLock.lock();
+        try {
+            return this.entryCount;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public void clear() throws IOException {
+        writeLock.lock();
+        try {
+            this.channel.truncate(0);
+            initEmpty();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Whether or not the index was closed properly after it was filled.
+     */
+    public boolean isUpToDate() {
+        readLock.lock();
+        try {
+            return this.isUpToDate;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * The pages are read from the file of the index.
+     */
+    @Override
+    public boolean isLookupBlocking() {
+        return true;
+    }
+
+    @Override
+    public boolean isUpToDate(long storageSize) {
+        readLock.lock();
+        try {
+            return this.isUpToDate && (this.storageSize == storageSize);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public void setStorageSize(long storageSize) {
+        writeLock.lock();
+        try {
+            this.storageSize = storageSize;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        writeLock.lock();
+        try {
+            if (!this.channel.isOpen()) {
+                return;
+            }
+            try {
+                writeIndexHeader(true);
+                this.channel.force(true);
+            } finally {
+                this.channel.close();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void initEmpty() throws IOException {
+        this.level = 0;
+        this.splitPointer = 0;
+        this.pageCount = 2;
+        this.entryCount = 0;
+        this.storageSize = -1;
+        this.isDirty = false;
+        // A new index has still to be filled from the storage unit
+        this.isUpToDate = false;
+        initPage(0);
+        writePage(1);
+        writeIndexHeader(false);
+    }
+
+    /**
+     * Marks the index file as dirty before the first modification, so that an index
+     * which was not closed properly is rebuilt. The dirty index header is forced before
+     * the pages are modified, so no modified page can outlive a crash with a clean header.
+     */
+    private void markDirty() throws IOException {
+        if (!this.isDirty) {
+            writeIndexHeader(false);
+            this.channel.force(false);
+            this.isDirty = true;
+        }
+    }
+
+    private boolean readIndexHeader() throws IOException {
+        if (this.channel.size() < (2 * PAGE_SIZE)) {
+            return false;
+        }
+        readPage(0);
+        if ((pageBuffer.getLong(0) != MAGIC_DATA)
+                || (pageBuffer.getInt(8) != VERSION)
+                || (pageBuffer.getInt(12) != PAGE_SIZE)) {
+            return false;
+        }
+        this.level = pageBuffer.getInt(16);
+        this.splitPointer = pageBuffer.getLong(20);
+        this.pageCount = pageBuffer.getLong(28);
+        this.entryCount = pageBuffer.getLong(36);
+        this.isUpToDate = (pageBuffer.getInt(44) == 1);
+        this.storageSize = pageBuffer.getLong(48);
+        this.isDirty = false;
+        return true;
+    }
+
+    private void writeIndexHeader(boolean isClean) throws IOException {
+        pageBuffer.clear();
+        pageBuffer.putLong(MAGIC_DATA);
+        pageBuffer.putInt(VERSION);
+        pageBuffer.putInt(PAGE_SIZE);
+        pageBuffer.putInt(this.level);
+        pageBuffer.putLong(this.splitPointer);
+        pageBuffer.putLong(this.pageCount);
+        pageBuffer.putLong(this.entryCount);
+        pageBuffer.putInt(isClean ? 1 : 0);
+        pageBuffer.putLong(this.storageSize);
+        while (pageBuffer.hasRemaining()) {
+            pageBuffer.put((byte) 0);
+        }
+        writePage(0);
+    }
+
+    private long bucketCount() {
+        return (1L << this.level) + this.splitPointer;
+    }
+
+    private long primaryPageOf(byte[] key) {
+        long hash = KeyHash.hash(key);
+        long bucket = hash & ((1L << this.level) - 1);
+        if (bucket < this.splitPointer) {
+            bucket = hash & ((1L << (this.level + 1)) - 1);
+        }
+        return 1 + bucket;
+    }
+
+    /**
+     * Splits the bucket at the split pointer into itself and a new bucket at the end.
+     */
+    private void split() throws IOException {
+        long oldBucket = this.splitPointer;
+        long newBucket = oldBucket + (1L << this.level);
+        long newPrimaryPage = 1 + newBucket;
+        if (newPrimaryPage < this.pageCount) {
+            relocateOverflowPage(newPrimaryPage);
+        } else {
+            this.pageCount = newPrimaryPage + 1;
+        }
+
+        // Collect the pages and entries of the old bucket
+        List<Long> oldChain = new ArrayList<Long>();
+        ByteArrayOutputStream oldEntries = new ByteArrayOutputStream();
+        ByteArrayOutputStream newEntries = new ByteArrayOutputStream();
+        long newMask = (1L << (this.level + 1)) - 1;
+        long page = 1 + oldBucket;
+        while (page != 0) {
+            readPage(page);
+            oldChain.add(page);
+            int count = pageBuffer.getInt(0);
+            for (int entry = 0; count > entry; ++entry) {
+                int offset = entryOffset(entry);
+                System.arraycopy(pageBuffer.array(), offset, entryKey, 0, entryKey.length);
+                if ((KeyHash.hash(entryKey) & newMask) == newBucket) {
+                    newEntries.write(pageBuffer.array(), offset, ENTRY_LENGTH);
+                } else {
+                    oldEntries.write(pageBuffer.array(), offset, ENTRY_LENGTH);
+                }
+            }
+            page = pageBuffer.getLong(4);
+        }
+
+        List<Long> newChain = new ArrayList<Long>();
+        newChain.add(newPrimaryPage);
+        writeChain(oldChain, oldEntries.toByteArray());
+        writeChain(newChain, newEntries.toByteArray());
+
+        ++this.splitPointer;
+        if (this.splitPointer == (1L << this.level)) {
+            ++this.level;
+            this.splitPointer = 0;
+        }
+    }
+
+    /**
+     * Writes the entries into the pages of a bucket. Pages which are not needed
+     * stay in the chain without entries, missing pages are appended.
+     */
+    private void writeChain(List<Long> chain, byte[] entries) throws IOException {
+        int entryCount = entries.length / ENTRY_LENGTH;
+        int neededPages = Math.max(1, (entryCount + ENTRIES_PER_PAGE - 1) / ENTRIES_PER_PAGE);
+        while (chain.size() < neededPages) {
+            chain.add(this.pageCount++);
+        }
+        int entry = 0;
+        for (int i = 0; chain.size() > i; ++i) {
+            int pageEntries = Math.min(ENTRIES_PER_PAGE, entryCount - entry);
+            pageBuffer.clear();
+            pageBuffer.putInt(0, pageEntries);
+            pageBuffer.putLong(4, (i + 1) < chain.size() ? chain.get(i + 1) : 0);
+            pageBuffer.putLong(12, i > 0 ? chain.get(i - 1) : 0);
+            System.arraycopy(entries, entry * ENTRY_LENGTH, pageBuffer.array(), PAGE_HEADER_LENGTH, pageEntries * ENTRY_LENGTH);
+            writePage(chain.get(i));
+            entry += pageEntries;
+        }
+    }
+
+    /**
+     * Moves an overflow page to the end of the file and updates the links of its neighbours.
+     */
+    private void relocateOverflowPage(long page) throws IOException {
+        long newPage = this.pageCount++;
+        readPage(page);
+        long nextPage = pageBuffer.getLong(4);
+        long prevPage = pageBuffer.getLong(12);
+        writePage(newPage);
+        readPage(prevPage);
+        pageBuffer.putLong(4, newPage);
+        writePage(prevPage);
+        if (nextPage != 0) {
+            readPage(nextPage);
+            pageBuffer.putLong(12, newPage);
+            writePage(nextPage);
+        }
+    }
+
+    private void initPage(long prevPage) {
+        pageBuffer.clear();
+        pageBuffer.putInt(0, 0);
+        pageBuffer.putLong(4, 0);
+        pageBuffer.putLong(12, prevPage);
+    }
+
+    private void appendEntry(byte[] key, long startPointer) {
+        int count = pageBuffer.getInt(0);
+        int offset = entryOffset(count);
+        System.arraycopy(key, 0, pageBuffer.array(), offset, key.length);
+        pageBuffer.putLong(offset + key.length, startPointer);
+        pageBuffer.putInt(0, count + 1);
+    }
+
+    private int findEntry(byte[] key) {
+        return findEntry(pageBuffer, key);
+    }
+
+    private static int findEntry(ByteBuffer buffer, byte[] key) {
+        byte[] page = buffer.array();
+        int count = buffer.getInt(0);
+        for (int entry = 0; count > entry; ++entry) {
+            int offset = entryOffset(entry);
+            int i = 0;
+            while ((key.length > i) && (page[offset + i] == key[i])) {
+                ++i;
+            }
+            if (i == key.length) {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    private static int entryOffset(int entry) {
+        return PAGE_HEADER_LENGTH + (entry * ENTRY_LENGTH);
+    }
+
+    private void readPage(long page) throws IOException {
+        readPage(pageBuffer, page);
+    }
+
+    private void readPage(ByteBuffer buffer, long page) throws IOException {
+        buffer.clear();
+        long position = page * PAGE_SIZE;
+        while (buffer.hasRemaining()) {
+            int bytesRead = this.channel.read(buffer, position + buffer.position());
+            if (bytesRead < 0) {
+                throw new IOException("Insufficient number of bytes read:"
+                        + " Page " + page
+                        + " is beyond the end of the index file " + this.path);
+            }
+        }
+        buffer.clear();
+    }
+
+    private void writePage(long page) throws IOException {
+        pageBuffer.clear();
+        long position = page * PAGE_SIZE;
+        while (pageBuffer.hasRemaining()) {
+            this.channel.write(pageBuffer, position + pageBuffer.position());
+        }
+        pageBuffer.clear();
+    }
+
+}
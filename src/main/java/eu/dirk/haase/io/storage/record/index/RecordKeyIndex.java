@@ -0,0 +1,294 @@
+package eu.dirk.haase.io.storage.record.index;
+
+import eu.dirk.haase.io.storage.record.header.RecordHeader;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory index which maps the key of a {@link RecordHeader} to the start pointer
+ * of this header within the storage unit.
+ * <p>
+ * The index is an open-addressing hash table with linear probing. All slots are
+ * stored in one direct {@link ByteBuffer}, so there is no object per entry and
+ * the entries are not visited by the garbage collector. Layout of a slot:
+ * <pre>
+ *     8 bytes      start pointer of the RecordHeader (0 = empty, -1 = removed)
+ *     KEY_LENGTH   key of the RecordHeader
+ * </pre>
+ * The index is thread-safe.
+ */
+public class RecordKeyIndex implements KeyIndex {
+
+    /**
+     * Marks an empty slot. The MainHeader occupies position 0, so no RecordHeader can start there.
+     */
+    private final static long EMPTY = 0;
+
+    /**
+     * Marks a slot whose entry was removed.
+     */
+    private final static long REMOVED = -1;
+
+    private final static int SLOT_LENGTH = 8 + RecordHeader.KEY_LENGTH;
+
+    private final static int MAX_CAPACITY = Integer.MAX_VALUE / SLOT_LENGTH;
+
+    private final static float LOAD_FACTOR = 0.6f;
+
+    private final static int DEFAULT_CAPACITY = 1024;
+
+    private final ReadWriteLock readWriteLock;
+    private final Lock readLock;
+    private final Lock writeLock;
+    /**
+     * Slots of the hash table; guarded by "readWriteLock"
+     */
+    private ByteBuffer slots;
+    /**
+     * Count of slots (always a power of two); guarded by "readWriteLock"
+     */
+    private int capacity;
+    /**
+     * Count of entries; guarded by "readWriteLock"
+     */
+    private int size;
+    /**
+     * Count of slots which are not empty (entries and removed slots); guarded by "readWriteLock"
+     */
+    private int usedSlots;
+
+    public RecordKeyIndex() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public RecordKeyIndex(int expectedSize) {
+        this.readWriteLock = new ReentrantReadWriteLock();
+        this.readLock = this.readWriteLock.readLock();
+        this.writeLock = this.readWriteLock.writeLock();
+        allocate(calcCapacity(expectedSize));
+    }
+
+    private static int calcCapacity(int expectedSize) {
+        long minCapacity = (long) (Math.max(expectedSize, 1) / LOAD_FACTOR) + 1;
+        if (minCapacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Expected size exceeds the maximum capacity of the index:"
+                    + " expected size is "
+                    + expectedSize
+                    + ", but maximum capacity is "
+                    + MAX_CAPACITY);
+        }
+        int capacity = Integer.highestOneBit((int) minCapacity);
+        return (capacity < minCapacity ? capacity << 1 : capacity);
+    }
+
+    /**
+     * Returns true if the key has the length of the keys stored in a {@link RecordHeader}.
+     * Other keys can never match the key of a RecordHeader.
+     *
+     * @param key the key of a record
+     * @return true if the key can be stored in the index
+     */
+    public static boolean isIndexable(byte[] key) {
+        return (key != null) && (key.length == RecordHeader.KEY_LENGTH);
+    }
+
+    @Override
+    public long get(byte[] key) {
+        if (!isIndexable(key)) {
+            return -1;
+        }
+        readLock.lock();
+        try {
+            int slot = findSlot(key);
+            return (slot >= 0 ? slots.getLong(slot * SLOT_LENGTH) : -1);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public void put(byte[] key, long startPointer) {
+        if (!isIndexable(key)) {
+            return;
+        }
+        if (startPointer <= EMPTY) {
+            throw new IllegalArgumentException("startPointer must be greater than 0:"
+                    + " startPointer is currently "
+                    + startPointer);
+        }
+        writeLock.lock();
+        try {
+            int slot = findSlot(key);
+            if (slot >= 0) {
+                slots.putLong(slot * SLOT_LENGTH, startPointer);
+                return;
+            }
+            if ((usedSlots + 1) > (capacity * LOAD_FACTOR)) {
+                // Grow only if the entries need the room, otherwise just purge the removed slots
+                rehash(((size + 1) > (capacity * LOAD_FACTOR / 2)) ? capacity << 1 : capacity);
+            }
+            slot = findFreeSlot(key);
+            if (slots.getLong(slot * SLOT_LENGTH) == EMPTY) {
+                ++usedSlots;
+            }
+            writeSlot(slot, key, startPointer);
+            ++size;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(byte[] key, long startPointer) {
+        if (!isIndexable(key)) {
+            return false;
+        }
+        writeLock.lock();
+        try {
+            int slot = findSlot(key);
+            if ((slot >= 0) && (slots.getLong(slot * SLOT_LENGTH) == startPointer)) {
+                slots.putLong(slot * SLOT_LENGTH, REMOVED);
+                --size;
+                return true;
+            }
+            return false;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public long size() {
+        readLock.lock();
+        try {
+            return size;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        writeLock.lock();
+        try {
+            allocate(calcCapacity(DEFAULT_CAPACITY));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * An in-memory index is looked up without I/O.
+     */
+    @Override
+    public boolean isLookupBlocking() {
+        return false;
+    }
+
+    /**
+     * An in-memory index has always to be filled from the storage unit.
+     */
+    @Override
+    public boolean isUpToDate(long storageSize) {
+        return false;
+    }
+
+    @Override
+    public void setStorageSize(long storageSize) {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private void allocate(int newCapacity) {
+        this.slots = ByteBuffer.allocateDirect(newCapacity * SLOT_LENGTH);
+        this.capacity = newCapacity;
+        this.size = 0;
+        this.usedSlots = 0;
+    }
+
+    private void rehash(int newCapacity) {
+        if (newCapacity > MAX_CAPACITY) {
+            throw new IllegalStateException("Maximum capacity of the index exceeded:"
+                    + " maximum capacity is "
+                    + MAX_CAPACITY);
+        }
+        ByteBuffer oldSlots = this.slots;
+        int oldCapacity = this.capacity;
+        allocate(newCapacity);
+        byte[] key = new byte[RecordHeader.KEY_LENGTH];
+        for (int oldSlot = 0; oldCapacity > oldSlot; ++oldSlot) {
+            long startPointer = oldSlots.getLong(oldSlot * SLOT_LENGTH);
+            if ((startPointer != EMPTY) && (startPointer != REMOVED)) {
+                readKey(oldSlots, oldSlot, key);
+                writeSlot(findFreeSlot(key), key, startPointer);
+                ++size;
+                ++usedSlots;
+            }
+        }
+    }
+
+    /**
+     * Searches the slot of the key.
+     *
+     * @return the slot of the key or -1 if the key is unknown
+     */
+    private int findSlot(byte[] key) {
+        int mask = capacity - 1;
+        int slot = (int) KeyHash.hash(key) & mask;
+        while (true) {
+            long startPointer = slots.getLong(slot * SLOT_LENGTH);
+            if (startPointer == EMPTY) {
+                return -1;
+            } else if ((startPointer != REMOVED) && keyEquals(slot, key)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Searches the first empty or removed slot for a key which is not in the index.
+     */
+    private int findFreeSlot(byte[] key) {
+        int mask = capacity - 1;
+        int slot = (int) KeyHash.hash(key) & mask;
+        while (true) {
+            long startPointer = slots.getLong(slot * SLOT_LENGTH);
+            if ((startPointer == EMPTY) || (startPointer == REMOVED)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private boolean keyEquals(int slot, byte[] key) {
+        int keyOffset = (slot * SLOT_LENGTH) + 8;
+        for (int i = 0; key.length > i; ++i) {
+            if (slots.get(keyOffset + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeSlot(int slot, byte[] key, long startPointer) {
+        int slotOffset = slot * SLOT_LENGTH;
+        slots.putLong(slotOffset, startPointer);
+        for (int i = 0; key.length > i; ++i) {
+            slots.put(slotOffset + 8 + i, key[i]);
+        }
+    }
+
+    private static void readKey(ByteBuffer slots, int slot, byte[] key) {
+        int keyOffset = (slot * SLOT_LENGTH) + 8;
+        for (int i = 0; key.length > i; ++i) {
+            key[i] = slots.get(keyOffset + i);
+        }
+    }
+
+}
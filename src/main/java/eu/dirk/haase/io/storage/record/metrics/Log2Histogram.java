@@ -0,0 +1,87 @@
+package eu.dirk.haase.io.storage.record.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of non-negative values in buckets of powers of two; thread-safe.
+ * <p>
+ * Bucket 0 counts the value 0, bucket b counts the values from 2^(b-1) to 2^b - 1.
+ * A value is recorded with one atomic increment of its bucket, so recording allocates
+ * nothing and takes no lock. The percentiles of a {@link #snapshot()} are the upper
+ * bounds of their buckets, precise within a factor of two.
+ */
+public final class Log2Histogram {
+
+    private final static int BUCKET_COUNT = 65;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    private final LongAdder sum = new LongAdder();
+
+    private final AtomicLong max = new AtomicLong();
+
+    private static int bucketOf(long value) {
+        return 64 - Long.numberOfLeadingZeros(value);
+    }
+
+    private static long upperBoundOf(int bucket) {
+        return (bucket < 63 ? (1L << bucket) - 1 : Long.MAX_VALUE);
+    }
+
+    /**
+     * Records a value; a negative value is recorded as 0.
+     */
+    public void record(long value) {
+        long recordedValue = Math.max(value, 0);
+        this.buckets.incrementAndGet(bucketOf(recordedValue));
+        this.sum.add(recordedValue);
+        long currMax = this.max.get();
+        while ((recordedValue > currMax) && !this.max.compareAndSet(currMax, recordedValue)) {
+            currMax = this.max.get();
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; BUCKET_COUNT > i; ++i) {
+            this.buckets.set(i, 0);
+        }
+        this.sum.reset();
+        this.max.set(0);
+    }
+
+    /**
+     * Returns the current state; values which are recorded meanwhile may be partially included.
+     */
+    public HistogramSnapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; BUCKET_COUNT > i; ++i) {
+            counts[i] = this.buckets.get(i);
+            count += counts[i];
+        }
+        long maxValue = this.max.get();
+        return new HistogramSnapshot(count, this.sum.sum(), maxValue,
+                percentile(counts, count, maxValue, 0.5),
+                percentile(counts, count, maxValue, 0.9),
+                percentile(counts, count, maxValue, 0.99),
+                percentile(counts, count, maxValue, 0.999));
+    }
+
+    private static long percentile(long[] counts, long count, long maxValue, double quantile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * count);
+        long cumulatedCount = 0;
+        for (int i = 0; BUCKET_COUNT > i; ++i) {
+            cumulatedCount += counts[i];
+            if (cumulatedCount >= rank) {
+                return Math.min(upperBoundOf(i), maxValue);
+            }
+        }
+        return maxValue;
+    }
+
+}
@@ -0,0 +1,203 @@
+package eu.dirk.haase.io.storage.record.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies, lock waits and counters of one or more storages; thread-safe.
+ * <p>
+ * A storage records into its metrics only if it has any, see
+ * {@link eu.dirk.haase.io.storage.record.RecordChannelStorage#setMetrics(StorageMetrics)}.
+ * Recording takes two or three calls of {@link System#nanoTime()} per operation and a few
+ * atomic increments; it allocates nothing. Several storages, for example the stripes of a
+ * {@link eu.dirk.haase.io.storage.record.StribedRecordStorage}, can share the same metrics.
+ * <p>
+ * The metrics are published to JMX by {@link #register(String)}.
+ */
+public final class StorageMetrics implements StorageMetricsMXBean {
+
+    public final static String DOMAIN = "eu.dirk.haase.io.storage";
+
+    public enum Operation {
+        SELECT, INSERT, INSERT_BATCH, UPDATE, DELETE, POLL, PEEK
+    }
+
+    private final Log2Histogram[] latencies;
+    private final Log2Histogram readLockWait = new Log2Histogram();
+    private final Log2Histogram writeLockWait = new Log2Histogram();
+    private final Log2Histogram scannedHeadersPerLookup = new Log2Histogram();
+    private final LongAdder scannedHeaders = new LongAdder();
+    private final LongAdder tombstones = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+
+    /**
+     * Name under which the metrics are registered or null; guarded by "this"
+     */
+    private ObjectName objectName;
+
+    public StorageMetrics() {
+        Operation[] operations = Operation.values();
+        this.latencies = new Log2Histogram[operations.length];
+        for (int i = 0; operations.length > i; ++i) {
+            this.latencies[i] = new Log2Histogram();
+        }
+    }
+
+    /**
+     * Records the latency of an operation which started at the given {@link System#nanoTime()}.
+     */
+    public void recordLatency(Operation operation, long startNanos) {
+        this.latencies[operation.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+    public void recordReadLockWait(long waitNanos) {
+        this.readLockWait.record(waitNanos);
+    }
+
+    public void recordWriteLockWait(long waitNanos) {
+        this.writeLockWait.record(waitNanos);
+    }
+
+    /**
+     * Records the count of RecordHeaders which one lookup of a record has read.
+     */
+    public void recordScannedHeaders(int headerCount) {
+        this.scannedHeadersPerLookup.record(headerCount);
+        this.scannedHeaders.add(headerCount);
+    }
+
+    public void recordTombstone() {
+        this.tombstones.increment();
+    }
+
+    public void recordBytesWritten(long byteCount) {
+        this.bytesWritten.add(byteCount);
+    }
+
+    public void recordBytesRead(long byteCount) {
+        this.bytesRead.add(byteCount);
+    }
+
+    public Log2Histogram getLatencyHistogram(Operation operation) {
+        return this.latencies[operation.ordinal()];
+    }
+
+    @Override
+    public HistogramSnapshot getSelectLatency() {
+        return getLatencyHistogram(Operation.SELECT).snapshot();
+    }
+
+    @Override
+    public HistogramSnapshot getInsertLatency() {
+        return getLatencyHistogram(Operation.INSERT).snapshot();
+    }
+
+    @Override
+    public HistogramSnapshot getInsertBatchLatency() {
+        return getLatencyHistogram(Operation.INSERT_BATCH).snapshot();
+    }
+
+    @Override
+    public HistogramSnapshot getUpdateLatency() {
+        return getLatencyHistogram(Operation.UPDATE).snapshot();
+    }
+
+    @Override
+    public HistogramSnapshot getDeleteLatency() {
+        return getLatencyHistogram(Operation.DELETE).snapshot();
+    }
+
+    @Override
+    public HistogramSnapshot getPollLatency() {
+        return getLatencyHistogram(Operation.POLL).snapshot();
+    }
+
+    @Override
+    public HistogramSnapshot getPeekLatency() {
+        return getLatencyHistogram(Operation.PEEK).snapshot();
+    }
+
+    @Override
+    public HistogramSnapshot getReadLockWait() {
+        return this.readLockWait.snapshot();
+    }
+
+    @Override
+    public HistogramSnapshot getWriteLockWait() {
+        return this.writeLockWait.snapshot();
+    }
+
+    @Override
+    public HistogramSnapshot getScannedHeadersPerLookup() {
+        return this.scannedHeadersPerLookup.snapshot();
+    }
+
+    @Override
+    public long getScannedHeaders() {
+        return this.scannedHeaders.sum();
+    }
+
+    @Override
+    public long getTombstones() {
+        return this.tombstones.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return this.bytesWritten.sum();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return this.bytesRead.sum();
+    }
+
+    @Override
+    public void reset() {
+        for (Log2Histogram latency : this.latencies) {
+            latency.reset();
+        }
+        this.readLockWait.reset();
+        this.writeLockWait.reset();
+        this.scannedHeadersPerLookup.reset();
+        this.scannedHeaders.reset();
+        this.tombstones.reset();
+        this.bytesWritten.reset();
+        this.bytesRead.reset();
+    }
+
+    /**
+     * Registers the metrics at the platform MBeanServer as
+     * {@code eu.dirk.haase.io.storage:type=StorageMetrics,name=<name>}.
+     *
+     * @param name the name of the storage
+     * @return the name of the MBean
+     */
+    public synchronized ObjectName register(String name) throws JMException {
+        if (this.objectName != null) {
+            throw new IllegalStateException("Metrics are already registered: " + this.objectName);
+        }
+        ObjectName newObjectName = new ObjectName(DOMAIN + ":type=StorageMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, newObjectName);
+        this.objectName = newObjectName;
+        return newObjectName;
+    }
+
+    /**
+     * Removes the metrics from the platform MBeanServer if they are registered.
+     */
+    public synchronized void unregister() throws JMException {
+        if (this.objectName != null) {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            if (mBeanServer.isRegistered(this.objectName)) {
+                mBeanServer.unregisterMBean(this.objectName);
+            }
+            this.objectName = null;
+        }
+    }
+
+}
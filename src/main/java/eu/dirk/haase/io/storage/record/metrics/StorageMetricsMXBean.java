@@ -0,0 +1,51 @@
+package eu.dirk.haase.io.storage.record.metrics;
+
+/**
+ * Management interface of the {@link StorageMetrics}. The latencies and lock waits are
+ * in nanoseconds.
+ */
+public interface StorageMetricsMXBean {
+
+    HistogramSnapshot getSelectLatency();
+
+    HistogramSnapshot getInsertLatency();
+
+    HistogramSnapshot getInsertBatchLatency();
+
+    HistogramSnapshot getUpdateLatency();
+
+    HistogramSnapshot getDeleteLatency();
+
+    HistogramSnapshot getPollLatency();
+
+    HistogramSnapshot getPeekLatency();
+
+    /**
+     * Time the operations waited for the read lock of the storage.
+     */
+    HistogramSnapshot getReadLockWait();
+
+    /**
+     * Time the operations waited for the write lock of the storage.
+     */
+    HistogramSnapshot getWriteLockWait();
+
+    /**
+     * Count of the RecordHeaders read by one lookup of a record.
+     */
+    HistogramSnapshot getScannedHeadersPerLookup();
+
+    long getScannedHeaders();
+
+    /**
+     * Count of the records which were marked as deleted, by a delete, a poll or an update which moved the record.
+     */
+    long getTombstones();
+
+    long getBytesWritten();
+
+    long getBytesRead();
+
+    void reset();
+
+}
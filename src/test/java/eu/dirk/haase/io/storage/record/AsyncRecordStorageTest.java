@@ -0,0 +1,195 @@
+package eu.dirk.haase.io.storage.record;
+
+import eu.dirk.haase.io.storage.channel.SeekableAsynchronousFileByteChannel;
+import eu.dirk.haase.io.storage.record.index.RecordKeyIndex;
+import eu.dirk.haase.io.storage.record.metrics.StorageMetrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(BlockJUnit4ClassRunner.class)
+public class AsyncRecordStorageTest {
+
+    private final static int CAPACITY = 1024;
+
+    private AsyncRecordStorage asyncRecordStorage;
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException, InterruptedException, ExecutionException {
+        file = new File("./AsyncRecordStorageTest.recordfile.bin");
+        file.delete();
+        asyncRecordStorage = new AsyncRecordStorage(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        asyncRecordStorage.getRecordStorage().setRecordKeyIndex(new RecordKeyIndex());
+        asyncRecordStorage.create().get();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException, ExecutionException {
+        if (asyncRecordStorage != null) {
+            asyncRecordStorage.close().get();
+        }
+        asyncRecordStorage = null;
+        if (file != null) {
+            file.delete();
+        }
+        file = null;
+    }
+
+    private static ByteBuffer buildData(String data) {
+        ByteBuffer dataByteBuffer = ByteBuffer.allocate(CAPACITY);
+        dataByteBuffer.put(data.getBytes());
+        return dataByteBuffer;
+    }
+
+    @Test
+    public void testSelectRecord_ManyInFlight() throws InterruptedException, ExecutionException {
+        // ===============
+        // === Given
+        final int RECORD_COUNT = 200;
+        byte[][] keys = new byte[RECORD_COUNT][];
+        ByteBuffer[] dataBuffers = new ByteBuffer[RECORD_COUNT];
+        for (int i = 0; RECORD_COUNT > i; ++i) {
+            keys[i] = UUID.randomUUID().toString().getBytes();
+            dataBuffers[i] = buildData("Das ist der Record Nr. " + i);
+        }
+        asyncRecordStorage.insertRecords(keys, dataBuffers).get();
+        StorageMetrics metrics = new StorageMetrics();
+        asyncRecordStorage.getRecordStorage().setMetrics(metrics);
+        // ===============
+        // === When
+        List<CompletableFuture<Integer>> selects = new ArrayList<>();
+        byte[][] buffers = new byte[RECORD_COUNT][CAPACITY];
+        for (int i = 0; RECORD_COUNT > i; ++i) {
+            selects.add(asyncRecordStorage.selectRecord(keys[i], ByteBuffer.wrap(buffers[i])));
+        }
+        CompletableFuture.allOf(selects.toArray(new CompletableFuture<?>[0])).get();
+        int unknownIndex = asyncRecordStorage.selectRecord(UUID.randomUUID().toString().getBytes(),
+                ByteBuffer.allocate(CAPACITY)).get();
+        // ===============
+        // === Then
+        for (int i = 0; RECORD_COUNT > i; ++i) {
+            assertThat(selects.get(i).get()).isEqualTo(i);
+            assertThat(buffers[i]).startsWith(("Das ist der Record Nr. " + i).getBytes());
+        }
+        assertThat(unknownIndex).isEqualTo(-1);
+        assertThat(metrics.getSelectLatency().getCount()).isEqualTo(RECORD_COUNT);
+        // Not a single select fell back to the blocking select under the read lock
+        assertThat(metrics.getReadLockWait().getCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testSelectRecord_BlockingIndexIsLookedUpOnExecutor() throws InterruptedException, ExecutionException {
+        // ===============
+        // === Given
+        final Set<Thread> lookupThreads = ConcurrentHashMap.newKeySet();
+        asyncRecordStorage.getRecordStorage().setRecordKeyIndex(new RecordKeyIndex() {
+            @Override
+            public boolean isLookupBlocking() {
+                return true;
+            }
+
+            @Override
+            public long get(byte[] key) {
+                lookupThreads.add(Thread.currentThread());
+                return super.get(key);
+            }
+        });
+        byte[] key1 = UUID.randomUUID().toString().getBytes();
+        asyncRecordStorage.insertRecord(key1, buildData("Das ist der erste Record")).get();
+        StorageMetrics metrics = new StorageMetrics();
+        asyncRecordStorage.getRecordStorage().setMetrics(metrics);
+        byte[] buffer1 = new byte[CAPACITY];
+        lookupThreads.clear();
+        // ===============
+        // === When
+        int recordIndex1 = asyncRecordStorage.selectRecord(key1, ByteBuffer.wrap(buffer1)).get();
+        // ===============
+        // === Then
+        assertThat(recordIndex1).isEqualTo(0);
+        assertThat(buffer1).startsWith("Das ist der erste Record".getBytes());
+        assertThat(lookupThreads).isNotEmpty().doesNotContain(Thread.currentThread());
+        assertThat(metrics.getReadLockWait().getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testUpdateDeletePoll() throws InterruptedException, ExecutionException {
+        // ===============
+        // === Given
+        byte[] key0 = UUID.randomUUID().toString().getBytes();
+        byte[] key1 = UUID.randomUUID().toString().getBytes();
+        byte[] key2 = UUID.randomUUID().toString().getBytes();
+        asyncRecordStorage.insertRecord(key0, buildData("Das ist der Record Nr. 0")).get();
+        asyncRecordStorage.insertRecord(key1, buildData("Das ist der Record Nr. 1")).get();
+        asyncRecordStorage.insertRecord(key2, buildData("Das ist der Record Nr. 2")).get();
+        // ===============
+        // === When
+        int updatedIndex = asyncRecordStorage.updateRecord(key1, buildData("Das ist der neue Record Nr. 1")).get();
+        int deletedIndex = asyncRecordStorage.deleteRecord(key2).get();
+        byte[] selectBuffer = new byte[CAPACITY];
+        int selectedIndex = asyncRecordStorage.selectRecord(key1, ByteBuffer.wrap(selectBuffer)).get();
+        int deletedSelectIndex = asyncRecordStorage.selectRecord(key2, ByteBuffer.allocate(CAPACITY)).get();
+        byte[] pollBuffer = new byte[CAPACITY];
+        int polledIndex = asyncRecordStorage.poll(ByteBuffer.wrap(pollBuffer)).get();
+        int peekedIndex = asyncRecordStorage.peek(ByteBuffer.allocate(CAPACITY)).get();
+        // ===============
+        // === Then
+        assertThat(deletedIndex).isEqualTo(2);
+        assertThat(selectedIndex).isEqualTo(updatedIndex);
+        assertThat(selectBuffer).startsWith("Das ist der neue Record Nr. 1".getBytes());
+        assertThat(deletedSelectIndex).isEqualTo(-1);
+        assertThat(polledIndex).isEqualTo(0);
+        assertThat(pollBuffer).startsWith("Das ist der Record Nr. 0".getBytes());
+        assertThat(peekedIndex).isEqualTo(updatedIndex);
+    }
+
+    @Test
+    public void testSelectRecord_AfterCompactionAndReopen() throws IOException, InterruptedException, ExecutionException {
+        // ===============
+        // === Given
+        byte[] key0 = UUID.randomUUID().toString().getBytes();
+        byte[] key1 = UUID.randomUUID().toString().getBytes();
+        asyncRecordStorage.insertRecord(key0, buildData("Das ist der Record Nr. 0")).get();
+        asyncRecordStorage.insertRecord(key1, buildData("Das ist der Record Nr. 1")).get();
+        asyncRecordStorage.deleteRecord(key0).get();
+        // ===============
+        // === When
+        long reclaimedBytes = asyncRecordStorage.getRecordStorage().compact(0);
+        byte[] compactedBuffer = new byte[CAPACITY];
+        int compactedIndex = asyncRecordStorage.selectRecord(key1, ByteBuffer.wrap(compactedBuffer)).get();
+        asyncRecordStorage.close().get();
+        asyncRecordStorage = new AsyncRecordStorage(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.READ);
+        asyncRecordStorage.getRecordStorage().setRecordKeyIndex(new RecordKeyIndex());
+        asyncRecordStorage.initialize().get();
+        byte[] reopenedBuffer = new byte[CAPACITY];
+        int reopenedIndex = asyncRecordStorage.selectRecord(key1, ByteBuffer.wrap(reopenedBuffer)).get();
+        // ===============
+        // === Then
+        assertThat(reclaimedBytes).isGreaterThan(0);
+        assertThat(asyncRecordStorage.getRecordStorage().getChannel())
+                .isInstanceOf(SeekableAsynchronousFileByteChannel.class);
+        assertThat(compactedIndex).isEqualTo(1);
+        assertThat(compactedBuffer).startsWith("Das ist der Record Nr. 1".getBytes());
+        assertThat(reopenedIndex).isEqualTo(1);
+        assertThat(reopenedBuffer).startsWith("Das ist der Record Nr. 1".getBytes());
+    }
+
+}
@@ -0,0 +1,65 @@
+package eu.dirk.haase.io.storage.record;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.zip.Checksum;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(BlockJUnit4ClassRunner.class)
+public class Crc32cTest {
+
+    @Test
+    public void testChecksum_CheckValue() {
+        // ===============
+        // === Given
+        ByteBuffer buffer = ByteBuffer.wrap("123456789".getBytes());
+        // ===============
+        // === When
+        int checksum = Crc32c.checksum(buffer, 0, buffer.capacity());
+        // ===============
+        // === Then
+        assertThat(checksum).isEqualTo(0xE3069283);
+    }
+
+    @Test
+    public void testChecksum_TableEqualsIntrinsic() {
+        // ===============
+        // === Given
+        byte[] data = new byte[10000];
+        new Random(4711).nextBytes(data);
+        Checksum tableCrc32c = new Crc32c.TableCrc32c();
+        Checksum crc32c = Crc32c.newChecksum();
+        // ===============
+        // === When
+        tableCrc32c.update(data, 7, data.length - 7);
+        crc32c.update(data, 7, data.length - 7);
+        // ===============
+        // === Then
+        assertThat(tableCrc32c.getValue()).isEqualTo(crc32c.getValue());
+    }
+
+    @Test
+    public void testChecksum_DirectEqualsHeap() {
+        // ===============
+        // === Given
+        byte[] data = new byte[10000];
+        new Random(4711).nextBytes(data);
+        ByteBuffer heapBuffer = ByteBuffer.wrap(data);
+        ByteBuffer directBuffer = ByteBuffer.allocateDirect(data.length);
+        directBuffer.put(data);
+        // ===============
+        // === When
+        int heapChecksum = Crc32c.checksum(heapBuffer, 13, 9000);
+        int directChecksum = Crc32c.checksum(directBuffer, 13, 9000);
+        // ===============
+        // === Then
+        assertThat(directChecksum).isEqualTo(heapChecksum);
+        assertThat(directBuffer.position()).isEqualTo(data.length);
+    }
+
+}
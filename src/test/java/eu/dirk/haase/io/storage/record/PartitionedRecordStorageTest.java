@@ -0,0 +1,218 @@
+package eu.dirk.haase.io.storage.record;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(BlockJUnit4ClassRunner.class)
+public class PartitionedRecordStorageTest {
+
+    private final static int PARTITION_COUNT = 4;
+    private final static int CAPACITY = 1024;
+
+    private PartitionedRecordStorage recordStorage;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        file = new File("./PartitionedRecordStorageTest.recordfile.bin");
+        deletePartitionFiles();
+        recordStorage = new PartitionedRecordStorage(PARTITION_COUNT, file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        recordStorage.create();
+    }
+
+    @After
+    public void tearDown() throws IOException, InterruptedException {
+        if (recordStorage != null) {
+            recordStorage.close();
+        }
+        recordStorage = null;
+        deletePartitionFiles();
+    }
+
+    private void deletePartitionFiles() {
+        for (int i = 0; PARTITION_COUNT + 1 > i; ++i) {
+            PartitionedRecordStorage.partitionPathOf(file.toPath(), i).toFile().delete();
+        }
+        PartitionedRecordStorage.descriptorPathOf(file.toPath()).toFile().delete();
+    }
+
+    private static ByteBuffer buildData(String data) {
+        ByteBuffer dataByteBuffer = ByteBuffer.allocate(CAPACITY);
+        dataByteBuffer.put(data.getBytes());
+        return dataByteBuffer;
+    }
+
+    @Test
+    public void testInitialize_SamePartitionCount() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        byte[] key = UUID.randomUUID().toString().getBytes();
+        recordStorage.insertRecord(key, buildData("Der erste Record"));
+        recordStorage.close();
+        recordStorage = new PartitionedRecordStorage(PARTITION_COUNT, file, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        // ===============
+        // === When
+        recordStorage.initialize();
+        // ===============
+        // === Then
+        byte[] buffer = new byte[CAPACITY];
+        assertThat(recordStorage.selectRecord(key, ByteBuffer.wrap(buffer))).isGreaterThanOrEqualTo(0);
+        assertThat(buffer).startsWith("Der erste Record".getBytes());
+    }
+
+    @Test
+    public void testInitialize_OtherPartitionCount() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        recordStorage.close();
+        recordStorage = new PartitionedRecordStorage(PARTITION_COUNT + 1, file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        // ===============
+        // === When
+        IOException exception = null;
+        try {
+            recordStorage.initialize();
+        } catch (IOException ex) {
+            exception = ex;
+        }
+        // ===============
+        // === Then
+        assertThat(exception).isNotNull();
+        assertThat(exception.getMessage()).contains("Count of partitions does not match");
+    }
+
+    @Test
+    public void testInsertRecord_RoutesByKey() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        final int RECORD_COUNT = 100;
+        byte[][] keys = new byte[RECORD_COUNT][];
+        int[] recordCountByPartition = new int[PARTITION_COUNT];
+        // ===============
+        // === When
+        for (int i = 0; RECORD_COUNT > i; ++i) {
+            keys[i] = UUID.randomUUID().toString().getBytes();
+            recordStorage.insertRecord(keys[i], buildData("Das ist der Record Nr. " + i));
+            ++recordCountByPartition[recordStorage.partitionOf(keys[i])];
+        }
+        // ===============
+        // === Then
+        for (int i = 0; RECORD_COUNT > i; ++i) {
+            byte[] buffer = new byte[CAPACITY];
+            RecordChannelStorage partition = recordStorage.getPartition(recordStorage.partitionOf(keys[i]));
+            assertThat(recordStorage.selectRecord(keys[i], ByteBuffer.wrap(buffer))).isGreaterThanOrEqualTo(0);
+            assertThat(buffer).startsWith(("Das ist der Record Nr. " + i).getBytes());
+            assertThat(partition.selectRecordHeader(keys[i])).isNotNull();
+        }
+        for (int p = 0; PARTITION_COUNT > p; ++p) {
+            assertThat(recordCountByPartition[p]).isGreaterThan(0);
+            assertThat(recordStorage.getPartition(p).getRecordKeyIndex().size()).isEqualTo(recordCountByPartition[p]);
+        }
+    }
+
+    @Test
+    public void testInsertRecords_DeleteAndUpdate() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        final int RECORD_COUNT = 20;
+        byte[][] keys = new byte[RECORD_COUNT][];
+        ByteBuffer[] dataByteBuffers = new ByteBuffer[RECORD_COUNT];
+        for (int i = 0; RECORD_COUNT > i; ++i) {
+            keys[i] = UUID.randomUUID().toString().getBytes();
+            dataByteBuffers[i] = buildData("Das ist der Record Nr. " + i);
+        }
+        // ===============
+        // === When
+        int firstIndex = recordStorage.insertRecords(keys, dataByteBuffers);
+        int deletedIndex = recordStorage.deleteRecord(keys[0]);
+        int updatedIndex = recordStorage.updateRecord(keys[1], buildData("Das ist der geaenderte Record"));
+        // ===============
+        // === Then
+        assertThat(firstIndex).isEqualTo(0);
+        assertThat(deletedIndex).isEqualTo(0);
+        assertThat(updatedIndex).isGreaterThanOrEqualTo(0);
+        assertThat(recordStorage.selectRecord(keys[0], ByteBuffer.allocate(CAPACITY))).isEqualTo(-1);
+        byte[] buffer1 = new byte[CAPACITY];
+        recordStorage.selectRecord(keys[1], ByteBuffer.wrap(buffer1));
+        assertThat(buffer1).startsWith("Das ist der geaenderte Record".getBytes());
+        for (int i = 2; RECORD_COUNT > i; ++i) {
+            byte[] buffer = new byte[CAPACITY];
+            assertThat(recordStorage.selectRecord(keys[i], ByteBuffer.wrap(buffer))).isGreaterThanOrEqualTo(0);
+            assertThat(buffer).startsWith(("Das ist der Record Nr. " + i).getBytes());
+        }
+    }
+
+    @Test
+    public void testInsertRecords_RecordIndices() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        final int RECORD_COUNT = 20;
+        byte[][] keys = new byte[RECORD_COUNT][];
+        ByteBuffer[] dataByteBuffers = new ByteBuffer[RECORD_COUNT];
+        for (int i = 0; RECORD_COUNT > i; ++i) {
+            keys[i] = UUID.randomUUID().toString().getBytes();
+            dataByteBuffers[i] = buildData("Das ist der Record Nr. " + i);
+        }
+        int[] recordIndices = new int[RECORD_COUNT];
+        // ===============
+        // === When
+        recordStorage.insertRecords(keys, dataByteBuffers, recordIndices);
+        // ===============
+        // === Then
+        for (int i = 0; RECORD_COUNT > i; ++i) {
+            assertThat(recordIndices[i]).isEqualTo(recordStorage.selectRecord(keys[i], ByteBuffer.allocate(CAPACITY)));
+        }
+    }
+
+    @Test
+    public void testInsertRecords_FailedPartitionKeepsOtherPartitions() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        final int RECORD_COUNT = 40;
+        final int FAILING_PARTITION = PARTITION_COUNT - 1;
+        byte[][] keys = new byte[RECORD_COUNT][];
+        ByteBuffer[] dataByteBuffers = new ByteBuffer[RECORD_COUNT];
+        for (int i = 0; RECORD_COUNT > i; ++i) {
+            keys[i] = UUID.randomUUID().toString().getBytes();
+            dataByteBuffers[i] = buildData("Das ist der Record Nr. " + i);
+        }
+        int[] recordIndices = new int[RECORD_COUNT];
+        recordStorage.getPartition(FAILING_PARTITION).close();
+        // ===============
+        // === When
+        IOException failure = null;
+        try {
+            recordStorage.insertRecords(keys, dataByteBuffers, recordIndices);
+        } catch (IOException ex) {
+            failure = ex;
+        }
+        // ===============
+        // === Then
+        assertThat(failure).isNotNull();
+        for (int i = 0; RECORD_COUNT > i; ++i) {
+            int partition = recordStorage.partitionOf(keys[i]);
+            if (partition == FAILING_PARTITION) {
+                assertThat(recordIndices[i]).isEqualTo(-1);
+            } else {
+                assertThat(recordIndices[i]).isGreaterThanOrEqualTo(0);
+                assertThat(recordStorage.getPartition(partition).selectRecordHeader(keys[i])).isNotNull();
+            }
+        }
+        // The failing partition is closed already
+        for (int p = 0; FAILING_PARTITION > p; ++p) {
+            recordStorage.getPartition(p).close();
+        }
+        recordStorage = null;
+    }
+
+}
@@ -0,0 +1,200 @@
+package eu.dirk.haase.io.storage.record;
+
+import eu.dirk.haase.io.storage.record.index.RecordKeyIndex;
+import eu.dirk.haase.io.storage.record.metrics.StorageMetrics;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that the hot paths allocate nothing in steady state; needs a JVM which counts the
+ * bytes allocated by a thread.
+ */
+@RunWith(BlockJUnit4ClassRunner.class)
+public class RecordChannelStorageAllocationTest {
+
+    private final static int RECORD_COUNT = 2000;
+
+    /**
+     * Tolerance for allocations of the JVM itself, far below one byte per operation.
+     */
+    private final static long MAX_ALLOCATED_BYTES = 512;
+
+    /**
+     * Rounds before a measurement, so that the measured paths are compiled.
+     */
+    private final static int WARM_UP_ROUNDS = 10;
+
+    private com.sun.management.ThreadMXBean threadMXBean;
+    private RecordChannelStorage recordChannelStorage;
+    private File file;
+    private byte[][] keys;
+
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ThreadMXBean mxBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(mxBean instanceof com.sun.management.ThreadMXBean);
+        threadMXBean = (com.sun.management.ThreadMXBean) mxBean;
+        Assume.assumeTrue(threadMXBean.isThreadAllocatedMemorySupported() && threadMXBean.isThreadAllocatedMemoryEnabled());
+        file = new File("./RecordChannelStorageAllocationTest.recordfile.bin");
+        file.delete();
+        keys = new byte[RECORD_COUNT][];
+        for (int i = 0; RECORD_COUNT > i; ++i) {
+            keys[i] = UUID.randomUUID().toString().getBytes();
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException, InterruptedException {
+        if (recordChannelStorage != null) {
+            recordChannelStorage.close();
+        }
+        recordChannelStorage = null;
+        if (file != null) {
+            file.delete();
+        }
+        file = null;
+    }
+
+    private void openRecordChannelStorage(boolean isIndexed) throws IOException, InterruptedException {
+        recordChannelStorage = new RecordChannelStorage(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        if (isIndexed) {
+            recordChannelStorage.setRecordKeyIndex(new RecordKeyIndex());
+        }
+        recordChannelStorage.create();
+    }
+
+    private long allocatedBytes() {
+        return threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private void insertRecords(int fromIndex, int toIndex, ByteBuffer dataBuffer) throws IOException, InterruptedException {
+        for (int i = fromIndex; toIndex > i; ++i) {
+            dataBuffer.clear();
+            dataBuffer.putInt(i);
+            recordChannelStorage.insertRecord(keys[i], dataBuffer);
+        }
+    }
+
+    private void selectRecords(ByteBuffer dataBuffer) throws IOException, InterruptedException {
+        for (int i = 0; RECORD_COUNT > i; i += 10) {
+            recordChannelStorage.selectRecord(keys[i], dataBuffer);
+        }
+    }
+
+    private int scanRecords() throws IOException, InterruptedException {
+        int scannedCount = 0;
+        RecordScanner recordScanner = recordChannelStorage.scanRecords();
+        while (recordScanner.advance() != null) {
+            ++scannedCount;
+        }
+        return scannedCount;
+    }
+
+    @Test
+    public void testInsertAndPoll_WithoutAllocation() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        openRecordChannelStorage(false);
+        ByteBuffer dataBuffer = ByteBuffer.allocate(64);
+        insertRecords(0, RECORD_COUNT / 2, dataBuffer);
+        for (int i = 0; (RECORD_COUNT / 4) > i; ++i) {
+            recordChannelStorage.poll(dataBuffer);
+        }
+        // ===============
+        // === When
+        long startBytes = allocatedBytes();
+        insertRecords(RECORD_COUNT / 2, RECORD_COUNT, dataBuffer);
+        for (int i = 0; (RECORD_COUNT / 4) > i; ++i) {
+            recordChannelStorage.poll(dataBuffer);
+        }
+        long insertAndPollBytes = allocatedBytes() - startBytes;
+        // ===============
+        // === Then
+        assertThat(insertAndPollBytes).isLessThan(MAX_ALLOCATED_BYTES);
+    }
+
+    @Test
+    public void testSelect_WithoutAllocation() throws IOException, InterruptedException {
+        for (boolean isIndexed : new boolean[]{true, false}) {
+            // ===============
+            // === Given
+            openRecordChannelStorage(isIndexed);
+            ByteBuffer dataBuffer = ByteBuffer.allocate(64);
+            insertRecords(0, RECORD_COUNT, dataBuffer);
+            for (int i = 0; WARM_UP_ROUNDS > i; ++i) {
+                selectRecords(dataBuffer);
+            }
+            // ===============
+            // === When
+            long startBytes = allocatedBytes();
+            selectRecords(dataBuffer);
+            long selectBytes = allocatedBytes() - startBytes;
+            // ===============
+            // === Then
+            assertThat(selectBytes).isLessThan(MAX_ALLOCATED_BYTES);
+            recordChannelStorage.close();
+            recordChannelStorage = null;
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testInsertAndSelect_WithMetrics_WithoutAllocation() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        openRecordChannelStorage(true);
+        StorageMetrics storageMetrics = new StorageMetrics();
+        recordChannelStorage.setMetrics(storageMetrics);
+        ByteBuffer dataBuffer = ByteBuffer.allocate(64);
+        insertRecords(0, RECORD_COUNT / 2, dataBuffer);
+        for (int i = 0; WARM_UP_ROUNDS > i; ++i) {
+            selectRecords(dataBuffer);
+        }
+        // ===============
+        // === When
+        long startBytes = allocatedBytes();
+        insertRecords(RECORD_COUNT / 2, RECORD_COUNT, dataBuffer);
+        selectRecords(dataBuffer);
+        long recordedBytes = allocatedBytes() - startBytes;
+        // ===============
+        // === Then
+        assertThat(recordedBytes).isLessThan(MAX_ALLOCATED_BYTES);
+        assertThat(storageMetrics.getInsertLatency().getCount()).isEqualTo(RECORD_COUNT);
+    }
+
+    @Test
+    public void testScan_WithoutAllocation() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        openRecordChannelStorage(false);
+        ByteBuffer dataBuffer = ByteBuffer.allocate(64);
+        insertRecords(0, RECORD_COUNT, dataBuffer);
+        scanRecords();
+        // ===============
+        // === When
+        long startBytes = allocatedBytes();
+        int scannedCount = scanRecords();
+        long scanBytes = allocatedBytes() - startBytes;
+        // ===============
+        // === Then
+        assertThat(scannedCount).isEqualTo(RECORD_COUNT);
+        // The scanner itself and its read-ahead buffer are allocated once per scan
+        long readAheadLength = recordChannelStorage.getChannel().size();
+        assertThat(scanBytes).isLessThan(readAheadLength + (2 * MAX_ALLOCATED_BYTES));
+    }
+
+}
@@ -0,0 +1,236 @@
+package eu.dirk.haase.io.storage.record;
+
+import eu.dirk.haase.io.storage.record.data.RecordData;
+import eu.dirk.haase.io.storage.record.header.RecordHeader;
+import eu.dirk.haase.io.storage.record.index.RecordKeyIndex;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+@RunWith(BlockJUnit4ClassRunner.class)
+public class RecordChannelStorageChecksumTest {
+
+    private final static int CAPACITY = 1024;
+
+    /**
+     * Offset of the lastModifiedTimeMillis within the RecordHeader.
+     */
+    private final static int LAST_MODIFIED_OFFSET = 40;
+
+    private RecordChannelStorage recordChannelStorage;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        file = new File("./RecordChannelStorageChecksumTest.recordfile.bin");
+        file.delete();
+        recordChannelStorage = openRecordChannelStorage(ChecksumVerification.FULL);
+        recordChannelStorage.create();
+    }
+
+    @After
+    public void tearDown() throws IOException, InterruptedException {
+        if (recordChannelStorage != null) {
+            recordChannelStorage.close();
+        }
+        recordChannelStorage = null;
+        if (file != null) {
+            file.delete();
+        }
+        file = null;
+    }
+
+    private RecordChannelStorage openRecordChannelStorage(ChecksumVerification checksumVerification) throws IOException {
+        RecordChannelStorage storage = new RecordChannelStorage(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        storage.setRecordKeyIndex(new RecordKeyIndex());
+        storage.setChecksums(true);
+        storage.setChecksumVerification(checksumVerification);
+        return storage;
+    }
+
+    private void reopen(ChecksumVerification checksumVerification) throws IOException, InterruptedException {
+        recordChannelStorage.close();
+        recordChannelStorage = openRecordChannelStorage(checksumVerification);
+        recordChannelStorage.initialize();
+    }
+
+    private static ByteBuffer buildData(String data) {
+        ByteBuffer dataByteBuffer = ByteBuffer.allocate(CAPACITY);
+        dataByteBuffer.put(data.getBytes());
+        return dataByteBuffer;
+    }
+
+    private byte[][] insertRecords(int recordCount) throws IOException, InterruptedException {
+        byte[][] keys = new byte[recordCount][];
+        for (int i = 0; recordCount > i; ++i) {
+            keys[i] = UUID.randomUUID().toString().getBytes();
+            recordChannelStorage.insertRecord(keys[i], buildData("Das ist der Record Nr. " + i));
+        }
+        return keys;
+    }
+
+    private long payloadPointerOf(byte[] key) throws IOException {
+        return recordChannelStorage.selectRecordHeader(key).getStartPointer()
+                + new RecordHeader().getLength() + new RecordData().getLength();
+    }
+
+    private void damage(long position) throws IOException {
+        try (FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1);
+            fileChannel.read(buffer, position);
+            buffer.put(0, (byte) (buffer.get(0) ^ 0x01));
+            buffer.rewind();
+            fileChannel.write(buffer, position);
+        }
+    }
+
+    @Test
+    public void testSelectRecord_WithChecksums() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        byte[][] keys = insertRecords(3);
+        recordChannelStorage.updateRecord(keys[1], buildData("Das ist der Record Nr. 9"));
+        recordChannelStorage.deleteRecord(keys[2]);
+        // ===============
+        // === When
+        reopen(ChecksumVerification.FULL);
+        byte[] buffer = new byte[CAPACITY];
+        int selectedIndex = recordChannelStorage.selectRecord(keys[1], ByteBuffer.wrap(buffer));
+        // ===============
+        // === Then
+        assertThat(selectedIndex).isEqualTo(1);
+        assertThat(buffer).startsWith("Das ist der Record Nr. 9".getBytes());
+        assertThat(recordChannelStorage.selectRecordHeader(keys[0]).hasChecksum()).isTrue();
+        assertThat(recordChannelStorage.getAliveRecordCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testSelectRecord_DamagedPayload() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        byte[][] keys = insertRecords(3);
+        long payloadPointer = payloadPointerOf(keys[1]);
+        recordChannelStorage.close();
+        damage(payloadPointer + 3);
+        // ===============
+        // === When
+        recordChannelStorage = openRecordChannelStorage(ChecksumVerification.HEADERS);
+        recordChannelStorage.initialize();
+        int selectedIndex = recordChannelStorage.selectRecord(keys[1], ByteBuffer.allocate(CAPACITY));
+        recordChannelStorage.setChecksumVerification(ChecksumVerification.FULL);
+        // ===============
+        // === Then
+        assertThat(selectedIndex).isEqualTo(1);
+        try {
+            recordChannelStorage.selectRecord(keys[1], ByteBuffer.allocate(CAPACITY));
+            fail("IOException expected");
+        } catch (IOException ex) {
+            assertThat(ex.getMessage()).startsWith("Checksum mismatch");
+        }
+        assertThat(recordChannelStorage.selectRecord(keys[0], ByteBuffer.allocate(CAPACITY))).isEqualTo(0);
+    }
+
+    @Test
+    public void testSelectRecord_DamagedHeader() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        byte[][] keys = insertRecords(3);
+        long startPointer = recordChannelStorage.selectRecordHeader(keys[1]).getStartPointer();
+        recordChannelStorage.setChecksumVerification(ChecksumVerification.OFF);
+        damage(startPointer + LAST_MODIFIED_OFFSET);
+        // ===============
+        // === When
+        int selectedIndex = recordChannelStorage.selectRecord(keys[1], ByteBuffer.allocate(CAPACITY));
+        recordChannelStorage.setChecksumVerification(ChecksumVerification.HEADERS);
+        // ===============
+        // === Then
+        assertThat(selectedIndex).isEqualTo(1);
+        try {
+            recordChannelStorage.selectRecord(keys[1], ByteBuffer.allocate(CAPACITY));
+            fail("IOException expected");
+        } catch (IOException ex) {
+            assertThat(ex.getMessage()).startsWith("Checksum mismatch");
+        }
+    }
+
+    @Test
+    public void testInitialize_TruncatesTornPayload() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        byte[][] keys = insertRecords(3);
+        long tornStartPointer = recordChannelStorage.selectRecordHeader(keys[2]).getStartPointer();
+        long payloadPointer = payloadPointerOf(keys[2]);
+        recordChannelStorage.close();
+        // The payload of the last record did not reach the storage device, but the length of the file did
+        damage(payloadPointer);
+        recordChannelStorage = openRecordChannelStorage(ChecksumVerification.FULL);
+        // ===============
+        // === When
+        recordChannelStorage.initialize();
+        byte[] key = UUID.randomUUID().toString().getBytes();
+        recordChannelStorage.insertRecord(key, buildData("Das ist der neue Record"));
+        // ===============
+        // === Then
+        assertThat(recordChannelStorage.getAliveRecordCount()).isEqualTo(3);
+        assertThat(recordChannelStorage.selectRecord(keys[2], ByteBuffer.allocate(CAPACITY))).isEqualTo(-1);
+        assertThat(recordChannelStorage.selectRecordHeader(key).getStartPointer()).isEqualTo(tornStartPointer);
+    }
+
+    @Test
+    public void testInitialize_DamagedRecordWithinStorageUnit() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        byte[][] keys = insertRecords(3);
+        long payloadPointer = payloadPointerOf(keys[1]);
+        recordChannelStorage.close();
+        damage(payloadPointer);
+        // ===============
+        // === When
+        recordChannelStorage = openRecordChannelStorage(ChecksumVerification.FULL);
+        try {
+            recordChannelStorage.initialize();
+            fail("IOException expected");
+        } catch (IOException ex) {
+            // ===============
+            // === Then
+            assertThat(ex.getMessage()).startsWith("Storage unit is corrupt");
+        }
+    }
+
+    @Test
+    public void testScanRecords_DamagedPayload() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        byte[][] keys = insertRecords(3);
+        damage(payloadPointerOf(keys[2]));
+        RecordScanner recordScanner = recordChannelStorage.scanRecords();
+        // ===============
+        // === When
+        int scannedCount = 0;
+        try {
+            while (recordScanner.hasNext()) {
+                recordScanner.next();
+                ++scannedCount;
+            }
+            fail("RuntimeException expected");
+        } catch (RuntimeException ex) {
+            // ===============
+            // === Then
+            assertThat(ex.getCause()).isInstanceOf(IOException.class);
+        }
+        assertThat(scannedCount).isEqualTo(2);
+    }
+
+}
@@ -0,0 +1,224 @@
+package eu.dirk.haase.io.storage.record;
+
+import eu.dirk.haase.io.storage.record.index.RecordKeyIndex;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(BlockJUnit4ClassRunner.class)
+public class RecordChannelStorageCompactionTest {
+
+    private final static int CAPACITY = 1024;
+
+    private RecordChannelStorage recordChannelStorage;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        file = new File("./RecordChannelStorageCompactionTest.recordfile.bin");
+        file.delete();
+        recordChannelStorage = new RecordChannelStorage(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        recordChannelStorage.setRecordKeyIndex(new RecordKeyIndex());
+        recordChannelStorage.create();
+    }
+
+    @After
+    public void tearDown() throws IOException, InterruptedException {
+        if (recordChannelStorage != null) {
+            recordChannelStorage.close();
+        }
+        recordChannelStorage = null;
+        if (file != null) {
+            file.delete();
+        }
+        file = null;
+    }
+
+    private static ByteBuffer buildData(String data) {
+        ByteBuffer dataByteBuffer = ByteBuffer.allocate(CAPACITY);
+        dataByteBuffer.put(data.getBytes());
+        return dataByteBuffer;
+    }
+
+    @Test
+    public void testCompact_ReclaimsDeletedRecords() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        final int RECORD_COUNT = 10;
+        byte[][] keys = new byte[RECORD_COUNT][];
+        for (int i = 0; RECORD_COUNT > i; ++i) {
+            keys[i] = UUID.randomUUID().toString().getBytes();
+            recordChannelStorage.insertRecord(keys[i], buildData("Das ist der Record Nr. " + i));
+        }
+        for (int i = 0; RECORD_COUNT > i; i += 2) {
+            recordChannelStorage.deleteRecord(keys[i]);
+        }
+        int updatedRecordIndex = recordChannelStorage.updateRecord(keys[1], buildData("Das ist der geaenderte Record"));
+        long sizeBefore = file.length();
+        long deletedBytes = recordChannelStorage.getDeletedBytes();
+        // ===============
+        // === When
+        long reclaimedBytes = recordChannelStorage.compact(0);
+        // ===============
+        // === Then
+        assertThat(reclaimedBytes).isEqualTo(deletedBytes);
+        assertThat(file.length()).isEqualTo(sizeBefore - reclaimedBytes);
+        assertThat(recordChannelStorage.getDeletedBytes()).isEqualTo(0);
+        assertThat(new File(file.getPath() + ".compact")).doesNotExist();
+        for (int i = 0; RECORD_COUNT > i; ++i) {
+            byte[] buffer = new byte[CAPACITY];
+            int recordIndex = recordChannelStorage.selectRecord(keys[i], ByteBuffer.wrap(buffer));
+            if ((i % 2) == 0) {
+                assertThat(recordIndex).isEqualTo(-1);
+            } else if (i == 1) {
+                assertThat(recordIndex).isEqualTo(updatedRecordIndex);
+                assertThat(buffer).startsWith("Das ist der geaenderte Record".getBytes());
+            } else {
+                assertThat(recordIndex).isEqualTo(i);
+                assertThat(buffer).startsWith(("Das ist der Record Nr. " + i).getBytes());
+            }
+        }
+        assertThat(recordChannelStorage.getRecordKeyIndex().size()).isEqualTo(RECORD_COUNT / 2);
+    }
+
+    @Test
+    public void testCompact_KeepsCapacityAndOrder() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        byte[][] keys = new byte[3][];
+        for (int i = 0; 3 > i; ++i) {
+            keys[i] = UUID.randomUUID().toString().getBytes();
+            recordChannelStorage.insertRecord(keys[i], buildData("Das ist der lange Record Nr. " + i));
+        }
+        // Shrinks the payload in place, the capacity stays
+        int shrunkIndex = recordChannelStorage.updateRecord(keys[1], buildData("Kurz"));
+        // ===============
+        // === When
+        recordChannelStorage.compact(0);
+        long startPointer = recordChannelStorage.selectRecordHeader(keys[1]).getStartPointer();
+        int grownIndex = recordChannelStorage.updateRecord(keys[1], buildData("Das ist der neue Record Nr. 1"));
+        // ===============
+        // === Then
+        assertThat(grownIndex).isEqualTo(shrunkIndex);
+        assertThat(recordChannelStorage.selectRecordHeader(keys[1]).getStartPointer()).isEqualTo(startPointer);
+        byte[] buffer = new byte[CAPACITY];
+        assertThat(recordChannelStorage.poll(ByteBuffer.allocate(CAPACITY))).isEqualTo(0);
+        assertThat(recordChannelStorage.poll(ByteBuffer.wrap(buffer))).isEqualTo(grownIndex);
+        assertThat(buffer).startsWith("Das ist der neue Record Nr. 1".getBytes());
+        assertThat(recordChannelStorage.poll(ByteBuffer.allocate(CAPACITY))).isEqualTo(2);
+    }
+
+    @Test
+    public void testCompact_InsertAfterCompaction() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        byte[] key1 = UUID.randomUUID().toString().getBytes();
+        byte[] key2 = UUID.randomUUID().toString().getBytes();
+        byte[] key3 = UUID.randomUUID().toString().getBytes();
+        byte[] buffer3b = new byte[CAPACITY];
+        recordChannelStorage.offer(key1, buildData("Das ist der erste Record"));
+        recordChannelStorage.offer(key2, buildData("Das ist der zweite Record"));
+        recordChannelStorage.poll(ByteBuffer.allocate(CAPACITY));
+        recordChannelStorage.compact(0);
+        // ===============
+        // === When
+        recordChannelStorage.offer(key3, buildData("Das ist der dritte Record"));
+        List<Integer> scannedIndices = new ArrayList<>();
+        RecordScanner recordScanner = recordChannelStorage.scanRecords();
+        while (recordScanner.hasNext()) {
+            scannedIndices.add(recordScanner.next().getRecordIndex());
+        }
+        int recordIndex2 = recordChannelStorage.poll(ByteBuffer.allocate(CAPACITY));
+        int recordIndex3 = recordChannelStorage.poll(ByteBuffer.wrap(buffer3b));
+        // ===============
+        // === Then
+        assertThat(recordIndex2).isEqualTo(1);
+        assertThat(recordIndex3).isEqualTo(2);
+        assertThat(buffer3b).startsWith("Das ist der dritte Record".getBytes());
+        assertThat(scannedIndices).containsExactly(1, 2);
+    }
+
+    @Test
+    public void testCompact_ConcurrentWriter() throws Exception {
+        // ===============
+        // === Given
+        final int RECORD_COUNT = 200;
+        final byte[][] keys = new byte[RECORD_COUNT][];
+        for (int i = 0; RECORD_COUNT > i; ++i) {
+            keys[i] = UUID.randomUUID().toString().getBytes();
+            recordChannelStorage.insertRecord(keys[i], buildData("Das ist der Record Nr. " + i));
+        }
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        final List<byte[]> insertedKeys = new ArrayList<>();
+        // ===============
+        // === When
+        long reclaimedBytes;
+        try {
+            Future<Integer> future = executorService.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    for (int i = 0; RECORD_COUNT > i; ++i) {
+                        recordChannelStorage.deleteRecord(keys[i]);
+                        byte[] key = UUID.randomUUID().toString().getBytes();
+                        recordChannelStorage.insertRecord(key, buildData("Das ist der neue Record Nr. " + i));
+                        insertedKeys.add(key);
+                    }
+                    return RECORD_COUNT;
+                }
+            });
+            reclaimedBytes = recordChannelStorage.compact(1024 * 1024);
+            future.get();
+        } finally {
+            executorService.shutdownNow();
+        }
+        // ===============
+        // === Then
+        assertThat(reclaimedBytes).isGreaterThanOrEqualTo(0);
+        for (int i = 0; RECORD_COUNT > i; ++i) {
+            byte[] buffer = new byte[CAPACITY];
+            assertThat(recordChannelStorage.selectRecord(keys[i], ByteBuffer.allocate(CAPACITY))).isEqualTo(-1);
+            assertThat(recordChannelStorage.selectRecord(insertedKeys.get(i), ByteBuffer.wrap(buffer))).isEqualTo(RECORD_COUNT + i);
+            assertThat(buffer).startsWith(("Das ist der neue Record Nr. " + i).getBytes());
+        }
+    }
+
+    @Test
+    public void testRecordCompactor_WaitsForDeletedBytes() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        byte[] key1 = UUID.randomUUID().toString().getBytes();
+        byte[] key2 = UUID.randomUUID().toString().getBytes();
+        recordChannelStorage.insertRecord(key1, buildData("Das ist der erste Record"));
+        recordChannelStorage.insertRecord(key2, buildData("Das ist der zweite Record"));
+        RecordCompactor recordCompactor = new RecordCompactor(recordChannelStorage, 1, 0);
+        // ===============
+        // === When
+        recordCompactor.run();
+        long reclaimedBytesBeforeDelete = recordCompactor.getReclaimedBytes();
+        recordChannelStorage.deleteRecord(key1);
+        recordCompactor.run();
+        // ===============
+        // === Then
+        assertThat(reclaimedBytesBeforeDelete).isEqualTo(0);
+        assertThat(recordCompactor.getReclaimedBytes()).isGreaterThan(0);
+        assertThat(recordCompactor.getLastException()).isNull();
+        assertThat(recordChannelStorage.selectRecord(key2, ByteBuffer.allocate(CAPACITY))).isEqualTo(1);
+    }
+
+}
@@ -1,5 +1,6 @@
 package eu.dirk.haase.io.storage.record;
 
+import eu.dirk.haase.io.storage.channel.PositionalIO;
 import eu.dirk.haase.io.storage.record.data.RecordData;
 import eu.dirk.haase.io.storage.record.header.MainHeader;
 import eu.dirk.haase.io.storage.record.header.RecordHeader;
@@ -9,13 +10,27 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.BlockJUnit4ClassRunner;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Spliterator;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -54,6 +69,24 @@ public class RecordChannelStorageFileTest {
         recordChannelStorage = null;
     }
 
+    /**
+     * Walks the chain of the RecordHeaders up to the tail of the storage unit.
+     *
+     * @return the last RecordHeader, deleted or not, or null if there is no record
+     */
+    private RecordHeader findLastRecordHeader() throws IOException {
+        long tailPointer = recordChannelStorage.getSharedTailPointer().getTailPointer();
+        ByteBuffer headerBuffer = ByteBuffer.allocate(1024);
+        RecordHeader lastRecordHeader = null;
+        RecordHeader recordHeader = new RecordHeader();
+        while (tailPointer > recordHeader.getStartPointer()) {
+            recordHeader.read(channel, headerBuffer);
+            lastRecordHeader = recordHeader;
+            recordHeader = recordHeader.nextHeader();
+        }
+        return lastRecordHeader;
+    }
+
     @Test
     public void testSelectLastRecordHeader() throws IOException, InterruptedException {
         // ===============
@@ -151,7 +184,7 @@ public class RecordChannelStorageFileTest {
         // Given
         recordChannelStorage.create();
         // When
-        RecordHeader recordHeader = recordChannelStorage.findLastRecordHeader();
+        RecordHeader recordHeader = findLastRecordHeader();
         // Then
         assertThat(recordHeader).isNull();
     }
@@ -176,7 +209,7 @@ public class RecordChannelStorageFileTest {
         int firstPosition = mainHeaderLength;
         // ===============
         // === When
-        RecordHeader recordHeader = recordChannelStorage.findLastRecordHeader();
+        RecordHeader recordHeader = findLastRecordHeader();
         // ===============
         // === Then
         assertThat(recordHeader).isNotNull();
@@ -222,7 +255,7 @@ public class RecordChannelStorageFileTest {
         int secondPosition = firstPosition + firstRecordLengthOverall;
         // ===============
         // === When
-        RecordHeader recordHeader = recordChannelStorage.findLastRecordHeader();
+        RecordHeader recordHeader = findLastRecordHeader();
         // ===============
         // === Then
         assertThat(recordHeader).isNotNull();
@@ -252,7 +285,7 @@ public class RecordChannelStorageFileTest {
         recordChannelStorage.deleteRecord(key1);
         // ===============
         // === When
-        RecordHeader recordHeader = recordChannelStorage.findLastRecordHeader();
+        RecordHeader recordHeader = findLastRecordHeader();
         // ===============
         // === Then
         assertThat(recordHeader).isNotNull();
@@ -282,7 +315,7 @@ public class RecordChannelStorageFileTest {
         recordChannelStorage.deleteRecord(key2);
         // ===============
         // === When
-        RecordHeader recordHeader = recordChannelStorage.findLastRecordHeader();
+        RecordHeader recordHeader = findLastRecordHeader();
         // ===============
         // === Then
         assertThat(recordHeader).isNotNull();
@@ -322,7 +355,7 @@ public class RecordChannelStorageFileTest {
         recordChannelStorage.deleteRecord(key2);
         // ===============
         // === When
-        RecordHeader recordHeader = recordChannelStorage.findLastRecordHeader();
+        RecordHeader recordHeader = findLastRecordHeader();
         // ===============
         // === Then
         assertThat(recordHeader).isNotNull();
@@ -370,7 +403,7 @@ public class RecordChannelStorageFileTest {
         recordChannelStorage.deleteRecord(key1);
         // ===============
         // === When
-        RecordHeader recordHeader = recordChannelStorage.findLastRecordHeader();
+        RecordHeader recordHeader = findLastRecordHeader();
         // ===============
         // === Then
         assertThat(recordHeader).isNotNull();
@@ -464,4 +497,654 @@ public class RecordChannelStorageFileTest {
         assertThat(buffer2b).startsWith(data2);
     }
 
-}
\ No newline at end of file
+
+    @Test
+    public void testPoll_InInsertionOrder() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        byte[] key1 = UUID.randomUUID().toString().getBytes();
+        byte[] key2 = UUID.randomUUID().toString().getBytes();
+        byte[] key3 = UUID.randomUUID().toString().getBytes();
+        int CAPACITY = 1024;
+        byte[] buffer1b = new byte[CAPACITY];
+        byte[] buffer2b = new byte[CAPACITY];
+        byte[] data1 = "Das ist der erste Record".getBytes();
+        byte[] data2 = "Das ist der zweite Record".getBytes();
+        byte[] data3 = "Das ist der dritte Record".getBytes();
+        ByteBuffer dataByteBuffer1 = ByteBuffer.allocate(CAPACITY);
+        ByteBuffer dataByteBuffer2 = ByteBuffer.allocate(CAPACITY);
+        ByteBuffer dataByteBuffer3 = ByteBuffer.allocate(CAPACITY);
+        dataByteBuffer1.put(data1);
+        dataByteBuffer2.put(data2);
+        dataByteBuffer3.put(data3);
+
+        recordChannelStorage.create();
+
+        recordChannelStorage.offer(key1, dataByteBuffer1);
+        recordChannelStorage.offer(key2, dataByteBuffer2);
+        recordChannelStorage.offer(key3, dataByteBuffer3);
+        recordChannelStorage.deleteRecord(key2);
+        // ===============
+        // === When
+        int recordIndex1 = recordChannelStorage.poll(ByteBuffer.wrap(buffer1b));
+        int recordIndex3 = recordChannelStorage.poll(ByteBuffer.wrap(buffer2b));
+        int recordIndexEmpty = recordChannelStorage.poll(ByteBuffer.allocate(CAPACITY));
+        // ===============
+        // === Then
+        assertThat(recordIndex1).isEqualTo(0);
+        assertThat(recordIndex3).isEqualTo(2);
+        assertThat(recordIndexEmpty).isEqualTo(-1);
+        assertThat(buffer1b).startsWith(data1);
+        assertThat(buffer2b).startsWith(data3);
+        assertThat(recordChannelStorage.selectRecord(key1, ByteBuffer.allocate(CAPACITY))).isEqualTo(-1);
+        assertThat(recordChannelStorage.getMainHeader().getHeadPointer())
+                .isEqualTo(recordChannelStorage.getSharedTailPointer().getTailPointer());
+    }
+
+    @Test
+    public void testPeek_DoesNotRemove() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        byte[] key1 = UUID.randomUUID().toString().getBytes();
+        int CAPACITY = 1024;
+        byte[] buffer1b = new byte[CAPACITY];
+        byte[] data1 = "Das ist der erste Record".getBytes();
+        ByteBuffer dataByteBuffer1 = ByteBuffer.allocate(CAPACITY);
+        dataByteBuffer1.put(data1);
+
+        recordChannelStorage.create();
+        int emptyRecordIndex = recordChannelStorage.peek(ByteBuffer.allocate(CAPACITY));
+        recordChannelStorage.offer(key1, dataByteBuffer1);
+        // ===============
+        // === When
+        int recordIndex1a = recordChannelStorage.peek(ByteBuffer.wrap(buffer1b));
+        int recordIndex1b = recordChannelStorage.poll(ByteBuffer.allocate(CAPACITY));
+        // ===============
+        // === Then
+        assertThat(emptyRecordIndex).isEqualTo(-1);
+        assertThat(recordIndex1a).isEqualTo(0);
+        assertThat(recordIndex1b).isEqualTo(0);
+        assertThat(buffer1b).startsWith(data1);
+    }
+
+    @Test
+    public void testPoll_HeadPointerIsPersisted() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        byte[] key1 = UUID.randomUUID().toString().getBytes();
+        byte[] key2 = UUID.randomUUID().toString().getBytes();
+        int CAPACITY = 1024;
+        byte[] buffer2b = new byte[CAPACITY];
+        byte[] data2 = "Das ist der zweite Record".getBytes();
+        ByteBuffer dataByteBuffer1 = ByteBuffer.allocate(CAPACITY);
+        ByteBuffer dataByteBuffer2 = ByteBuffer.allocate(CAPACITY);
+        dataByteBuffer1.put("Das ist der erste Record".getBytes());
+        dataByteBuffer2.put(data2);
+
+        recordChannelStorage.create();
+        recordChannelStorage.offer(key1, dataByteBuffer1);
+        recordChannelStorage.offer(key2, dataByteBuffer2);
+        recordChannelStorage.poll(ByteBuffer.allocate(CAPACITY));
+        long headPointer = recordChannelStorage.getMainHeader().getHeadPointer();
+        recordChannelStorage.close();
+        recordChannelStorage = null;
+        // ===============
+        // === When
+        RecordChannelStorage reinitRecordChannelStorage = new RecordChannelStorage(file, StandardOpenOption.READ);
+        reinitRecordChannelStorage.initialize();
+        long reinitHeadPointer = reinitRecordChannelStorage.getMainHeader().getHeadPointer();
+        int recordIndex2 = reinitRecordChannelStorage.peek(ByteBuffer.wrap(buffer2b));
+        reinitRecordChannelStorage.close();
+        // ===============
+        // === Then
+        assertThat(reinitHeadPointer).isEqualTo(headPointer);
+        assertThat(recordIndex2).isEqualTo(1);
+        assertThat(buffer2b).startsWith(data2);
+    }
+
+    @Test
+    public void testSelectRecord_ConcurrentReaders() throws Exception {
+        // ===============
+        // === Given
+        final int RECORD_COUNT = 50;
+        final int THREAD_COUNT = 4;
+        final int CAPACITY = 1024;
+        final byte[][] keys = new byte[RECORD_COUNT][];
+        final byte[][] data = new byte[RECORD_COUNT][];
+
+        recordChannelStorage.create();
+        for (int i = 0; RECORD_COUNT > i; ++i) {
+            keys[i] = UUID.randomUUID().toString().getBytes();
+            data[i] = ("Das ist der Record Nr. " + i).getBytes();
+            ByteBuffer dataByteBuffer = ByteBuffer.allocate(CAPACITY);
+            dataByteBuffer.put(data[i]);
+            recordChannelStorage.insertRecord(keys[i], dataByteBuffer);
+        }
+        ExecutorService executorService = Executors.newFixedThreadPool(THREAD_COUNT);
+        List<Future<Integer>> futures = new ArrayList<>();
+        // ===============
+        // === When
+        try {
+            for (int t = 0; THREAD_COUNT > t; ++t) {
+                final int offset = t;
+                futures.add(executorService.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        int matches = 0;
+                        for (int n = 0; RECORD_COUNT > n; ++n) {
+                            int i = (n + offset) % RECORD_COUNT;
+                            byte[] buffer = new byte[CAPACITY];
+                            int recordIndex = recordChannelStorage.selectRecord(keys[i], ByteBuffer.wrap(buffer));
+                            if ((recordIndex == i) && new String(buffer).startsWith(new String(data[i]))) {
+                                ++matches;
+                            }
+                        }
+                        return matches;
+                    }
+                }));
+            }
+            // ===============
+            // === Then
+            for (Future<Integer> future : futures) {
+                assertThat(future.get()).isEqualTo(RECORD_COUNT);
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testInsertRecords_Batch() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        final int BATCH_SIZE = 3;
+        int CAPACITY = 1024;
+        byte[] key0 = UUID.randomUUID().toString().getBytes();
+        byte[] keyLast = UUID.randomUUID().toString().getBytes();
+        byte[][] keys = new byte[BATCH_SIZE][];
+        byte[][] data = new byte[BATCH_SIZE][];
+        ByteBuffer[] dataByteBuffers = new ByteBuffer[BATCH_SIZE];
+        for (int i = 0; BATCH_SIZE > i; ++i) {
+            keys[i] = UUID.randomUUID().toString().getBytes();
+            data[i] = ("Das ist der Batch-Record Nr. " + i).getBytes();
+            dataByteBuffers[i] = ByteBuffer.allocate(CAPACITY);
+            dataByteBuffers[i].put(data[i]);
+        }
+        ByteBuffer dataByteBuffer0 = ByteBuffer.allocate(CAPACITY);
+        dataByteBuffer0.put("Das ist der erste Record".getBytes());
+        ByteBuffer dataByteBufferLast = ByteBuffer.allocate(CAPACITY);
+        dataByteBufferLast.put("Das ist der letzte Record".getBytes());
+
+        recordChannelStorage.create();
+        recordChannelStorage.insertRecord(key0, dataByteBuffer0);
+        // ===============
+        // === When
+        int firstIndex = recordChannelStorage.insertRecords(keys, dataByteBuffers);
+        int emptyIndex = recordChannelStorage.insertRecords(new byte[0][], new ByteBuffer[0]);
+        int lastIndex = recordChannelStorage.insertRecord(keyLast, dataByteBufferLast);
+        // ===============
+        // === Then
+        assertThat(firstIndex).isEqualTo(1);
+        assertThat(emptyIndex).isEqualTo(-1);
+        assertThat(lastIndex).isEqualTo(1 + BATCH_SIZE);
+        for (int i = 0; BATCH_SIZE > i; ++i) {
+            byte[] buffer = new byte[CAPACITY];
+            assertThat(recordChannelStorage.selectRecord(keys[i], ByteBuffer.wrap(buffer))).isEqualTo(firstIndex + i);
+            assertThat(buffer).startsWith(data[i]);
+        }
+        assertThat(recordChannelStorage.selectRecord(keyLast, ByteBuffer.allocate(CAPACITY))).isEqualTo(lastIndex);
+        assertThat(findLastRecordHeader().getRecordIndex()).isEqualTo(lastIndex);
+        assertThat(recordChannelStorage.getMainHeader().getRecordCount()).isEqualTo(lastIndex);
+    }
+
+    @Test
+    public void testUpdateRecord_InPlace() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        byte[] key1 = UUID.randomUUID().toString().getBytes();
+        byte[] key2 = UUID.randomUUID().toString().getBytes();
+        int CAPACITY = 1024;
+        byte[] buffer1b = new byte[CAPACITY];
+        byte[] data1 = "Das ist der erste Record".getBytes();
+        byte[] data1Updated = "Der erste Record".getBytes();
+        ByteBuffer dataByteBuffer1 = ByteBuffer.allocate(CAPACITY);
+        ByteBuffer dataByteBuffer1Updated = ByteBuffer.allocate(CAPACITY);
+        ByteBuffer dataByteBuffer2 = ByteBuffer.allocate(CAPACITY);
+        ByteBuffer dataByteBuffer1b = ByteBuffer.wrap(buffer1b);
+        dataByteBuffer1.put(data1);
+        dataByteBuffer1Updated.put(data1Updated);
+        dataByteBuffer2.put("Das ist der zweite Record".getBytes());
+
+        recordChannelStorage.create();
+        int recordIndex1a = recordChannelStorage.insertRecord(key1, dataByteBuffer1);
+        recordChannelStorage.insertRecord(key2, dataByteBuffer2);
+        long sizeBefore = channel.size();
+        // ===============
+        // === When
+        int recordIndex1b = recordChannelStorage.updateRecord(key1, dataByteBuffer1Updated);
+        int recordIndex1c = recordChannelStorage.selectRecord(key1, dataByteBuffer1b);
+        // ===============
+        // === Then
+        assertThat(recordIndex1b).isEqualTo(recordIndex1a);
+        assertThat(recordIndex1c).isEqualTo(recordIndex1a);
+        assertThat(channel.size()).isEqualTo(sizeBefore);
+        assertThat(dataByteBuffer1b.position()).isEqualTo(data1Updated.length);
+        assertThat(buffer1b).startsWith(data1Updated);
+        RecordHeader recordHeader = recordChannelStorage.selectRecordHeader(key1);
+        assertThat(recordHeader.getRecordDataCapacity()).isEqualTo(data1.length);
+        assertThat(recordHeader.getRecordDataLength()).isEqualTo(data1Updated.length);
+        assertThat(recordChannelStorage.selectRecord(key2, ByteBuffer.allocate(CAPACITY))).isEqualTo(1);
+    }
+
+    @Test
+    public void testInsertRecord_ReusesFreeSpace() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        byte[] key1 = UUID.randomUUID().toString().getBytes();
+        byte[] key2 = UUID.randomUUID().toString().getBytes();
+        byte[] key3 = UUID.randomUUID().toString().getBytes();
+        int CAPACITY = 1024;
+        byte[] buffer3b = new byte[CAPACITY];
+        byte[] data3 = "Der dritte Record".getBytes();
+        ByteBuffer dataByteBuffer1 = ByteBuffer.allocate(CAPACITY);
+        ByteBuffer dataByteBuffer2 = ByteBuffer.allocate(CAPACITY);
+        ByteBuffer dataByteBuffer3 = ByteBuffer.allocate(CAPACITY);
+        dataByteBuffer1.put("Das ist der erste Record".getBytes());
+        dataByteBuffer2.put("Das ist der zweite Record".getBytes());
+        dataByteBuffer3.put(data3);
+
+        recordChannelStorage.setFreeSpaceReuse(true);
+        recordChannelStorage.create();
+        recordChannelStorage.insertRecord(key1, dataByteBuffer1);
+        recordChannelStorage.insertRecord(key2, dataByteBuffer2);
+        long startPointer1 = recordChannelStorage.selectRecordHeader(key1).getStartPointer();
+        recordChannelStorage.deleteRecord(key1);
+        long sizeBefore = channel.size();
+        // ===============
+        // === When
+        int recordIndex3a = recordChannelStorage.insertRecord(key3, dataByteBuffer3);
+        int recordIndex3b = recordChannelStorage.selectRecord(key3, ByteBuffer.wrap(buffer3b));
+        // ===============
+        // === Then
+        assertThat(recordIndex3a).isEqualTo(2);
+        assertThat(recordIndex3b).isEqualTo(2);
+        assertThat(buffer3b).startsWith(data3);
+        assertThat(channel.size()).isEqualTo(sizeBefore);
+        assertThat(recordChannelStorage.selectRecordHeader(key3).getStartPointer()).isEqualTo(startPointer1);
+        assertThat(recordChannelStorage.selectRecord(key2, ByteBuffer.allocate(CAPACITY))).isEqualTo(1);
+        assertThat(recordChannelStorage.poll(ByteBuffer.allocate(CAPACITY))).isEqualTo(2);
+        assertThat(recordChannelStorage.poll(ByteBuffer.allocate(CAPACITY))).isEqualTo(1);
+    }
+
+    @Test
+    public void testInsertRecord_DoesNotReuseMuchLargerFreeSpace() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        byte[] key1 = UUID.randomUUID().toString().getBytes();
+        byte[] key2 = UUID.randomUUID().toString().getBytes();
+        byte[] key3 = UUID.randomUUID().toString().getBytes();
+        byte[] key4 = UUID.randomUUID().toString().getBytes();
+        int CAPACITY = 1024;
+        ByteBuffer dataByteBuffer1 = ByteBuffer.allocate(CAPACITY);
+        ByteBuffer dataByteBuffer2 = ByteBuffer.allocate(CAPACITY);
+        ByteBuffer dataByteBuffer3 = ByteBuffer.allocate(CAPACITY);
+        ByteBuffer dataByteBuffer4 = ByteBuffer.allocate(CAPACITY);
+        dataByteBuffer1.put(new byte[100]);
+        dataByteBuffer2.put("Das ist der zweite Record".getBytes());
+        dataByteBuffer3.put("Der dritte".getBytes());
+        dataByteBuffer4.put(new byte[60]);
+
+        recordChannelStorage.setFreeSpaceReuse(true);
+        recordChannelStorage.create();
+        recordChannelStorage.insertRecord(key1, dataByteBuffer1);
+        recordChannelStorage.insertRecord(key2, dataByteBuffer2);
+        long startPointer1 = recordChannelStorage.selectRecordHeader(key1).getStartPointer();
+        recordChannelStorage.deleteRecord(key1);
+        // ===============
+        // === When
+        recordChannelStorage.insertRecord(key3, dataByteBuffer3);
+        recordChannelStorage.insertRecord(key4, dataByteBuffer4);
+        // ===============
+        // === Then
+        assertThat(recordChannelStorage.selectRecordHeader(key3).getStartPointer()).isGreaterThan(startPointer1);
+        assertThat(recordChannelStorage.selectRecordHeader(key4).getStartPointer()).isEqualTo(startPointer1);
+        assertThat(recordChannelStorage.selectRecordHeader(key4).getRecordDataCapacity()).isEqualTo(100);
+    }
+
+    @Test
+    public void testInsertRecord_StepsOverAbandonedReservation() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        byte[] key1 = UUID.randomUUID().toString().getBytes();
+        byte[] key2 = UUID.randomUUID().toString().getBytes();
+        int CAPACITY = 1024;
+        byte[] buffer2b = new byte[CAPACITY];
+        byte[] data2 = "Das ist der zweite Record".getBytes();
+        ByteBuffer dataByteBuffer1 = ByteBuffer.allocate(CAPACITY);
+        ByteBuffer dataByteBuffer2 = ByteBuffer.allocate(CAPACITY);
+        dataByteBuffer1.put("Das ist der erste Record".getBytes());
+        dataByteBuffer2.put(data2);
+
+        recordChannelStorage.create();
+        recordChannelStorage.insertRecord(key1, dataByteBuffer1);
+        // A writer reserves a region, but fails to write its record.
+        SharedTailPointer sharedTailPointer = recordChannelStorage.getSharedTailPointer();
+        ByteBuffer abandonedDataBuffer = ByteBuffer.allocate(100);
+        abandonedDataBuffer.position(100);
+        int abandonedLength = sharedTailPointer.calcRecordLength(abandonedDataBuffer);
+        int abandonedIndex = sharedTailPointer.nextRecordIndex(1);
+        long abandonedStartPointer = sharedTailPointer.nextAtomic(abandonedLength);
+        recordChannelStorage.writeSkipRecord(abandonedStartPointer, abandonedIndex, abandonedLength);
+        // ===============
+        // === When
+        int recordIndex2a = recordChannelStorage.insertRecord(key2, dataByteBuffer2);
+        int recordIndex2b = recordChannelStorage.selectRecord(key2, ByteBuffer.wrap(buffer2b));
+        // ===============
+        // === Then
+        assertThat(abandonedIndex).isEqualTo(1);
+        assertThat(recordIndex2a).isEqualTo(2);
+        assertThat(recordIndex2b).isEqualTo(2);
+        assertThat(buffer2b).startsWith(data2);
+        assertThat(findLastRecordHeader().getRecordIndex()).isEqualTo(2);
+        assertThat(recordChannelStorage.poll(ByteBuffer.allocate(CAPACITY))).isEqualTo(0);
+        assertThat(recordChannelStorage.poll(ByteBuffer.allocate(CAPACITY))).isEqualTo(2);
+    }
+
+    @Test
+    public void testTransferRecordTo() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        byte[] key1 = UUID.randomUUID().toString().getBytes();
+        byte[] key2 = UUID.randomUUID().toString().getBytes();
+        int CAPACITY = 1024;
+        byte[] data1 = "Das ist der erste Record".getBytes();
+        byte[] data2 = new byte[600];
+        Arrays.fill(data2, (byte) 'x');
+        ByteBuffer dataByteBuffer1 = ByteBuffer.allocate(CAPACITY);
+        ByteBuffer dataByteBuffer2 = ByteBuffer.allocate(CAPACITY);
+        dataByteBuffer1.put(data1);
+        dataByteBuffer2.put(data2);
+
+        recordChannelStorage.create();
+        recordChannelStorage.insertRecord(key1, dataByteBuffer1);
+        recordChannelStorage.insertRecord(key2, dataByteBuffer2);
+        ByteArrayOutputStream target1 = new ByteArrayOutputStream();
+        ByteArrayOutputStream target2 = new ByteArrayOutputStream();
+        ByteArrayOutputStream targetRange = new ByteArrayOutputStream();
+        // ===============
+        // === When
+        long count1 = recordChannelStorage.transferRecordTo(key1, Channels.newChannel(target1));
+        long count2 = recordChannelStorage.transferRecordTo(key2, Channels.newChannel(target2));
+        long countUnknown = recordChannelStorage.transferRecordTo(UUID.randomUUID().toString().getBytes(), Channels.newChannel(new ByteArrayOutputStream()));
+        long countRange = recordChannelStorage.transferRangeTo(0, Long.MAX_VALUE, Channels.newChannel(targetRange));
+        // ===============
+        // === Then
+        assertThat(count1).isEqualTo(data1.length);
+        assertThat(target1.toByteArray()).isEqualTo(data1);
+        assertThat(count2).isEqualTo(data2.length);
+        assertThat(target2.toByteArray()).isEqualTo(data2);
+        assertThat(countUnknown).isEqualTo(-1);
+        assertThat(countRange).isEqualTo(channel.size());
+        ByteBuffer content = ByteBuffer.allocate((int) channel.size());
+        PositionalIO.read(channel, content, 0);
+        assertThat(targetRange.toByteArray()).isEqualTo(content.array());
+    }
+
+    @Test
+    public void testTransferRecordTo_LargerThanChunk() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        byte[] key1 = UUID.randomUUID().toString().getBytes();
+        byte[] data1 = new byte[3 * RecordChannelStorage.TRANSFER_CHUNK_SIZE + 7];
+        for (int i = 0; data1.length > i; ++i) {
+            data1[i] = (byte) i;
+        }
+        ByteBuffer dataByteBuffer1 = ByteBuffer.allocate(data1.length);
+        dataByteBuffer1.put(data1);
+
+        recordChannelStorage.create();
+        recordChannelStorage.insertRecord(key1, dataByteBuffer1);
+        ByteArrayOutputStream target1 = new ByteArrayOutputStream();
+        // ===============
+        // === When
+        long count1 = recordChannelStorage.transferRecordTo(key1, Channels.newChannel(target1));
+        // ===============
+        // === Then
+        assertThat(count1).isEqualTo(data1.length);
+        assertThat(target1.toByteArray()).isEqualTo(data1);
+    }
+
+    @Test
+    public void testTransferRecordTo_ChangedWhileTransferred() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        final byte[] key1 = UUID.randomUUID().toString().getBytes();
+        final byte[] key2 = UUID.randomUUID().toString().getBytes();
+        byte[] data1 = new byte[3 * RecordChannelStorage.TRANSFER_CHUNK_SIZE];
+        ByteBuffer dataByteBuffer1 = ByteBuffer.allocate(data1.length);
+        ByteBuffer dataByteBuffer2 = ByteBuffer.allocate(1024);
+        dataByteBuffer1.put(data1);
+        dataByteBuffer2.put("Das ist der zweite Record".getBytes());
+
+        recordChannelStorage.create();
+        recordChannelStorage.insertRecord(key1, dataByteBuffer1);
+        recordChannelStorage.insertRecord(key2, dataByteBuffer2);
+        final Thread deleteThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    recordChannelStorage.deleteRecord(key2);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        // The delete waits for the write lock while the first chunk is transferred
+        // and runs before the next chunk is transferred.
+        WritableByteChannel target1 = new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer source) {
+                if (deleteThread.getState() == Thread.State.NEW) {
+                    deleteThread.start();
+                    while (deleteThread.getState() != Thread.State.WAITING) {
+                        Thread.yield();
+                    }
+                }
+                int length = source.remaining();
+                source.position(source.limit());
+                return length;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        // ===============
+        // === When
+        ConcurrentModificationException exception = null;
+        try {
+            recordChannelStorage.transferRecordTo(key1, target1);
+        } catch (ConcurrentModificationException ex) {
+            exception = ex;
+        }
+        deleteThread.join();
+        // ===============
+        // === Then
+        assertThat(exception).isNotNull();
+        assertThat(recordChannelStorage.selectRecord(key2, ByteBuffer.allocate(1024))).isEqualTo(-1);
+    }
+
+    @Test
+    public void testScanRecords() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        final int RECORD_COUNT = 20;
+        final int READ_AHEAD_SIZE = 400;
+        int CAPACITY = 1024;
+        byte[][] keys = new byte[RECORD_COUNT][];
+        byte[][] data = new byte[RECORD_COUNT][];
+
+        recordChannelStorage.create();
+        for (int i = 0; RECORD_COUNT > i; ++i) {
+            keys[i] = UUID.randomUUID().toString().getBytes();
+            // Every fifth record is larger than the read-ahead buffer
+            data[i] = new byte[(i % 5 == 0) ? 2 * READ_AHEAD_SIZE : 10 + i];
+            Arrays.fill(data[i], (byte) ('a' + i));
+            ByteBuffer dataByteBuffer = ByteBuffer.allocate(CAPACITY);
+            dataByteBuffer.put(data[i]);
+            recordChannelStorage.insertRecord(keys[i], dataByteBuffer);
+        }
+        recordChannelStorage.deleteRecord(keys[3]);
+        recordChannelStorage.deleteRecord(keys[RECORD_COUNT - 1]);
+        // ===============
+        // === When
+        RecordScanner recordScanner = recordChannelStorage.scanRecords(READ_AHEAD_SIZE);
+        List<Integer> recordIndices = new ArrayList<>();
+        while (recordScanner.hasNext()) {
+            RecordScanner.ScannedRecord scannedRecord = recordScanner.next();
+            int i = scannedRecord.getRecordIndex();
+            recordIndices.add(i);
+            byte[] scannedData = new byte[scannedRecord.getData().remaining()];
+            scannedRecord.getData().get(scannedData);
+            // ===============
+            // === Then
+            assertThat(scannedRecord.getKey()).isEqualTo(keys[i]);
+            assertThat(scannedData).isEqualTo(data[i]);
+        }
+        long streamedCount = recordChannelStorage.scanRecords().stream().count();
+        // ===============
+        // === Then
+        assertThat(recordIndices).hasSize(RECORD_COUNT - 2).doesNotContain(3, RECORD_COUNT - 1).isSorted();
+        assertThat(streamedCount).isEqualTo(RECORD_COUNT - 2);
+    }
+
+    @Test
+    public void testScanRecords_RecordChangedBetweenHeaderAndPayload() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        final int READ_AHEAD_SIZE = 400;
+        final byte[] key1 = UUID.randomUUID().toString().getBytes();
+        byte[] data1 = new byte[2 * READ_AHEAD_SIZE];
+        final byte[] data1Updated = new byte[READ_AHEAD_SIZE + 10];
+        Arrays.fill(data1, (byte) 'a');
+        Arrays.fill(data1Updated, (byte) 'b');
+        recordChannelStorage.close();
+        channel = createChannel();
+        // The record is updated in place after its RecordHeader was read and before its payload is read
+        recordChannelStorage = new RecordChannelStorage(null, channel) {
+            private int readCount;
+
+            @Override
+            int readAhead(SeekableByteChannel scannedChannel, ByteBuffer target, long position) throws IOException, InterruptedException {
+                if (++readCount == 2) {
+                    ByteBuffer dataByteBuffer1Updated = ByteBuffer.allocate(data1Updated.length);
+                    dataByteBuffer1Updated.put(data1Updated);
+                    updateRecord(key1, dataByteBuffer1Updated);
+                }
+                return super.readAhead(scannedChannel, target, position);
+            }
+        };
+        recordChannelStorage.create();
+        ByteBuffer dataByteBuffer1 = ByteBuffer.allocate(data1.length);
+        dataByteBuffer1.put(data1);
+        recordChannelStorage.insertRecord(key1, dataByteBuffer1);
+        // ===============
+        // === When
+        RecordScanner recordScanner = recordChannelStorage.scanRecords(READ_AHEAD_SIZE);
+        RecordScanner.ScannedRecord scannedRecord = recordScanner.next();
+        // ===============
+        // === Then
+        byte[] scannedData = new byte[scannedRecord.getData().remaining()];
+        scannedRecord.getData().get(scannedData);
+        assertThat(scannedData).isEqualTo(data1Updated);
+        assertThat(recordScanner.hasNext()).isFalse();
+    }
+
+    @Test
+    public void testSpliterateRecords_ParallelStream() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        final int RECORD_COUNT = 200;
+        final int READ_AHEAD_SIZE = 512;
+        int CAPACITY = 1024;
+        byte[][] keys = new byte[RECORD_COUNT][];
+        byte[][] data = new byte[RECORD_COUNT][];
+
+        recordChannelStorage.create();
+        for (int i = 0; RECORD_COUNT > i; ++i) {
+            keys[i] = UUID.randomUUID().toString().getBytes();
+            data[i] = new byte[(i * 37) % 300];
+            Arrays.fill(data[i], (byte) i);
+            ByteBuffer dataByteBuffer = ByteBuffer.allocate(CAPACITY);
+            dataByteBuffer.put(data[i]);
+            recordChannelStorage.insertRecord(keys[i], dataByteBuffer);
+        }
+        for (int i = 0; RECORD_COUNT > i; i += 7) {
+            recordChannelStorage.deleteRecord(keys[i]);
+        }
+        // ===============
+        // === When
+        List<Integer> recordIndices = StreamSupport.stream(recordChannelStorage.spliterateRecords(READ_AHEAD_SIZE), true)
+                .filter(r -> {
+                    byte[] scannedData = new byte[r.getData().remaining()];
+                    r.getData().get(scannedData);
+                    return Arrays.equals(scannedData, data[r.getRecordIndex()]) && Arrays.equals(r.getKey(), keys[r.getRecordIndex()]);
+                })
+                .map(RecordScanner.ScannedRecord::getRecordIndex)
+                .collect(Collectors.toList());
+        // ===============
+        // === Then
+        List<Integer> expectedIndices = new ArrayList<>();
+        for (int i = 0; RECORD_COUNT > i; ++i) {
+            if (i % 7 != 0) {
+                expectedIndices.add(i);
+            }
+        }
+        assertThat(recordIndices).isEqualTo(expectedIndices);
+        assertThat(recordChannelStorage.spliterateRecords(READ_AHEAD_SIZE).trySplit()).isNotNull();
+    }
+
+    @Test
+    public void testSpliterateRecords_CollectedRecordsKeepPayload() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        final int RECORD_COUNT = 100;
+        final int READ_AHEAD_SIZE = 512;
+        int CAPACITY = 1024;
+        byte[][] keys = new byte[RECORD_COUNT][];
+        byte[][] data = new byte[RECORD_COUNT][];
+
+        recordChannelStorage.create();
+        for (int i = 0; RECORD_COUNT > i; ++i) {
+            keys[i] = UUID.randomUUID().toString().getBytes();
+            data[i] = new byte[(i * 37) % 300];
+            Arrays.fill(data[i], (byte) i);
+            ByteBuffer dataByteBuffer = ByteBuffer.allocate(CAPACITY);
+            dataByteBuffer.put(data[i]);
+            recordChannelStorage.insertRecord(keys[i], dataByteBuffer);
+        }
+        // ===============
+        // === When
+        RecordSpliterator recordSpliterator = recordChannelStorage.spliterateRecords(READ_AHEAD_SIZE);
+        int characteristics = recordSpliterator.characteristics();
+        List<RecordScanner.ScannedRecord> scannedRecords = StreamSupport.stream(recordSpliterator, true)
+                .collect(Collectors.toList());
+        // ===============
+        // === Then
+        assertThat(characteristics & Spliterator.IMMUTABLE).isEqualTo(0);
+        assertThat(scannedRecords).hasSize(RECORD_COUNT);
+        for (RecordScanner.ScannedRecord scannedRecord : scannedRecords) {
+            int i = scannedRecord.getRecordIndex();
+            byte[] scannedData = new byte[scannedRecord.getData().remaining()];
+            scannedRecord.getData().get(scannedData);
+            assertThat(scannedRecord.getKey()).isEqualTo(keys[i]);
+            assertThat(scannedData).isEqualTo(data[i]);
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+package eu.dirk.haase.io.storage.record;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(BlockJUnit4ClassRunner.class)
+public class RecordChannelStorageGroupCommitTest extends RecordChannelStorageFileTest {
+
+    @Before
+    public void setUp() throws IOException {
+        super.setUp();
+        recordChannelStorage.setDurability(Durability.GROUP_COMMIT);
+    }
+
+    @Test
+    public void testInsertRecord_ConcurrentWriters() throws Exception {
+        // ===============
+        // === Given
+        final int RECORD_COUNT = 50;
+        final int THREAD_COUNT = 4;
+        final int CAPACITY = 1024;
+        final byte[][][] keys = new byte[THREAD_COUNT][RECORD_COUNT][];
+
+        recordChannelStorage.create();
+        ExecutorService executorService = Executors.newFixedThreadPool(THREAD_COUNT);
+        List<Future<Integer>> futures = new ArrayList<>();
+        // ===============
+        // === When
+        try {
+            for (int t = 0; THREAD_COUNT > t; ++t) {
+                final int thread = t;
+                futures.add(executorService.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        for (int i = 0; RECORD_COUNT > i; ++i) {
+                            keys[thread][i] = UUID.randomUUID().toString().getBytes();
+                            ByteBuffer dataByteBuffer = ByteBuffer.allocate(CAPACITY);
+                            dataByteBuffer.put(("Thread " + thread + " Record " + i).getBytes());
+                            recordChannelStorage.insertRecord(keys[thread][i], dataByteBuffer);
+                        }
+                        return RECORD_COUNT;
+                    }
+                }));
+            }
+            for (Future<Integer> future : futures) {
+                future.get();
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+        // ===============
+        // === Then
+        assertThat(recordChannelStorage.getDurability()).isEqualTo(Durability.GROUP_COMMIT);
+        for (int t = 0; THREAD_COUNT > t; ++t) {
+            for (int i = 0; RECORD_COUNT > i; ++i) {
+                byte[] buffer = new byte[CAPACITY];
+                assertThat(recordChannelStorage.selectRecord(keys[t][i], ByteBuffer.wrap(buffer))).isGreaterThanOrEqualTo(0);
+                assertThat(buffer).startsWith(("Thread " + t + " Record " + i).getBytes());
+            }
+        }
+    }
+
+    @Test
+    public void testSetDurability_ForceInterval() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        byte[] key1 = UUID.randomUUID().toString().getBytes();
+        int CAPACITY = 1024;
+        byte[] buffer1b = new byte[CAPACITY];
+        byte[] data1 = "Das ist der erste Record".getBytes();
+        ByteBuffer dataByteBuffer1 = ByteBuffer.allocate(CAPACITY);
+        dataByteBuffer1.put(data1);
+        // ===============
+        // === When
+        recordChannelStorage.setDurability(Durability.FORCE_INTERVAL, 10);
+        recordChannelStorage.create();
+        int recordIndex1a = recordChannelStorage.insertRecord(key1, dataByteBuffer1);
+        Thread.sleep(50);
+        int recordIndex1b = recordChannelStorage.selectRecord(key1, ByteBuffer.wrap(buffer1b));
+        // ===============
+        // === Then
+        assertThat(recordChannelStorage.getDurability()).isEqualTo(Durability.FORCE_INTERVAL);
+        assertThat(recordIndex1a).isEqualTo(0);
+        assertThat(recordIndex1b).isEqualTo(0);
+        assertThat(buffer1b).startsWith(data1);
+    }
+
+}
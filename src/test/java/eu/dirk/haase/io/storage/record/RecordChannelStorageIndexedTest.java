@@ -0,0 +1,99 @@
+package eu.dirk.haase.io.storage.record;
+
+import eu.dirk.haase.io.storage.record.index.RecordKeyIndex;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(BlockJUnit4ClassRunner.class)
+public class RecordChannelStorageIndexedTest extends RecordChannelStorageFileTest {
+
+    @Before
+    public void setUp() throws IOException {
+        super.setUp();
+        recordChannelStorage.setRecordKeyIndex(new RecordKeyIndex());
+    }
+
+    @Test
+    public void testSelectRecord_AfterUpdate() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        byte[] key1 = UUID.randomUUID().toString().getBytes();
+        int CAPACITY = 1024;
+        byte[] buffer1b = new byte[CAPACITY];
+        byte[] data1 = "Das ist der erste Record".getBytes();
+        byte[] data2 = "Das ist der zweite Record".getBytes();
+        ByteBuffer dataByteBuffer1 = ByteBuffer.allocate(CAPACITY);
+        ByteBuffer dataByteBuffer2 = ByteBuffer.allocate(CAPACITY);
+        ByteBuffer dataByteBuffer1b = ByteBuffer.wrap(buffer1b);
+        dataByteBuffer1.put(data1);
+        dataByteBuffer2.put(data2);
+
+        recordChannelStorage.create();
+        recordChannelStorage.insertRecord(key1, dataByteBuffer1);
+        int updatedRecordIndex = recordChannelStorage.updateRecord(key1, dataByteBuffer2);
+        // ===============
+        // === When
+        int recordIndex = recordChannelStorage.selectRecord(key1, dataByteBuffer1b);
+        // ===============
+        // === Then
+        assertThat(recordIndex).isEqualTo(updatedRecordIndex);
+        assertThat(buffer1b).startsWith(data2);
+        assertThat(recordChannelStorage.getRecordKeyIndex().size()).isEqualTo(1);
+    }
+
+    @Test
+    public void testSelectRecord_AfterDelete() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        byte[] key1 = UUID.randomUUID().toString().getBytes();
+        int dataLength1 = 123;
+        ByteBuffer dataByteBuffer1 = ByteBuffer.allocate(dataLength1);
+        dataByteBuffer1.position(dataLength1);
+
+        recordChannelStorage.create();
+        recordChannelStorage.insertRecord(key1, dataByteBuffer1);
+        recordChannelStorage.deleteRecord(key1);
+        // ===============
+        // === When
+        int recordIndex = recordChannelStorage.selectRecord(key1, ByteBuffer.allocate(dataLength1));
+        // ===============
+        // === Then
+        assertThat(recordIndex).isEqualTo(-1);
+        assertThat(recordChannelStorage.getRecordKeyIndex().size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testInitialize_FillsIndex() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        byte[] key1 = UUID.randomUUID().toString().getBytes();
+        byte[] key2 = UUID.randomUUID().toString().getBytes();
+        int dataLength1 = 123;
+        ByteBuffer dataByteBuffer1 = ByteBuffer.allocate(dataLength1);
+        dataByteBuffer1.position(dataLength1);
+
+        recordChannelStorage.create();
+        recordChannelStorage.insertRecord(key1, dataByteBuffer1);
+        recordChannelStorage.insertRecord(key2, dataByteBuffer1);
+        recordChannelStorage.deleteRecord(key1);
+        // ===============
+        // === When
+        RecordKeyIndex recordKeyIndex = new RecordKeyIndex();
+        recordChannelStorage.setRecordKeyIndex(recordKeyIndex);
+        recordChannelStorage.initialize();
+        // ===============
+        // === Then
+        assertThat(recordKeyIndex.size()).isEqualTo(1);
+        assertThat(recordKeyIndex.get(key1)).isEqualTo(-1);
+        assertThat(recordKeyIndex.get(key2)).isEqualTo(recordChannelStorage.selectRecordHeader(key2).getStartPointer());
+    }
+
+}
@@ -0,0 +1,267 @@
+package eu.dirk.haase.io.storage.record;
+
+import eu.dirk.haase.io.storage.record.header.RecordHeader;
+import eu.dirk.haase.io.storage.record.index.RecordKeyIndex;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+@RunWith(BlockJUnit4ClassRunner.class)
+public class RecordChannelStorageRecoveryTest {
+
+    private final static int CAPACITY = 1024;
+
+    private RecordChannelStorage recordChannelStorage;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        file = new File("./RecordChannelStorageRecoveryTest.recordfile.bin");
+        file.delete();
+        recordChannelStorage = openRecordChannelStorage();
+        recordChannelStorage.create();
+    }
+
+    @After
+    public void tearDown() throws IOException, InterruptedException {
+        if (recordChannelStorage != null) {
+            recordChannelStorage.close();
+        }
+        recordChannelStorage = null;
+        if (file != null) {
+            file.delete();
+        }
+        file = null;
+    }
+
+    private RecordChannelStorage openRecordChannelStorage() throws IOException {
+        RecordChannelStorage storage = new RecordChannelStorage(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        storage.setRecordKeyIndex(new RecordKeyIndex());
+        return storage;
+    }
+
+    private void reopen() throws IOException, InterruptedException {
+        recordChannelStorage.close();
+        recordChannelStorage = openRecordChannelStorage();
+        recordChannelStorage.initialize();
+    }
+
+    private static ByteBuffer buildData(String data) {
+        ByteBuffer dataByteBuffer = ByteBuffer.allocate(CAPACITY);
+        dataByteBuffer.put(data.getBytes());
+        return dataByteBuffer;
+    }
+
+    private byte[][] insertRecords(int recordCount) throws IOException, InterruptedException {
+        byte[][] keys = new byte[recordCount][];
+        for (int i = 0; recordCount > i; ++i) {
+            keys[i] = UUID.randomUUID().toString().getBytes();
+            recordChannelStorage.insertRecord(keys[i], buildData("Das ist der Record Nr. " + i));
+        }
+        return keys;
+    }
+
+    @Test
+    public void testInitialize_RecoversTailAndIndex() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        final int RECORD_COUNT = 10;
+        byte[][] keys = insertRecords(RECORD_COUNT);
+        recordChannelStorage.deleteRecord(keys[4]);
+        long deletedBytes = recordChannelStorage.getDeletedBytes();
+        long tailPointer = recordChannelStorage.getSharedTailPointer().getTailPointer();
+        // ===============
+        // === When
+        reopen();
+        byte[] key = UUID.randomUUID().toString().getBytes();
+        int recordIndex = recordChannelStorage.insertRecord(key, buildData("Das ist der neue Record"));
+        // ===============
+        // === Then
+        assertThat(recordIndex).isEqualTo(RECORD_COUNT);
+        assertThat(recordChannelStorage.getAliveRecordCount()).isEqualTo(RECORD_COUNT);
+        assertThat(recordChannelStorage.getDeletedBytes()).isEqualTo(deletedBytes);
+        assertThat(recordChannelStorage.getRecordKeyIndex().size()).isEqualTo(RECORD_COUNT);
+        assertThat(recordChannelStorage.selectRecordHeader(key).getStartPointer()).isEqualTo(tailPointer);
+        for (int i = 0; RECORD_COUNT > i; ++i) {
+            byte[] buffer = new byte[CAPACITY];
+            int selectedIndex = recordChannelStorage.selectRecord(keys[i], ByteBuffer.wrap(buffer));
+            if (i == 4) {
+                assertThat(selectedIndex).isEqualTo(-1);
+            } else {
+                assertThat(selectedIndex).isEqualTo(i);
+                assertThat(buffer).startsWith(("Das ist der Record Nr. " + i).getBytes());
+            }
+        }
+    }
+
+    @Test
+    public void testInitialize_TruncatesTornRecord() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        byte[][] keys = insertRecords(3);
+        long tornStartPointer = recordChannelStorage.selectRecordHeader(keys[2]).getStartPointer();
+        recordChannelStorage.close();
+        try (FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            // The payload of the last record was not completely written
+            fileChannel.truncate(fileChannel.size() - 5);
+        }
+        recordChannelStorage = openRecordChannelStorage();
+        // ===============
+        // === When
+        recordChannelStorage.initialize();
+        byte[] key = UUID.randomUUID().toString().getBytes();
+        recordChannelStorage.insertRecord(key, buildData("Das ist der neue Record"));
+        // ===============
+        // === Then
+        assertThat(recordChannelStorage.getAliveRecordCount()).isEqualTo(3);
+        assertThat(recordChannelStorage.selectRecord(keys[2], ByteBuffer.allocate(CAPACITY))).isEqualTo(-1);
+        assertThat(recordChannelStorage.selectRecordHeader(key).getStartPointer()).isEqualTo(tornStartPointer);
+        byte[] buffer = new byte[CAPACITY];
+        assertThat(recordChannelStorage.selectRecord(keys[1], ByteBuffer.wrap(buffer))).isEqualTo(1);
+        assertThat(buffer).startsWith("Das ist der Record Nr. 1".getBytes());
+    }
+
+    @Test
+    public void testInitialize_SkipsAbandonedRegion() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        byte[][] keys = insertRecords(5);
+        RecordHeader abandonedRecordHeader = recordChannelStorage.selectRecordHeader(keys[2]);
+        long abandonedStartPointer = abandonedRecordHeader.getStartPointer();
+        long abandonedLength = abandonedRecordHeader.getNextStartPointer() - abandonedStartPointer;
+        recordChannelStorage.close();
+        try (FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            // A region in the middle was reserved, but never written
+            fileChannel.write(ByteBuffer.allocate((int) abandonedLength), abandonedStartPointer);
+        }
+        long sizeBefore = file.length();
+        recordChannelStorage = openRecordChannelStorage();
+        // ===============
+        // === When
+        recordChannelStorage.initialize();
+        long deletedBytes = recordChannelStorage.getDeletedBytes();
+        reopen();
+        // ===============
+        // === Then
+        assertThat(deletedBytes).isEqualTo(abandonedLength);
+        assertThat(recordChannelStorage.getDeletedBytes()).isEqualTo(abandonedLength);
+        assertThat(recordChannelStorage.getAliveRecordCount()).isEqualTo(4);
+        assertThat(recordChannelStorage.getSharedTailPointer().getTailPointer()).isEqualTo(sizeBefore);
+        assertThat(file.length()).isEqualTo(sizeBefore);
+        assertThat(recordChannelStorage.selectRecord(keys[2], ByteBuffer.allocate(CAPACITY))).isEqualTo(-1);
+        for (int i = 0; 5 > i; ++i) {
+            if (i != 2) {
+                byte[] buffer = new byte[CAPACITY];
+                assertThat(recordChannelStorage.selectRecord(keys[i], ByteBuffer.wrap(buffer))).isEqualTo(i);
+                assertThat(buffer).startsWith(("Das ist der Record Nr. " + i).getBytes());
+            }
+        }
+    }
+
+    @Test
+    public void testInitialize_CorruptStorageUnit() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        byte[][] keys = insertRecords(5);
+        long corruptStartPointer = recordChannelStorage.selectRecordHeader(keys[2]).getStartPointer();
+        recordChannelStorage.close();
+        try (FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            // Overwrites the magic data of a RecordHeader in the middle
+            fileChannel.write(ByteBuffer.allocate(8), corruptStartPointer);
+        }
+        long sizeBefore = file.length();
+        // Opened read-only, so the region cannot be skipped
+        recordChannelStorage = new RecordChannelStorage(file, StandardOpenOption.READ);
+        recordChannelStorage.setRecordKeyIndex(new RecordKeyIndex());
+        // ===============
+        // === When
+        try {
+            recordChannelStorage.initialize();
+            fail("IOException expected");
+        } catch (IOException ex) {
+            // ===============
+            // === Then
+            assertThat(ex.getMessage()).contains("corrupt");
+        }
+        assertThat(file.length()).isEqualTo(sizeBefore);
+    }
+
+    @Test
+    public void testRecover_ParallelRegions() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        final int RECORD_COUNT = 500;
+        byte[][] keys = insertRecords(RECORD_COUNT);
+        for (int i = 0; RECORD_COUNT > i; i += 3) {
+            recordChannelStorage.deleteRecord(keys[i]);
+        }
+        long startPointer = new RecordHeader().getStartPointer();
+        long endPointer = file.length();
+        SeekableByteChannel channel = recordChannelStorage.getChannel();
+        // ===============
+        // === When
+        RecordRecovery.Region sequential = new RecordRecovery(recordChannelStorage, channel, startPointer, endPointer, 4096,
+                true, true, Long.MAX_VALUE).recover();
+        RecordRecovery.Region parallel = new RecordRecovery(recordChannelStorage, channel, startPointer, endPointer, 4096,
+                true, true, 4096).recover();
+        // ===============
+        // === Then
+        assertThat(parallel.tailPointer).isEqualTo(endPointer).isEqualTo(sequential.tailPointer);
+        assertThat(parallel.isBroken).isFalse();
+        assertThat(parallel.maxRecordIndex).isEqualTo(RECORD_COUNT - 1).isEqualTo(sequential.maxRecordIndex);
+        assertThat(parallel.aliveRecordCount).isEqualTo(RECORD_COUNT - 167).isEqualTo(sequential.aliveRecordCount);
+        assertThat(parallel.deletedBytes).isEqualTo(recordChannelStorage.getDeletedBytes()).isEqualTo(sequential.deletedBytes);
+        assertThat(parallel.keyCount).isEqualTo(RECORD_COUNT - 167).isEqualTo(sequential.keyCount);
+        assertThat(Arrays.copyOf(parallel.keyStartPointers, parallel.keyCount))
+                .isEqualTo(Arrays.copyOf(sequential.keyStartPointers, sequential.keyCount));
+        assertThat(Arrays.copyOf(parallel.keys, parallel.keyCount * RecordHeader.KEY_LENGTH))
+                .isEqualTo(Arrays.copyOf(sequential.keys, sequential.keyCount * RecordHeader.KEY_LENGTH));
+        assertThat(Arrays.copyOf(parallel.freeStartPointers, parallel.freeSlotCount))
+                .isEqualTo(Arrays.copyOf(sequential.freeStartPointers, sequential.freeSlotCount));
+        byte[] key = new byte[RecordHeader.KEY_LENGTH];
+        parallel.copyKey(0, key);
+        assertThat(key).isEqualTo(keys[1]);
+    }
+
+    @Test
+    public void testRecover_ParallelRegionsInterrupted() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        insertRecords(100);
+        long startPointer = new RecordHeader().getStartPointer();
+        long endPointer = file.length();
+        SeekableByteChannel channel = recordChannelStorage.getChannel();
+        RecordChannelStorage interruptedStorage = new RecordChannelStorage(null, channel) {
+            @Override
+            int readAhead(SeekableByteChannel scannedChannel, ByteBuffer target, long position) throws InterruptedException {
+                throw new InterruptedException();
+            }
+        };
+        // ===============
+        // === When
+        try {
+            new RecordRecovery(interruptedStorage, channel, startPointer, endPointer, 4096,
+                    true, true, 4096).recover();
+            fail("InterruptedException expected");
+        } catch (InterruptedException ex) {
+            // ===============
+            // === Then
+            assertThat(ex).isNotNull();
+        }
+    }
+
+}
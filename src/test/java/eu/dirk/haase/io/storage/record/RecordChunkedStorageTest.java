@@ -0,0 +1,87 @@
+package eu.dirk.haase.io.storage.record;
+
+import eu.dirk.haase.io.storage.channel.SeekableChunkedByteChannel;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the tests of the {@link RecordChannelStorageFileTest} on a chunked in-memory channel
+ * with small direct chunks, so that most records span two chunks.
+ */
+@RunWith(BlockJUnit4ClassRunner.class)
+public class RecordChunkedStorageTest extends RecordChannelStorageFileTest {
+
+    private static final int CHUNK_SIZE = 256;
+
+    @Override
+    protected SeekableByteChannel createChannel() {
+        return new SeekableChunkedByteChannel(CHUNK_SIZE, true);
+    }
+
+    @Test
+    @Ignore
+    @Override
+    public void testInitializeRecordStorage() throws IOException {
+    }
+
+    @Test
+    @Ignore
+    @Override
+    public void testPoll_HeadPointerIsPersisted() throws IOException {
+    }
+
+    @Test
+    public void testWrite_BeyondIntegerRange() throws IOException {
+        // ===============
+        // === Given
+        long position = 5L * Integer.MAX_VALUE;
+        byte[] data = "Das ist der Record hinter 4 GB".getBytes();
+        SeekableChunkedByteChannel chunkedChannel = new SeekableChunkedByteChannel(CHUNK_SIZE, false);
+        // ===============
+        // === When
+        chunkedChannel.write(ByteBuffer.wrap(data), position);
+        ByteBuffer readBuffer = ByteBuffer.allocate(data.length + 10);
+        int bytesRead = chunkedChannel.read(readBuffer, position - 10);
+        // ===============
+        // === Then
+        assertThat(chunkedChannel.size()).isEqualTo(position + data.length);
+        assertThat(bytesRead).isEqualTo(data.length + 10);
+        assertThat(readBuffer.array()).startsWith(new byte[10]);
+        assertThat(readBuffer.array()).endsWith(data);
+        assertThat(chunkedChannel.read(ByteBuffer.allocate(1), position + data.length)).isEqualTo(-1);
+    }
+
+    @Test
+    public void testTruncate_ClearsTail() throws IOException {
+        // ===============
+        // === Given
+        SeekableChunkedByteChannel chunkedChannel = new SeekableChunkedByteChannel(CHUNK_SIZE, true);
+        byte[] data = new byte[3 * CHUNK_SIZE];
+        Arrays.fill(data, (byte) 7);
+        chunkedChannel.write(ByteBuffer.wrap(data));
+        // ===============
+        // === When
+        chunkedChannel.truncate(CHUNK_SIZE + 10);
+        chunkedChannel.write(ByteBuffer.wrap(new byte[]{1}), 2 * CHUNK_SIZE);
+        ByteBuffer readBuffer = ByteBuffer.allocate(2 * CHUNK_SIZE + 1);
+        chunkedChannel.read(readBuffer, 0);
+        // ===============
+        // === Then
+        assertThat(chunkedChannel.size()).isEqualTo(2 * CHUNK_SIZE + 1);
+        assertThat(chunkedChannel.position()).isEqualTo(CHUNK_SIZE + 10);
+        assertThat(readBuffer.get(CHUNK_SIZE + 9)).isEqualTo((byte) 7);
+        assertThat(readBuffer.get(CHUNK_SIZE + 10)).isEqualTo((byte) 0);
+        assertThat(readBuffer.get(2 * CHUNK_SIZE - 1)).isEqualTo((byte) 0);
+        assertThat(readBuffer.get(2 * CHUNK_SIZE)).isEqualTo((byte) 1);
+    }
+
+}
@@ -0,0 +1,174 @@
+package eu.dirk.haase.io.storage.record;
+
+import eu.dirk.haase.io.storage.channel.SeekableInMemoryByteChannel;
+import eu.dirk.haase.io.storage.record.index.RecordKeyIndex;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(BlockJUnit4ClassRunner.class)
+public class RecordInsertPipelineTest {
+
+    private final static int CAPACITY = 256;
+
+    private RecordChannelStorage recordChannelStorage;
+
+    private RecordInsertPipeline recordInsertPipeline;
+
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        recordChannelStorage = new RecordChannelStorage(null, new SeekableInMemoryByteChannel());
+        recordChannelStorage.setRecordKeyIndex(new RecordKeyIndex());
+        recordChannelStorage.create();
+        // A small ring buffer, so the producers also wait for free slots
+        recordInsertPipeline = new RecordInsertPipeline(recordChannelStorage, 64, 16);
+    }
+
+    @After
+    public void tearDown() throws IOException, InterruptedException {
+        if (recordInsertPipeline != null) {
+            recordInsertPipeline.close();
+        }
+        recordInsertPipeline = null;
+        if (recordChannelStorage != null) {
+            recordChannelStorage.close();
+        }
+        recordChannelStorage = null;
+    }
+
+    private static ByteBuffer buildData(String data) {
+        ByteBuffer dataByteBuffer = ByteBuffer.allocate(CAPACITY);
+        dataByteBuffer.put(data.getBytes());
+        return dataByteBuffer;
+    }
+
+    @Test
+    public void testInsertRecord_ManyProducers() throws IOException, InterruptedException, ExecutionException {
+        // ===============
+        // === Given
+        final int PRODUCER_COUNT = 8;
+        final int RECORD_COUNT = 500;
+        byte[][][] keys = new byte[PRODUCER_COUNT][RECORD_COUNT][];
+        for (int p = 0; PRODUCER_COUNT > p; ++p) {
+            for (int i = 0; RECORD_COUNT > i; ++i) {
+                keys[p][i] = UUID.randomUUID().toString().getBytes();
+            }
+        }
+        ExecutorService executorService = Executors.newFixedThreadPool(PRODUCER_COUNT);
+        List<Future<List<CompletableFuture<Integer>>>> producers = new ArrayList<>();
+        // ===============
+        // === When
+        for (int p = 0; PRODUCER_COUNT > p; ++p) {
+            final int producer = p;
+            producers.add(executorService.submit(new Callable<List<CompletableFuture<Integer>>>() {
+                @Override
+                public List<CompletableFuture<Integer>> call() {
+                    List<CompletableFuture<Integer>> inserts = new ArrayList<>();
+                    for (int i = 0; RECORD_COUNT > i; ++i) {
+                        inserts.add(recordInsertPipeline.insertRecord(keys[producer][i],
+                                buildData("Record " + i + " of producer " + producer)));
+                    }
+                    return inserts;
+                }
+            }));
+        }
+        Set<Integer> recordIndices = new HashSet<>();
+        for (Future<List<CompletableFuture<Integer>>> producer : producers) {
+            for (CompletableFuture<Integer> insert : producer.get()) {
+                recordIndices.add(insert.get());
+            }
+        }
+        executorService.shutdown();
+        // ===============
+        // === Then
+        assertThat(recordIndices).hasSize(PRODUCER_COUNT * RECORD_COUNT);
+        assertThat(recordChannelStorage.getAliveRecordCount()).isEqualTo(PRODUCER_COUNT * RECORD_COUNT);
+        for (int p = 0; PRODUCER_COUNT > p; ++p) {
+            for (int i = 0; RECORD_COUNT > i; i += 50) {
+                byte[] buffer = new byte[CAPACITY];
+                assertThat(recordChannelStorage.selectRecord(keys[p][i], ByteBuffer.wrap(buffer))).isGreaterThanOrEqualTo(0);
+                assertThat(buffer).startsWith(("Record " + i + " of producer " + p).getBytes());
+            }
+        }
+    }
+
+    @Test
+    public void testClose_WritesPublishedAndRejectsLaterInserts() throws InterruptedException, ExecutionException {
+        // ===============
+        // === Given
+        List<CompletableFuture<Integer>> inserts = new ArrayList<>();
+        for (int i = 0; 40 > i; ++i) {
+            inserts.add(recordInsertPipeline.insertRecord(UUID.randomUUID().toString().getBytes(),
+                    buildData("Das ist der Record Nr. " + i)));
+        }
+        // ===============
+        // === When
+        recordInsertPipeline.close();
+        CompletableFuture<Integer> lateInsert = recordInsertPipeline.insertRecord(UUID.randomUUID().toString().getBytes(),
+                buildData("Das ist der verspaetete Record"));
+        // ===============
+        // === Then
+        for (int i = 0; inserts.size() > i; ++i) {
+            assertThat(inserts.get(i).get()).isEqualTo(i);
+        }
+        assertThat(lateInsert).isCompletedExceptionally();
+        assertThat(recordChannelStorage.getAliveRecordCount()).isEqualTo(40);
+    }
+
+    @Test
+    public void testInsertRecord_PartitionedStorage() throws IOException, InterruptedException, ExecutionException {
+        // ===============
+        // === Given
+        final int RECORD_COUNT = 200;
+        File file = new File("./RecordInsertPipelineTest.recordfile.bin");
+        PartitionedRecordStorage partitionedRecordStorage = new PartitionedRecordStorage(4, file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        partitionedRecordStorage.create();
+        RecordInsertPipeline partitionedInsertPipeline = new RecordInsertPipeline(partitionedRecordStorage, 64, 16);
+        byte[][] keys = new byte[RECORD_COUNT][];
+        List<CompletableFuture<Integer>> inserts = new ArrayList<>();
+        try {
+            // ===============
+            // === When
+            for (int i = 0; RECORD_COUNT > i; ++i) {
+                keys[i] = UUID.randomUUID().toString().getBytes();
+                inserts.add(partitionedInsertPipeline.insertRecord(keys[i], buildData("Das ist der Record Nr. " + i)));
+            }
+            partitionedInsertPipeline.close();
+            // ===============
+            // === Then
+            for (int i = 0; RECORD_COUNT > i; ++i) {
+                byte[] buffer = new byte[CAPACITY];
+                assertThat(inserts.get(i).get()).isEqualTo(partitionedRecordStorage.selectRecord(keys[i], ByteBuffer.wrap(buffer)));
+                assertThat(buffer).startsWith(("Das ist der Record Nr. " + i).getBytes());
+            }
+        } finally {
+            partitionedRecordStorage.close();
+            for (int p = 0; partitionedRecordStorage.getPartitionCount() > p; ++p) {
+                PartitionedRecordStorage.partitionPathOf(file.toPath(), p).toFile().delete();
+            }
+            PartitionedRecordStorage.descriptorPathOf(file.toPath()).toFile().delete();
+        }
+    }
+
+}
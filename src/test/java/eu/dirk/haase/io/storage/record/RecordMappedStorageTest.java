@@ -0,0 +1,134 @@
+package eu.dirk.haase.io.storage.record;
+
+import eu.dirk.haase.io.storage.channel.SeekableMappedByteChannel;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the tests of the {@link RecordChannelStorageFileTest} on a memory-mapped channel
+ * with small segments, so that most records span two segments.
+ */
+@RunWith(BlockJUnit4ClassRunner.class)
+public class RecordMappedStorageTest extends RecordChannelStorageFileTest {
+
+    private static final int SEGMENT_SIZE = 256;
+
+    private File mappedFile;
+
+    @Override
+    protected SeekableByteChannel createChannel() throws IOException {
+        FileChannel fileChannel = (FileChannel) super.createChannel();
+        return new SeekableMappedByteChannel(fileChannel, FileChannel.MapMode.READ_WRITE, SEGMENT_SIZE);
+    }
+
+    @After
+    public void tearDown() throws IOException, InterruptedException {
+        super.tearDown();
+        if (mappedFile != null) {
+            mappedFile.delete();
+        }
+        mappedFile = null;
+    }
+
+    @Test
+    public void testReopen_RecordMappedStorage() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        mappedFile = new File("./RecordMappedStorageTest.recordfile.bin");
+        mappedFile.delete();
+        byte[] key1 = UUID.randomUUID().toString().getBytes();
+        byte[] key2 = UUID.randomUUID().toString().getBytes();
+        int CAPACITY = 1024;
+        byte[] buffer2b = new byte[CAPACITY];
+        byte[] data2 = "Das ist der zweite Record".getBytes();
+        ByteBuffer dataByteBuffer1 = ByteBuffer.allocate(CAPACITY);
+        ByteBuffer dataByteBuffer2 = ByteBuffer.allocate(CAPACITY);
+        dataByteBuffer1.put("Das ist der erste Record".getBytes());
+        dataByteBuffer2.put(data2);
+
+        RecordMappedStorage recordMappedStorage = new RecordMappedStorage(mappedFile.toPath(), SEGMENT_SIZE,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        recordMappedStorage.create();
+        recordMappedStorage.insertRecord(key1, dataByteBuffer1);
+        recordMappedStorage.insertRecord(key2, dataByteBuffer2);
+        long sizeBeforeClose = recordMappedStorage.getSharedTailPointer().getTailPointer();
+        recordMappedStorage.close();
+        // ===============
+        // === When
+        RecordMappedStorage reinitRecordMappedStorage = new RecordMappedStorage(mappedFile.toPath(), SEGMENT_SIZE, StandardOpenOption.READ);
+        reinitRecordMappedStorage.initialize();
+        int recordIndex2 = reinitRecordMappedStorage.selectRecord(key2, ByteBuffer.wrap(buffer2b));
+        reinitRecordMappedStorage.close();
+        // ===============
+        // === Then
+        assertThat(mappedFile.length()).isEqualTo(sizeBeforeClose);
+        assertThat(recordIndex2).isEqualTo(1);
+        assertThat(buffer2b).startsWith(data2);
+        assertThat(reinitRecordMappedStorage.openOptions().contains(StandardOpenOption.READ)).isTrue();
+    }
+
+    @Test
+    public void testCreate_WriteWithoutRead() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        mappedFile = new File("./RecordMappedStorageTest.recordfile.bin");
+        mappedFile.delete();
+        byte[] key = UUID.randomUUID().toString().getBytes();
+        byte[] data = "Das ist der erste Record".getBytes();
+        byte[] buffer = new byte[1024];
+        ByteBuffer dataByteBuffer = ByteBuffer.allocate(1024);
+        dataByteBuffer.put(data);
+        // ===============
+        // === When
+        RecordMappedStorage recordMappedStorage = new RecordMappedStorage(mappedFile.toPath(), SEGMENT_SIZE,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        recordMappedStorage.create();
+        int insertedIndex = recordMappedStorage.insertRecord(key, dataByteBuffer);
+        int selectedIndex = recordMappedStorage.selectRecord(key, ByteBuffer.wrap(buffer));
+        recordMappedStorage.close();
+        // ===============
+        // === Then
+        assertThat(insertedIndex).isEqualTo(0);
+        assertThat(selectedIndex).isEqualTo(0);
+        assertThat(buffer).startsWith(data);
+    }
+
+    @Test
+    public void testTruncate_ClearsStaleBytes() throws IOException {
+        // ===============
+        // === Given
+        mappedFile = new File("./RecordMappedStorageTest.recordfile.bin");
+        mappedFile.delete();
+        byte[] staleBytes = new byte[3 * SEGMENT_SIZE];
+        Arrays.fill(staleBytes, (byte) 0x7F);
+        byte[] readBytes = new byte[2 * SEGMENT_SIZE];
+        try (SeekableMappedByteChannel mappedChannel = new SeekableMappedByteChannel(FileChannel.open(mappedFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ), FileChannel.MapMode.READ_WRITE, SEGMENT_SIZE)) {
+            mappedChannel.write(ByteBuffer.wrap(staleBytes));
+            // ===============
+            // === When
+            mappedChannel.truncate(10);
+            mappedChannel.position(10 + readBytes.length);
+            mappedChannel.write(ByteBuffer.wrap(new byte[]{1}));
+            mappedChannel.position(10);
+            mappedChannel.read(ByteBuffer.wrap(readBytes));
+        }
+        // ===============
+        // === Then
+        assertThat(readBytes).containsOnly((byte) 0);
+    }
+
+}
@@ -0,0 +1,102 @@
+package eu.dirk.haase.io.storage.record;
+
+import eu.dirk.haase.io.storage.record.index.RecordKeyIndex;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(BlockJUnit4ClassRunner.class)
+public class RecordOffHeapStorageTest {
+
+    private final static int CAPACITY = 1024;
+
+    private final static int CHUNK_SIZE = 512;
+
+    private RecordOffHeapStorage recordOffHeapStorage;
+
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        recordOffHeapStorage = new RecordOffHeapStorage(CHUNK_SIZE);
+        recordOffHeapStorage.setRecordKeyIndex(new RecordKeyIndex());
+        recordOffHeapStorage.create();
+    }
+
+    @After
+    public void tearDown() throws IOException, InterruptedException {
+        if (recordOffHeapStorage != null) {
+            recordOffHeapStorage.close();
+        }
+        recordOffHeapStorage = null;
+    }
+
+    private static ByteBuffer buildData(String data) {
+        ByteBuffer dataByteBuffer = ByteBuffer.allocate(CAPACITY);
+        dataByteBuffer.put(data.getBytes());
+        return dataByteBuffer;
+    }
+
+    @Test
+    public void testPoll_InInsertionOrder() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        final int RECORD_COUNT = 20;
+        byte[][] keys = new byte[RECORD_COUNT][];
+        for (int i = 0; RECORD_COUNT > i; ++i) {
+            keys[i] = UUID.randomUUID().toString().getBytes();
+            recordOffHeapStorage.offer(keys[i], buildData("Das ist der Record Nr. " + i));
+        }
+        // ===============
+        // === When
+        byte[] buffer = new byte[CAPACITY];
+        int recordIndex0 = recordOffHeapStorage.poll(ByteBuffer.wrap(buffer));
+        int selectedIndex = recordOffHeapStorage.selectRecord(keys[RECORD_COUNT - 1], ByteBuffer.allocate(CAPACITY));
+        // ===============
+        // === Then
+        assertThat(recordIndex0).isEqualTo(0);
+        assertThat(buffer).startsWith("Das ist der Record Nr. 0".getBytes());
+        assertThat(selectedIndex).isEqualTo(RECORD_COUNT - 1);
+        assertThat(recordOffHeapStorage.getAliveRecordCount()).isEqualTo(RECORD_COUNT - 1);
+        assertThat(recordOffHeapStorage.getPath()).isNull();
+    }
+
+    @Test
+    public void testCompact_ReleasesPolledRecords() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        final int RECORD_COUNT = 20;
+        for (int i = 0; RECORD_COUNT > i; ++i) {
+            recordOffHeapStorage.offer(UUID.randomUUID().toString().getBytes(), buildData("Das ist der Record Nr. " + i));
+        }
+        for (int i = 0; (RECORD_COUNT - 2) > i; ++i) {
+            recordOffHeapStorage.poll(ByteBuffer.allocate(CAPACITY));
+        }
+        long sizeBefore = recordOffHeapStorage.getChannel().size();
+        // ===============
+        // === When
+        long reclaimedBytes = recordOffHeapStorage.compact(0);
+        recordOffHeapStorage.offer(UUID.randomUUID().toString().getBytes(), buildData("Das ist der neue Record"));
+        byte[] buffer = new byte[CAPACITY];
+        int recordIndex18 = recordOffHeapStorage.poll(ByteBuffer.wrap(buffer));
+        int recordIndex19 = recordOffHeapStorage.poll(ByteBuffer.allocate(CAPACITY));
+        int recordIndex20 = recordOffHeapStorage.poll(ByteBuffer.allocate(CAPACITY));
+        // ===============
+        // === Then
+        assertThat(reclaimedBytes).isGreaterThan(0);
+        assertThat(recordOffHeapStorage.getDeletedBytes()).isGreaterThan(0);
+        assertThat(recordOffHeapStorage.getChannel().size()).isLessThan(sizeBefore);
+        assertThat(recordIndex18).isEqualTo(18);
+        assertThat(buffer).startsWith("Das ist der Record Nr. 18".getBytes());
+        assertThat(recordIndex19).isEqualTo(19);
+        assertThat(recordIndex20).isEqualTo(20);
+        assertThat(recordOffHeapStorage.poll(ByteBuffer.allocate(CAPACITY))).isEqualTo(-1);
+    }
+
+}
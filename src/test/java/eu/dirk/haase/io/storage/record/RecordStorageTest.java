@@ -11,9 +11,15 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.file.OpenOption;
 import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 
+import static org.assertj.core.api.Assertions.assertThat;
+
 /**
  * Created by dhaa on 15.07.17.
  */
@@ -43,6 +49,69 @@ public class RecordStorageTest {
     }
 
 
+    @Test
+    public void testInsertRecords_DefaultImplementation() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        final RecordStorage delegate = recordStorage;
+        RecordStorage minimalRecordStorage = new RecordStorage() {
+            @Override
+            public void create() throws IOException, InterruptedException {
+                delegate.create();
+            }
+
+            @Override
+            public void initialize() throws IOException, InterruptedException {
+                delegate.initialize();
+            }
+
+            @Override
+            public int selectRecord(byte[] key, ByteBuffer dataBuffer) throws IOException, InterruptedException {
+                return delegate.selectRecord(key, dataBuffer);
+            }
+
+            @Override
+            public int updateRecord(byte[] key, ByteBuffer dataBuffer) throws IOException, InterruptedException {
+                return delegate.updateRecord(key, dataBuffer);
+            }
+
+            @Override
+            public int deleteRecord(byte[] key) throws IOException, InterruptedException {
+                return delegate.deleteRecord(key);
+            }
+
+            @Override
+            public int insertRecord(byte[] key, ByteBuffer dataBuffer) throws IOException, InterruptedException {
+                return delegate.insertRecord(key, dataBuffer);
+            }
+
+            @Override
+            public void close() throws IOException, InterruptedException {
+                delegate.close();
+            }
+        };
+        minimalRecordStorage.create();
+        final int RECORD_COUNT = 3;
+        byte[][] keys = new byte[RECORD_COUNT][];
+        ByteBuffer[] dataBuffers = new ByteBuffer[RECORD_COUNT];
+        for (int i = 0; RECORD_COUNT > i; ++i) {
+            keys[i] = UUID.randomUUID().toString().getBytes();
+            dataBuffers[i] = ByteBuffer.allocate(1024);
+            dataBuffers[i].put(("Das ist der Record Nr. " + i).getBytes());
+        }
+        int[] recordIndices = new int[RECORD_COUNT];
+        // ===============
+        // === When
+        minimalRecordStorage.insertRecords(keys, dataBuffers, recordIndices);
+        int emptyIndex = minimalRecordStorage.insertRecords(new byte[0][], new ByteBuffer[0]);
+        // ===============
+        // === Then
+        assertThat(emptyIndex).isEqualTo(-1);
+        for (int i = 0; RECORD_COUNT > i; ++i) {
+            assertThat(minimalRecordStorage.selectRecord(keys[i], ByteBuffer.allocate(1024))).isEqualTo(recordIndices[i]);
+        }
+    }
+
     @Test
     public void testSelectRecord_WithTwoRecords() throws IOException, InterruptedException {
         // ===============
@@ -100,6 +169,55 @@ public class RecordStorageTest {
         System.out.println("file size: " + file.length() + "; duration: " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
     }
 
+    @Test
+    public void testInsertRecord_UniqueIndicesAcrossStripes() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        final int THREAD_COUNT = 4;
+        final int RECORD_COUNT = 100;
+        final Set<Integer> recordIndices = ConcurrentHashMap.newKeySet();
+        final Set<String> keys = ConcurrentHashMap.newKeySet();
+        final List<Exception> failures = new CopyOnWriteArrayList<>();
+        recordStorage.create();
+        Thread[] threads = new Thread[THREAD_COUNT];
+        for (int t = 0; THREAD_COUNT > t; ++t) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; RECORD_COUNT > i; ++i) {
+                        try {
+                            String key = UUID.randomUUID().toString();
+                            ByteBuffer dataByteBuffer = ByteBuffer.allocate(64);
+                            dataByteBuffer.put(key.getBytes());
+                            recordIndices.add(recordStorage.insertRecord(key.getBytes(), dataByteBuffer));
+                            keys.add(key);
+                        } catch (Exception e) {
+                            failures.add(e);
+                        }
+                    }
+                }
+            });
+        }
+        // ===============
+        // === When
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // ===============
+        // === Then
+        assertThat(failures).isEmpty();
+        assertThat(recordIndices).hasSize(THREAD_COUNT * RECORD_COUNT);
+        assertThat(keys).hasSize(THREAD_COUNT * RECORD_COUNT);
+        for (String key : keys) {
+            byte[] buffer = new byte[64];
+            assertThat(recordStorage.selectRecord(key.getBytes(), ByteBuffer.wrap(buffer))).isGreaterThanOrEqualTo(0);
+            assertThat(buffer).startsWith(key.getBytes());
+        }
+    }
+
 
     class Task implements Runnable {
         int CAPACITY = 1024 * 50;
@@ -0,0 +1,205 @@
+package eu.dirk.haase.io.storage.record;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(BlockJUnit4ClassRunner.class)
+public class SegmentedRecordLogTest {
+
+    private final static int CAPACITY = 1024;
+    /**
+     * Room for about ten records of the tests.
+     */
+    private final static long MAX_SEGMENT_SIZE = 1500;
+
+    private SegmentedRecordLog recordLog;
+    private Path path;
+
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        path = Paths.get("./SegmentedRecordLogTest.log.bin");
+        deleteSegmentFiles();
+        recordLog = new SegmentedRecordLog(path, MAX_SEGMENT_SIZE, 0);
+        recordLog.open();
+    }
+
+    @After
+    public void tearDown() throws IOException, InterruptedException {
+        if (recordLog != null) {
+            recordLog.close();
+        }
+        recordLog = null;
+        deleteSegmentFiles();
+    }
+
+    private void deleteSegmentFiles() throws IOException {
+        for (int i = 0; 100 > i; ++i) {
+            Files.deleteIfExists(SegmentedRecordLog.segmentPathOf(path, i));
+        }
+    }
+
+    private static ByteBuffer buildData(String data) {
+        ByteBuffer dataByteBuffer = ByteBuffer.allocate(CAPACITY);
+        dataByteBuffer.put(data.getBytes());
+        return dataByteBuffer;
+    }
+
+    private long[] appendRecords(int recordCount) throws IOException, InterruptedException {
+        long[] addresses = new long[recordCount];
+        for (int i = 0; recordCount > i; ++i) {
+            addresses[i] = recordLog.append(UUID.randomUUID().toString().getBytes(), buildData("Das ist der Record Nr. " + i));
+        }
+        return addresses;
+    }
+
+    @Test
+    public void testAppend_RollsOverBySize() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        final int RECORD_COUNT = 50;
+        // ===============
+        // === When
+        long[] addresses = appendRecords(RECORD_COUNT);
+        // ===============
+        // === Then
+        assertThat(recordLog.getSegmentNumbers().size()).isGreaterThan(1);
+        for (int segment : recordLog.getSegmentNumbers()) {
+            assertThat(Files.size(SegmentedRecordLog.segmentPathOf(path, segment))).isLessThanOrEqualTo(MAX_SEGMENT_SIZE);
+        }
+        for (int i = 0; RECORD_COUNT > i; ++i) {
+            byte[] buffer = new byte[CAPACITY];
+            assertThat(recordLog.read(addresses[i], ByteBuffer.wrap(buffer))).isGreaterThanOrEqualTo(0);
+            assertThat(buffer).startsWith(("Das ist der Record Nr. " + i).getBytes());
+        }
+    }
+
+    @Test
+    public void testDelete_DropsConsumedSegment() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        long[] addresses = appendRecords(50);
+        int firstSegment = SegmentedRecordLog.segmentOf(addresses[0]);
+        assertThat(recordLog.getActiveSegmentNumber()).isNotEqualTo(firstSegment);
+        // ===============
+        // === When
+        for (long address : addresses) {
+            if (SegmentedRecordLog.segmentOf(address) == firstSegment) {
+                assertThat(recordLog.delete(address)).isGreaterThanOrEqualTo(0);
+            }
+        }
+        // ===============
+        // === Then
+        assertThat(recordLog.getSegmentNumbers()).doesNotContain(firstSegment);
+        assertThat(Files.exists(SegmentedRecordLog.segmentPathOf(path, firstSegment))).isFalse();
+        assertThat(recordLog.delete(addresses[0])).isEqualTo(-1);
+        assertThat(recordLog.read(addresses[0], ByteBuffer.allocate(CAPACITY))).isEqualTo(-1);
+    }
+
+    @Test
+    public void testPoll_InOrderAcrossSegments() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        final int RECORD_COUNT = 30;
+        long[] addresses = appendRecords(RECORD_COUNT);
+        int segmentCount = recordLog.getSegmentNumbers().size();
+        // ===============
+        // === When
+        long[] polledAddresses = new long[RECORD_COUNT];
+        for (int i = 0; RECORD_COUNT > i; ++i) {
+            byte[] buffer = new byte[CAPACITY];
+            polledAddresses[i] = recordLog.poll(ByteBuffer.wrap(buffer));
+            assertThat(buffer).startsWith(("Das ist der Record Nr. " + i).getBytes());
+        }
+        // ===============
+        // === Then
+        assertThat(polledAddresses).isEqualTo(addresses);
+        assertThat(recordLog.poll(ByteBuffer.allocate(CAPACITY))).isEqualTo(-1);
+        assertThat(segmentCount).isGreaterThan(1);
+        assertThat(recordLog.getSegmentNumbers()).containsExactly(recordLog.getActiveSegmentNumber());
+    }
+
+    @Test
+    public void testOpen_ExistingSegments() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        final int RECORD_COUNT = 30;
+        long[] addresses = appendRecords(RECORD_COUNT);
+        recordLog.delete(addresses[1]);
+        recordLog.close();
+        // ===============
+        // === When
+        recordLog = new SegmentedRecordLog(path, MAX_SEGMENT_SIZE, 0);
+        recordLog.open();
+        long nextAddress = recordLog.append(UUID.randomUUID().toString().getBytes(), buildData("Das ist der letzte Record"));
+        // ===============
+        // === Then
+        assertThat(recordLog.read(addresses[1], ByteBuffer.allocate(CAPACITY))).isEqualTo(-1);
+        for (int i = 2; RECORD_COUNT > i; ++i) {
+            byte[] buffer = new byte[CAPACITY];
+            assertThat(recordLog.read(addresses[i], ByteBuffer.wrap(buffer))).isGreaterThanOrEqualTo(0);
+            assertThat(buffer).startsWith(("Das ist der Record Nr. " + i).getBytes());
+        }
+        assertThat(nextAddress).isGreaterThan(addresses[RECORD_COUNT - 1]);
+        byte[] buffer = new byte[CAPACITY];
+        recordLog.read(nextAddress, ByteBuffer.wrap(buffer));
+        assertThat(buffer).startsWith("Das ist der letzte Record".getBytes());
+    }
+
+    @Test
+    public void testDropSegmentsBefore() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        appendRecords(50);
+        int activeSegment = recordLog.getActiveSegmentNumber();
+        // ===============
+        // === When
+        int droppedSegmentCount = recordLog.dropSegmentsBefore(activeSegment);
+        // ===============
+        // === Then
+        assertThat(droppedSegmentCount).isEqualTo(activeSegment);
+        assertThat(recordLog.getSegmentNumbers()).containsExactly(activeSegment);
+    }
+
+    @Test
+    public void testAppend_RollsOverByAgeAfterReopen() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        final long MAX_SEGMENT_AGE_MILLIS = 200;
+        recordLog.close();
+        deleteSegmentFiles();
+        recordLog = new SegmentedRecordLog(path, SegmentedRecordLog.MAX_SEGMENT_SIZE, MAX_SEGMENT_AGE_MILLIS);
+        recordLog.open();
+        long firstAddress = recordLog.append(UUID.randomUUID().toString().getBytes(), buildData("Das ist der erste Record"));
+        int firstSegment = SegmentedRecordLog.segmentOf(firstAddress);
+        recordLog.close();
+        Thread.sleep(2 * MAX_SEGMENT_AGE_MILLIS);
+        // The file system times do not tell the age of the segment
+        Files.setLastModifiedTime(SegmentedRecordLog.segmentPathOf(path, firstSegment), FileTime.fromMillis(System.currentTimeMillis()));
+        // ===============
+        // === When
+        recordLog = new SegmentedRecordLog(path, SegmentedRecordLog.MAX_SEGMENT_SIZE, MAX_SEGMENT_AGE_MILLIS);
+        recordLog.open();
+        long secondAddress = recordLog.append(UUID.randomUUID().toString().getBytes(), buildData("Das ist der zweite Record"));
+        // ===============
+        // === Then
+        assertThat(SegmentedRecordLog.segmentOf(secondAddress)).isGreaterThan(firstSegment);
+        assertThat(recordLog.getSegmentNumbers()).contains(firstSegment, SegmentedRecordLog.segmentOf(secondAddress));
+        byte[] buffer = new byte[CAPACITY];
+        assertThat(recordLog.read(firstAddress, ByteBuffer.wrap(buffer))).isGreaterThanOrEqualTo(0);
+        assertThat(buffer).startsWith("Das ist der erste Record".getBytes());
+    }
+
+}
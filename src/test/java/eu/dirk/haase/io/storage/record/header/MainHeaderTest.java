@@ -53,6 +53,7 @@ public class MainHeaderTest {
         givenHeader.setRecordCount(dataBlockCount);
         givenHeader.setMinRecordDataLength(minDataBlockLength);
         givenHeader.setMaxRecordDataLength(maxDataBlockLength);
+        givenHeader.setCreatedTimeMillis(1500000000000L);
         // ============
         // When
         givenHeader.write(buffer);
@@ -62,7 +63,7 @@ public class MainHeaderTest {
         // ============
         // Then
         assertThat(givenHeader.getStartPointer()).isEqualTo(0);
-        assertThat(givenHeader.getVersion()).isEqualTo(1);
+        assertThat(givenHeader.getVersion()).isEqualTo(4);
         assertThat(givenHeader.isCompabible()).isTrue();
 
         assertThat(givenHeader.getVersion()).isEqualTo(whenHeader.getVersion());
@@ -70,6 +71,8 @@ public class MainHeaderTest {
         assertThat(givenHeader.getRecordCount()).isEqualTo(whenHeader.getRecordCount());
         assertThat(givenHeader.getMinRecordDataLength()).isEqualTo(whenHeader.getMinRecordDataLength());
         assertThat(givenHeader.getMaxRecordDataLength()).isEqualTo(whenHeader.getMaxRecordDataLength());
+        assertThat(givenHeader.getHeadPointer()).isEqualTo(whenHeader.getHeadPointer());
+        assertThat(whenHeader.getCreatedTimeMillis()).isEqualTo(1500000000000L);
 
         assertThat(givenHeader.getRecordCount()).isEqualTo(dataBlockCount);
         assertThat(givenHeader.getMinRecordDataLength()).isEqualTo(minDataBlockLength);
@@ -105,7 +108,7 @@ public class MainHeaderTest {
         // ============
         // Then
         assertThat(givenHeader.getStartPointer()).isEqualTo(0);
-        assertThat(givenHeader.getVersion()).isEqualTo(1);
+        assertThat(givenHeader.getVersion()).isEqualTo(4);
         assertThat(givenHeader.isCompabible()).isTrue();
 
         assertThat(givenHeader.getVersion()).isEqualTo(whenHeader.getVersion());
@@ -113,6 +116,7 @@ public class MainHeaderTest {
         assertThat(givenHeader.getRecordCount()).isEqualTo(whenHeader.getRecordCount());
         assertThat(givenHeader.getMinRecordDataLength()).isEqualTo(whenHeader.getMinRecordDataLength());
         assertThat(givenHeader.getMaxRecordDataLength()).isEqualTo(whenHeader.getMaxRecordDataLength());
+        assertThat(givenHeader.getHeadPointer()).isEqualTo(whenHeader.getHeadPointer());
 
         assertThat(givenHeader.getRecordCount()).isEqualTo(dataBlockCount);
         assertThat(givenHeader.getMinRecordDataLength()).isEqualTo(minDataBlockLength);
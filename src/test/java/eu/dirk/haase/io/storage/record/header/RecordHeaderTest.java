@@ -52,10 +52,10 @@ public class RecordHeaderTest {
         // When
         // ============
         // Then
-        assertThat(firstHeader.getStartPointer()).isEqualTo(81L);
-        assertThat(firstHeader.getRecordDataStartPointer()).isEqualTo(165L);
-        assertThat(firstHeader.getEndPointer()).isEqualTo(165L);
-        assertThat(firstHeader.getLength()).isEqualTo(84);
+        assertThat(firstHeader.getStartPointer()).isEqualTo(97L);
+        assertThat(firstHeader.getRecordDataStartPointer()).isEqualTo(189L);
+        assertThat(firstHeader.getEndPointer()).isEqualTo(189L);
+        assertThat(firstHeader.getLength()).isEqualTo(92);
         assertThat(firstHeader.getRecordDataCapacity()).isEqualTo(0);
         assertThat(firstHeader.getRecordDataLength()).isEqualTo(0);
         assertThat(firstHeader.getRecordIndex()).isEqualTo(0);
@@ -73,10 +73,10 @@ public class RecordHeaderTest {
         firstHeader.setRecordDataCapacity(200);
         // ============
         // Then
-        assertThat(firstHeader.getStartPointer()).isEqualTo(81L);
-        assertThat(firstHeader.getRecordDataStartPointer()).isEqualTo(165L);
-        assertThat(firstHeader.getEndPointer()).isEqualTo(165L);
-        assertThat(firstHeader.getLength()).isEqualTo(84);
+        assertThat(firstHeader.getStartPointer()).isEqualTo(97L);
+        assertThat(firstHeader.getRecordDataStartPointer()).isEqualTo(189L);
+        assertThat(firstHeader.getEndPointer()).isEqualTo(189L);
+        assertThat(firstHeader.getLength()).isEqualTo(92);
         assertThat(firstHeader.getRecordDataCapacity()).isEqualTo(200);
         assertThat(firstHeader.getRecordDataLength()).isEqualTo(123);
         assertThat(firstHeader.getRecordIndex()).isEqualTo(0);
@@ -95,10 +95,10 @@ public class RecordHeaderTest {
         RecordHeader nextHeader = firstHeader.nextHeader();
         // ============
         // Then
-        assertThat(nextHeader.getStartPointer()).isEqualTo(385L);
-        assertThat(nextHeader.getRecordDataStartPointer()).isEqualTo(469L);
-        assertThat(nextHeader.getEndPointer()).isEqualTo(469L);
-        assertThat(nextHeader.getLength()).isEqualTo(84);
+        assertThat(nextHeader.getStartPointer()).isEqualTo(409L);
+        assertThat(nextHeader.getRecordDataStartPointer()).isEqualTo(501L);
+        assertThat(nextHeader.getEndPointer()).isEqualTo(501L);
+        assertThat(nextHeader.getLength()).isEqualTo(92);
         assertThat(nextHeader.getRecordDataCapacity()).isEqualTo(0);
         assertThat(nextHeader.getRecordDataLength()).isEqualTo(0);
         assertThat(nextHeader.getRecordIndex()).isEqualTo(1);
@@ -150,7 +150,7 @@ public class RecordHeaderTest {
         int byteBufferCapacity = 5000;
         int dataBlockCapacity = 12;
         int occupiedBytes = 45;
-        int startDataPointer = 85;
+        int startDataPointer = 103;
         int startPointer = 1230;
         givenHeader.setRecordDataCapacity(dataBlockCapacity);
         givenHeader.setRecordDataLength(occupiedBytes);
@@ -196,7 +196,7 @@ public class RecordHeaderTest {
         int byteBufferCapacity = 5000;
         int dataBlockCapacity = 12;
         int occupiedBytes = 45;
-        int startDataPointer = 85;
+        int startDataPointer = 103;
         int startPointer = 1230;
         givenHeader.setRecordDataCapacity(dataBlockCapacity);
         givenHeader.setRecordDataLength(occupiedBytes);
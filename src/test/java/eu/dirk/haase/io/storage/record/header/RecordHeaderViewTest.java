@@ -0,0 +1,95 @@
+package eu.dirk.haase.io.storage.record.header;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(BlockJUnit4ClassRunner.class)
+public class RecordHeaderViewTest {
+
+    private static RecordHeader buildRecordHeader(byte[] key) {
+        RecordHeader recordHeader = new RecordHeader();
+        recordHeader.init(1000L, 7, 0);
+        recordHeader.copyKey(key);
+        recordHeader.setRecordDataCapacity(200);
+        recordHeader.setRecordDataLength(123);
+        return recordHeader;
+    }
+
+    @Test
+    public void testWrap_DecodesFields() {
+        // ============
+        // Given
+        byte[] key = UUID.randomUUID().toString().getBytes();
+        RecordHeader givenHeader = buildRecordHeader(key);
+        givenHeader.setDeleted(true);
+        givenHeader.setDataChecksum(4711);
+        int offset = 13;
+        ByteBuffer buffer = ByteBuffer.allocate(offset + givenHeader.getLength());
+        buffer.position(offset);
+        givenHeader.write(buffer);
+        // ============
+        // When
+        RecordHeaderView view = new RecordHeaderView().wrap(buffer, offset);
+        // ============
+        // Then
+        assertThat(view.getLength()).isEqualTo(givenHeader.getLength());
+        assertThat(view.isValidAt(1000L)).isTrue();
+        assertThat(view.isValidAt(1001L)).isFalse();
+        assertThat(view.isConsistent()).isTrue();
+        assertThat(view.getStartPointer()).isEqualTo(givenHeader.getStartPointer());
+        assertThat(view.getRecordDataStartPointer()).isEqualTo(givenHeader.getRecordDataStartPointer());
+        assertThat(view.getRecordDataCapacity()).isEqualTo(200);
+        assertThat(view.getRecordDataLength()).isEqualTo(123);
+        assertThat(view.getRecordIndex()).isEqualTo(7);
+        assertThat(view.isDeleted()).isTrue();
+        assertThat(view.hasChecksum()).isTrue();
+        assertThat(view.getDataChecksum()).isEqualTo(4711);
+        assertThat(view.getNextStartPointer()).isEqualTo(givenHeader.getNextStartPointer());
+        assertThat(view.getNextStartPointer()).isEqualTo(givenHeader.nextHeader().getStartPointer());
+    }
+
+    @Test
+    public void testKeyEquals() {
+        // ============
+        // Given
+        byte[] key = UUID.randomUUID().toString().getBytes();
+        RecordHeader givenHeader = buildRecordHeader(key);
+        ByteBuffer buffer = ByteBuffer.allocate(givenHeader.getLength());
+        givenHeader.write(buffer);
+        // ============
+        // When
+        RecordHeaderView view = new RecordHeaderView().wrap(buffer, 0);
+        // ============
+        // Then
+        assertThat(view.keyEquals(key.clone())).isTrue();
+        assertThat(view.keyEquals(UUID.randomUUID().toString().getBytes())).isFalse();
+        assertThat(view.keyEquals("short".getBytes())).isFalse();
+        assertThat(view.keyEquals(null)).isFalse();
+    }
+
+    @Test
+    public void testHeaderChecksum() {
+        // ============
+        // Given
+        RecordHeader givenHeader = buildRecordHeader(UUID.randomUUID().toString().getBytes());
+        givenHeader.setDataChecksum(4711);
+        ByteBuffer buffer = ByteBuffer.allocate(givenHeader.getLength());
+        givenHeader.write(buffer);
+        RecordHeaderView view = new RecordHeaderView().wrap(buffer, 0);
+        boolean isValidBefore = view.isHeaderChecksumValid();
+        // ============
+        // When
+        buffer.put(40, (byte) (buffer.get(40) ^ 0x01));
+        // ============
+        // Then
+        assertThat(isValidBefore).isTrue();
+        assertThat(view.isHeaderChecksumValid()).isFalse();
+    }
+
+}
@@ -0,0 +1,284 @@
+package eu.dirk.haase.io.storage.record.index;
+
+import eu.dirk.haase.io.storage.record.RecordChannelStorage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(BlockJUnit4ClassRunner.class)
+public class PagedRecordKeyIndexTest {
+
+    private File file;
+    private File indexFile;
+    private PagedRecordKeyIndex pagedRecordKeyIndex;
+
+    @Before
+    public void setUp() throws IOException {
+        file = new File("./PagedRecordKeyIndexTest.recordfile.bin");
+        indexFile = PagedRecordKeyIndex.indexPathOf(file.toPath()).toFile();
+        file.delete();
+        indexFile.delete();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (pagedRecordKeyIndex != null) {
+            pagedRecordKeyIndex.close();
+        }
+        pagedRecordKeyIndex = null;
+        file.delete();
+        indexFile.delete();
+    }
+
+    @Test
+    public void testPutGetRemove_WithSplits() throws IOException {
+        // ============
+        // Given
+        pagedRecordKeyIndex = new PagedRecordKeyIndex(indexFile.toPath());
+        List<byte[]> keyList = createKeys(20000);
+        // ============
+        // When
+        for (int i = 0; keyList.size() > i; ++i) {
+            pagedRecordKeyIndex.put(keyList.get(i), i + 1);
+        }
+        for (int i = 0; keyList.size() > i; i += 2) {
+            pagedRecordKeyIndex.remove(keyList.get(i), i + 1);
+        }
+        // ============
+        // Then
+        assertThat(pagedRecordKeyIndex.size()).isEqualTo(keyList.size() / 2);
+        for (int i = 0; keyList.size() > i; ++i) {
+            long expected = ((i % 2) == 0 ? -1 : i + 1);
+            assertThat(pagedRecordKeyIndex.get(keyList.get(i))).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    public void testGet_ConcurrentWithPut() throws IOException, InterruptedException {
+        // ============
+        // Given
+        final int READER_COUNT = 4;
+        pagedRecordKeyIndex = new PagedRecordKeyIndex(indexFile.toPath());
+        final List<byte[]> keyList = createKeys(10000);
+        for (int i = 0; (keyList.size() / 2) > i; ++i) {
+            pagedRecordKeyIndex.put(keyList.get(i), i + 1);
+        }
+        final List<Throwable> failures = new CopyOnWriteArrayList<>();
+        final AtomicInteger mismatchCount = new AtomicInteger();
+        List<Thread> readers = new ArrayList<>();
+        // ============
+        // When
+        for (int r = 0; READER_COUNT > r; ++r) {
+            Thread reader = new Thread(() -> {
+                try {
+                    for (int i = 0; (keyList.size() / 2) > i; ++i) {
+                        if (pagedRecordKeyIndex.get(keyList.get(i)) != (i + 1)) {
+                            mismatchCount.incrementAndGet();
+                        }
+                    }
+                } catch (Throwable ex) {
+                    failures.add(ex);
+                }
+            });
+            readers.add(reader);
+            reader.start();
+        }
+        // Splits the buckets while the readers look up the keys
+        for (int i = keyList.size() / 2; keyList.size() > i; ++i) {
+            pagedRecordKeyIndex.put(keyList.get(i), i + 1);
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        // ============
+        // Then
+        assertThat(failures).isEmpty();
+        assertThat(mismatchCount.get()).isEqualTo(0);
+        for (int i = 0; keyList.size() > i; ++i) {
+            assertThat(pagedRecordKeyIndex.get(keyList.get(i))).isEqualTo(i + 1);
+        }
+    }
+
+    @Test
+    public void testReopen_AfterClose() throws IOException {
+        // ============
+        // Given
+        pagedRecordKeyIndex = new PagedRecordKeyIndex(indexFile.toPath());
+        List<byte[]> keyList = createKeys(5000);
+        for (int i = 0; keyList.size() > i; ++i) {
+            pagedRecordKeyIndex.put(keyList.get(i), i + 1);
+        }
+        pagedRecordKeyIndex.close();
+        // ============
+        // When
+        pagedRecordKeyIndex = new PagedRecordKeyIndex(indexFile.toPath());
+        // ============
+        // Then
+        assertThat(pagedRecordKeyIndex.isUpToDate()).isTrue();
+        assertThat(pagedRecordKeyIndex.size()).isEqualTo(keyList.size());
+        for (int i = 0; keyList.size() > i; ++i) {
+            assertThat(pagedRecordKeyIndex.get(keyList.get(i))).isEqualTo(i + 1);
+        }
+    }
+
+    @Test
+    public void testReopen_WithoutClose() throws IOException {
+        // ============
+        // Given
+        PagedRecordKeyIndex crashedIndex = new PagedRecordKeyIndex(indexFile.toPath());
+        crashedIndex.put(UUID.randomUUID().toString().getBytes(), 100);
+        // ============
+        // When
+        pagedRecordKeyIndex = new PagedRecordKeyIndex(indexFile.toPath());
+        // ============
+        // Then
+        assertThat(pagedRecordKeyIndex.isUpToDate()).isFalse();
+    }
+
+    @Test
+    public void testRecordChannelStorage_ReopenWithoutRebuild() throws IOException, InterruptedException {
+        // ============
+        // Given
+        byte[] key1 = UUID.randomUUID().toString().getBytes();
+        byte[] key2 = UUID.randomUUID().toString().getBytes();
+        byte[] data2 = "Das ist der zweite Record".getBytes();
+        ByteBuffer dataByteBuffer1 = ByteBuffer.allocate(1024);
+        ByteBuffer dataByteBuffer2 = ByteBuffer.allocate(1024);
+        byte[] buffer2b = new byte[1024];
+        dataByteBuffer1.put("Das ist der erste Record".getBytes());
+        dataByteBuffer2.put(data2);
+
+        RecordChannelStorage recordChannelStorage = new RecordChannelStorage(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        recordChannelStorage.setRecordKeyIndex(new PagedRecordKeyIndex(indexFile.toPath()));
+        recordChannelStorage.create();
+        recordChannelStorage.insertRecord(key1, dataByteBuffer1);
+        recordChannelStorage.insertRecord(key2, dataByteBuffer2);
+        recordChannelStorage.deleteRecord(key1);
+        recordChannelStorage.close();
+        // ============
+        // When
+        RecordChannelStorage reinitRecordChannelStorage = new RecordChannelStorage(file, StandardOpenOption.READ);
+        pagedRecordKeyIndex = new PagedRecordKeyIndex(indexFile.toPath());
+        reinitRecordChannelStorage.setRecordKeyIndex(pagedRecordKeyIndex);
+        boolean isUpToDate = pagedRecordKeyIndex.isUpToDate(file.length());
+        reinitRecordChannelStorage.initialize();
+        int recordIndex1 = reinitRecordChannelStorage.selectRecord(key1, ByteBuffer.allocate(1024));
+        int recordIndex2 = reinitRecordChannelStorage.selectRecord(key2, ByteBuffer.wrap(buffer2b));
+        reinitRecordChannelStorage.close();
+        pagedRecordKeyIndex = null;
+        // ============
+        // Then
+        assertThat(isUpToDate).isTrue();
+        assertThat(recordIndex1).isEqualTo(-1);
+        assertThat(recordIndex2).isEqualTo(1);
+        assertThat(buffer2b).startsWith(data2);
+    }
+
+    @Test
+    public void testNewIndex_IsNotUpToDate() throws IOException {
+        // ============
+        // Given
+        pagedRecordKeyIndex = new PagedRecordKeyIndex(indexFile.toPath());
+        // ============
+        // When
+        boolean isUpToDate = pagedRecordKeyIndex.isUpToDate();
+        boolean isUpToDateForSize = pagedRecordKeyIndex.isUpToDate(0);
+        // ============
+        // Then
+        assertThat(isUpToDate).isFalse();
+        assertThat(isUpToDateForSize).isFalse();
+    }
+
+    @Test
+    public void testRecordChannelStorage_NewIndexOnPopulatedStorage() throws IOException, InterruptedException {
+        // ============
+        // Given
+        List<byte[]> keyList = createKeys(100);
+        RecordChannelStorage recordChannelStorage = new RecordChannelStorage(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        recordChannelStorage.create();
+        for (int i = 0; keyList.size() > i; ++i) {
+            ByteBuffer dataByteBuffer = ByteBuffer.allocate(1024);
+            dataByteBuffer.put(("Das ist der Record Nr. " + i).getBytes());
+            recordChannelStorage.insertRecord(keyList.get(i), dataByteBuffer);
+        }
+        recordChannelStorage.close();
+        // ============
+        // When
+        RecordChannelStorage reinitRecordChannelStorage = new RecordChannelStorage(file, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        pagedRecordKeyIndex = new PagedRecordKeyIndex(indexFile.toPath());
+        reinitRecordChannelStorage.setRecordKeyIndex(pagedRecordKeyIndex);
+        reinitRecordChannelStorage.initialize();
+        int[] recordIndices = new int[keyList.size()];
+        for (int i = 0; keyList.size() > i; ++i) {
+            recordIndices[i] = reinitRecordChannelStorage.selectRecord(keyList.get(i), ByteBuffer.allocate(1024));
+        }
+        reinitRecordChannelStorage.close();
+        pagedRecordKeyIndex = null;
+        // ============
+        // Then
+        for (int i = 0; keyList.size() > i; ++i) {
+            assertThat(recordIndices[i]).isEqualTo(i);
+        }
+    }
+
+    @Test
+    public void testRecordChannelStorage_StorageChangedWithoutIndex() throws IOException, InterruptedException {
+        // ============
+        // Given
+        byte[] key1 = UUID.randomUUID().toString().getBytes();
+        byte[] key2 = UUID.randomUUID().toString().getBytes();
+        ByteBuffer dataByteBuffer1 = ByteBuffer.allocate(1024);
+        ByteBuffer dataByteBuffer2 = ByteBuffer.allocate(1024);
+        dataByteBuffer1.put("Das ist der erste Record".getBytes());
+        dataByteBuffer2.put("Das ist der zweite Record".getBytes());
+        RecordChannelStorage recordChannelStorage = new RecordChannelStorage(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        recordChannelStorage.setRecordKeyIndex(new PagedRecordKeyIndex(indexFile.toPath()));
+        recordChannelStorage.create();
+        recordChannelStorage.insertRecord(key1, dataByteBuffer1);
+        recordChannelStorage.close();
+        // The index is detached while a record is inserted
+        RecordChannelStorage unindexedRecordChannelStorage = new RecordChannelStorage(file, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        unindexedRecordChannelStorage.initialize();
+        unindexedRecordChannelStorage.insertRecord(key2, dataByteBuffer2);
+        unindexedRecordChannelStorage.close();
+        // ============
+        // When
+        RecordChannelStorage reinitRecordChannelStorage = new RecordChannelStorage(file, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        pagedRecordKeyIndex = new PagedRecordKeyIndex(indexFile.toPath());
+        reinitRecordChannelStorage.setRecordKeyIndex(pagedRecordKeyIndex);
+        boolean isUpToDate = pagedRecordKeyIndex.isUpToDate(file.length());
+        reinitRecordChannelStorage.initialize();
+        int recordIndex1 = reinitRecordChannelStorage.selectRecord(key1, ByteBuffer.allocate(1024));
+        int recordIndex2 = reinitRecordChannelStorage.selectRecord(key2, ByteBuffer.allocate(1024));
+        reinitRecordChannelStorage.close();
+        pagedRecordKeyIndex = null;
+        // ============
+        // Then
+        assertThat(isUpToDate).isFalse();
+        assertThat(recordIndex1).isEqualTo(0);
+        assertThat(recordIndex2).isEqualTo(1);
+    }
+
+    private List<byte[]> createKeys(int count) {
+        List<byte[]> keyList = new ArrayList<byte[]>();
+        for (int i = 0; count > i; ++i) {
+            keyList.add(UUID.randomUUID().toString().getBytes());
+        }
+        return keyList;
+    }
+
+}
@@ -0,0 +1,117 @@
+package eu.dirk.haase.io.storage.record.index;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(BlockJUnit4ClassRunner.class)
+public class RecordKeyIndexTest {
+
+    @Test
+    public void testPutGet() {
+        // ============
+        // Given
+        RecordKeyIndex recordKeyIndex = new RecordKeyIndex();
+        byte[] key1 = UUID.randomUUID().toString().getBytes();
+        byte[] key2 = UUID.randomUUID().toString().getBytes();
+        byte[] key3 = UUID.randomUUID().toString().getBytes();
+        // ============
+        // When
+        recordKeyIndex.put(key1, 81);
+        recordKeyIndex.put(key2, 200);
+        // ============
+        // Then
+        assertThat(recordKeyIndex.get(key1)).isEqualTo(81);
+        assertThat(recordKeyIndex.get(key2)).isEqualTo(200);
+        assertThat(recordKeyIndex.get(key3)).isEqualTo(-1);
+        assertThat(recordKeyIndex.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void testPut_ReplacesPreviousStartPointer() {
+        // ============
+        // Given
+        RecordKeyIndex recordKeyIndex = new RecordKeyIndex();
+        byte[] key1 = UUID.randomUUID().toString().getBytes();
+        // ============
+        // When
+        recordKeyIndex.put(key1, 81);
+        recordKeyIndex.put(key1, 300);
+        // ============
+        // Then
+        assertThat(recordKeyIndex.get(key1)).isEqualTo(300);
+        assertThat(recordKeyIndex.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void testRemove_OnlyMatchingStartPointer() {
+        // ============
+        // Given
+        RecordKeyIndex recordKeyIndex = new RecordKeyIndex();
+        byte[] key1 = UUID.randomUUID().toString().getBytes();
+        recordKeyIndex.put(key1, 300);
+        // ============
+        // When
+        boolean isRemoved1 = recordKeyIndex.remove(key1, 81);
+        boolean isRemoved2 = recordKeyIndex.remove(key1, 300);
+        // ============
+        // Then
+        assertThat(isRemoved1).isFalse();
+        assertThat(isRemoved2).isTrue();
+        assertThat(recordKeyIndex.get(key1)).isEqualTo(-1);
+        assertThat(recordKeyIndex.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testInvalidKeys_AreNotIndexed() {
+        // ============
+        // Given
+        RecordKeyIndex recordKeyIndex = new RecordKeyIndex();
+        byte[] shortKey = "short".getBytes();
+        // ============
+        // When
+        recordKeyIndex.put(shortKey, 81);
+        recordKeyIndex.put(null, 81);
+        // ============
+        // Then
+        assertThat(recordKeyIndex.get(shortKey)).isEqualTo(-1);
+        assertThat(recordKeyIndex.get(null)).isEqualTo(-1);
+        assertThat(recordKeyIndex.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testGrowAndPurge() {
+        // ============
+        // Given
+        RecordKeyIndex recordKeyIndex = new RecordKeyIndex(4);
+        List<byte[]> keyList = new ArrayList<byte[]>();
+        for (int i = 0; 10000 > i; ++i) {
+            keyList.add(UUID.randomUUID().toString().getBytes());
+        }
+        // ============
+        // When
+        for (int i = 0; keyList.size() > i; ++i) {
+            recordKeyIndex.put(keyList.get(i), i + 1);
+        }
+        for (int i = 0; keyList.size() > i; i += 2) {
+            recordKeyIndex.remove(keyList.get(i), i + 1);
+        }
+        for (int i = 0; keyList.size() > i; i += 2) {
+            recordKeyIndex.put(keyList.get(i), i + 100000);
+        }
+        // ============
+        // Then
+        assertThat(recordKeyIndex.size()).isEqualTo(keyList.size());
+        for (int i = 0; keyList.size() > i; ++i) {
+            long expected = ((i % 2) == 0 ? i + 100000 : i + 1);
+            assertThat(recordKeyIndex.get(keyList.get(i))).isEqualTo(expected);
+        }
+    }
+
+}
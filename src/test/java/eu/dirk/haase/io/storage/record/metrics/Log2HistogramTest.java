@@ -0,0 +1,54 @@
+package eu.dirk.haase.io.storage.record.metrics;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(BlockJUnit4ClassRunner.class)
+public class Log2HistogramTest {
+
+    @Test
+    public void testSnapshot() {
+        // ===============
+        // === Given
+        Log2Histogram histogram = new Log2Histogram();
+        // ===============
+        // === When
+        for (int i = 0; 98 > i; ++i) {
+            histogram.record(100);
+        }
+        histogram.record(5000);
+        histogram.record(-1);
+        HistogramSnapshot snapshot = histogram.snapshot();
+        // ===============
+        // === Then
+        assertThat(snapshot.getCount()).isEqualTo(100);
+        assertThat(snapshot.getSum()).isEqualTo(98 * 100 + 5000);
+        assertThat(snapshot.getMax()).isEqualTo(5000);
+        // 100 is counted in the bucket from 64 to 127
+        assertThat(snapshot.getP50()).isEqualTo(127);
+        assertThat(snapshot.getP90()).isEqualTo(127);
+        assertThat(snapshot.getP999()).isEqualTo(5000);
+    }
+
+    @Test
+    public void testReset() {
+        // ===============
+        // === Given
+        Log2Histogram histogram = new Log2Histogram();
+        histogram.record(Long.MAX_VALUE);
+        // ===============
+        // === When
+        histogram.reset();
+        HistogramSnapshot snapshot = histogram.snapshot();
+        // ===============
+        // === Then
+        assertThat(snapshot.getCount()).isEqualTo(0);
+        assertThat(snapshot.getMax()).isEqualTo(0);
+        assertThat(snapshot.getP99()).isEqualTo(0);
+        assertThat(snapshot.getMean()).isEqualTo(0.0);
+    }
+
+}
@@ -0,0 +1,102 @@
+package eu.dirk.haase.io.storage.record.metrics;
+
+import eu.dirk.haase.io.storage.channel.SeekableChunkedByteChannel;
+import eu.dirk.haase.io.storage.record.RecordChannelStorage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(BlockJUnit4ClassRunner.class)
+public class StorageMetricsTest {
+
+    private final static int CAPACITY = 1024;
+
+    private RecordChannelStorage recordChannelStorage;
+    private StorageMetrics storageMetrics;
+
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        storageMetrics = new StorageMetrics();
+        recordChannelStorage = new RecordChannelStorage(null, new SeekableChunkedByteChannel());
+        recordChannelStorage.setMetrics(storageMetrics);
+        recordChannelStorage.create();
+    }
+
+    @After
+    public void tearDown() throws IOException, InterruptedException, JMException {
+        storageMetrics.unregister();
+        recordChannelStorage.close();
+    }
+
+    private static ByteBuffer buildData(String data) {
+        ByteBuffer dataByteBuffer = ByteBuffer.allocate(CAPACITY);
+        dataByteBuffer.put(data.getBytes());
+        return dataByteBuffer;
+    }
+
+    @Test
+    public void testOperations_AreRecorded() throws IOException, InterruptedException {
+        // ===============
+        // === Given
+        byte[] key1 = UUID.randomUUID().toString().getBytes();
+        byte[] key2 = UUID.randomUUID().toString().getBytes();
+        byte[] key3 = UUID.randomUUID().toString().getBytes();
+        // ===============
+        // === When
+        recordChannelStorage.insertRecord(key1, buildData("Das ist der erste Record"));
+        recordChannelStorage.insertRecord(key2, buildData("Das ist der zweite Record"));
+        recordChannelStorage.insertRecord(key3, buildData("Das ist der dritte Record"));
+        recordChannelStorage.selectRecord(key3, ByteBuffer.allocate(CAPACITY));
+        recordChannelStorage.deleteRecord(key2);
+        recordChannelStorage.poll(ByteBuffer.allocate(CAPACITY));
+        // ===============
+        // === Then
+        assertThat(storageMetrics.getInsertLatency().getCount()).isEqualTo(3);
+        assertThat(storageMetrics.getSelectLatency().getCount()).isEqualTo(1);
+        assertThat(storageMetrics.getDeleteLatency().getCount()).isEqualTo(1);
+        assertThat(storageMetrics.getPollLatency().getCount()).isEqualTo(1);
+        assertThat(storageMetrics.getWriteLockWait().getCount()).isEqualTo(5);
+        assertThat(storageMetrics.getReadLockWait().getCount()).isEqualTo(1);
+        assertThat(storageMetrics.getTombstones()).isEqualTo(2);
+        assertThat(storageMetrics.getBytesRead()).isEqualTo("Das ist der dritte Record".length() + "Das ist der erste Record".length());
+        assertThat(storageMetrics.getBytesWritten()).isGreaterThan(3L * "Das ist der erste Record".length());
+        // Without an index the select walks over three RecordHeaders, the delete over two, the poll over one
+        assertThat(storageMetrics.getScannedHeaders()).isEqualTo(6);
+        assertThat(storageMetrics.getScannedHeadersPerLookup().getMax()).isEqualTo(3);
+    }
+
+    @Test
+    public void testRegister_ExposesAttributes() throws IOException, InterruptedException, JMException {
+        // ===============
+        // === Given
+        recordChannelStorage.insertRecord(UUID.randomUUID().toString().getBytes(), buildData("Das ist der erste Record"));
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        // ===============
+        // === When
+        ObjectName objectName = storageMetrics.register("StorageMetricsTest");
+        CompositeData insertLatency = (CompositeData) mBeanServer.getAttribute(objectName, "InsertLatency");
+        Long tombstones = (Long) mBeanServer.getAttribute(objectName, "Tombstones");
+        storageMetrics.unregister();
+        // ===============
+        // === Then
+        assertThat(objectName.getDomain()).isEqualTo(StorageMetrics.DOMAIN);
+        assertThat(insertLatency.get("count")).isEqualTo(1L);
+        assertThat((Long) insertLatency.get("max")).isGreaterThan(0L);
+        assertThat(tombstones).isEqualTo(0L);
+        assertThat(mBeanServer.isRegistered(objectName)).isFalse();
+    }
+
+}